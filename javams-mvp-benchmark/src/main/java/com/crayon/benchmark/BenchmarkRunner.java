@@ -0,0 +1,50 @@
+package com.crayon.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口
+ *
+ * <p>
+ * 不带参数时运行完整的矩阵：读写、日志追加、读路由分别以 1、4、16 个线程运行，通知扇出单线程运行，
+ * 每组结果写入当前目录的 jmh-result-*.json，修改热点路径前后各跑一次，对比同名结果即可。
+ * 带参数时与 JMH 命令行相同，如 {@code java -jar benchmarks.jar ShareDataServerBenchmark.get -t 8 -p distribution=ZIPFIAN}。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/9
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            Main.main(args);
+            return;
+        }
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(ShareDataServerBenchmark.class.getSimpleName())
+                    .include(WalAppendBenchmark.class.getSimpleName())
+                    .include(ReadRoutingBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-t" + threads + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+        Options notify = new OptionsBuilder()
+                .include(NotifyBenchmark.class.getSimpleName())
+                .threads(1)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result-notify.json")
+                .build();
+        new Runner(notify).run();
+    }
+}
@@ -0,0 +1,41 @@
+package com.crayon.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 基准测试公共方法
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/9
+ */
+final class Benchmarks {
+
+    /**
+     * 每个线程预先生成的访问序列长度
+     */
+    static final int SAMPLES = 1 << 16;
+
+    private Benchmarks() {
+    }
+
+    static Path tempWalDir(String name) throws IOException {
+        return Files.createTempDirectory("datashare-bench-" + name);
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+
+    static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.crayon.benchmark;
+
+import java.util.Random;
+
+/**
+ * 基准测试中访问 key 的分布
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/9
+ */
+public enum KeyDistributionEnum {
+
+    /**
+     * 均匀分布，每个 key 被访问的概率相同
+     */
+    UNIFORM,
+
+    /**
+     * Zipfian 分布（指数 0.99，与 YCSB 默认一致），少数热点 key 占大部分访问，
+     * 热点 key 上的写锁分段与 CAS 竞争在这种分布下才会出现
+     */
+    ZIPFIAN;
+
+    private static final double ZIPFIAN_EXPONENT = 0.99;
+
+    /**
+     * 预先生成访问序列，测量时按顺序取用，不把随机数生成的开销算进被测操作
+     *
+     * @param keyCount key 的数量
+     * @param samples  序列长度
+     * @param seed     每个线程不同的种子
+     * @return key 下标序列
+     */
+    public int[] sample(int keyCount, int samples, long seed) {
+        Random random = new Random(seed);
+        int[] indices = new int[samples];
+        if (this == UNIFORM) {
+            for (int i = 0; i < samples; i++) {
+                indices[i] = random.nextInt(keyCount);
+            }
+            return indices;
+        }
+        double[] cdf = zipfianCdf(keyCount);
+        for (int i = 0; i < samples; i++) {
+            int rank = binarySearch(cdf, random.nextDouble());
+            // 热点 key 打散到不同位置，避免热点恰好是字典序相邻的 key
+            indices[i] = (int) ((rank * 0x9E3779B97F4A7C15L >>> 1) % keyCount);
+        }
+        return indices;
+    }
+
+    private static double[] zipfianCdf(int keyCount) {
+        double[] cdf = new double[keyCount];
+        double sum = 0;
+        for (int i = 0; i < keyCount; i++) {
+            sum += 1.0 / Math.pow(i + 1, ZIPFIAN_EXPONENT);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int binarySearch(double[] cdf, double p) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] < p) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,131 @@
+package com.crayon.benchmark;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Watcher 注册与通知扇出基准
+ *
+ * <p>
+ * 一个 key 上有 watchers 个持久 Watcher，每次写入后等待所有订阅者都收到通知，
+ * 测量一次“写入 + 分发 + 投递给所有订阅者”的完整耗时；等投递完再写下一次，同一个 key 的通知不会被合并。
+ * 另外测量持久 Watcher 注册 + 取消的开销。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/9
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotifyBenchmark {
+
+    private static final String HOT_KEY = "/bench/hot";
+
+    @Param({"1", "100", "10000"})
+    private int watchers;
+
+    private Path walDir;
+
+    private ShareDataServer server;
+
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * 到目前为止应送达的通知数，只由单个测量线程修改
+     */
+    private long expected;
+
+    private ShareData value;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        walDir = Benchmarks.tempWalDir("notify");
+        server = new ShareDataServer(new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .build());
+        value = new ShareData("id", "value", 1);
+        server.set(HOT_KEY, value);
+        for (int i = 0; i < watchers; i++) {
+            String subscriber = "10.0." + (i >> 8) + "." + (i & 0xff) + ":8080";
+            server.getNotifier().bind(subscriber, events -> {
+                delivered.add(events.size());
+                return true;
+            });
+            server.watch(HOT_KEY, subscriber, ShareDataServer.ANY_VERSION);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+        Benchmarks.deleteRecursively(walDir);
+    }
+
+    /**
+     * 写入并等待所有订阅者收到通知
+     */
+    @Benchmark
+    @Threads(1)
+    public long setAndDeliver() {
+        expected += watchers;
+        server.set(HOT_KEY, value);
+        long sum;
+        while ((sum = delivered.sum()) < expected) {
+            Thread.yield();
+        }
+        return sum;
+    }
+
+    @State(Scope.Thread)
+    public static class Subscriber {
+
+        private static final AtomicInteger IDS = new AtomicInteger();
+
+        private final String ipPort;
+
+        private int next;
+
+        public Subscriber() {
+            this.ipPort = "10.1.0." + IDS.incrementAndGet() + ":9090";
+        }
+    }
+
+    /**
+     * 注册并取消一个持久 Watcher（每次换一个 key），不写入
+     */
+    @Benchmark
+    public ShareData watchAndUnwatch(Subscriber subscriber) {
+        String key = "/bench/watch/" + (subscriber.next++ & 1023);
+        ShareData current = server.watch(key, subscriber.ipPort, ShareDataServer.ANY_VERSION);
+        server.unwatch(key, subscriber.ipPort);
+        return current;
+    }
+}
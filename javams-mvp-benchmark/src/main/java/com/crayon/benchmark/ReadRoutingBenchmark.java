@@ -0,0 +1,116 @@
+package com.crayon.benchmark;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.replication.PowerOfTwoChoicesPolicy;
+import com.crayon.datashare.replication.RandomReadRoutingPolicy;
+import com.crayon.datashare.replication.ReadRoutingPolicy;
+import com.crayon.datashare.replication.Replica;
+import com.crayon.datashare.replication.ReplicationManager;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读节点选择基准
+ *
+ * <p>
+ * 测量读路由策略为一次读选择从节点（含 in-flight 计数）的开销：不限制 LSN 与要求已应用到主节点最新 LSN（读己之写）两种情况。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/9
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadRoutingBenchmark {
+
+    @Param({"RANDOM", "POWER_OF_TWO_CHOICES"})
+    private String policy;
+
+    @Param({"2", "8"})
+    private int replicas;
+
+    private Path walDir;
+
+    private ShareDataServer server;
+
+    private ReplicationManager replicationManager;
+
+    private long committedLsn;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        walDir = Benchmarks.tempWalDir("routing");
+        ReadRoutingPolicy routingPolicy = "RANDOM".equals(policy)
+                ? new RandomReadRoutingPolicy() : new PowerOfTwoChoicesPolicy(0L);
+        server = new ShareDataServer(new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .replicaCount(replicas)
+                .readRoutingPolicy(routingPolicy)
+                .build());
+        server.set("/bench/key", new ShareData("id", "value", 1));
+        replicationManager = server.getReplicationManager();
+        committedLsn = server.getLastWriteLsn();
+        // 等从节点都应用到这次写入
+        while (!allApplied()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private boolean allApplied() {
+        for (Replica replica : replicationManager.getReplicas()) {
+            if (replica.getAppliedLsn() < committedLsn) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+        Benchmarks.deleteRecursively(walDir);
+    }
+
+    @Benchmark
+    public Replica route() {
+        return routeAndRead(0L);
+    }
+
+    @Benchmark
+    public Replica routeReadYourWrites() {
+        return routeAndRead(committedLsn);
+    }
+
+    private Replica routeAndRead(long minLsn) {
+        Replica replica = replicationManager.route(minLsn);
+        if (replica != null) {
+            replica.beginRead();
+            replica.endRead();
+        }
+        return replica;
+    }
+}
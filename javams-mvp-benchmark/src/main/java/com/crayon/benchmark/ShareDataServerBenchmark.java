@@ -0,0 +1,133 @@
+package com.crayon.benchmark;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ShareDataServer 读写基准
+ *
+ * <p>
+ * 预先写入 keyCount 个 key（默认配置：2个从节点、每秒 fsync），按均匀或 Zipfian 分布读写。
+ * 线程数用 -t 指定，{@link BenchmarkRunner} 依次以 1、4、16 个线程运行。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/9
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShareDataServerBenchmark {
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    private KeyDistributionEnum distribution;
+
+    @Param({"100000"})
+    private int keyCount;
+
+    @Param({"128"})
+    private int valueBytes;
+
+    private Path walDir;
+
+    private ShareDataServer server;
+
+    private String[] keys;
+
+    private ShareData[] values;
+
+    /**
+     * 每个线程的访问序列种子
+     */
+    private final AtomicLong seeds = new AtomicLong(42);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        walDir = Benchmarks.tempWalDir("server");
+        server = new ShareDataServer(new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .build());
+        keys = new String[keyCount];
+        values = new ShareData[keyCount];
+        String payload = Benchmarks.repeat('v', valueBytes);
+        Map<String, ShareData> batch = new LinkedHashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "/bench/" + (i % 100) + "/key-" + i;
+            values[i] = new ShareData("id" + i, payload, 1);
+            batch.put(keys[i], values[i]);
+            if (batch.size() == 1000) {
+                server.multiSet(batch, 0L, false);
+                batch.clear();
+            }
+        }
+        server.multiSet(batch, 0L, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+        Benchmarks.deleteRecursively(walDir);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int[] indices;
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(ShareDataServerBenchmark benchmark) {
+            indices = benchmark.distribution.sample(benchmark.keyCount, Benchmarks.SAMPLES,
+                    benchmark.seeds.getAndIncrement());
+        }
+
+        int next() {
+            int index = indices[next];
+            next = (next + 1) & (indices.length - 1);
+            return index;
+        }
+    }
+
+    /**
+     * 无锁读，由读路由选择从节点
+     */
+    @Benchmark
+    public ShareData get(Cursor cursor) {
+        return server.get(keys[cursor.next()], null, false);
+    }
+
+    /**
+     * 分段写锁 + 组提交日志 + 写内存 + 复制分发
+     */
+    @Benchmark
+    public boolean set(Cursor cursor) {
+        int index = cursor.next();
+        return server.set(keys[index], values[index]);
+    }
+}
@@ -0,0 +1,111 @@
+package com.crayon.benchmark;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.OperaTypeEnum;
+import com.crayon.datashare.server.SerializableService;
+import com.crayon.datashare.server.ShareDataConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * SerializableService.appendLog 日志追加基准
+ *
+ * <p>
+ * 测量组提交写入器在各种刷盘策略下的追加吞吐，并发线程越多批次越大。
+ * 每轮迭代结束后做一次（空数据的）快照，删除已封存的日志段，长时间运行不会占满磁盘。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/9
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalAppendBenchmark {
+
+    @Param({"NO_FSYNC", "FSYNC_EVERY_N_MS", "FSYNC_PER_BATCH"})
+    private FsyncModeEnum fsyncMode;
+
+    @Param({"128"})
+    private int valueBytes;
+
+    private Path walDir;
+
+    private SerializableService serializableService;
+
+    private ShareData value;
+
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        walDir = Benchmarks.tempWalDir("wal");
+        serializableService = new SerializableService(new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(fsyncMode)
+                .walSegmentBytes(16 * 1024 * 1024)
+                .build());
+        serializableService.recover(new ConcurrentHashMap<>());
+        value = new ShareData("id", Benchmarks.repeat('v', valueBytes), 1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() {
+        serializableService.snapshot(Collections.emptyMap(), checkpointLock.writeLock());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        serializableService.close();
+        Benchmarks.deleteRecursively(walDir);
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        private final String[] keys = new String[1024];
+
+        private int next;
+
+        public Keys() {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "key-" + i;
+            }
+        }
+
+        String next() {
+            return keys[next++ & (keys.length - 1)];
+        }
+    }
+
+    /**
+     * 追加一条记录并等待所在批次达到持久化点
+     */
+    @Benchmark
+    public long appendLog(Keys keys) {
+        return serializableService.appendLog(OperaTypeEnum.SET.getType(), keys.next(), value);
+    }
+}
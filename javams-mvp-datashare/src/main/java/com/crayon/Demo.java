@@ -17,9 +17,9 @@ public class Demo {
         ShareDataServer shareDataServer = new ShareDataServer();
 
         // 模拟客户端1注册对 key1 的订阅
-        SubscriberClient subscriberClient8080 = new SubscriberClient("127.0.0.1:8080");
+        SubscriberClient subscriberClient8080 = new SubscriberClient("127.0.0.1:8080", shareDataServer);
         subscriberClient8080.subscribe("key1");
-        SubscriberClient subscriberClient8081 = new SubscriberClient("127.0.0.1:8081");
+        SubscriberClient subscriberClient8081 = new SubscriberClient("127.0.0.1:8081", shareDataServer);
         subscriberClient8081.subscribe("key1");
 
         // 模拟客户端2注册对 key2 的订阅
@@ -47,6 +47,22 @@ public class Demo {
         System.out.println("\n Simulating a read from a random slave for key1:");
         ShareData slaveData = shareDataServer.get("key1", null, false); // No re-register
         System.out.println("Read from slave for key1: " + slaveData);
+
+        System.out.println("\n Reading key1 from a slave that has applied our last write (LSN " + shareDataServer.getLastWriteLsn() + ")...");
+        slaveData = shareDataServer.get("key1", null, false, shareDataServer.getLastWriteLsn());
+        System.out.println("Read-your-writes for key1: " + slaveData + ", replication lag: " + shareDataServer.getReplicationLag());
+
+        System.out.println("\n Compare-and-set key1 with a stale version and then the current one...");
+        boolean stale = shareDataServer.compareAndSet("key1", slaveData.getVersion() - 1, new ShareData("id1", "Stale write", 0));
+        boolean fresh = shareDataServer.compareAndSet("key1", slaveData.getVersion(), new ShareData("id1", "CAS Value for key1", 0));
+        System.out.println("Stale CAS: " + stale + ", current CAS: " + fresh + ", now: " + shareDataServer.get("key1", null, false, shareDataServer.getLastWriteLsn()));
+
+        System.out.println("\n setIfAbsent key3 twice, then delete it...");
+        System.out.println("First setIfAbsent: " + shareDataServer.setIfAbsent("key3", new ShareData("id3", "Value for key3", 0)));
+        System.out.println("Second setIfAbsent: " + shareDataServer.setIfAbsent("key3", new ShareData("id3", "Other value", 0)));
+        System.out.println("Delete key3 at version 1: " + shareDataServer.delete("key3", 1) + ", now: " + shareDataServer.get("key3", null, false, shareDataServer.getLastWriteLsn()));
+
+        shareDataServer.shutdown();
     }
 
 }
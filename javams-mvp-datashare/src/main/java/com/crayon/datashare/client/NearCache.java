@@ -0,0 +1,272 @@
+package com.crayon.datashare.client;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.Notifier;
+import com.crayon.datashare.server.OperaTypeEnum;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订阅者本地缓存（Near Cache）
+ *
+ * <p>
+ * 读取时未命中才访问服务端：先注册持久 Watcher 再读主节点，之后这个 key 的每次变更都会通知到，
+ * 收到通知时作废本地副本，下次读取重新加载。通知只带版本不带值，所以是作废而不是就地更新。
+ * 不存在的 key 也会缓存（负缓存），创建时同样收到通知。
+ * </p>
+ * <p>
+ * 旧值不会覆盖新值：
+ * <ul>
+ *     <li>每个条目有一个令牌，收到通知与装入新值时都会加一。加载前记下令牌，装入时令牌不变才装入，
+ *     加载期间到达的通知（可能比读到的值更新）会让这次装入作废，并发的两次加载也只有一次能装入</li>
+ *     <li>装入的值都是注册之后从主节点读到的，之后的每次写入都会产生一条更晚送达的通知。
+ *     通知的版本不大于本地版本且没有被合并的变更时才保留本地副本（重复通知），
+ *     删除、淘汰、过期以及 missed 大于0（中间可能有删除后重建）时一律作废</li>
+ *     <li>服务端积压丢弃通知（RESYNC）时整个缓存作废</li>
+ * </ul>
+ * </p>
+ * <p>
+ * 容量超过上限时与服务端一样采样淘汰：从循环游标上取若干条目，淘汰最久未访问的，并取消它的 Watcher。
+ * 命中路径只有一次 ConcurrentHashMap 读，访问时间按毫秒更新，不加锁。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/3
+ */
+public class NearCache implements Notifier.Channel {
+
+    /**
+     * 每次淘汰采样的条目数
+     */
+    private static final int SAMPLES = 5;
+
+    /**
+     * 缓存的“不存在”
+     */
+    private static final Object ABSENT = new Object();
+
+    private final String ipPort;
+
+    private final ShareDataServer shareDataServer;
+
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * RESYNC 时加一，加载期间发生过 RESYNC 的值不装入
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * 采样游标，用完后从头开始，受 this 保护
+     */
+    private Iterator<Entry> cursor;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder invalidationCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private static final class Entry {
+
+        private final String key;
+
+        /**
+         * null 表示未加载或已作废，{@link #ABSENT} 表示不存在，否则为 ShareData
+         */
+        private volatile Object cached;
+
+        /**
+         * 只在 ConcurrentHashMap 的 compute 中修改
+         */
+        private volatile long token;
+
+        private volatile long lastAccess;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * @param ipPort          订阅者标识，服务端按它推送通知
+     * @param shareDataServer
+     * @param maxEntries      最多缓存的 key 数
+     */
+    public NearCache(String ipPort, ShareDataServer shareDataServer, int maxEntries) {
+        this.ipPort = ipPort;
+        this.shareDataServer = shareDataServer;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    public ShareData get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            Object cached = entry.cached;
+            if (cached != null) {
+                long now = System.currentTimeMillis();
+                // 毫秒精度的访问时间足够采样淘汰使用，同一毫秒内的热点读不重复写共享的缓存行
+                if (entry.lastAccess != now) {
+                    entry.lastAccess = now;
+                }
+                hitCount.increment();
+                if (cached == ABSENT) {
+                    return null;
+                }
+                ShareData shareData = (ShareData) cached;
+                // 已过期但服务端还未删除，与服务端的惰性过期一致
+                return shareData.isExpired(now) ? null : shareData;
+            }
+        }
+        missCount.increment();
+        return load(key);
+    }
+
+    private ShareData load(String key) {
+        long loadEpoch = epoch.get();
+        Entry entry = entries.computeIfAbsent(key, Entry::new);
+        long token = entry.token;
+        // 先注册再读主节点，读到之后的变更一定会通知
+        ShareData current = shareDataServer.watch(key, ipPort, ShareDataServer.ANY_VERSION);
+        Object loaded = current == null ? ABSENT : current;
+        entries.computeIfPresent(key, (k, existing) -> {
+            if (existing == entry && existing.token == token && epoch.get() == loadEpoch) {
+                existing.cached = loaded;
+                existing.token = token + 1;
+                existing.lastAccess = System.currentTimeMillis();
+            }
+            return existing;
+        });
+        if (entries.size() > maxEntries) {
+            evictIfNeeded();
+        }
+        return current;
+    }
+
+    /**
+     * 通知回调，在服务端的通知投递线程中执行
+     */
+    @Override
+    public boolean push(List<Notifier.Event> events) {
+        for (Notifier.Event event : events) {
+            if (event.getKey() == null) {
+                resync();
+            } else {
+                invalidate(event);
+            }
+        }
+        return true;
+    }
+
+    private void invalidate(Notifier.Event event) {
+        entries.computeIfPresent(event.getKey(), (k, entry) -> {
+            entry.token++;
+            Object cached = entry.cached;
+            if (cached == null) {
+                return entry;
+            }
+            boolean duplicate = cached instanceof ShareData
+                    && OperaTypeEnum.CHANGE.getType().equals(event.getOperaType())
+                    && event.getMissed() == 0
+                    && ((ShareData) cached).getVersion() >= event.getVersion();
+            if (!duplicate) {
+                entry.cached = null;
+                invalidationCount.increment();
+            }
+            return entry;
+        });
+    }
+
+    private void resync() {
+        epoch.incrementAndGet();
+        for (String key : entries.keySet()) {
+            entries.computeIfPresent(key, (k, entry) -> {
+                entry.token++;
+                entry.cached = null;
+                return entry;
+            });
+        }
+        invalidationCount.increment();
+    }
+
+    /**
+     * 采样淘汰直到回到上限以内，取消被淘汰 key 的 Watcher
+     * <p>
+     * 移除与取消注册在同一次 compute 中完成，之后重新加载同一个 key 时的注册一定在取消之后
+     */
+    private void evictIfNeeded() {
+        while (entries.size() > maxEntries) {
+            Entry victim = sample();
+            if (victim == null) {
+                return;
+            }
+            entries.computeIfPresent(victim.key, (k, entry) -> {
+                if (entry != victim) {
+                    return entry;
+                }
+                shareDataServer.unwatch(k, ipPort);
+                evictionCount.increment();
+                return null;
+            });
+        }
+    }
+
+    private synchronized Entry sample() {
+        Entry oldest = null;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (cursor == null || !cursor.hasNext()) {
+                cursor = entries.values().iterator();
+                if (!cursor.hasNext()) {
+                    break;
+                }
+            }
+            Entry entry = cursor.next();
+            if (oldest == null || entry.lastAccess < oldest.lastAccess) {
+                oldest = entry;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * 清空缓存并取消所有 Watcher
+     */
+    public void clear() {
+        for (String key : entries.keySet()) {
+            entries.computeIfPresent(key, (k, entry) -> {
+                shareDataServer.unwatch(k, ipPort);
+                return null;
+            });
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+}
@@ -3,19 +3,50 @@ package com.crayon.datashare.client;
 import com.crayon.datashare.model.ShareData;
 import com.crayon.datashare.server.ShareDataServer;
 
+import java.io.Closeable;
+
 /**
+ * 进程内订阅者
+ * <p>
+ * 与服务端在同一个 JVM 中，跨进程访问使用 {@link com.crayon.datashare.network.ShareDataClient}
+ * <p>
+ * 可选开启本地缓存（见 {@link NearCache}），读多写少的 key 大多数读取不再访问服务端，
+ * 变更由服务端通知作废本地副本
+ *
  * @author crayon
  * @version 1.0
  * @date 2025/5/16
  */
-public class SubscriberClient {
+public class SubscriberClient implements Closeable {
 
 
     private String ipPort;
-    private ShareDataServer shareDataServer = new ShareDataServer();
+    private ShareDataServer shareDataServer;
+
+    /**
+     * 本地缓存，未开启时为 null
+     */
+    private final NearCache nearCache;
 
-    public SubscriberClient(String ipPort) {
+    public SubscriberClient(String ipPort, ShareDataServer shareDataServer) {
+        this(ipPort, shareDataServer, 0);
+    }
+
+    /**
+     * @param ipPort
+     * @param shareDataServer
+     * @param nearCacheEntries 本地缓存最多缓存的 key 数，不大于0表示不开启
+     */
+    public SubscriberClient(String ipPort, ShareDataServer shareDataServer, int nearCacheEntries) {
         this.ipPort = ipPort;
+        this.shareDataServer = shareDataServer;
+        if (nearCacheEntries > 0) {
+            this.nearCache = new NearCache(ipPort, shareDataServer, nearCacheEntries);
+            // 绑定通知通道后服务端才会向进程内订阅者推送变更
+            shareDataServer.getNotifier().bind(ipPort, nearCache);
+        } else {
+            this.nearCache = null;
+        }
     }
 
     public void subscribe(String key) {
@@ -23,7 +54,42 @@ public class SubscriberClient {
     }
 
     public ShareData get(String key, String ipPort) {
+        if (nearCache != null) {
+            // 缓存的 key 都注册了持久 Watcher，不需要再注册一次性 Watcher
+            return nearCache.get(key);
+        }
         return shareDataServer.get(key, ipPort, true);
     }
 
+    /**
+     * 读取，开启本地缓存时优先读缓存
+     *
+     * @param key
+     * @return
+     */
+    public ShareData get(String key) {
+        if (nearCache != null) {
+            return nearCache.get(key);
+        }
+        return shareDataServer.get(key, null, false);
+    }
+
+    /**
+     * @return 本地缓存，未开启时为 null
+     */
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * 解绑通知通道并取消本地缓存的所有 Watcher
+     */
+    @Override
+    public void close() {
+        if (nearCache != null) {
+            shareDataServer.getNotifier().unbind(ipPort);
+            nearCache.clear();
+        }
+    }
+
 }
@@ -0,0 +1,159 @@
+package com.crayon.datashare.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 分片表：key -> 虚拟分片 -> 节点
+ *
+ * <p>
+ * key 按哈希固定映射到 shardCount 个虚拟分片之一，分片数不随节点增减而变化；
+ * 分片再按一致性哈希分配给节点：每个节点在哈希环上放置 virtualNodes 个点，分片落在顺时针方向的第一个点所属的节点。
+ * 加入一个节点时只有落在新节点的点上的分片换了归属（约 1/(n+1)），其余分片原地不动，迁移量与总数据量成比例而不是全部重新分布。
+ * </p>
+ * <p>
+ * 不可变对象，带版本号，客户端可以缓存；归属变化时生成新版本，节点发现客户端的分片表过期时返回新的分片表（见 {@link ShardMovedException}）。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/5
+ */
+public final class ShardMap {
+
+    private final long version;
+
+    private final List<String> nodes;
+
+    /**
+     * 分片 -> 节点名
+     */
+    private final String[] owners;
+
+    private ShardMap(long version, List<String> nodes, String[] owners) {
+        this.version = version;
+        this.nodes = nodes;
+        this.owners = owners;
+    }
+
+    /**
+     * 按一致性哈希分配所有分片
+     *
+     * @param version
+     * @param shardCount   分片数，向上取整为2的幂
+     * @param nodes        节点名
+     * @param virtualNodes 每个节点在哈希环上的点数，越多分布越均匀
+     * @return
+     */
+    public static ShardMap build(long version, int shardCount, Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one node is required");
+        }
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String node : new TreeSet<>(nodes)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+        String[] owners = new String[tableSize(shardCount)];
+        for (int shard = 0; shard < owners.length; shard++) {
+            Map.Entry<Long, String> point = ring.ceilingEntry(hash("shard-" + shard));
+            owners[shard] = (point != null ? point : ring.firstEntry()).getValue();
+        }
+        return new ShardMap(version, Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(nodes))), owners);
+    }
+
+    /**
+     * @param shard
+     * @param node
+     * @return 只修改一个分片归属的新版本，迁移时逐个分片切换
+     */
+    public ShardMap withOwner(int shard, String node) {
+        String[] copy = owners.clone();
+        copy[shard] = node;
+        List<String> nodeList = nodes;
+        if (!nodes.contains(node)) {
+            List<String> added = new ArrayList<>(nodes);
+            added.add(node);
+            Collections.sort(added);
+            nodeList = Collections.unmodifiableList(added);
+        }
+        return new ShardMap(version + 1, nodeList, copy);
+    }
+
+    public int shardOf(String key) {
+        int h = key.hashCode();
+        // 与 HashMap 一样把高位混入低位，再取低位
+        return (h ^ (h >>> 16)) & (owners.length - 1);
+    }
+
+    public String ownerOf(String key) {
+        return owners[shardOf(key)];
+    }
+
+    public String ownerOfShard(int shard) {
+        return owners[shard];
+    }
+
+    public int getShardCount() {
+        return owners.length;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return 节点名 -> 分片数
+     */
+    public Map<String, Integer> shardCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String node : nodes) {
+            counts.put(node, 0);
+        }
+        for (String owner : owners) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * 64位 FNV-1a 再做一次 murmur3 的 fmix64，相近的字符串（node#1、node#2）在环上也分散开
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int tableSize(int shardCount) {
+        int size = 1;
+        while (size < shardCount) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardMap{version=" + version + ", shards=" + owners.length + ", nodes=" + shardCounts() + '}';
+    }
+}
@@ -0,0 +1,24 @@
+package com.crayon.datashare.cluster;
+
+/**
+ * 请求发到了不再拥有该分片的节点（客户端缓存的分片表已过期），携带当前的分片表，客户端更新后重试
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/5
+ */
+public class ShardMovedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient ShardMap shardMap;
+
+    public ShardMovedException(String key, String node, ShardMap shardMap) {
+        super("Shard of " + key + " is no longer on " + node + ", shard map version " + shardMap.getVersion());
+        this.shardMap = shardMap;
+    }
+
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+}
@@ -0,0 +1,96 @@
+package com.crayon.datashare.cluster;
+
+import com.crayon.datashare.model.ShareData;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 分片集群客户端
+ *
+ * <p>
+ * 缓存分片表，按缓存的分片表直接访问 key 所在节点，不经过代理转发。
+ * 分片迁移后节点返回 {@link ShardMovedException}，客户端换成异常携带的新分片表后重试，
+ * 分片表只在迁移时变化，稳定状态下每次请求只访问一个节点。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/5
+ */
+public class ShardedClient {
+
+    /**
+     * 单次请求最多跟随的重定向次数，一次迁移中同一个分片只切换一次
+     */
+    private static final int MAX_REDIRECTS = 8;
+
+    private final ShardedShareDataServer cluster;
+
+    private volatile ShardMap shardMap;
+
+    private final LongAdder redirectCount = new LongAdder();
+
+    public ShardedClient(ShardedShareDataServer cluster) {
+        this.cluster = cluster;
+        this.shardMap = cluster.getShardMap();
+    }
+
+    public ShareData get(String key) {
+        return execute(key, node -> cluster.get(node, key));
+    }
+
+    public boolean set(String key, ShareData value) {
+        return execute(key, node -> cluster.set(node, key, value));
+    }
+
+    public boolean set(String key, ShareData value, long ttlMs) {
+        return execute(key, node -> cluster.set(node, key, value, ttlMs));
+    }
+
+    public boolean compareAndSet(String key, int expectedVersion, ShareData value) {
+        return execute(key, node -> cluster.compareAndSet(node, key, expectedVersion, value));
+    }
+
+    public boolean setIfAbsent(String key, ShareData value) {
+        return execute(key, node -> cluster.setIfAbsent(node, key, value));
+    }
+
+    public boolean delete(String key, int expectedVersion) {
+        return execute(key, node -> cluster.delete(node, key, expectedVersion));
+    }
+
+    private <T> T execute(String key, Function<String, T> request) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return request.apply(shardMap.ownerOf(key));
+            } catch (ShardMovedException e) {
+                if (attempt >= MAX_REDIRECTS) {
+                    throw e;
+                }
+                redirectCount.increment();
+                refresh(e.getShardMap());
+            }
+        }
+    }
+
+    /**
+     * 只用更新的版本替换，并发请求各自收到的分片表先后到达时不会回退
+     */
+    private synchronized void refresh(ShardMap latest) {
+        if (latest.getVersion() > shardMap.getVersion()) {
+            shardMap = latest;
+        }
+    }
+
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+
+    /**
+     * @return 因分片表过期而重试的次数
+     */
+    public long getRedirectCount() {
+        return redirectCount.sum();
+    }
+}
@@ -0,0 +1,408 @@
+package com.crayon.datashare.cluster;
+
+import com.crayon.datashare.model.ScanResult;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 分片集群
+ *
+ * <p>
+ * 键空间按 {@link ShardMap} 划分为固定数量的虚拟分片，分片按一致性哈希分配给多个节点，
+ * 每个节点是一个完整的 {@link ShareDataServer}（各自的日志、从节点、淘汰与过期），节点之间不共享任何状态，
+ * 写吞吐随节点数增长。同一个 key 的所有操作都落在同一个节点上，单 key 的版本、CAS 与通知语义与单节点相同；
+ * 跨分片的 multiGet/multiSet 不提供原子性，需要时把相关 key 放进同一个分片（同一个 hashCode 前缀）。
+ * </p>
+ * <p>
+ * 两种访问方式：
+ * <ul>
+ *     <li>{@link #get(String)}、{@link #set(String, ShareData)} 等按当前分片表路由，相当于集群内的代理</li>
+ *     <li>{@link #get(String, String)}、{@link #set(String, String, ShareData)} 等直接发往指定节点，
+ *     相当于客户端按缓存的分片表直连节点。分片已不在该节点时抛出 {@link ShardMovedException}，
+ *     携带最新的分片表，见 {@link ShardedClient}</li>
+ * </ul>
+ * </p>
+ * <p>
+ * 在线迁移（{@link #addNode(String)}）：
+ * <ol>
+ *     <li>计算加入新节点后的分片表，归属变化的分片需要迁移，开始记录这些分片上被写入的 key</li>
+ *     <li>预拷贝：分页扫描源节点，把要迁移的 key 原样（保留版本与过期时间）写入新节点，期间写入照常进行</li>
+ *     <li>逐个分片切换：先不加锁重新拷贝预拷贝期间被写入的 key，再持有该分片的写锁（阻塞这个分片的写入），
+ *     拷贝追赶期间又被写入的 key，更新分片表后释放。停顿时间只与追赶这一轮的写入量有关，与分片的数据量无关</li>
+ *     <li>从源节点删除已迁移的 key，写 MIGRATE 日志，源节点上的订阅者收到 MIGRATE 通知后到新节点重新订阅</li>
+ * </ol>
+ * 切换之前源节点是权威的，切换之后新节点是权威的，任何时刻一个分片只在一个节点上接受写入。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/5
+ */
+public class ShardedShareDataServer implements Closeable {
+
+    public static final int DEFAULT_SHARD_COUNT = 1024;
+
+    /**
+     * 每个节点在哈希环上的点数
+     */
+    public static final int VIRTUAL_NODES = 128;
+
+    /**
+     * 迁移时每次扫描、拷贝的 key 数
+     */
+    private static final int MIGRATE_BATCH = 1000;
+
+    private final Function<String, ShareDataConfig> configFactory;
+
+    private final ConcurrentHashMap<String, ShareDataServer> nodes = new ConcurrentHashMap<>();
+
+    private volatile ShardMap shardMap;
+
+    /**
+     * 每个分片一把读写锁：写入持有读锁，迁移切换持有写锁
+     */
+    private final ReentrantReadWriteLock[] shardLocks;
+
+    /**
+     * 分片 -> 迁移期间被写入的 key，不在迁移中的分片为 null
+     */
+    private final AtomicReferenceArray<Set<String>> dirtyKeys;
+
+    /**
+     * @param shardCount    分片数，向上取整为2的幂，创建后不再变化
+     * @param nodeNames     初始节点
+     * @param configFactory 节点名 -> 节点配置，每个节点需要独立的日志目录
+     */
+    public ShardedShareDataServer(int shardCount, Collection<String> nodeNames,
+                                  Function<String, ShareDataConfig> configFactory) {
+        this.configFactory = configFactory;
+        for (String name : nodeNames) {
+            nodes.put(name, new ShareDataServer(configFactory.apply(name)));
+        }
+        this.shardMap = ShardMap.build(1L, shardCount, nodeNames, VIRTUAL_NODES);
+        this.shardLocks = new ReentrantReadWriteLock[shardMap.getShardCount()];
+        for (int i = 0; i < shardLocks.length; i++) {
+            shardLocks[i] = new ReentrantReadWriteLock();
+        }
+        this.dirtyKeys = new AtomicReferenceArray<>(shardLocks.length);
+    }
+
+    // ---------------- 按当前分片表路由 ----------------
+
+    /**
+     * 从 key 所在节点读取，要求读到该节点最近的写入
+     *
+     * @param key
+     * @return
+     */
+    public ShareData get(String key) {
+        ShareDataServer owner = node(shardMap.ownerOf(key));
+        return owner.get(key, null, false, owner.getLastWriteLsn());
+    }
+
+    public boolean set(String key, ShareData value) {
+        return write(null, key, server -> server.set(key, value));
+    }
+
+    public boolean set(String key, ShareData value, long ttlMs) {
+        return write(null, key, server -> server.set(key, value, ttlMs));
+    }
+
+    public boolean compareAndSet(String key, int expectedVersion, ShareData value) {
+        return write(null, key, server -> server.compareAndSet(key, expectedVersion, value));
+    }
+
+    public boolean setIfAbsent(String key, ShareData value) {
+        return write(null, key, server -> server.setIfAbsent(key, value));
+    }
+
+    public boolean delete(String key, int expectedVersion) {
+        return write(null, key, server -> server.delete(key, expectedVersion));
+    }
+
+    // ---------------- 发往指定节点 ----------------
+
+    /**
+     * 从指定节点读取
+     * <p>
+     * 读取不持有分片锁：检查归属之后分片切换走时，源节点上的数据要到迁移结束才删除，
+     * 读到的最多是切换那一刻的值，与读从节点的延迟类似
+     *
+     * @param node 客户端分片表中 key 的归属节点
+     * @param key
+     * @return
+     * @throws ShardMovedException 分片已不在该节点
+     */
+    public ShareData get(String node, String key) {
+        checkOwner(node, key, shardMap);
+        ShareDataServer server = node(node);
+        return server.get(key, null, false, server.getLastWriteLsn());
+    }
+
+    public boolean set(String node, String key, ShareData value) {
+        return write(node, key, server -> server.set(key, value));
+    }
+
+    public boolean set(String node, String key, ShareData value, long ttlMs) {
+        return write(node, key, server -> server.set(key, value, ttlMs));
+    }
+
+    public boolean compareAndSet(String node, String key, int expectedVersion, ShareData value) {
+        return write(node, key, server -> server.compareAndSet(key, expectedVersion, value));
+    }
+
+    public boolean setIfAbsent(String node, String key, ShareData value) {
+        return write(node, key, server -> server.setIfAbsent(key, value));
+    }
+
+    public boolean delete(String node, String key, int expectedVersion) {
+        return write(node, key, server -> server.delete(key, expectedVersion));
+    }
+
+    /**
+     * 持有分片读锁写入，迁移中的分片同时记录被写入的 key
+     *
+     * @param node 指定节点，null 表示按当前分片表路由
+     */
+    private boolean write(String node, String key, Function<ShareDataServer, Boolean> operation) {
+        int shard = shardMap.shardOf(key);
+        ReentrantReadWriteLock.ReadLock lock = shardLocks[shard].readLock();
+        lock.lock();
+        try {
+            // 持有读锁时分片归属不会变化
+            ShardMap current = shardMap;
+            String owner = current.ownerOfShard(shard);
+            if (node != null) {
+                checkOwner(node, key, current);
+            }
+            Set<String> dirty = dirtyKeys.get(shard);
+            if (dirty != null) {
+                // 先记录再写入，切换时一定能看到
+                dirty.add(key);
+            }
+            return operation.apply(node(owner));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkOwner(String node, String key, ShardMap current) {
+        if (!node.equals(current.ownerOf(key))) {
+            throw new ShardMovedException(key, node, current);
+        }
+    }
+
+    private ShareDataServer node(String name) {
+        ShareDataServer server = nodes.get(name);
+        if (server == null) {
+            throw new IllegalArgumentException("Unknown node: " + name);
+        }
+        return server;
+    }
+
+    // ---------------- 扩容 ----------------
+
+    /**
+     * 加入新节点并在线迁移分片，迁移期间读写照常进行，每个分片切换时短暂阻塞该分片的写入
+     * <p>
+     * 同一时间只进行一次迁移
+     *
+     * @param name 新节点名
+     * @return 迁移统计
+     */
+    public synchronized MigrationStats addNode(String name) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Node already exists: " + name);
+        }
+        ShareDataServer target = new ShareDataServer(configFactory.apply(name));
+        nodes.put(name, target);
+
+        ShardMap before = shardMap;
+        List<String> newNodes = new ArrayList<>(before.getNodes());
+        newNodes.add(name);
+        ShardMap desired = ShardMap.build(before.getVersion() + 1, before.getShardCount(), newNodes, VIRTUAL_NODES);
+        List<Integer> moving = new ArrayList<>();
+        for (int shard = 0; shard < before.getShardCount(); shard++) {
+            if (!before.ownerOfShard(shard).equals(desired.ownerOfShard(shard))) {
+                // 加入节点时只会有分片移到新节点，不会在旧节点之间移动
+                moving.add(shard);
+                dirtyKeys.set(shard, ConcurrentHashMap.newKeySet());
+            }
+        }
+
+        // 预拷贝，开始记录写入之后再扫描，扫描之前的写入扫描能看到，之后的写入记录在案
+        Map<Integer, List<String>> movingKeys = new HashMap<>();
+        long movedKeys = 0;
+        for (String source : before.getNodes()) {
+            ShareDataServer server = node(source);
+            String cursor = null;
+            do {
+                ScanResult page = server.scanRange(null, null, cursor, MIGRATE_BATCH);
+                List<String> batch = new ArrayList<>();
+                for (String key : page.getEntries().keySet()) {
+                    int shard = before.shardOf(key);
+                    if (dirtyKeys.get(shard) != null) {
+                        batch.add(key);
+                        movingKeys.computeIfAbsent(shard, s -> new ArrayList<>()).add(key);
+                    }
+                }
+                // 重新批量读取而不是用扫描结果，缩短拷贝与读取之间的间隔
+                for (Map.Entry<String, ShareData> entry : server.multiGet(batch, 0L, true).entrySet()) {
+                    target.migrateIn(entry.getKey(), entry.getValue());
+                }
+                movedKeys += batch.size();
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        }
+
+        // 逐个分片切换
+        long maxPauseNanos = 0L;
+        long recopied = 0L;
+        for (int shard : moving) {
+            ShareDataServer source = node(before.ownerOfShard(shard));
+            List<String> keys = movingKeys.computeIfAbsent(shard, s -> new ArrayList<>());
+            // 先不加锁追赶一轮：换上新的集合后拷贝旧集合中的 key，持锁时只剩这段时间内被写入的 key。
+            // 换集合后获取一次写锁，等已拿到旧集合的写入完成，之后旧集合不再变化
+            ReentrantReadWriteLock.WriteLock lock = shardLocks[shard].writeLock();
+            Set<String> written = dirtyKeys.getAndSet(shard, ConcurrentHashMap.newKeySet());
+            lock.lock();
+            lock.unlock();
+            recopied += recopy(source, target, written, keys);
+            long start = System.nanoTime();
+            lock.lock();
+            try {
+                recopied += recopy(source, target, dirtyKeys.get(shard), keys);
+                shardMap = shardMap.withOwner(shard, name);
+                dirtyKeys.set(shard, null);
+            } finally {
+                lock.unlock();
+            }
+            maxPauseNanos = Math.max(maxPauseNanos, System.nanoTime() - start);
+        }
+
+        // 清理源节点，切换后的写入只会到新节点
+        for (Map.Entry<Integer, List<String>> entry : movingKeys.entrySet()) {
+            ShareDataServer source = node(before.ownerOfShard(entry.getKey()));
+            for (String key : entry.getValue()) {
+                source.migrateOut(key);
+            }
+        }
+        return new MigrationStats(moving.size(), movedKeys, recopied, maxPauseNanos);
+    }
+
+    /**
+     * 把源节点上的最新值拷贝到目标节点，源节点上已不存在的 key 从目标节点删除
+     *
+     * @param keys 迁移完成后需要从源节点清理的 key
+     * @return 拷贝的 key 数
+     */
+    private static int recopy(ShareDataServer source, ShareDataServer target, Set<String> dirty, List<String> keys) {
+        Map<String, ShareData> latest = source.multiGet(dirty, 0L, true);
+        for (String key : dirty) {
+            ShareData value = latest.get(key);
+            if (value != null) {
+                target.migrateIn(key, value);
+            } else {
+                // 预拷贝之后被删除或过期
+                target.migrateOut(key);
+            }
+            keys.add(key);
+        }
+        return dirty.size();
+    }
+
+    /**
+     * 迁移统计
+     */
+    public static final class MigrationStats {
+
+        private final int movedShards;
+
+        private final long movedKeys;
+
+        private final long recopiedKeys;
+
+        private final long maxPauseNanos;
+
+        MigrationStats(int movedShards, long movedKeys, long recopiedKeys, long maxPauseNanos) {
+            this.movedShards = movedShards;
+            this.movedKeys = movedKeys;
+            this.recopiedKeys = recopiedKeys;
+            this.maxPauseNanos = maxPauseNanos;
+        }
+
+        public int getMovedShards() {
+            return movedShards;
+        }
+
+        /**
+         * @return 预拷贝的 key 数
+         */
+        public long getMovedKeys() {
+            return movedKeys;
+        }
+
+        /**
+         * @return 切换时重新拷贝的（预拷贝期间被写入的）key 数
+         */
+        public long getRecopiedKeys() {
+            return recopiedKeys;
+        }
+
+        /**
+         * @return 单个分片切换时阻塞写入的最长时间
+         */
+        public long getMaxPauseNanos() {
+            return maxPauseNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "MigrationStats{movedShards=" + movedShards + ", movedKeys=" + movedKeys
+                    + ", recopiedKeys=" + recopiedKeys + ", maxPauseMs=" + maxPauseNanos / 1_000_000.0 + '}';
+        }
+    }
+
+    // ---------------- 查询 ----------------
+
+    /**
+     * @return 当前分片表，客户端缓存后直连节点
+     */
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+
+    /**
+     * @param name
+     * @return 节点，用于注册 Watcher 等单节点操作，key 需要先按分片表找到所在节点
+     */
+    public ShareDataServer getNode(String name) {
+        return node(name);
+    }
+
+    public Map<String, ShareDataServer> getNodes() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+    }
+
+    @Override
+    public void close() {
+        for (ShareDataServer server : nodes.values()) {
+            server.shutdown();
+        }
+    }
+}
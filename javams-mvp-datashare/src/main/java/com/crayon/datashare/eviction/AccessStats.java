@@ -0,0 +1,101 @@
+package com.crayon.datashare.eviction;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个 key 的访问统计，供淘汰采样比较
+ *
+ * <p>
+ * 与 Redis 对象头中的 lru 字段一样只做近似统计：
+ * 字段用 volatile 读写而不加锁，并发访问时丢失个别更新不影响淘汰效果，
+ * 读路径上只是几次普通的内存写。
+ * </p>
+ * <p>
+ * LFU 计数器采用 Redis 的对数计数与按时间衰减：
+ * 计数越大增长概率越低，8 位即可区分百万级的访问次数；
+ * 每过一个衰减周期计数减一，曾经的热点不会永远占着内存。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/27
+ */
+public class AccessStats {
+
+    /**
+     * 新 key 的初始计数，避免刚写入就因计数为0被淘汰
+     */
+    static final int LFU_INIT_VAL = 5;
+
+    private static final int LFU_MAX = 255;
+
+    private static final int LFU_LOG_FACTOR = 10;
+
+    private static final long LFU_DECAY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    /**
+     * 最后访问时间，{@link EvictionManager} 的访问时钟（自启动以来的微秒数）
+     */
+    private volatile long lastAccessTime;
+
+    private volatile int counter = LFU_INIT_VAL;
+
+    /**
+     * 上次衰减的时间
+     */
+    private volatile long decayTime;
+
+    AccessStats(long now) {
+        this.lastAccessTime = now;
+        this.decayTime = now;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param now
+     */
+    void touch(long now) {
+        lastAccessTime = now;
+        int decayed = decay(now);
+        if (decayed < LFU_MAX) {
+            int base = Math.max(decayed - LFU_INIT_VAL, 0);
+            double p = 1.0 / (base * LFU_LOG_FACTOR + 1);
+            if (ThreadLocalRandom.current().nextDouble() < p) {
+                decayed++;
+            }
+        }
+        counter = decayed;
+    }
+
+    /**
+     * 按经过的衰减周期数降低计数
+     *
+     * @param now
+     * @return 衰减后的计数
+     */
+    private int decay(long now) {
+        long periods = (now - decayTime) / LFU_DECAY_MICROS;
+        if (periods <= 0) {
+            return counter;
+        }
+        decayTime = now;
+        return (int) Math.max(counter - periods, 0);
+    }
+
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * 当前的访问频率，比较时不修改统计
+     *
+     * @param now
+     * @return
+     */
+    int frequency(long now) {
+        long periods = (now - decayTime) / LFU_DECAY_MICROS;
+        return (int) Math.max(counter - Math.max(periods, 0), 0);
+    }
+}
@@ -0,0 +1,330 @@
+package com.crayon.datashare.eviction;
+
+import com.crayon.datashare.model.ShareData;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 容量上限与淘汰
+ *
+ * <p>
+ * 按 key 数量与估算内存两个维度限制容量，任一维度超限即需要淘汰（或拒绝写入）。
+ * </p>
+ * <p>
+ * 与 Redis 一样采用采样淘汰而不是维护全局 LRU 链表：
+ * 精确 LRU 每次读都要把节点移到链表头，需要一把全局锁，读路径会被串行化。
+ * 这里每个 key 只有一份 {@link AccessStats}，读时 O(1) 更新且不加锁；
+ * 淘汰时从一个循环游标上连续取若干 key 放入候选池，淘汰池中最久未访问 / 访问频率最低的。
+ * </p>
+ * <p>
+ * 候选池同 Redis 的 eviction pool：跨多次淘汰保留最好的候选。
+ * 游标按哈希表顺序遍历，哈希相近的一批 key（如 user:10 ~ user:99）会被连续采到，
+ * 只在单次采样中比较的话，这样一批热点 key 会被整批淘汰。
+ * </p>
+ * <p>
+ * 记账（onWrite / onRemove）由写入者在该 key 的分段锁内调用，与主节点数据保持一致；
+ * 淘汰本身（日志、从节点、通知）由 ShareDataServer 完成。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/27
+ */
+public class EvictionManager {
+
+    /**
+     * 每个 key 的固定开销估算：ConcurrentHashMap 节点、ShareData 对象头与字段、统计对象
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * 候选池大小，与 Redis EVPOOL_SIZE 一致
+     */
+    private static final int POOL_SIZE = 16;
+
+    /**
+     * LFU 分数中最后访问时间占的低位数，访问时钟要一千多年才会用满
+     */
+    private static final int LFU_TIME_BITS = 55;
+
+    private final long maxEntries;
+
+    private final long maxMemoryBytes;
+
+    private final EvictionPolicyEnum policy;
+
+    private final int samples;
+
+    private final boolean enabled;
+
+    /**
+     * 访问时钟的起点
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * keyName -> 访问统计，与主节点的 key 一一对应
+     */
+    private final ConcurrentHashMap<String, AccessStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 采样游标，用完后从头开始，受 this 保护
+     */
+    private Iterator<Map.Entry<String, AccessStats>> cursor;
+
+    /**
+     * 候选池，按分数升序，受 this 保护
+     */
+    private final TreeMap<Long, String> pool = new TreeMap<>();
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final LongAdder evictedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param maxEntries     key 数量上限，不大于0表示不限制
+     * @param maxMemoryBytes 估算内存上限，不大于0表示不限制
+     * @param policy
+     * @param samples        每次淘汰采样的 key 数
+     */
+    public EvictionManager(long maxEntries, long maxMemoryBytes, EvictionPolicyEnum policy, int samples) {
+        this.maxEntries = maxEntries;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.policy = policy;
+        this.samples = Math.max(samples, 1);
+        this.enabled = maxEntries > 0 || maxMemoryBytes > 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 读命中时记录访问，不加锁
+     *
+     * @param key
+     */
+    public void onRead(String key) {
+        if (!enabled) {
+            return;
+        }
+        AccessStats accessStats = stats.get(key);
+        if (accessStats != null) {
+            accessStats.touch(clock());
+        }
+    }
+
+    /**
+     * 写入后记账，在 key 的写锁内调用
+     *
+     * @param key
+     * @param previous 写入前的值，新增时为 null
+     * @param value
+     */
+    public void onWrite(String key, ShareData previous, ShareData value) {
+        if (!enabled) {
+            return;
+        }
+        long now = clock();
+        AccessStats accessStats = stats.get(key);
+        if (accessStats == null) {
+            stats.put(key, new AccessStats(now));
+        } else {
+            accessStats.touch(now);
+        }
+        long delta = estimateSize(key, value) - (previous == null ? 0 : estimateSize(key, previous));
+        usedBytes.addAndGet(delta);
+    }
+
+    /**
+     * 删除或淘汰后记账，在 key 的写锁内调用
+     *
+     * @param key
+     * @param previous 删除前的值，为 null 时只清理统计
+     */
+    public void onRemove(String key, ShareData previous) {
+        if (!enabled) {
+            return;
+        }
+        stats.remove(key);
+        if (previous != null) {
+            usedBytes.addAndGet(-estimateSize(key, previous));
+        }
+    }
+
+    /**
+     * 是否拒绝一次写入
+     * <p>
+     * REJECT 策略下容量已满时拒绝新增 key；任何策略下单个值超过内存上限都拒绝。
+     * 并发写入者可能同时通过检查，容量上限是软限制，会短暂超出几个 key
+     *
+     * @param key
+     * @param current 当前值，新增时为 null
+     * @param value
+     * @return
+     */
+    public boolean shouldReject(String key, ShareData current, ShareData value) {
+        if (!enabled) {
+            return false;
+        }
+        long size = estimateSize(key, value);
+        boolean reject = maxMemoryBytes > 0 && size > maxMemoryBytes;
+        if (!reject && current == null && policy == EvictionPolicyEnum.REJECT) {
+            reject = (maxEntries > 0 && stats.mappingCount() >= maxEntries)
+                    || (maxMemoryBytes > 0 && usedBytes.get() + size > maxMemoryBytes);
+        }
+        if (reject) {
+            rejectedCount.increment();
+        }
+        return reject;
+    }
+
+    /**
+     * 是否超过容量上限需要淘汰
+     *
+     * @return
+     */
+    public boolean isOverBudget() {
+        if (!enabled || policy == EvictionPolicyEnum.REJECT) {
+            return false;
+        }
+        return (maxEntries > 0 && stats.mappingCount() > maxEntries)
+                || (maxMemoryBytes > 0 && usedBytes.get() > maxMemoryBytes);
+    }
+
+    /**
+     * 采样选出一个淘汰候选
+     * <p>
+     * 只有超限的写入者会调用，采样游标与候选池由 this 保护，不影响读路径
+     *
+     * @return 没有 key 时返回 null
+     */
+    public synchronized String pickVictim() {
+        long now = clock();
+        boolean restarted = false;
+        for (int i = 0; i < samples; i++) {
+            if (cursor == null || !cursor.hasNext()) {
+                if (restarted) {
+                    break;
+                }
+                cursor = stats.entrySet().iterator();
+                restarted = true;
+                if (!cursor.hasNext()) {
+                    break;
+                }
+            }
+            Map.Entry<String, AccessStats> candidate = cursor.next();
+            offer(candidate.getKey(), score(candidate.getValue(), now));
+        }
+        while (!pool.isEmpty()) {
+            String victim = pool.pollFirstEntry().getValue();
+            // 池中的 key 可能已被删除
+            if (stats.containsKey(victim)) {
+                return victim;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 淘汰分数，越小越先淘汰
+     * <p>
+     * LRU 为最后访问时间；LFU 为访问频率，同频率时再按最后访问时间
+     *
+     * @param accessStats
+     * @param now
+     * @return
+     */
+    private long score(AccessStats accessStats, long now) {
+        if (policy == EvictionPolicyEnum.LFU) {
+            return ((long) accessStats.frequency(now) << LFU_TIME_BITS) | accessStats.getLastAccessTime();
+        }
+        return accessStats.getLastAccessTime();
+    }
+
+    /**
+     * 访问时钟：自启动以来的微秒数，单调递增且从0开始
+     * <p>
+     * System.nanoTime() 的起点是任意的，可能为负或接近溢出，直接截取低位放入 LFU 分数会在回绕后颠倒先后顺序
+     *
+     * @return
+     */
+    private long clock() {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    private void offer(String key, long score) {
+        if (pool.containsValue(key)) {
+            pool.values().remove(key);
+        }
+        while (pool.containsKey(score)) {
+            // 同分数时往后挪一位，保留先入池的候选
+            score++;
+        }
+        if (pool.size() < POOL_SIZE) {
+            pool.put(score, key);
+        } else if (score < pool.lastKey()) {
+            pool.pollLastEntry();
+            pool.put(score, key);
+        }
+    }
+
+    public void recordEviction() {
+        evictedCount.increment();
+    }
+
+    /**
+     * 估算一个 key 占用的内存
+     *
+     * @param key
+     * @param value
+     * @return
+     */
+    public static long estimateSize(String key, ShareData value) {
+        long size = ENTRY_OVERHEAD + 2L * key.length();
+        if (value == null) {
+            return size;
+        }
+        if (value.getId() != null) {
+            size += 2L * value.getId().length();
+        }
+        Object data = value.getData();
+        if (data instanceof String) {
+            size += 2L * ((String) data).length();
+        } else if (data instanceof byte[]) {
+            size += ((byte[]) data).length;
+        } else if (data != null) {
+            size += 16;
+        }
+        return size;
+    }
+
+    public long getEntries() {
+        return stats.mappingCount();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return 累计淘汰的 key 数
+     */
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * @return 累计因容量被拒绝的写入数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
@@ -0,0 +1,28 @@
+package com.crayon.datashare.eviction;
+
+/**
+ * 容量达到上限时的淘汰策略枚举
+ * <p>
+ * 参考 Redis maxmemory-policy 的 noeviction / allkeys-lru / allkeys-lfu
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/27
+ */
+public enum EvictionPolicyEnum {
+
+    /**
+     * 不淘汰，拒绝新增 key 的写入；已有 key 的更新仍然允许
+     */
+    REJECT,
+
+    /**
+     * 近似 LRU：采样若干 key，淘汰最久未访问的
+     */
+    LRU,
+
+    /**
+     * 近似 LFU：采样若干 key，淘汰访问频率最低的，频率随时间衰减
+     */
+    LFU
+}
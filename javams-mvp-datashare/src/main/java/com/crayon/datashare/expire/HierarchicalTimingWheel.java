@@ -0,0 +1,255 @@
+package com.crayon.datashare.expire;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * 分层时间轮
+ *
+ * <p>
+ * 与 Linux 内核定时器一样分4层：第0层每格一个 tick，共256格；
+ * 第1~3层每层64格，每格跨度是下一层一整圈。以默认 tick=10ms 计，
+ * 各层覆盖约 2.56 秒、2.7 分钟、2.9 小时、7.7 天，更远的到期时间先放在最高层最远的格子，
+ * 转到时按真实到期时间重新放置。
+ * </p>
+ * <p>
+ * 每个 tick 只处理第0层的一格；第0层转完一圈时把上一层的一格整体下放（cascade），
+ * 添加定时任务 O(1)，每个 tick 的开销只与该格中的任务数有关，与 key 总数无关，不需要周期性全量扫描。
+ * </p>
+ * <p>
+ * 线程模型参考 Netty HashedWheelTimer：添加操作只进入一个无锁队列，
+ * 由时间轮线程在每个 tick 开始时放入格子，格子本身只由时间轮线程访问，不需要加锁。
+ * </p>
+ * <p>
+ * 不支持取消：key 被覆盖、删除或换了过期时间后，旧任务仍留在时间轮中，
+ * 到期时由回调方比较当前的过期时间后忽略。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/28
+ */
+public class HierarchicalTimingWheel implements Closeable {
+
+    private static final int ROOT_BITS = 8;
+
+    private static final int LEVEL_BITS = 6;
+
+    private static final int ROOT_SIZE = 1 << ROOT_BITS;
+
+    private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+
+    private static final int LEVELS = 4;
+
+    /**
+     * 时间轮能表示的最大 tick 跨度
+     */
+    private static final long MAX_TICKS = 1L << (ROOT_BITS + LEVEL_BITS * (LEVELS - 1));
+
+    /**
+     * 到期回调
+     */
+    public interface ExpireListener {
+
+        /**
+         * @param key
+         * @param expireAt 添加时的到期时间
+         */
+        void onExpire(String key, long expireAt);
+    }
+
+    private static class Timeout {
+
+        private final String key;
+
+        private final long expireAt;
+
+        private Timeout(String key, long expireAt) {
+            this.key = key;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 一个格子中的任务，只由时间轮线程访问
+     */
+    private static class Bucket {
+
+        private List<Timeout> timeouts = new ArrayList<>();
+
+        private void add(Timeout timeout) {
+            timeouts.add(timeout);
+        }
+
+        /**
+         * 取出所有任务并清空格子
+         *
+         * @return 格子为空时返回空列表
+         */
+        private List<Timeout> takeAll() {
+            if (timeouts.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Timeout> taken = timeouts;
+            timeouts = new ArrayList<>();
+            return taken;
+        }
+    }
+
+    private final long tickMs;
+
+    private final long startTime;
+
+    /**
+     * wheels[0] 为第0层，只由时间轮线程访问
+     */
+    private final Bucket[][] wheels;
+
+    /**
+     * 下一个要处理的 tick，只由时间轮线程访问
+     */
+    private long currentTick = 0;
+
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    private final ExpireListener listener;
+
+    private final Executor listenerExecutor;
+
+    private final Thread worker;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param tickMs           每格的时间跨度，也是到期的精度
+     * @param listener         到期回调
+     * @param listenerExecutor 执行回调的线程池，回调中有阻塞操作（如写日志）时不会拖慢时间轮
+     */
+    public HierarchicalTimingWheel(long tickMs, ExpireListener listener, Executor listenerExecutor) {
+        this.tickMs = tickMs;
+        this.listener = listener;
+        this.listenerExecutor = listenerExecutor;
+        this.startTime = System.currentTimeMillis();
+        this.wheels = new Bucket[LEVELS][];
+        for (int level = 0; level < LEVELS; level++) {
+            int size = level == 0 ? ROOT_SIZE : LEVEL_SIZE;
+            wheels[level] = new Bucket[size];
+            for (int i = 0; i < size; i++) {
+                wheels[level][i] = new Bucket();
+            }
+        }
+        this.worker = new Thread(this::run, "datashare-timing-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 添加一个到期任务，线程安全
+     *
+     * @param key
+     * @param expireAt 毫秒时间戳，已过去的时间在下一个 tick 到期
+     */
+    public void add(String key, long expireAt) {
+        pending.add(new Timeout(key, expireAt));
+    }
+
+    private void run() {
+        while (!closed) {
+            long deadline = startTime + (currentTick + 1) * tickMs;
+            long sleepMs = deadline - System.currentTimeMillis();
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            drainPending();
+            // 落后时（如 GC 停顿）连续处理，直到追上当前时间
+            tick();
+        }
+    }
+
+    private void drainPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            place(timeout);
+        }
+    }
+
+    /**
+     * 按距离当前 tick 的远近放入对应的层
+     *
+     * @param timeout
+     */
+    private void place(Timeout timeout) {
+        long expireTick = (timeout.expireAt - startTime) / tickMs;
+        long ticks = expireTick - currentTick;
+        if (ticks < 0) {
+            // 已到期，放在马上要处理的格子
+            expireTick = currentTick;
+            ticks = 0;
+        } else if (ticks >= MAX_TICKS) {
+            // 超出时间轮范围，先放在最远的格子，转到时再重新放置
+            ticks = MAX_TICKS - 1;
+            expireTick = currentTick + ticks;
+        }
+        if (ticks < ROOT_SIZE) {
+            wheels[0][(int) (expireTick & (ROOT_SIZE - 1))].add(timeout);
+            return;
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = ROOT_BITS + LEVEL_BITS * level;
+            if (ticks < (1L << shift) || level == LEVELS - 1) {
+                int index = (int) ((expireTick >>> (shift - LEVEL_BITS)) & (LEVEL_SIZE - 1));
+                wheels[level][index].add(timeout);
+                return;
+            }
+        }
+    }
+
+    private void tick() {
+        int index = (int) (currentTick & (ROOT_SIZE - 1));
+        if (index == 0) {
+            // 第0层转完一圈，逐层下放
+            for (int level = 1; level < LEVELS; level++) {
+                int shift = ROOT_BITS + LEVEL_BITS * (level - 1);
+                int levelIndex = (int) ((currentTick >>> shift) & (LEVEL_SIZE - 1));
+                cascade(level, levelIndex);
+                if (levelIndex != 0) {
+                    break;
+                }
+            }
+        }
+        List<Timeout> slot = wheels[0][index].takeAll();
+        if (!slot.isEmpty()) {
+            long now = System.currentTimeMillis();
+            for (Timeout timeout : slot) {
+                if (timeout.expireAt > now + tickMs) {
+                    // 超出时间轮范围后被截断的任务，按真实到期时间重新放置
+                    place(timeout);
+                } else {
+                    listenerExecutor.execute(() -> listener.onExpire(timeout.key, timeout.expireAt));
+                }
+            }
+        }
+        currentTick++;
+    }
+
+    private void cascade(int level, int index) {
+        for (Timeout timeout : wheels[level][index].takeAll()) {
+            place(timeout);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+}
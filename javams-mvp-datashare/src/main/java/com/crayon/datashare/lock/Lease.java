@@ -0,0 +1,48 @@
+package com.crayon.datashare.lock;
+
+import lombok.Value;
+
+/**
+ * 锁的租约
+ *
+ * <p>
+ * 持有者在 expireAt 之前持有锁，过期后锁自动释放给下一个等待者。
+ * 持有者可能在不知情的情况下失去锁（GC 停顿、网络分区超过租约时间），
+ * 访问受保护的资源时应带上 token，资源只接受不小于已见最大 token 的请求（Fencing），
+ * 旧持有者恢复后的写入会被拒绝。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/7
+ */
+@Value
+public class Lease {
+
+    String name;
+
+    String owner;
+
+    /**
+     * 本次持有的唯一标识，释放、续期时校验，避免释放别人的锁
+     */
+    String holderId;
+
+    /**
+     * 防护令牌（Fencing Token），获得锁的那条日志的 LSN，后获得锁的持有者一定更大
+     */
+    long token;
+
+    /**
+     * 租约到期时间，毫秒时间戳
+     */
+    long expireAt;
+
+    /**
+     * @param expireAt
+     * @return 续期后的租约，令牌不变
+     */
+    public Lease withExpireAt(long expireAt) {
+        return new Lease(name, owner, holderId, token, expireAt);
+    }
+}
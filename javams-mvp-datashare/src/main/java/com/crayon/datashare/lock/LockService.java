@@ -0,0 +1,360 @@
+package com.crayon.datashare.lock;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.Notifier;
+import com.crayon.datashare.server.OperaTypeEnum;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 分布式锁
+ *
+ * <p>
+ * 锁是 {@link #LOCK_PATH} 下的一个带过期时间的 key，值为持有者，与普通数据一样写日志、复制到从节点，
+ * 重启后仍然有效；租约到期由服务端的过期时间轮删除，持有者崩溃后锁不会永远被占用。
+ * 防护令牌是获得锁的那条日志的 LSN，单调递增，不需要另外维护计数器。
+ * </p>
+ * <p>
+ * 等待者按先来后到排成 FIFO 队列，释放（或租约到期）时由释放者直接替队首等待者写入锁 key，
+ * 再只唤醒这一个线程，被唤醒时已经持有锁。与“释放时通知所有等待者、大家一起重试”相比，
+ * 几百个竞争者时每次交接仍然只有一次写入、一次唤醒，没有惊群，交接延迟与等待者数量无关。
+ * 新来的 {@link #tryAcquire} 在有人排队时直接失败，不插队。
+ * </p>
+ * <p>
+ * 租约到期通过 {@link #LOCK_PATH} 的前缀 Watcher 得知，收到删除/过期通知后交接给队首。
+ * 等待队列只在本进程内，同一个服务端上的多个 LockService 之间仍然互斥（锁 key 用 setIfAbsent 写入），
+ * 但只在各自的队列内保证先后顺序。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/7
+ */
+public class LockService implements Notifier.Channel, Closeable {
+
+    public static final String LOCK_PATH = "/locks";
+
+    private static final String LOCK_KEY_PREFIX = LOCK_PATH + "/";
+
+    private final ShareDataServer shareDataServer;
+
+    /**
+     * 通知通道标识
+     */
+    private final String channelId;
+
+    private final String holderPrefix;
+
+    private final AtomicLong holderSeq = new AtomicLong();
+
+    /**
+     * 锁名 -> 等待队列，队列对象同时是这把锁在本进程内的监视器
+     */
+    private final ConcurrentHashMap<String, LockQueue> queues = new ConcurrentHashMap<>();
+
+    private final LongAdder handoffCount = new LongAdder();
+
+    private final LongAdder expiredHandoffCount = new LongAdder();
+
+    private static final class LockQueue {
+
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    }
+
+    private static final class Waiter {
+
+        private final Thread thread = Thread.currentThread();
+
+        private final String owner;
+
+        private final long leaseMs;
+
+        /**
+         * 交接给该等待者的租约，在队列监视器内写入
+         */
+        private volatile Lease granted;
+
+        Waiter(String owner, long leaseMs) {
+            this.owner = owner;
+            this.leaseMs = leaseMs;
+        }
+    }
+
+    public LockService(ShareDataServer shareDataServer) {
+        this.shareDataServer = shareDataServer;
+        String serviceId = UUID.randomUUID().toString();
+        this.channelId = "lock-service-" + serviceId;
+        this.holderPrefix = serviceId + "-";
+        shareDataServer.getNotifier().bind(channelId, this);
+        shareDataServer.watchPrefix(LOCK_PATH, channelId);
+    }
+
+    /**
+     * 不等待地获取锁，有人持有或有人排队时失败
+     *
+     * @param name    锁名
+     * @param owner   持有者描述，如 ip:port 或线程名
+     * @param leaseMs 租约时间
+     * @return 租约，失败时返回 null
+     */
+    public Lease tryAcquire(String name, String owner, long leaseMs) {
+        LockQueue queue = queue(name);
+        synchronized (queue) {
+            return queue.waiters.isEmpty() ? grant(name, owner, leaseMs) : null;
+        }
+    }
+
+    /**
+     * 获取锁，锁被占用时排队等待
+     *
+     * @param name
+     * @param owner
+     * @param leaseMs
+     * @param timeoutMs 最长等待时间
+     * @return 租约，超时返回 null
+     * @throws InterruptedException 等待时被中断，不会持有锁
+     */
+    public Lease acquire(String name, String owner, long leaseMs, long timeoutMs) throws InterruptedException {
+        LockQueue queue = queue(name);
+        Waiter waiter;
+        synchronized (queue) {
+            if (queue.waiters.isEmpty()) {
+                Lease lease = grant(name, owner, leaseMs);
+                if (lease != null) {
+                    return lease;
+                }
+            }
+            // 检查与入队在同一个监视器内，释放者的交接也要获取这个监视器，不会错过
+            waiter = new Waiter(owner, leaseMs);
+            queue.waiters.addLast(waiter);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (waiter.granted == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.interrupted()) {
+                Lease lease = cancel(name, queue, waiter);
+                if (remaining > 0) {
+                    // 被中断：已经交接过来的锁也释放掉
+                    if (lease != null) {
+                        release(lease);
+                    }
+                    throw new InterruptedException("Interrupted while waiting for lock " + name);
+                }
+                return lease;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        return waiter.granted;
+    }
+
+    /**
+     * 放弃等待
+     *
+     * @return 放弃之前已经交接过来的租约
+     */
+    private Lease cancel(String name, LockQueue queue, Waiter waiter) {
+        synchronized (queue) {
+            if (waiter.granted != null) {
+                return waiter.granted;
+            }
+            boolean head = queue.waiters.peekFirst() == waiter;
+            queue.waiters.remove(waiter);
+            if (head) {
+                // 队首放弃时锁可能正空闲（交接写入失败后等待下一次通知），交给下一个
+                grantNext(name, queue);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 释放锁并交接给下一个等待者
+     *
+     * @param lease
+     * @return 锁已不属于该租约（已过期或被他人持有）时返回 false
+     */
+    public boolean release(Lease lease) {
+        LockQueue queue = queue(lease.getName());
+        synchronized (queue) {
+            // 在监视器内检查与删除，之间不会有本进程的交接把锁给别人
+            ShareData current = held(lease);
+            if (current == null) {
+                return false;
+            }
+            boolean released = shareDataServer.delete(key(lease.getName()), current.getVersion());
+            if (released) {
+                grantNext(lease.getName(), queue);
+            }
+            return released;
+        }
+    }
+
+    /**
+     * 续期，令牌不变
+     *
+     * @param lease
+     * @param leaseMs 从现在开始的租约时间
+     * @return 续期后的租约，锁已不属于该租约时返回 null
+     */
+    public Lease renew(Lease lease, long leaseMs) {
+        LockQueue queue = queue(lease.getName());
+        synchronized (queue) {
+            ShareData current = held(lease);
+            if (current == null) {
+                return null;
+            }
+            long expireAt = System.currentTimeMillis() + leaseMs;
+            if (!shareDataServer.compareAndSet(key(lease.getName()), current.getVersion(), current, leaseMs)) {
+                return null;
+            }
+            return lease.withExpireAt(expireAt);
+        }
+    }
+
+    /**
+     * @param lease
+     * @return 锁是否仍属于该租约
+     */
+    public boolean isHeld(Lease lease) {
+        return held(lease) != null;
+    }
+
+    private ShareData held(Lease lease) {
+        // 最小 LSN 取最大值，没有从节点满足，读主节点
+        ShareData current = shareDataServer.get(key(lease.getName()), null, false, Long.MAX_VALUE);
+        return current != null && lease.getHolderId().equals(current.getData()) ? current : null;
+    }
+
+    /**
+     * 调用方持有队列监视器
+     *
+     * @return 锁被占用或写入失败时返回 null
+     */
+    private Lease grant(String name, String owner, long leaseMs) {
+        String holderId = holderPrefix + holderSeq.incrementAndGet();
+        long expireAt = System.currentTimeMillis() + leaseMs;
+        if (!shareDataServer.setIfAbsent(key(name), new ShareData(owner, holderId, 1), leaseMs)) {
+            return null;
+        }
+        // 同一线程刚写入的 LSN
+        return new Lease(name, owner, holderId, shareDataServer.getLastWriteLsn(), expireAt);
+    }
+
+    /**
+     * 锁空闲时交接给队首等待者并只唤醒它，调用方持有队列监视器
+     */
+    private boolean grantNext(String name, LockQueue queue) {
+        Waiter next = queue.waiters.peekFirst();
+        if (next == null) {
+            return false;
+        }
+        Lease lease = grant(name, next.owner, next.leaseMs);
+        if (lease == null) {
+            // 锁仍被占用（其他 LockService 持有），等它的删除通知
+            return false;
+        }
+        queue.waiters.pollFirst();
+        next.granted = lease;
+        LockSupport.unpark(next.thread);
+        handoffCount.increment();
+        return true;
+    }
+
+    /**
+     * 锁 key 的变更通知，在通知投递线程中执行：租约到期、被淘汰或其他进程释放时交接给队首
+     * <p>
+     * 前缀 Watcher 也会收到 {@link #LOCK_PATH} 本身等不是锁的 key，直接跳过；
+     * 每个事件单独处理，一个事件出错不影响同批次其他锁的交接
+     */
+    @Override
+    public boolean push(List<Notifier.Event> events) {
+        for (Notifier.Event event : events) {
+            try {
+                onEvent(event);
+            } catch (RuntimeException e) {
+                System.err.println("Error handling lock event " + event.getKey() + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void onEvent(Notifier.Event event) {
+        String key = event.getKey();
+        if (key == null) {
+            // 通知积压被丢弃，不知道哪些锁空闲了，全部检查一遍
+            for (String name : queues.keySet()) {
+                handoff(name, false);
+            }
+        } else if (key.startsWith(LOCK_KEY_PREFIX)
+                && !OperaTypeEnum.CHANGE.getType().equals(event.getOperaType())) {
+            handoff(key.substring(LOCK_KEY_PREFIX.length()),
+                    OperaTypeEnum.EXPIRE.getType().equals(event.getOperaType()));
+        }
+    }
+
+    private void handoff(String name, boolean expired) {
+        LockQueue queue = queues.get(name);
+        if (queue == null) {
+            return;
+        }
+        synchronized (queue) {
+            if (grantNext(name, queue) && expired) {
+                expiredHandoffCount.increment();
+            }
+        }
+    }
+
+    private LockQueue queue(String name) {
+        return queues.computeIfAbsent(name, k -> new LockQueue());
+    }
+
+    private static String key(String name) {
+        return LOCK_KEY_PREFIX + name;
+    }
+
+    /**
+     * @param name
+     * @return 排队等待的数量
+     */
+    public int getQueueLength(String name) {
+        LockQueue queue = queues.get(name);
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.waiters.size();
+        }
+    }
+
+    /**
+     * @return 交接给等待者的次数
+     */
+    public long getHandoffCount() {
+        return handoffCount.sum();
+    }
+
+    /**
+     * @return 其中因租约到期而交接的次数
+     */
+    public long getExpiredHandoffCount() {
+        return expiredHandoffCount.sum();
+    }
+
+    /**
+     * 取消前缀 Watcher 并解绑通知通道，不释放已持有的锁（到期后自动释放）
+     */
+    @Override
+    public void close() {
+        shareDataServer.unwatchPrefix(LOCK_PATH, channelId);
+        shareDataServer.getNotifier().unbind(channelId);
+    }
+}
@@ -14,10 +14,12 @@ import java.io.Serializable;
 @Data
 public class PersistenceData implements Serializable {
 
+    private static final long serialVersionUID = 1L;
+
     /**
-     * 数据序列化时间
+     * 日志序列号，由 WAL 写入器追加时分配
      */
-    private Long serialDateTime;
+    private long lsn;
 
     /**
      * 操作类型
@@ -34,20 +36,39 @@ public class PersistenceData implements Serializable {
      */
     private ShareData shareData;
 
+    /**
+     * 是否属于一个原子批次，批次内的记录在日志中连续，由 WAL 写入器设置
+     */
+    private boolean batch;
+
+    /**
+     * 是否为原子批次的第一条记录
+     */
+    private boolean batchBegin;
+
+    /**
+     * 是否为原子批次的最后一条记录，恢复时读到它才应用整个批次
+     */
+    private boolean batchEnd;
+
     public PersistenceData(Builder builder) {
         this.key = builder.key;
         this.shareData = builder.shareData;
         this.operaType = builder.operaType;
-        this.serialDateTime = System.currentTimeMillis();
+        this.lsn = builder.lsn;
+        this.batch = builder.batch;
+        this.batchBegin = builder.batchBegin;
+        this.batchEnd = builder.batchEnd;
     }
 
     @Override
     public String toString() {
         return "PersistenceData{" +
-                "serialDateTime=" + serialDateTime +
+                "lsn=" + lsn +
                 ", operaType='" + operaType + '\'' +
                 ", key='" + key + '\'' +
                 ", shareData=" + shareData +
+                (batch ? ", batch" + (batchBegin ? "Begin" : "") + (batchEnd ? "End" : "") : "") +
                 '}';
     }
 
@@ -58,6 +79,14 @@ public class PersistenceData implements Serializable {
 
         private String operaType;
 
+        private long lsn;
+
+        private boolean batch;
+
+        private boolean batchBegin;
+
+        private boolean batchEnd;
+
         public Builder key(String key) {
             this.key = key;
             return this;
@@ -73,6 +102,18 @@ public class PersistenceData implements Serializable {
             return this;
         }
 
+        public Builder lsn(long lsn) {
+            this.lsn = lsn;
+            return this;
+        }
+
+        public Builder batch(boolean batch, boolean batchBegin, boolean batchEnd) {
+            this.batch = batch;
+            this.batchBegin = batchBegin;
+            this.batchEnd = batchEnd;
+            return this;
+        }
+
         public PersistenceData build() {
             return new PersistenceData(this);
         }
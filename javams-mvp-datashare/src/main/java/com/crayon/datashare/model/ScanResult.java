@@ -0,0 +1,30 @@
+package com.crayon.datashare.model;
+
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * 范围/前缀扫描的一页结果
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/2
+ */
+@Value
+public class ScanResult {
+
+    /**
+     * key -> 共享数据，按 key 的字典序排列，不包含已过期的 key
+     */
+    Map<String, ShareData> entries;
+
+    /**
+     * 下一页的游标，作为下一次扫描的 startAfter；为 null 表示已经扫描完
+     */
+    String nextCursor;
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -1,45 +1,96 @@
 package com.crayon.datashare.model;
 
-import lombok.Data;
+import lombok.Value;
+
+import java.io.Serializable;
 
 /**
  * 内存中的共享数据
  *
+ * <p>
+ * 不可变对象（Immutable Object）：写入者每次放入新的实例而不是修改已有实例，
+ * 读取者拿到的引用就是一份一致的快照，读路径不需要加锁。
+ * </p>
+ *
  * @author crayon
  * @version 1.0
  * @date 2025/5/14
  */
-@Data
-public class ShareData {
+@Value
+public class ShareData implements Serializable {
 
+    private static final long serialVersionUID = 1L;
 
-    private String id;
+    String id;
 
     /**
-     * 数据更新时间戳
+     * 日志序列号（Log Sequence Number）
+     * <p>
+     * 由 WAL 写入器在追加日志时分配，单调递增且唯一，未写入日志前为0
      */
-    private Long lsn;
+    long lsn;
 
 
     /**
      * 数据
      */
-    private Object data;
+    Object data;
 
     /**
      * 数据版本
      */
-    private int version;
+    int version;
+
+    /**
+     * 过期时间，毫秒时间戳，0表示永不过期
+     */
+    long expireAt;
 
     public ShareData(String id1, String initialValueForKey1, int version) {
-        this.id = id1;
-        this.data = initialValueForKey1;
+        this(id1, initialValueForKey1, version, 0L);
+    }
+
+    public ShareData(String id, Object data, int version, long lsn) {
+        this(id, data, version, lsn, 0L);
+    }
+
+    public ShareData(String id, Object data, int version, long lsn, long expireAt) {
+        this.id = id;
+        this.data = data;
         this.version = version;
-        this.lsn = System.currentTimeMillis();
+        this.lsn = lsn;
+        this.expireAt = expireAt;
+    }
+
+    /**
+     * @param lsn
+     * @return 带有指定 LSN 的新实例
+     */
+    public ShareData withLsn(long lsn) {
+        return new ShareData(id, data, version, lsn, expireAt);
     }
 
+    /**
+     * @param version
+     * @return 带有指定版本的新实例
+     */
+    public ShareData withVersion(int version) {
+        return new ShareData(id, data, version, lsn, expireAt);
+    }
 
-    public void incrementVersion() {
-        this.version++;
+    /**
+     * @param expireAt 毫秒时间戳，0表示永不过期
+     * @return 带有指定过期时间的新实例
+     */
+    public ShareData withExpireAt(long expireAt) {
+        return new ShareData(id, data, version, lsn, expireAt);
+    }
+
+    /**
+     * @param now 毫秒时间戳
+     * @return 是否已过期
+     */
+    public boolean isExpired(long now) {
+        return expireAt > 0 && now >= expireAt;
     }
 }
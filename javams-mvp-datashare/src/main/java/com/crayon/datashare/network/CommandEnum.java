@@ -0,0 +1,85 @@
+package com.crayon.datashare.network;
+
+/**
+ * 网络协议命令枚举
+ * <p>
+ * code 用于帧头中以一个字节表示命令，响应帧与请求帧使用同一个命令
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/30
+ */
+public enum CommandEnum {
+
+    /**
+     * 读取，可同时设置 Watcher
+     */
+    GET((byte) 1),
+
+    /**
+     * 写入，带期望版本时为 CAS / setIfAbsent
+     */
+    SET((byte) 2),
+
+    DELETE((byte) 3),
+
+    /**
+     * 服务端主动推送的 Watcher 事件，请求号为0
+     */
+    NOTIFY((byte) 4),
+
+    /**
+     * 注册持久 Watcher
+     */
+    WATCH((byte) 5),
+
+    UNWATCH((byte) 6),
+
+    /**
+     * 批量读取
+     */
+    MULTI_GET((byte) 7),
+
+    /**
+     * 批量写入，可选原子
+     */
+    MULTI_SET((byte) 8),
+
+    /**
+     * 列出路径的直接子节点
+     */
+    CHILDREN((byte) 9),
+
+    /**
+     * 前缀分页扫描
+     */
+    SCAN((byte) 10),
+
+    /**
+     * 注册前缀 Watcher
+     */
+    WATCH_PREFIX((byte) 11),
+
+    UNWATCH_PREFIX((byte) 12);
+
+
+    private byte code;
+
+    CommandEnum(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    // 根据 code 获取枚举
+    public static CommandEnum fromCode(byte code) {
+        for (CommandEnum command : values()) {
+            if (command.getCode() == code) {
+                return command;
+            }
+        }
+        throw new IllegalArgumentException("Unknown command code: " + code);
+    }
+}
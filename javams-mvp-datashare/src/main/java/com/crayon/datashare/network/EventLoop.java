@@ -0,0 +1,131 @@
+package com.crayon.datashare.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 事件循环
+ *
+ * <p>
+ * 一个线程独占一个 Selector，负责分配给它的连接的全部读写。
+ * 其他线程（处理写请求的线程、通知订阅者的写入者）通过 {@link #execute(Runnable)} 把任务交给事件循环，
+ * 同一轮中的多次提交只唤醒一次 Selector。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/30
+ */
+class EventLoop implements Runnable, Closeable {
+
+    private final Selector selector;
+
+    private final Thread thread;
+
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 本轮 select 是否已被唤醒，避免每次提交任务都调用 wakeup
+     */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    private volatile boolean running = true;
+
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                // 先清除唤醒标记再检查任务队列，之后提交的任务一定会唤醒 select
+                wakenUp.set(false);
+                if (tasks.isEmpty()) {
+                    selector.select(1000);
+                } else {
+                    selector.selectNow();
+                }
+                processSelectedKeys();
+                runTasks();
+            } catch (IOException e) {
+                System.err.println("Event loop " + thread.getName() + " error: " + e.getMessage());
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector: " + e.getMessage());
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            NioConnection connection = (NioConnection) key.attachment();
+            if (!key.isValid()) {
+                connection.close();
+                continue;
+            }
+            if (key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Event loop task failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
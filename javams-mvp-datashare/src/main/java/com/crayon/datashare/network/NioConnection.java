@@ -0,0 +1,200 @@
+package com.crayon.datashare.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务端的一个客户端连接
+ *
+ * <p>
+ * 读写都在所属事件循环的线程中进行。一次读到的多个请求帧依次处理（流水线），
+ * 期间产生的响应先入队，处理完后一次聚集写（gathering write）写出；
+ * 其他线程产生的响应入队后只提交一次刷新任务。
+ * 内核发送缓冲区满时关注 OP_WRITE，可写后继续写出。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/30
+ */
+class NioConnection {
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * 一次聚集写最多的帧数
+     */
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+
+    private final EventLoop eventLoop;
+
+    private final ShareDataNioServer server;
+
+    /**
+     * 客户端 ip:port，作为订阅者标识
+     */
+    private final String ipPort;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 已入队未写出的字节数，用于判断连接是否拥塞
+     */
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    /**
+     * 是否已有待执行的刷新任务，避免每个响应都提交一次
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    private SelectionKey selectionKey;
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+    private volatile boolean closed;
+
+    NioConnection(SocketChannel channel, EventLoop eventLoop, ShareDataNioServer server) throws IOException {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.server = server;
+        InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+        this.ipPort = remote.getAddress().getHostAddress() + ":" + remote.getPort();
+    }
+
+    /**
+     * 在事件循环线程中注册到 Selector
+     *
+     * @throws ClosedChannelException
+     */
+    void register() throws ClosedChannelException {
+        selectionKey = channel.register(eventLoop.selector(), SelectionKey.OP_READ, this);
+    }
+
+    String getIpPort() {
+        return ipPort;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            int frameLength;
+            while ((frameLength = Protocol.frameLength(readBuffer)) > 0 && readBuffer.remaining() >= frameLength) {
+                int end = readBuffer.position() + frameLength;
+                ByteBuffer frame = readBuffer.duplicate();
+                frame.limit(end);
+                frame.position(readBuffer.position() + 4);
+                readBuffer.position(end);
+                server.handle(this, frame);
+            }
+            readBuffer.compact();
+            if (frameLength > readBuffer.capacity()) {
+                // 大帧，扩容读缓冲区
+                ByteBuffer larger = ByteBuffer.allocate(frameLength);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Closing connection " + ipPort + ": " + e);
+            close();
+        }
+    }
+
+    /**
+     * 发送一个帧，可以在任意线程调用
+     *
+     * @param frame
+     */
+    void send(ByteBuffer frame) {
+        if (closed) {
+            return;
+        }
+        pendingBytes.addAndGet(frame.remaining());
+        outbound.add(frame);
+        // 事件循环线程中产生的响应在本轮读处理结束时统一写出
+        if (!eventLoop.inEventLoop() && flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 尽可能写出待发送的帧，只在事件循环线程中调用
+     */
+    void flush() {
+        if (closed || !selectionKey.isValid()) {
+            return;
+        }
+        try {
+            while (!outbound.isEmpty()) {
+                int count = 0;
+                Iterator<ByteBuffer> iterator = outbound.iterator();
+                while (count < MAX_GATHER && iterator.hasNext()) {
+                    gather[count++] = iterator.next();
+                }
+                channel.write(gather, 0, count);
+                int written = 0;
+                while (written < count && !gather[written].hasRemaining()) {
+                    pendingBytes.addAndGet(-outbound.poll().limit());
+                    written++;
+                }
+                Arrays.fill(gather, 0, count, null);
+                if (written < count) {
+                    // 发送缓冲区已满，等可写时再继续
+                    selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            selectionKey.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            System.err.println("Closing connection " + ipPort + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.onClose(this);
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection " + ipPort + ": " + e.getMessage());
+        }
+        outbound.clear();
+    }
+}
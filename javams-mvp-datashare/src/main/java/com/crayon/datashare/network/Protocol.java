@@ -0,0 +1,146 @@
+package com.crayon.datashare.network;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.ValueCodec;
+
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制请求/响应协议
+ *
+ * <p>
+ * 帧格式：4字节长度（不含自身）+ 1字节命令 + 8字节请求号 + 消息体，字符串与值复用日志的编码。
+ * 请求号由客户端分配，响应带回同一个请求号，客户端据此在一个连接上同时发出多个请求（流水线），
+ * 响应不要求按请求顺序返回。
+ * </p>
+ * <pre>
+ * GET    请求：key, long minLsn, byte flags(bit0 watch)   响应：status [, 共享数据]
+ * SET    请求：key, int expectedVersion, long ttlMs, 共享数据  响应：status [, long lsn]
+ * DELETE 请求：key, int expectedVersion                   响应：status [, long lsn]
+ * WATCH  请求：key, int lastSeenVersion                   响应：status [, 共享数据]
+ * UNWATCH请求：key                                        响应：status
+ * MULTI_GET 请求：int count, count 个 key, long minLsn, byte flags(bit0 atomic)
+ *           响应：status, int count, count 个 (key, 共享数据)，只包含存在的 key
+ * MULTI_SET 请求：byte flags(bit0 atomic), long ttlMs, int count, count 个 (key, 共享数据)
+ *           响应：status, int written, long lsn
+ * CHILDREN 请求：path                                    响应：status, int count, count 个子节点名称
+ * SCAN   请求：prefix, startAfter(可为 null), int limit
+ *        响应：status, int count, count 个 (key, 共享数据), nextCursor(为 null 时已扫描完)
+ * WATCH_PREFIX / UNWATCH_PREFIX 请求：path                 响应：status
+ * NOTIFY 推送：int count, count 个 (key, operaType, int version, int missed)，key 为 null 时表示需要重新同步
+ * 共享数据：id, int version, long lsn, long expireAt, value
+ * </pre>
+ * status 为 {@link #STATUS_ERROR} 时消息体为错误信息
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/30
+ */
+public final class Protocol {
+
+    /**
+     * 帧头长度：长度 + 命令 + 请求号
+     */
+    public static final int HEADER_BYTES = 4 + 1 + 8;
+
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * 一次扫描最多返回的 key 数，更大的 limit 按该值处理，客户端按游标继续翻页
+     */
+    public static final int MAX_SCAN_LIMIT = 1000;
+
+    public static final byte FLAG_WATCH = 1;
+
+    public static final byte FLAG_ATOMIC = 1;
+
+    public static final byte STATUS_OK = 0;
+
+    public static final byte STATUS_NOT_FOUND = 1;
+
+    /**
+     * 版本不匹配或容量已满，写入未执行
+     */
+    public static final byte STATUS_REJECTED = 2;
+
+    public static final byte STATUS_ERROR = 3;
+
+    private static final int INITIAL_FRAME_BYTES = 256;
+
+    private Protocol() {
+    }
+
+    /**
+     * 写入消息体，缓冲区空间不足时抛出 BufferOverflowException
+     */
+    public interface BodyWriter {
+
+        void write(ByteBuffer body);
+    }
+
+    /**
+     * 编码一个完整的帧，返回的缓冲区已 flip，可直接写出
+     *
+     * @param command
+     * @param requestId
+     * @param body
+     * @return
+     */
+    public static ByteBuffer encode(CommandEnum command, long requestId, BodyWriter body) {
+        int capacity = INITIAL_FRAME_BYTES;
+        while (true) {
+            ByteBuffer frame = ByteBuffer.allocate(capacity);
+            try {
+                frame.putInt(0);
+                frame.put(command.getCode());
+                frame.putLong(requestId);
+                body.write(frame);
+                frame.putInt(0, frame.position() - 4);
+                frame.flip();
+                return frame;
+            } catch (BufferOverflowException e) {
+                if (capacity >= MAX_FRAME_BYTES) {
+                    throw new IllegalArgumentException("Frame exceeds " + MAX_FRAME_BYTES + " bytes");
+                }
+                capacity = Math.min(capacity * 2, MAX_FRAME_BYTES);
+            }
+        }
+    }
+
+    /**
+     * 读取缓冲区当前位置开始的帧的总长度（含长度字段），不移动位置
+     *
+     * @param in
+     * @return 帧总长度，长度字段还不完整时返回-1
+     * @throws ProtocolException 长度非法
+     */
+    public static int frameLength(ByteBuffer in) throws ProtocolException {
+        if (in.remaining() < 4) {
+            return -1;
+        }
+        int length = in.getInt(in.position());
+        if (length < HEADER_BYTES - 4 || length > MAX_FRAME_BYTES - 4) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        return length + 4;
+    }
+
+    public static void putShareData(ByteBuffer buffer, ShareData shareData) {
+        ValueCodec.putShortString(buffer, shareData.getId());
+        buffer.putInt(shareData.getVersion());
+        buffer.putLong(shareData.getLsn());
+        buffer.putLong(shareData.getExpireAt());
+        ValueCodec.putValue(buffer, shareData.getData());
+    }
+
+    public static ShareData getShareData(ByteBuffer buffer) {
+        String id = ValueCodec.getShortString(buffer);
+        int version = buffer.getInt();
+        long lsn = buffer.getLong();
+        long expireAt = buffer.getLong();
+        Object data = ValueCodec.getValue(buffer);
+        return new ShareData(id, data, version, lsn, expireAt);
+    }
+}
@@ -0,0 +1,591 @@
+package com.crayon.datashare.network;
+
+import com.crayon.datashare.model.ScanResult;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.ValueCodec;
+import com.crayon.datashare.server.Notifier;
+import com.crayon.datashare.server.PathIndex;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 共享数据中心的网络客户端
+ *
+ * <p>
+ * 一个连接上多路复用任意多个并发请求：每个请求分配请求号并登记一个 Future，
+ * 读线程按响应中的请求号完成对应的 Future，调用方不必等上一个请求返回（流水线）。
+ * 多个线程同时发送时，抢到写锁的线程把队列中所有线程的请求合并成一次聚集写，
+ * 其他线程入队后直接返回，不在写锁上排队。
+ * </p>
+ * <p>
+ * 客户端记录自己最近一次写入的 LSN，之后的读请求都带上它，服务端只从已追上的从节点读，
+ * 实现读己之写。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/30
+ */
+public class ShareDataClient implements Closeable {
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * Watcher 事件回调，在客户端读线程中执行，不能阻塞
+     * <p>
+     * 服务端积压过多时 operaType 为 {@link Notifier#RESYNC}，所有 Watcher 都会收到，需要重新读取
+     */
+    public interface WatchListener {
+
+        void onEvent(String key, String operaType);
+    }
+
+    /**
+     * 持久 Watcher 回调，在客户端读线程中执行，不能阻塞
+     */
+    public interface ChangeListener {
+
+        /**
+         * @param key
+         * @param operaType
+         * @param version   变更后的版本，删除后为0
+         * @param missed    这次通知之前没有单独送达的变更数
+         */
+        void onChange(String key, String operaType, int version, int missed);
+    }
+
+    /**
+     * 持久 Watcher 及其最后见到的版本，重新注册时从该版本续上
+     */
+    private static final class Subscription {
+
+        private final ChangeListener listener;
+
+        private volatile int lastSeenVersion;
+
+        Subscription(ChangeListener listener, int lastSeenVersion) {
+            this.listener = listener;
+            this.lastSeenVersion = lastSeenVersion;
+        }
+    }
+
+    private final SocketChannel channel;
+
+    private final Thread reader;
+
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    /**
+     * 请求号 -> 等待响应的 Future，响应消息体位置在状态字节
+     */
+    private final Map<Long, CompletableFuture<ByteBuffer>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 一次性 Watcher，收到通知后移除，与服务端语义一致
+     */
+    private final Map<String, WatchListener> watchers = new ConcurrentHashMap<>();
+
+    /**
+     * 持久 Watcher，收到通知后保留
+     */
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * 前缀 Watcher，路径 -> 回调
+     */
+    private final Map<String, ChangeListener> prefixSubscriptions = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    /**
+     * 本客户端最近一次成功写入的 LSN
+     */
+    private final AtomicLong lastWriteLsn = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public ShareDataClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.socket().setTcpNoDelay(true);
+        this.reader = new Thread(this::readLoop, "datashare-client-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public CompletableFuture<ShareData> getAsync(String key) {
+        return get(key, false);
+    }
+
+    /**
+     * 读取并设置一次性 Watcher，数据不存在时不会设置
+     *
+     * @param key
+     * @param listener
+     * @return
+     */
+    public CompletableFuture<ShareData> watchAsync(String key, WatchListener listener) {
+        watchers.put(key, listener);
+        return get(key, true).whenComplete((shareData, e) -> {
+            if (shareData == null) {
+                watchers.remove(key, listener);
+            }
+        });
+    }
+
+    /**
+     * 注册持久 Watcher：只注册一次，之后 key 的每次变更都会回调，不需要重新注册
+     * <p>
+     * 服务端当前版本与 lastSeenVersion 不同时立即补发一条通知。
+     * 服务端因积压丢弃通知时，客户端自动带上每个 key 最后见到的版本重新注册，由服务端补发错过的变更
+     *
+     * @param key
+     * @param lastSeenVersion 最后见到的版本，不存在为 {@link ShareDataServer#ABSENT_VERSION}，
+     *                        {@link ShareDataServer#ANY_VERSION} 表示不需要补发
+     * @param listener
+     * @return 当前值，不存在时为 null
+     */
+    public CompletableFuture<ShareData> subscribeAsync(String key, int lastSeenVersion, ChangeListener listener) {
+        subscriptions.put(key, new Subscription(listener, lastSeenVersion));
+        return watch(key, lastSeenVersion);
+    }
+
+    public CompletableFuture<Void> unsubscribeAsync(String key) {
+        subscriptions.remove(key);
+        return call(CommandEnum.UNWATCH, body -> ValueCodec.putShortString(body, key))
+                .thenAccept(ShareDataClient::checkStatus);
+    }
+
+    /**
+     * 注册前缀 Watcher：路径本身及其下任意深度的 key 的每次变更都会回调
+     * <p>
+     * 不补发注册之前的变更，注册完成后再 {@link #scanAsync(String, String, int)} 读取当前数据。
+     * 服务端因积压丢弃通知时回调一次 key 为 null、operaType 为 {@link Notifier#RESYNC} 的事件，需要重新扫描
+     *
+     * @param path     如 /app/config
+     * @param listener
+     * @return
+     */
+    public CompletableFuture<Void> watchPrefixAsync(String path, ChangeListener listener) {
+        prefixSubscriptions.put(PathIndex.normalize(path), listener);
+        return call(CommandEnum.WATCH_PREFIX, body -> ValueCodec.putShortString(body, path))
+                .thenAccept(ShareDataClient::checkStatus);
+    }
+
+    public CompletableFuture<Void> unwatchPrefixAsync(String path) {
+        prefixSubscriptions.remove(PathIndex.normalize(path));
+        return call(CommandEnum.UNWATCH_PREFIX, body -> ValueCodec.putShortString(body, path))
+                .thenAccept(ShareDataClient::checkStatus);
+    }
+
+    /**
+     * 列出路径的直接子节点
+     *
+     * @param path
+     * @return 按字典序排列的子节点名称
+     */
+    public CompletableFuture<List<String>> childrenAsync(String path) {
+        return call(CommandEnum.CHILDREN, body -> ValueCodec.putShortString(body, path)).thenApply(response -> {
+            checkStatus(response);
+            int count = response.getInt();
+            List<String> children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                children.add(ValueCodec.getShortString(response));
+            }
+            return children;
+        });
+    }
+
+    /**
+     * 前缀分页扫描，见 {@link ShareDataServer#scan(String, String, int)}
+     *
+     * @param prefix
+     * @param startAfter 上一页的游标，第一页为 null
+     * @param limit      每页最多返回的 key 数，不超过 {@link Protocol#MAX_SCAN_LIMIT}
+     * @return
+     */
+    public CompletableFuture<ScanResult> scanAsync(String prefix, String startAfter, int limit) {
+        return call(CommandEnum.SCAN, body -> {
+            ValueCodec.putShortString(body, prefix);
+            ValueCodec.putShortString(body, startAfter);
+            body.putInt(limit);
+        }).thenApply(response -> {
+            checkStatus(response);
+            int count = response.getInt();
+            Map<String, ShareData> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = ValueCodec.getShortString(response);
+                entries.put(key, Protocol.getShareData(response));
+            }
+            return new ScanResult(entries, ValueCodec.getShortString(response));
+        });
+    }
+
+    private CompletableFuture<ShareData> watch(String key, int lastSeenVersion) {
+        return call(CommandEnum.WATCH, body -> {
+            ValueCodec.putShortString(body, key);
+            body.putInt(lastSeenVersion);
+        }).thenApply(ShareDataClient::readShareData);
+    }
+
+    private CompletableFuture<ShareData> get(String key, boolean watch) {
+        long minLsn = lastWriteLsn.get();
+        return call(CommandEnum.GET, body -> {
+            ValueCodec.putShortString(body, key);
+            body.putLong(minLsn);
+            body.put(watch ? Protocol.FLAG_WATCH : 0);
+        }).thenApply(ShareDataClient::readShareData);
+    }
+
+    private static ShareData readShareData(ByteBuffer response) {
+        byte status = checkStatus(response);
+        return status == Protocol.STATUS_OK ? Protocol.getShareData(response) : null;
+    }
+
+    public CompletableFuture<Boolean> setAsync(String key, ShareData value) {
+        return setAsync(key, ShareDataServer.ANY_VERSION, value, 0L);
+    }
+
+    /**
+     * @param key
+     * @param expectedVersion {@link ShareDataServer#ANY_VERSION} 无条件写入，
+     *                        {@link ShareDataServer#ABSENT_VERSION} 仅不存在时写入，其他为 CAS
+     * @param value
+     * @param ttlMs           存活时间，不大于0表示永不过期
+     * @return 版本不匹配或容量已满时为 false
+     */
+    public CompletableFuture<Boolean> setAsync(String key, int expectedVersion, ShareData value, long ttlMs) {
+        return write(CommandEnum.SET, body -> {
+            ValueCodec.putShortString(body, key);
+            body.putInt(expectedVersion);
+            body.putLong(ttlMs);
+            Protocol.putShareData(body, value);
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String key, int expectedVersion) {
+        return write(CommandEnum.DELETE, body -> {
+            ValueCodec.putShortString(body, key);
+            body.putInt(expectedVersion);
+        });
+    }
+
+    /**
+     * 批量读取
+     *
+     * @param keys
+     * @param atomic 不会读到原子批量写入的一部分
+     * @return key -> 共享数据，只包含存在的 key
+     */
+    public CompletableFuture<Map<String, ShareData>> multiGetAsync(Collection<String> keys, boolean atomic) {
+        long minLsn = lastWriteLsn.get();
+        return call(CommandEnum.MULTI_GET, body -> {
+            body.putInt(keys.size());
+            for (String key : keys) {
+                ValueCodec.putShortString(body, key);
+            }
+            body.putLong(minLsn);
+            body.put(atomic ? Protocol.FLAG_ATOMIC : 0);
+        }).thenApply(response -> {
+            checkStatus(response);
+            int count = response.getInt();
+            Map<String, ShareData> result = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = ValueCodec.getShortString(response);
+                result.put(key, Protocol.getShareData(response));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 批量写入，见 {@link ShareDataServer#multiSet(Map, long, boolean)}
+     *
+     * @param values
+     * @param ttlMs
+     * @param atomic
+     * @return 写入的 key 数
+     */
+    public CompletableFuture<Integer> multiSetAsync(Map<String, ShareData> values, long ttlMs, boolean atomic) {
+        return call(CommandEnum.MULTI_SET, body -> {
+            body.put(atomic ? Protocol.FLAG_ATOMIC : 0);
+            body.putLong(ttlMs);
+            body.putInt(values.size());
+            for (Map.Entry<String, ShareData> entry : values.entrySet()) {
+                ValueCodec.putShortString(body, entry.getKey());
+                Protocol.putShareData(body, entry.getValue());
+            }
+        }).thenApply(response -> {
+            checkStatus(response);
+            int written = response.getInt();
+            long lsn = response.getLong();
+            if (written > 0) {
+                lastWriteLsn.accumulateAndGet(lsn, Math::max);
+            }
+            return written;
+        });
+    }
+
+    public ShareData get(String key) throws IOException {
+        return await(getAsync(key));
+    }
+
+    public boolean set(String key, ShareData value) throws IOException {
+        return await(setAsync(key, value));
+    }
+
+    public boolean delete(String key, int expectedVersion) throws IOException {
+        return await(deleteAsync(key, expectedVersion));
+    }
+
+    public long getLastWriteLsn() {
+        return lastWriteLsn.get();
+    }
+
+    private CompletableFuture<Boolean> write(CommandEnum command, Protocol.BodyWriter body) {
+        return call(command, body).thenApply(response -> {
+            if (checkStatus(response) != Protocol.STATUS_OK) {
+                return false;
+            }
+            long lsn = response.getLong();
+            lastWriteLsn.accumulateAndGet(lsn, Math::max);
+            return true;
+        });
+    }
+
+    private CompletableFuture<ByteBuffer> call(CommandEnum command, Protocol.BodyWriter body) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("Client closed"));
+            return future;
+        }
+        long requestId = nextRequestId.incrementAndGet();
+        ByteBuffer frame;
+        try {
+            frame = Protocol.encode(command, requestId, body);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        inFlight.put(requestId, future);
+        outbound.add(frame);
+        flush();
+        if (closed) {
+            // 与 close 并发时，确保不会留下永远不完成的 Future
+            failAll(new IOException("Client closed"));
+        }
+        return future;
+    }
+
+    /**
+     * 写合并：抢到写锁的线程写出队列中所有请求，释放锁后再检查一次，
+     * 防止在持锁线程最后一次检查之后入队的请求无人写出
+     */
+    private void flush() {
+        while (!outbound.isEmpty() && writeLock.tryLock()) {
+            try {
+                while (!outbound.isEmpty()) {
+                    int count = 0;
+                    Iterator<ByteBuffer> iterator = outbound.iterator();
+                    while (count < MAX_GATHER && iterator.hasNext()) {
+                        gather[count++] = iterator.next();
+                    }
+                    // 阻塞模式下聚集写会写完全部内容
+                    while (gather[count - 1].hasRemaining()) {
+                        channel.write(gather, 0, count);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        outbound.poll();
+                        gather[i] = null;
+                    }
+                }
+            } catch (IOException e) {
+                closeOnError(e);
+                return;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        try {
+            while (!closed) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Connection closed by server");
+                }
+                buffer.flip();
+                int frameLength;
+                while ((frameLength = Protocol.frameLength(buffer)) > 0 && buffer.remaining() >= frameLength) {
+                    // 复制出消息体，响应可能在其他线程中解码
+                    byte[] bytes = new byte[frameLength - 4];
+                    buffer.getInt();
+                    buffer.get(bytes);
+                    onFrame(ByteBuffer.wrap(bytes));
+                }
+                buffer.compact();
+                if (frameLength > buffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(frameLength);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            closeOnError(e);
+        }
+    }
+
+    private void onFrame(ByteBuffer frame) {
+        CommandEnum command = CommandEnum.fromCode(frame.get());
+        long requestId = frame.getLong();
+        if (command == CommandEnum.NOTIFY) {
+            int count = frame.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = ValueCodec.getShortString(frame);
+                String operaType = ValueCodec.getShortString(frame);
+                int version = frame.getInt();
+                int missed = frame.getInt();
+                if (key == null) {
+                    // 可能漏掉了任意 key 的变更，通知所有一次性 Watcher，持久 Watcher 从最后见到的版本重新注册
+                    for (String watchedKey : watchers.keySet()) {
+                        fire(watchedKey, operaType);
+                    }
+                    for (Map.Entry<String, Subscription> entry : subscriptions.entrySet()) {
+                        watch(entry.getKey(), entry.getValue().lastSeenVersion);
+                    }
+                    // 前缀 Watcher 无法按版本补发，由回调方重新扫描
+                    for (Map.Entry<String, ChangeListener> entry : prefixSubscriptions.entrySet()) {
+                        prefixChange(entry.getKey(), entry.getValue(), null, operaType, version, missed);
+                    }
+                } else {
+                    fire(key, operaType);
+                    change(key, operaType, version, missed);
+                    if (!prefixSubscriptions.isEmpty()) {
+                        for (String path = key; path != null; path = PathIndex.parent(path)) {
+                            ChangeListener listener = prefixSubscriptions.get(path);
+                            if (listener != null) {
+                                prefixChange(path, listener, key, operaType, version, missed);
+                            }
+                        }
+                    }
+                }
+            }
+            return;
+        }
+        CompletableFuture<ByteBuffer> future = inFlight.remove(requestId);
+        if (future != null) {
+            future.complete(frame);
+        }
+    }
+
+    private void fire(String key, String operaType) {
+        WatchListener listener = watchers.remove(key);
+        if (listener != null) {
+            try {
+                listener.onEvent(key, operaType);
+            } catch (RuntimeException e) {
+                System.err.println("Watch listener for " + key + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void change(String key, String operaType, int version, int missed) {
+        Subscription subscription = subscriptions.get(key);
+        if (subscription != null) {
+            subscription.lastSeenVersion = version;
+            try {
+                subscription.listener.onChange(key, operaType, version, missed);
+            } catch (RuntimeException e) {
+                System.err.println("Change listener for " + key + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void prefixChange(String path, ChangeListener listener, String key, String operaType,
+                              int version, int missed) {
+        try {
+            listener.onChange(key, operaType, version, missed);
+        } catch (RuntimeException e) {
+            System.err.println("Change listener for prefix " + path + " failed: " + e.getMessage());
+        }
+    }
+
+    private static byte checkStatus(ByteBuffer response) {
+        byte status = response.get();
+        if (status == Protocol.STATUS_ERROR) {
+            throw new IllegalStateException("Server error: " + ValueCodec.getShortString(response));
+        }
+        return status;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private void closeOnError(Exception e) {
+        if (!closed) {
+            System.err.println("Share data client connection failed: " + e.getMessage());
+        }
+        close();
+        failAll(e instanceof IOException ? (IOException) e : new IOException(e));
+    }
+
+    private void failAll(IOException e) {
+        Iterator<CompletableFuture<ByteBuffer>> iterator = inFlight.values().iterator();
+        while (iterator.hasNext()) {
+            CompletableFuture<ByteBuffer> future = iterator.next();
+            iterator.remove();
+            future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing client: " + e.getMessage());
+        }
+        failAll(new IOException("Client closed"));
+    }
+}
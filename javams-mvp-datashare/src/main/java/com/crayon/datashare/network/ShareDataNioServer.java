@@ -0,0 +1,399 @@
+package com.crayon.datashare.network;
+
+import com.crayon.datashare.model.ScanResult;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.ValueCodec;
+import com.crayon.datashare.server.Notifier;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 共享数据中心的网络服务端
+ *
+ * <p>
+ * 主从 Reactor：接收线程只负责 accept，新连接轮询分配给多个事件循环，每个事件循环一个 Selector。
+ * 读请求不加锁、不阻塞，直接在事件循环中处理；写请求要等待组提交刷盘，
+ * 交给处理线程池执行，完成后把响应交回连接所属的事件循环写出，事件循环不会被磁盘阻塞。
+ * 原子批量读要取得各 key 的分段写锁（写入者持锁等待刷盘），同样交给处理线程池。
+ * 处理线程越多，同一批组提交能合并的写入越多。
+ * </p>
+ * <p>
+ * Watcher 的订阅者标识就是连接的 ip:port，连接建立时在 {@link Notifier}
+ * 上绑定推送通道，一批变更合并为一个 NOTIFY 帧推送给客户端；连接积压时拒绝推送，由 Notifier 稍后重试。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/30
+ */
+public class ShareDataNioServer implements Closeable {
+
+    /**
+     * 连接积压超过该字节数时暂停推送通知，由 Notifier 合并积压的变更
+     */
+    private static final long NOTIFY_HIGH_WATERMARK = 1024 * 1024;
+
+    private final ShareDataServer shareDataServer;
+
+    private final int port;
+
+    private final EventLoop[] eventLoops;
+
+    private final ExecutorService handlerExecutor;
+
+    private final Set<NioConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread acceptor;
+
+    private volatile boolean running;
+
+    /**
+     * @param shareDataServer
+     * @param port            监听端口，0表示随机端口
+     * @param eventLoops      事件循环（Selector 线程）数
+     * @param handlerThreads  处理写请求与原子批量读的线程数
+     * @throws IOException
+     */
+    public ShareDataNioServer(ShareDataServer shareDataServer, int port, int eventLoops, int handlerThreads)
+            throws IOException {
+        this.shareDataServer = shareDataServer;
+        this.port = port;
+        this.eventLoops = new EventLoop[Math.max(1, eventLoops)];
+        for (int i = 0; i < this.eventLoops.length; i++) {
+            this.eventLoops[i] = new EventLoop("datashare-nio-" + i);
+        }
+        AtomicInteger handlerIndex = new AtomicInteger();
+        this.handlerExecutor = Executors.newFixedThreadPool(Math.max(1, handlerThreads), r -> {
+            Thread thread = new Thread(r, "datashare-handler-" + handlerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "datashare-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return 实际监听的端口
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                EventLoop eventLoop = eventLoops[Math.floorMod(nextLoop.getAndIncrement(), eventLoops.length)];
+                NioConnection connection = new NioConnection(channel, eventLoop, this);
+                connections.add(connection);
+                eventLoop.execute(() -> {
+                    try {
+                        connection.register();
+                        shareDataServer.getNotifier().bind(connection.getIpPort(), events -> {
+                            if (connection.getPendingBytes() > NOTIFY_HIGH_WATERMARK) {
+                                return connection.isClosed();
+                            }
+                            connection.send(notifyFrame(events));
+                            return true;
+                        });
+                    } catch (ClosedChannelException e) {
+                        connection.close();
+                    }
+                });
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理一个请求帧，在事件循环线程中调用
+     *
+     * @param connection
+     * @param frame      位置在命令字节，帧内容只在本次调用内有效
+     */
+    void handle(NioConnection connection, ByteBuffer frame) {
+        CommandEnum command = CommandEnum.fromCode(frame.get());
+        long requestId = frame.getLong();
+        if (command == CommandEnum.MULTI_GET || command == CommandEnum.MULTI_SET) {
+            handleMulti(connection, command, requestId, frame);
+            return;
+        }
+        String key = ValueCodec.getShortString(frame);
+        switch (command) {
+            case GET: {
+                long minLsn = frame.getLong();
+                boolean watch = (frame.get() & Protocol.FLAG_WATCH) != 0;
+                ShareData shareData = shareDataServer.get(key, watch ? connection.getIpPort() : null, watch, minLsn);
+                connection.send(dataFrame(command, requestId, shareData));
+                break;
+            }
+            case WATCH: {
+                int lastSeenVersion = frame.getInt();
+                ShareData shareData = shareDataServer.watch(key, connection.getIpPort(), lastSeenVersion);
+                connection.send(dataFrame(command, requestId, shareData));
+                break;
+            }
+            case UNWATCH: {
+                shareDataServer.unwatch(key, connection.getIpPort());
+                connection.send(Protocol.encode(command, requestId, body -> body.put(Protocol.STATUS_OK)));
+                break;
+            }
+            case CHILDREN: {
+                List<String> children = shareDataServer.getChildren(key);
+                connection.send(Protocol.encode(command, requestId, body -> {
+                    body.put(Protocol.STATUS_OK);
+                    body.putInt(children.size());
+                    for (String child : children) {
+                        ValueCodec.putShortString(body, child);
+                    }
+                }));
+                break;
+            }
+            case SCAN: {
+                String startAfter = ValueCodec.getShortString(frame);
+                int limit = Math.min(Math.max(frame.getInt(), 1), Protocol.MAX_SCAN_LIMIT);
+                ScanResult result = shareDataServer.scan(key, startAfter, limit);
+                connection.send(Protocol.encode(command, requestId, body -> {
+                    body.put(Protocol.STATUS_OK);
+                    body.putInt(result.getEntries().size());
+                    for (Map.Entry<String, ShareData> entry : result.getEntries().entrySet()) {
+                        ValueCodec.putShortString(body, entry.getKey());
+                        Protocol.putShareData(body, entry.getValue());
+                    }
+                    ValueCodec.putShortString(body, result.getNextCursor());
+                }));
+                break;
+            }
+            case WATCH_PREFIX: {
+                shareDataServer.watchPrefix(key, connection.getIpPort());
+                connection.send(Protocol.encode(command, requestId, body -> body.put(Protocol.STATUS_OK)));
+                break;
+            }
+            case UNWATCH_PREFIX: {
+                shareDataServer.unwatchPrefix(key, connection.getIpPort());
+                connection.send(Protocol.encode(command, requestId, body -> body.put(Protocol.STATUS_OK)));
+                break;
+            }
+            case SET: {
+                int expectedVersion = frame.getInt();
+                long ttlMs = frame.getLong();
+                ShareData value = Protocol.getShareData(frame);
+                submit(connection, command, requestId, () -> {
+                    if (expectedVersion == ShareDataServer.ANY_VERSION) {
+                        return shareDataServer.set(key, value, ttlMs);
+                    }
+                    if (expectedVersion == ShareDataServer.ABSENT_VERSION) {
+                        return shareDataServer.setIfAbsent(key, value, ttlMs);
+                    }
+                    return shareDataServer.compareAndSet(key, expectedVersion, value, ttlMs);
+                });
+                break;
+            }
+            case DELETE: {
+                int expectedVersion = frame.getInt();
+                submit(connection, command, requestId, () -> shareDataServer.delete(key, expectedVersion));
+                break;
+            }
+            default:
+                connection.send(errorFrame(command, requestId, "Unsupported command: " + command));
+        }
+    }
+
+    private void handleMulti(NioConnection connection, CommandEnum command, long requestId, ByteBuffer frame) {
+        if (command == CommandEnum.MULTI_GET) {
+            int count = frame.getInt();
+            List<String> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(ValueCodec.getShortString(frame));
+            }
+            long minLsn = frame.getLong();
+            boolean atomic = (frame.get() & Protocol.FLAG_ATOMIC) != 0;
+            if (atomic) {
+                execute(connection, command, requestId, () -> multiGetResponse(command, requestId, keys, minLsn, true));
+            } else {
+                connection.send(multiGetResponse(command, requestId, keys, minLsn, false));
+            }
+            return;
+        }
+        boolean atomic = (frame.get() & Protocol.FLAG_ATOMIC) != 0;
+        long ttlMs = frame.getLong();
+        int count = frame.getInt();
+        Map<String, ShareData> values = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = ValueCodec.getShortString(frame);
+            values.put(key, Protocol.getShareData(frame));
+        }
+        execute(connection, command, requestId, () -> {
+            int written = shareDataServer.multiSet(values, ttlMs, atomic);
+            long lsn = shareDataServer.getLastWriteLsn();
+            return Protocol.encode(command, requestId, body -> {
+                body.put(Protocol.STATUS_OK);
+                body.putInt(written);
+                body.putLong(lsn);
+            });
+        });
+    }
+
+    private ByteBuffer multiGetResponse(CommandEnum command, long requestId, List<String> keys, long minLsn,
+                                        boolean atomic) {
+        Map<String, ShareData> result = shareDataServer.multiGet(keys, minLsn, atomic);
+        return Protocol.encode(command, requestId, body -> {
+            body.put(Protocol.STATUS_OK);
+            body.putInt(result.size());
+            for (Map.Entry<String, ShareData> entry : result.entrySet()) {
+                ValueCodec.putShortString(body, entry.getKey());
+                Protocol.putShareData(body, entry.getValue());
+            }
+        });
+    }
+
+    /**
+     * 可能被锁阻塞的批量请求交给处理线程执行，完成后把响应交回事件循环写出
+     */
+    private void execute(NioConnection connection, CommandEnum command, long requestId, Supplier<ByteBuffer> call) {
+        try {
+            handlerExecutor.execute(() -> {
+                ByteBuffer response;
+                try {
+                    response = call.get();
+                } catch (RuntimeException e) {
+                    response = errorFrame(command, requestId, String.valueOf(e.getMessage()));
+                }
+                connection.send(response);
+            });
+        } catch (RejectedExecutionException e) {
+            connection.send(errorFrame(command, requestId, "Server is shutting down"));
+        }
+    }
+
+    /**
+     * 写请求交给处理线程执行，成功时响应中带上本次写入的 LSN，客户端据此读己之写
+     */
+    private void submit(NioConnection connection, CommandEnum command, long requestId, WriteCall call) {
+        try {
+            handlerExecutor.execute(() -> {
+                ByteBuffer response;
+                try {
+                    if (call.write()) {
+                        long lsn = shareDataServer.getLastWriteLsn();
+                        response = Protocol.encode(command, requestId, body -> {
+                            body.put(Protocol.STATUS_OK);
+                            body.putLong(lsn);
+                        });
+                    } else {
+                        response = Protocol.encode(command, requestId, body -> body.put(Protocol.STATUS_REJECTED));
+                    }
+                } catch (RuntimeException e) {
+                    response = errorFrame(command, requestId, String.valueOf(e.getMessage()));
+                }
+                connection.send(response);
+            });
+        } catch (RejectedExecutionException e) {
+            connection.send(errorFrame(command, requestId, "Server is shutting down"));
+        }
+    }
+
+    private interface WriteCall {
+
+        boolean write();
+    }
+
+    private static ByteBuffer notifyFrame(List<Notifier.Event> events) {
+        return Protocol.encode(CommandEnum.NOTIFY, 0L, body -> {
+            body.putInt(events.size());
+            for (Notifier.Event event : events) {
+                ValueCodec.putShortString(body, event.getKey());
+                ValueCodec.putShortString(body, event.getOperaType());
+                body.putInt(event.getVersion());
+                body.putInt(event.getMissed());
+            }
+        });
+    }
+
+    private static ByteBuffer dataFrame(CommandEnum command, long requestId, ShareData shareData) {
+        return Protocol.encode(command, requestId, body -> {
+            if (shareData == null) {
+                body.put(Protocol.STATUS_NOT_FOUND);
+            } else {
+                body.put(Protocol.STATUS_OK);
+                Protocol.putShareData(body, shareData);
+            }
+        });
+    }
+
+    private static ByteBuffer errorFrame(CommandEnum command, long requestId, String message) {
+        return Protocol.encode(command, requestId, body -> {
+            body.put(Protocol.STATUS_ERROR);
+            ValueCodec.putShortString(body, message);
+        });
+    }
+
+    void onClose(NioConnection connection) {
+        connections.remove(connection);
+        shareDataServer.getNotifier().unbind(connection.getIpPort());
+        shareDataServer.unwatchAll(connection.getIpPort());
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server channel: " + e.getMessage());
+        }
+        handlerExecutor.shutdown();
+        try {
+            handlerExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.close();
+        }
+    }
+}
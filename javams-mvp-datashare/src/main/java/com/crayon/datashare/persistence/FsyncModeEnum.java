@@ -0,0 +1,28 @@
+package com.crayon.datashare.persistence;
+
+/**
+ * WAL 刷盘策略枚举
+ * <p>
+ * 参考 Redis appendfsync 的 no / always / everysec 三种策略
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/20
+ */
+public enum FsyncModeEnum {
+
+    /**
+     * 只写入操作系统页缓存，由操作系统决定何时落盘
+     */
+    NO_FSYNC,
+
+    /**
+     * 每个批次写入后都 fsync，调用方等待 fsync 完成
+     */
+    FSYNC_PER_BATCH,
+
+    /**
+     * 每隔 N 毫秒 fsync 一次，调用方只等待写入页缓存
+     */
+    FSYNC_EVERY_N_MS
+}
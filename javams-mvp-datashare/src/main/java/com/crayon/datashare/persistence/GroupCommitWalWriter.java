@@ -0,0 +1,832 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 组提交（Group Commit）WAL 写入器
+ *
+ * <p>
+ * 长期持有日志段的内存映射，避免每次追加都打开/关闭文件。
+ * 并发写入的调用方把记录放入当前批次后立即返回批次对象，
+ * 由单独的刷盘线程把整个批次一次写入（按策略 fsync），
+ * 调用方只需等待自己所在批次的持久化点。
+ * <p>
+ * 刷盘线程在写当前批次时，新的记录会进入下一个批次，
+ * 写入越慢批次越大，吞吐随并发写入者数量自然提升。
+ * </p>
+ * <p>
+ * LSN 在追加时于同一把锁内分配，因此文件中记录的顺序与 LSN 顺序一致。
+ * </p>
+ * <p>
+ * 设置了 {@link CommitListener} 时，写入成功的批次要等写入者把其中每条记录都应用到主节点内存
+ * （{@link #markApplied(long)}）之后才按 LSN 顺序交给回调，
+ * 从节点因此不会先于主节点看到一次写入，读请求在从节点与主节点之间切换时不会读到更旧的值。
+ * </p>
+ * <p>
+ * 日志由固定大小、预分配的段组成（见 {@link WalSegment}），段写满或显式滚动（roll）时切换到新段，
+ * 段文件名带起始 LSN，并按起始 LSN 建立索引，可以快速定位某个 LSN 所在的段，
+ * 快照完成后整段删除被覆盖的旧段。
+ * </p>
+ * <p>
+ * 批次写入失败（写入、滚动或刷盘出错，或刷盘线程中任何未预期的异常）时，本批次已写入日志段的数据清零、
+ * 回退到批次开始的位置，批次中的写入者都收到失败，重启后不会重放这些写入。
+ * 之后写入器永久失败：刷盘线程退出，排队中的批次都失败，之后的追加直接失败，需要重启恢复。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/20
+ */
+public class GroupCommitWalWriter implements Closeable {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final Path dir;
+
+    private final int segmentBytes;
+
+    private final WalSegmentAllocator allocator;
+
+    /**
+     * 段索引：起始LSN -> 段文件
+     */
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * 封存段的有效数据量：起始LSN -> 字节数
+     */
+    private final ConcurrentHashMap<Long, Long> sealedSizes = new ConcurrentHashMap<>();
+
+    /**
+     * 所有封存段的有效数据量之和，用于按数据量触发快照
+     */
+    private final AtomicLong sealedBytes = new AtomicLong();
+
+    /**
+     * 当前写入的日志段，只由刷盘线程切换
+     */
+    private WalSegment segment;
+
+    /**
+     * 当前日志段已写入的字节数，用于按数据量触发快照
+     */
+    private volatile long activeBytes;
+
+    /**
+     * 当前日志段的起始 LSN
+     */
+    private volatile long activeStartLsn;
+
+    private final FsyncModeEnum fsyncMode;
+
+    private final long fsyncIntervalMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition rolled = lock.newCondition();
+
+    /**
+     * 是否有待执行的文件滚动，受 lock 保护
+     */
+    private boolean rollRequested = false;
+
+    private IOException rollError;
+
+    /**
+     * 正在累积的批次，受 lock 保护
+     */
+    private Batch current = new Batch();
+
+    /**
+     * 最后分配的 LSN，受 lock 保护
+     */
+    private long lastLsn;
+
+    private volatile boolean closed = false;
+
+    /**
+     * 写入器永久失败的原因，非 null 后不再接受追加，在 lock 内设置
+     */
+    private volatile Throwable failure;
+
+    /**
+     * 当前批次写入期间滚动产生的新段，只由刷盘线程访问，批次写入失败时一并清零
+     */
+    private final List<WalSegment> rolledInBatch = new ArrayList<>();
+
+    /**
+     * 只由刷盘线程使用，编码超大记录时复用
+     */
+    private ByteBuffer oversized = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private long lastFsyncTime = System.currentTimeMillis();
+
+    private boolean dirty = false;
+
+    private final Thread flusher;
+
+    /**
+     * 批次写入并应用到主节点后的回调
+     */
+    private volatile CommitListener commitListener;
+
+    /**
+     * 已写入日志、等待写入者应用到主节点后再交给回调的批次，按 LSN 顺序，受 publishLock 保护
+     */
+    private final ArrayDeque<Batch> unpublished = new ArrayDeque<>();
+
+    private final ReentrantLock publishLock = new ReentrantLock();
+
+    /**
+     * @param dir             日志目录，继续写入其中最新的日志段
+     * @param fsyncMode
+     * @param fsyncIntervalMs
+     * @param segmentBytes    日志段大小
+     * @param lastLsn         已有日志中最大的 LSN，新记录从其后继续编号
+     * @throws IOException
+     */
+    public GroupCommitWalWriter(Path dir, FsyncModeEnum fsyncMode, long fsyncIntervalMs,
+                                int segmentBytes, long lastLsn) throws IOException {
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsyncMode = fsyncMode;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.lastLsn = lastLsn;
+        this.allocator = new WalSegmentAllocator(dir, segmentBytes);
+        this.segments.putAll(WalFiles.listLogs(dir));
+        Map.Entry<Long, Path> latest = segments.lastEntry();
+        if (latest != null && Files.size(latest.getValue()) == segmentBytes) {
+            this.segment = new WalSegment(latest.getValue(), latest.getKey(), dataEnd(latest.getValue()));
+        } else {
+            // 没有日志段，或最新文件是压缩产生的非预分配文件，从新段开始写
+            this.segment = newSegment(lastLsn + 1, segmentBytes);
+        }
+        this.activeStartLsn = segment.getStartLsn();
+        this.activeBytes = segment.position();
+        for (Map.Entry<Long, Path> sealed : segments.headMap(activeStartLsn, false).entrySet()) {
+            // 按文件大小估算，避免启动时再扫描一遍封存段
+            resizeSegment(sealed.getKey(), Files.size(sealed.getValue()));
+        }
+        this.flusher = new Thread(this::flushLoop, "wal-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private static int dataEnd(Path file) throws IOException {
+        try (WalReader reader = new WalReader(file)) {
+            while (reader.nextFrame() != null) {
+                // 跳过有效记录
+            }
+            return (int) reader.validPosition();
+        } catch (WalCorruptedException e) {
+            throw new IOException("WAL segment corrupted, recovery required: " + file, e);
+        }
+    }
+
+    private WalSegment newSegment(long startLsn, int size) throws IOException {
+        Path path = allocator.take(WalFiles.logFile(dir, startLsn), size);
+        WalFiles.syncDirectory(dir);
+        WalSegment newSegment = new WalSegment(path, startLsn, 0);
+        segments.put(startLsn, path);
+        return newSegment;
+    }
+
+    /**
+     * 追加一条记录，分配 LSN 并返回其所在批次
+     * <p>
+     * 记录的 lsn 会被设置为新分配的值。
+     * 调用方需调用 {@link Batch#await(PersistenceData)} 等待持久化后才能认为日志写入成功
+     *
+     * @param record
+     * @return
+     */
+    public Batch append(PersistenceData record) {
+        lock.lock();
+        try {
+            if (closed || failure != null) {
+                return Batch.FAILED;
+            }
+            long lsn = ++lastLsn;
+            record.setLsn(lsn);
+            current.records.add(record);
+            notEmpty.signal();
+            return current;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 一次追加多条记录，分配连续的 LSN，全部进入同一个批次（同一次写入、刷盘与复制）
+     * <p>
+     * atomic 时记录标记为原子批次：任意一条无法编码则整批拒绝，
+     * 恢复时只有读到批次最后一条才应用整批，崩溃时写了一半的批次整体丢弃
+     *
+     * @param records
+     * @param atomic
+     * @return
+     */
+    public Batch appendAll(List<PersistenceData> records, boolean atomic) {
+        lock.lock();
+        try {
+            if (closed || failure != null) {
+                return Batch.FAILED;
+            }
+            boolean batch = atomic && records.size() > 1;
+            for (int i = 0; i < records.size(); i++) {
+                PersistenceData record = records.get(i);
+                record.setLsn(++lastLsn);
+                record.setBatch(batch);
+                record.setBatchBegin(batch && i == 0);
+                record.setBatchEnd(batch && i == records.size() - 1);
+                current.records.add(record);
+            }
+            notEmpty.signal();
+            return current;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 滚动到新的日志段
+     * <p>
+     * 调用时已追加的记录都写入旧段，之后追加的记录写入新段
+     *
+     * @return 旧段中最大的 LSN，即新段起始 LSN - 1
+     * @throws IOException
+     */
+    public long roll() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("WAL writer closed");
+            }
+            if (failure != null) {
+                throw new IOException("WAL writer failed", failure);
+            }
+            long boundary = lastLsn;
+            rollRequested = true;
+            notEmpty.signal();
+            while (rollRequested) {
+                rolled.awaitUninterruptibly();
+            }
+            if (rollError != null) {
+                IOException e = rollError;
+                rollError = null;
+                throw e;
+            }
+            return boundary;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Batch batch;
+            boolean roll;
+            long nextStartLsn;
+            lock.lock();
+            try {
+                while (current.records.isEmpty() && !closed && !rollRequested) {
+                    if (dirty && fsyncMode == FsyncModeEnum.FSYNC_EVERY_N_MS) {
+                        long waitMs = lastFsyncTime + fsyncIntervalMs - System.currentTimeMillis();
+                        if (waitMs <= 0) {
+                            break;
+                        }
+                        notEmpty.await(waitMs, TimeUnit.MILLISECONDS);
+                    } else {
+                        notEmpty.await();
+                    }
+                }
+                if (current.records.isEmpty() && closed) {
+                    break;
+                }
+                batch = current;
+                current = new Batch();
+                roll = rollRequested;
+                nextStartLsn = lastLsn + 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e, null);
+                break;
+            } finally {
+                lock.unlock();
+            }
+            WalSegment startSegment = segment;
+            int startPosition = segment.position();
+            rolledInBatch.clear();
+            try {
+                writeBatch(batch);
+                // 先登记再唤醒写入者，写入者应用完成时一定能找到所在批次
+                track(batch);
+                batch.complete(true);
+            } catch (Throwable e) {
+                System.err.println("Error writing to WAL, rejecting further appends: " + e);
+                discard(startSegment, startPosition);
+                fail(e, batch);
+                break;
+            }
+            if (roll) {
+                IOException error = null;
+                try {
+                    if (!segment.isEmpty()) {
+                        rollTo(nextStartLsn, segmentBytes);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error rolling WAL: " + e.getMessage());
+                    error = e;
+                } catch (Throwable e) {
+                    System.err.println("Error rolling WAL, rejecting further appends: " + e);
+                    fail(e, null);
+                    break;
+                }
+                lock.lock();
+                try {
+                    rollError = error;
+                    rollRequested = false;
+                    rolled.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        lock.lock();
+        try {
+            if (rollRequested) {
+                rollError = failure != null ? new IOException("WAL writer failed", failure)
+                        : new IOException("WAL writer closed");
+                rollRequested = false;
+                rolled.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            segment.close();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error syncing WAL on close: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批次写入失败时清零本批次已写入日志段的数据，只在刷盘线程中调用
+     *
+     * @param startSegment  批次开始时的段
+     * @param startPosition 批次开始时的写入位置
+     */
+    private void discard(WalSegment startSegment, int startPosition) {
+        try {
+            startSegment.truncate(startPosition);
+            startSegment.force();
+            for (WalSegment rolled : rolledInBatch) {
+                rolled.truncate(0);
+                rolled.force();
+            }
+            activeBytes = segment.position();
+        } catch (RuntimeException e) {
+            System.err.println("Error discarding failed WAL batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入器永久失败：当前批次与排队中的批次都失败，之后的追加直接失败，只在刷盘线程中调用
+     *
+     * @param cause
+     * @param batch 正在写入的批次，没有时为 null
+     */
+    private void fail(Throwable cause, Batch batch) {
+        Batch queued;
+        lock.lock();
+        try {
+            failure = cause;
+            queued = current;
+            current = new Batch();
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            batch.complete(false);
+        }
+        queued.complete(false);
+    }
+
+    /**
+     * 登记写入成功的批次，等待写入者应用到主节点，只在刷盘线程中调用
+     *
+     * @param batch
+     */
+    private void track(Batch batch) {
+        if (commitListener == null || batch.records.isEmpty()) {
+            return;
+        }
+        List<PersistenceData> committed = batch.records;
+        if (batch.rejected != null) {
+            committed = new ArrayList<>(committed);
+            committed.removeAll(batch.rejected);
+        }
+        if (committed.isEmpty()) {
+            return;
+        }
+        publishLock.lock();
+        try {
+            batch.committed = committed;
+            batch.unapplied = committed.size();
+            unpublished.addLast(batch);
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * 写入者把一条写入成功的记录应用到主节点内存后调用，
+     * 队首批次的记录全部应用后按 LSN 顺序交给回调
+     * <p>
+     * 写入成功（{@link Batch#await(PersistenceData)} 返回 true）的每条记录都必须调用一次，否则之后的批次不会再分发
+     *
+     * @param lsn
+     */
+    public void markApplied(long lsn) {
+        publishLock.lock();
+        try {
+            for (Batch batch : unpublished) {
+                if (lsn <= batch.lastCommittedLsn()) {
+                    if (lsn >= batch.firstCommittedLsn()) {
+                        batch.unapplied--;
+                    }
+                    break;
+                }
+            }
+            Batch head;
+            while ((head = unpublished.peekFirst()) != null && head.unapplied == 0) {
+                unpublished.pollFirst();
+                publish(head.committed);
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * 按 LSN 顺序把写入成功的记录交给回调，回调不能阻塞
+     *
+     * @param committed
+     */
+    private void publish(List<PersistenceData> committed) {
+        CommitListener listener = commitListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onCommit(Collections.unmodifiableList(committed));
+        } catch (RuntimeException e) {
+            System.err.println("Error publishing WAL batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 设置批次写入后的回调，用于复制等需要有序变更流的场景
+     *
+     * @param commitListener
+     */
+    public void setCommitListener(CommitListener commitListener) {
+        this.commitListener = commitListener;
+    }
+
+    /**
+     * 批次写入，只在刷盘线程中调用
+     *
+     * @param batch
+     * @throws IOException 写入、滚动或刷盘失败，已写入的部分由调用方清零
+     */
+    private void writeBatch(Batch batch) throws IOException {
+        if (!batch.records.isEmpty()) {
+            List<PersistenceData> records = batch.records;
+            for (int i = 0; i < records.size(); i++) {
+                PersistenceData record = records.get(i);
+                if (record.isBatch() && !encodable(batch, records, i)) {
+                    // 整个原子批次已被拒绝，跳到批次之后
+                    while (!records.get(i).isBatchEnd()) {
+                        i++;
+                    }
+                    continue;
+                }
+                append(batch, record);
+            }
+            activeBytes = segment.position();
+            dirty = true;
+        }
+        long now = System.currentTimeMillis();
+        if (dirty && (fsyncMode == FsyncModeEnum.FSYNC_PER_BATCH
+                || (fsyncMode == FsyncModeEnum.FSYNC_EVERY_N_MS && now - lastFsyncTime >= fsyncIntervalMs))) {
+            segment.force();
+            lastFsyncTime = now;
+            dirty = false;
+        }
+    }
+
+    /**
+     * 写入一条记录，当前段空间不足时滚动到以该记录 LSN 起始的新段，
+     * 空段也放不下的超大记录单独分配更大的段
+     */
+    private void append(Batch batch, PersistenceData record) throws IOException {
+        int size;
+        try {
+            if (segment.append(record)) {
+                return;
+            }
+            size = segment.isEmpty() ? Math.max(encodedSize(record), segmentBytes) : segmentBytes;
+        } catch (RuntimeException e) {
+            // 单条记录无法编码（如值不可序列化）只拒绝该记录，不影响同批次其他写入者
+            System.err.println("Error encoding WAL record " + record.getKey() + ": " + e.getMessage());
+            batch.reject(record);
+            return;
+        }
+        // 滚动与写入新段的失败是整个批次的失败
+        rollTo(record.getLsn(), size);
+        if (!segment.append(record)) {
+            throw new IOException("WAL record too large: " + record.getKey());
+        }
+    }
+
+    /**
+     * 原子批次的第一条记录处检查整批能否编码，有一条不能则拒绝整批，避免只写入一部分
+     *
+     * @return 不是批次第一条或整批都能编码时为 true
+     */
+    private boolean encodable(Batch batch, List<PersistenceData> records, int first) {
+        if (!records.get(first).isBatchBegin()) {
+            return true;
+        }
+        int end = first;
+        while (!records.get(end).isBatchEnd()) {
+            end++;
+        }
+        for (int i = first; i <= end; i++) {
+            if (isShortString(records.get(i).getKey()) && (records.get(i).getShareData() == null
+                    || isShortString(records.get(i).getShareData().getId())
+                    && ValueCodec.isDirect(records.get(i).getShareData().getData()))) {
+                // 只有字符串过长或需要 Java 序列化时才可能编码失败，其余不必试编码
+                continue;
+            }
+            try {
+                encodedSize(records.get(i));
+            } catch (RuntimeException e) {
+                System.err.println("Error encoding WAL record " + records.get(i).getKey()
+                        + ", rejecting atomic batch: " + e.getMessage());
+                for (int j = first; j <= end; j++) {
+                    batch.reject(records.get(j));
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isShortString(String s) {
+        return s == null || s.length() <= Short.MAX_VALUE / 3 || ValueCodec.utf8Length(s) <= Short.MAX_VALUE;
+    }
+
+    private int encodedSize(PersistenceData record) {
+        while (true) {
+            try {
+                oversized.clear();
+                WalRecordCodec.encode(record, oversized);
+                // 末尾保留4字节的0作为数据末尾标记
+                return oversized.position() + 4;
+            } catch (BufferOverflowException e) {
+                oversized = ByteBuffer.allocate(oversized.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * 封存当前段并切换到新段，只在刷盘线程中调用
+     */
+    private void rollTo(long startLsn, int size) throws IOException {
+        WalSegment sealed = segment;
+        segment = newSegment(startLsn, size);
+        rolledInBatch.add(segment);
+        sealed.close();
+        resizeSegment(sealed.getStartLsn(), sealed.position());
+        dirty = false;
+        activeBytes = 0;
+        activeStartLsn = startLsn;
+    }
+
+    /**
+     * 当前段之前的封存段
+     *
+     * @return 起始LSN -> 段文件
+     */
+    public NavigableMap<Long, Path> sealedSegments() {
+        return new TreeMap<>(segments.headMap(activeStartLsn, false));
+    }
+
+    /**
+     * 所有段的快照视图，用于按 LSN 定位读取
+     *
+     * @return 起始LSN -> 段文件
+     */
+    public NavigableMap<Long, Path> segments() {
+        return new TreeMap<>(segments);
+    }
+
+    /**
+     * 删除封存段，当前段不会被删除
+     *
+     * @param startLsns
+     * @throws IOException
+     */
+    public void deleteSegments(Collection<Long> startLsns) throws IOException {
+        for (Long startLsn : startLsns) {
+            if (startLsn >= activeStartLsn) {
+                continue;
+            }
+            Path path = segments.remove(startLsn);
+            Long size = sealedSizes.remove(startLsn);
+            if (size != null) {
+                sealedBytes.addAndGet(-size);
+            }
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        }
+        WalFiles.syncDirectory(dir);
+    }
+
+    /**
+     * 更新封存段的有效数据量，段被压缩改写后调用
+     *
+     * @param startLsn
+     * @param bytes
+     */
+    public void resizeSegment(long startLsn, long bytes) {
+        Long previous = sealedSizes.put(startLsn, bytes);
+        sealedBytes.addAndGet(previous == null ? bytes : bytes - previous);
+    }
+
+    public long getSealedBytes() {
+        return sealedBytes.get();
+    }
+
+    public long getActiveStartLsn() {
+        return activeStartLsn;
+    }
+
+    public long getActiveBytes() {
+        return activeBytes;
+    }
+
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭写入器，已进入批次的记录会先写完
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        allocator.close();
+    }
+
+    /**
+     * 批次写入回调
+     */
+    public interface CommitListener {
+
+        /**
+         * 按 LSN 顺序调用，记录已写入日志（按刷盘策略）并已应用到主节点内存，
+         * 在最后一个完成应用的写入者线程中执行
+         *
+         * @param records 本批次写入成功的记录，只读
+         */
+        void onCommit(List<PersistenceData> records);
+    }
+
+    /**
+     * 一次组提交的批次
+     */
+    public static class Batch {
+
+        static final Batch FAILED = new Batch(false);
+
+        private final List<PersistenceData> records = new ArrayList<>();
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile boolean success;
+
+        /**
+         * 编码失败被拒绝的记录，只由刷盘线程在 complete 之前写入
+         */
+        private Set<PersistenceData> rejected;
+
+        /**
+         * 写入成功的记录，受 publishLock 保护
+         */
+        private List<PersistenceData> committed;
+
+        /**
+         * 写入成功但写入者还未应用到主节点的记录数，受 publishLock 保护
+         */
+        private int unapplied;
+
+        Batch() {
+        }
+
+        private Batch(boolean success) {
+            this.success = success;
+            this.done.countDown();
+        }
+
+        void reject(PersistenceData record) {
+            if (rejected == null) {
+                rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            rejected.add(record);
+        }
+
+        void complete(boolean success) {
+            this.success = success;
+            done.countDown();
+        }
+
+        long firstCommittedLsn() {
+            return committed.get(0).getLsn();
+        }
+
+        long lastCommittedLsn() {
+            return committed.get(committed.size() - 1).getLsn();
+        }
+
+        /**
+         * 等待批次到达持久化点
+         * <p>
+         * 不响应中断（返回前恢复中断状态）：批次一定会完成（写入器失败时以失败完成），写入成功的记录必须由调用方应用并调用 {@link GroupCommitWalWriter#markApplied(long)}
+         *
+         * @param record 本次追加的记录
+         * @return 该记录是否写入成功
+         */
+        public boolean await(PersistenceData record) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return success && (rejected == null || !rejected.contains(record));
+        }
+    }
+}
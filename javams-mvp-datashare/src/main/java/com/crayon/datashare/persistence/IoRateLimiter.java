@@ -0,0 +1,57 @@
+package com.crayon.datashare.persistence;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 磁盘带宽限流（令牌桶）
+ *
+ * <p>
+ * 后台任务每读写一段数据前申请对应字节数的令牌，令牌不足时休眠等待，
+ * 避免后台 I/O 挤占前台写日志的磁盘带宽。只允许积攒最多一秒的令牌，防止空闲后突发。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/24
+ */
+public class IoRateLimiter {
+
+    private final long bytesPerSecond;
+
+    private double tokens;
+
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond 每秒允许的字节数，不大于0表示不限流
+     */
+    public IoRateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+    }
+
+    /**
+     * 申请令牌，不足时阻塞
+     *
+     * @param bytes
+     */
+    public synchronized void acquire(long bytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        refill();
+        tokens -= bytes;
+        if (tokens < 0) {
+            long waitNanos = (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+            LockSupport.parkNanos(waitNanos);
+            refill();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(bytesPerSecond, tokens + (now - lastRefillNanos) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
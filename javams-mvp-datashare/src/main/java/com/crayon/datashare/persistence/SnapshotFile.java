@@ -0,0 +1,113 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.OperaTypeEnum;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 快照文件（类 RDB 部分）
+ *
+ * <p>
+ * 格式：
+ * <pre>
+ * long  魔数
+ * long  快照边界 LSN，之后的日志需要在恢复时重放
+ * 记录* 与 WAL 相同的 SET 记录，lsn 为数据自身的 lsn
+ * int   0 结束标记
+ * long  记录数
+ * </pre>
+ * 快照为模糊快照（Fuzzy Snapshot）：遍历期间写入者不停止，遍历到的值可能比边界更新。
+ * 因为日志记录携带完整值与 lsn，恢复时按 lsn 只应用更新的记录，重放是幂等的，
+ * 最终状态与边界之后日志的重放结果一致。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/22
+ */
+public final class SnapshotFile {
+
+    public static final long MAGIC = 0x4453534E41503031L;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * 写入快照：先写临时文件并 fsync，再原子重命名
+     *
+     * @param dir
+     * @param boundaryLsn
+     * @param entries
+     * @return 快照文件
+     * @throws IOException
+     */
+    public static Path write(Path dir, long boundaryLsn, Iterator<Map.Entry<String, ShareData>> entries) throws IOException {
+        Path target = WalFiles.snapshotFile(dir, boundaryLsn);
+        Path tmp = target.resolveSibling(target.getFileName() + WalFiles.TMP_SUFFIX);
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putLong(MAGIC);
+            buffer.putLong(boundaryLsn);
+            while (entries.hasNext()) {
+                Map.Entry<String, ShareData> entry = entries.next();
+                ShareData shareData = entry.getValue();
+                PersistenceData record = new PersistenceData.Builder()
+                        .operaType(OperaTypeEnum.SET.getType())
+                        .key(entry.getKey())
+                        .shareData(shareData)
+                        .lsn(shareData.getLsn())
+                        .build();
+                buffer = put(channel, buffer, record);
+                count++;
+            }
+            if (buffer.remaining() < 12) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(0);
+            buffer.putLong(count);
+            flush(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WalFiles.syncDirectory(dir);
+        return target;
+    }
+
+    private static ByteBuffer put(FileChannel channel, ByteBuffer buffer, PersistenceData record) throws IOException {
+        while (true) {
+            try {
+                WalRecordCodec.encode(record, buffer);
+                return buffer;
+            } catch (BufferOverflowException e) {
+                if (buffer.position() > 0) {
+                    flush(channel, buffer);
+                } else {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            }
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
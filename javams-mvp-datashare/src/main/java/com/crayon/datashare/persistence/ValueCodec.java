@@ -0,0 +1,223 @@
+package com.crayon.datashare.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 共享数据值的二进制编解码
+ *
+ * <p>
+ * 格式：1字节类型标记 + 4字节长度 + 内容。
+ * 常用类型（字符串、字节数组、整数）直接写入缓冲区，其他类型退化为 Java 序列化
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/21
+ */
+public final class ValueCodec {
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_BYTES = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_SERIALIZED = 9;
+
+    private ValueCodec() {
+    }
+
+    /**
+     * 写入值，缓冲区空间不足时抛出 BufferOverflowException，由调用方扩容后重试
+     *
+     * @param buffer
+     * @param value
+     */
+    public static void putValue(ByteBuffer buffer, Object value) {
+        if (value == null) {
+            buffer.put(TAG_NULL);
+            buffer.putInt(0);
+        } else if (value instanceof String) {
+            buffer.put(TAG_STRING);
+            String s = (String) value;
+            buffer.putInt(utf8Length(s));
+            putUtf8(buffer, s);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            buffer.put(TAG_BYTES);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        } else if (value instanceof Integer) {
+            buffer.put(TAG_INT);
+            buffer.putInt(4);
+            buffer.putInt((Integer) value);
+        } else if (value instanceof Long) {
+            buffer.put(TAG_LONG);
+            buffer.putInt(8);
+            buffer.putLong((Long) value);
+        } else if (value instanceof Serializable) {
+            byte[] bytes = serialize(value);
+            buffer.put(TAG_SERIALIZED);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * 值是否直接写入缓冲区（不经过 Java 序列化），这类值的编码不会失败
+     *
+     * @param value
+     * @return
+     */
+    public static boolean isDirect(Object value) {
+        return value == null || value instanceof String || value instanceof byte[]
+                || value instanceof Integer || value instanceof Long;
+    }
+
+    public static Object getValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        int length = buffer.getInt();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return getUtf8(buffer, length);
+            case TAG_BYTES: {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                return bytes;
+            }
+            case TAG_INT:
+                return buffer.getInt();
+            case TAG_LONG:
+                return buffer.getLong();
+            case TAG_SERIALIZED: {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                return deserialize(bytes);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value tag: " + tag);
+        }
+    }
+
+    /**
+     * 写入带2字节长度前缀的字符串，null 的长度记为-1
+     *
+     * @param buffer
+     * @param s
+     */
+    public static void putShortString(ByteBuffer buffer, String s) {
+        if (s == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        int length = utf8Length(s);
+        if (length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String too long: " + length + " bytes");
+        }
+        buffer.putShort((short) length);
+        putUtf8(buffer, s);
+    }
+
+    public static String getShortString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        return getUtf8(buffer, length);
+    }
+
+    /**
+     * 计算 UTF-8 编码后的字节数，不产生中间对象
+     *
+     * @param s
+     * @return
+     */
+    public static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 直接把字符串按 UTF-8 写入缓冲区，避免 getBytes 产生的临时数组
+     *
+     * @param buffer
+     * @param s
+     */
+    public static void putUtf8(ByteBuffer buffer, String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    public static String getUtf8(ByteBuffer buffer, int length) {
+        if (buffer.hasArray()) {
+            String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error serializing value", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error deserializing value", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Error deserializing value", e);
+        }
+    }
+}
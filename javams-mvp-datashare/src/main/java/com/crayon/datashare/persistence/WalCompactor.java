@@ -0,0 +1,156 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * 日志压缩：只保留每个 key 的最终状态
+ *
+ * <p>
+ * 类似 AOF rewrite，区别是输入为已滚动封存的日志文件而不是内存数据：
+ * 压缩前先滚动日志，新的追加写入新的当前文件（相当于 rewrite 期间的缓冲区），
+ * 封存文件不再变化，可以在后台慢慢读写，不需要与写入者同步。
+ * </p>
+ * <p>
+ * 输出文件按 lsn 排序，以第一个封存文件的名字原子替换它，调用方再删除其余封存文件。
+ * 替换后、删除前崩溃时，残留文件中的记录都比压缩文件中的旧，恢复按 lsn 应用时会被跳过，结果不变。
+ * 删除操作的记录同样保留最后一条，因为更早的快照中可能还有该 key。
+ * </p>
+ * <p>
+ * 原子批次：完整的批次已经整体写入，其中的记录去掉批次标记后与普通记录一样按 key 压缩；
+ * 崩溃时没写完的批次丢弃；最后一个封存文件末尾还没结束的批次（后半部分在当前文件中）原样保留。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/24
+ */
+public final class WalCompactor {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final String COMPACT_SUFFIX = ".compact" + WalFiles.TMP_SUFFIX;
+
+    private WalCompactor() {
+    }
+
+    /**
+     * 压缩封存日志文件
+     *
+     * @param walDir
+     * @param sealed  起始LSN -> 封存文件，按 LSN 升序
+     * @param limiter 磁盘带宽限流
+     * @return 压缩后的文件大小
+     * @throws IOException
+     */
+    public static long compact(Path walDir, NavigableMap<Long, Path> sealed, IoRateLimiter limiter) throws IOException {
+        Map<String, byte[]> latest = new HashMap<>();
+        List<PersistenceData> pendingBatch = new ArrayList<>();
+        List<byte[]> pendingFrames = new ArrayList<>();
+        for (Path file : sealed.values()) {
+            try (WalReader reader = new WalReader(file)) {
+                ByteBuffer frame;
+                while ((frame = reader.nextFrame()) != null) {
+                    limiter.acquire(frame.remaining());
+                    PersistenceData record = WalRecordCodec.decodeUnchecked(frame.duplicate());
+                    byte[] bytes = new byte[frame.remaining()];
+                    frame.get(bytes);
+                    if (!record.isBatch() || record.isBatchBegin()) {
+                        // 未结束的批次后面出现了其他记录，是崩溃时没写完的批次
+                        pendingBatch.clear();
+                        pendingFrames.clear();
+                    }
+                    if (!record.isBatch()) {
+                        latest.put(record.getKey(), bytes);
+                        continue;
+                    }
+                    if (!record.isBatchBegin() && pendingBatch.isEmpty()) {
+                        continue;
+                    }
+                    pendingBatch.add(record);
+                    pendingFrames.add(bytes);
+                    if (record.isBatchEnd()) {
+                        for (PersistenceData batchRecord : pendingBatch) {
+                            latest.put(batchRecord.getKey(), withoutBatchFlags(batchRecord));
+                        }
+                        pendingBatch.clear();
+                        pendingFrames.clear();
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < pendingBatch.size(); i++) {
+            latest.put(pendingBatch.get(i).getKey(), pendingFrames.get(i));
+        }
+        List<byte[]> frames = new ArrayList<>(latest.values());
+        latest.clear();
+        frames.sort(Comparator.comparingLong(WalCompactor::lsn));
+
+        Path target = sealed.firstEntry().getValue();
+        Path tmp = target.resolveSibling(target.getFileName() + COMPACT_SUFFIX);
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            for (byte[] frame : frames) {
+                if (buffer.remaining() < frame.length) {
+                    size += flush(channel, buffer, limiter);
+                    if (buffer.capacity() < frame.length) {
+                        buffer = ByteBuffer.allocate(frame.length);
+                    }
+                }
+                buffer.put(frame);
+            }
+            size += flush(channel, buffer, limiter);
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WalFiles.syncDirectory(walDir);
+        return size;
+    }
+
+    private static byte[] withoutBatchFlags(PersistenceData record) {
+        record.setBatch(false);
+        record.setBatchBegin(false);
+        record.setBatchEnd(false);
+        ByteBuffer buffer = ByteBuffer.allocate(WalRecordCodec.FRAME_OVERHEAD + 64);
+        while (true) {
+            try {
+                WalRecordCodec.encode(record, buffer);
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private static long lsn(byte[] frame) {
+        return WalRecordCodec.lsn(ByteBuffer.wrap(frame));
+    }
+
+    private static int flush(FileChannel channel, ByteBuffer buffer, IoRateLimiter limiter) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        limiter.acquire(length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return length;
+    }
+}
@@ -0,0 +1,21 @@
+package com.crayon.datashare.persistence;
+
+/**
+ * 日志记录损坏（校验和不匹配或格式非法）
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/21
+ */
+public class WalCorruptedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WalCorruptedException(String message) {
+        super(message);
+    }
+
+    public WalCorruptedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,96 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NavigableMap;
+
+/**
+ * 从指定 LSN 开始顺序读取日志，用于从节点追赶等场景
+ *
+ * <p>
+ * 通过段索引直接定位 LSN 所在的段（段内记录按 LSN 有序），只需扫描这一个段的前半部分，
+ * 不解码跳过的记录。读到当前段有效数据末尾时返回 null。
+ * </p>
+ * <p>
+ * 读到 untilLsn 即停止：先读出下一条记录的 LSN 再校验，不会去解码刷盘线程可能正在写入的更新的记录。
+ * 最后一个段（活跃段）末尾的记录校验失败时同样视为数据末尾，那是正在写入、校验和还没写入的记录。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/25
+ */
+public class WalCursor implements Closeable {
+
+    private final long fromLsn;
+
+    private final long untilLsn;
+
+    private final Iterator<Path> files;
+
+    private WalReader reader;
+
+    /**
+     * @param segments 段索引快照：起始LSN -> 段文件
+     * @param fromLsn  第一条需要的记录的 LSN
+     * @param untilLsn 读到该 LSN（不含）为止
+     */
+    public WalCursor(NavigableMap<Long, Path> segments, long fromLsn, long untilLsn) {
+        this.fromLsn = fromLsn;
+        this.untilLsn = untilLsn;
+        Long floor = segments.floorKey(fromLsn);
+        this.files = (floor == null ? segments : segments.tailMap(floor, true)).values().iterator();
+    }
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 下一条 LSN 不小于 fromLsn 的记录；已读到末尾或 untilLsn 返回 null
+     * @throws IOException
+     * @throws WalCorruptedException 最后一个段之前的段中有损坏的记录
+     */
+    public PersistenceData next() throws IOException {
+        while (true) {
+            if (reader == null) {
+                if (!files.hasNext()) {
+                    return null;
+                }
+                reader = new WalReader(files.next());
+            }
+            long lsn = reader.peekLsn();
+            if (lsn >= untilLsn) {
+                return null;
+            }
+            ByteBuffer frame;
+            try {
+                frame = lsn < 0 ? null : reader.nextFrame();
+            } catch (WalCorruptedException e) {
+                if (files.hasNext()) {
+                    throw e;
+                }
+                // 活跃段末尾正在写入的记录
+                return null;
+            }
+            if (frame == null) {
+                reader.close();
+                reader = null;
+                continue;
+            }
+            if (lsn >= fromLsn) {
+                return WalRecordCodec.decodeUnchecked(frame);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.crayon.datashare.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+
+/**
+ * 日志目录中的文件命名约定
+ *
+ * <p>
+ * 日志文件：master_wal-{起始LSN}.log，起始LSN补齐20位，按文件名排序即按 LSN 排序
+ * <p>
+ * 快照文件：snapshot-{覆盖到的LSN}.snap
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/22
+ */
+public final class WalFiles {
+
+    public static final String LOG_PREFIX = "master_wal-";
+    public static final String LOG_SUFFIX = ".log";
+    public static final String SNAPSHOT_PREFIX = "snapshot-";
+    public static final String SNAPSHOT_SUFFIX = ".snap";
+    public static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * 预分配的下一个日志段
+     */
+    public static final String NEXT_SEGMENT = LOG_PREFIX + "next" + TMP_SUFFIX;
+
+    private WalFiles() {
+    }
+
+    public static Path logFile(Path dir, long startLsn) {
+        return dir.resolve(LOG_PREFIX + String.format("%020d", startLsn) + LOG_SUFFIX);
+    }
+
+    public static Path snapshotFile(Path dir, long lsn) {
+        return dir.resolve(SNAPSHOT_PREFIX + String.format("%020d", lsn) + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * 列出日志文件
+     *
+     * @param dir
+     * @return 起始LSN -> 文件，按 LSN 升序
+     * @throws IOException
+     */
+    public static TreeMap<Long, Path> listLogs(Path dir) throws IOException {
+        return list(dir, LOG_PREFIX, LOG_SUFFIX);
+    }
+
+    /**
+     * 列出快照文件
+     *
+     * @param dir
+     * @return 覆盖到的LSN -> 文件，按 LSN 升序
+     * @throws IOException
+     */
+    public static TreeMap<Long, Path> listSnapshots(Path dir) throws IOException {
+        return list(dir, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+    }
+
+    private static TreeMap<Long, Path> list(Path dir, String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignore unrecognized file: " + file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 目录 fsync，保证 rename/delete 等元数据操作持久化
+     *
+     * @param dir
+     */
+    public static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 部分平台不支持对目录 fsync，忽略
+        }
+    }
+}
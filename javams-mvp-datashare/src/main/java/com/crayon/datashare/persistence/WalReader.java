@@ -0,0 +1,160 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * WAL 顺序读取器
+ *
+ * <p>
+ * 按块读取文件并逐条解码，记录跨块时自动补读，大记录时自动扩容缓冲区。
+ * 读到长度0（预分配日志段的未写入部分）即停止，不再读取文件剩余部分。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/21
+ */
+public class WalReader implements Closeable {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * 记录帧中 LSN 的结束位置：长度(4) + 操作类型(1) + flags(1) + LSN(8)
+     */
+    private static final int LSN_END = 14;
+
+    private final FileChannel channel;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+    /**
+     * 已读入缓冲区的文件字节数
+     */
+    private long readPosition = 0L;
+
+    private boolean eof = false;
+
+    public WalReader(Path file) throws IOException {
+        this(file, 0L);
+    }
+
+    /**
+     * @param file
+     * @param offset 从文件该位置开始读取，用于跳过快照文件头
+     * @throws IOException
+     */
+    public WalReader(Path file, long offset) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.channel.position(offset);
+        this.readPosition = offset;
+        buffer.limit(0);
+    }
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 记录；没有完整记录时返回 null
+     * @throws WalCorruptedException 记录损坏
+     */
+    public PersistenceData next() throws IOException {
+        ByteBuffer frame = nextFrame();
+        return frame == null ? null : WalRecordCodec.decodeUnchecked(frame);
+    }
+
+    /**
+     * 读取下一条记录帧，只校验不解码
+     *
+     * @return 记录帧视图，内容只在下次读取前有效；没有完整记录时返回 null
+     * @throws WalCorruptedException 记录损坏
+     */
+    public ByteBuffer nextFrame() throws IOException {
+        while (true) {
+            int length = WalRecordCodec.frameLength(buffer);
+            if (length > 0) {
+                ByteBuffer frame = buffer.slice();
+                frame.limit(length);
+                buffer.position(buffer.position() + length);
+                return frame;
+            }
+            if (WalRecordCodec.isEndOfData(buffer) || eof || !fill()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 下一条记录帧的 LSN，不校验也不移动位置
+     * <p>
+     * 编码时主体先于开头的长度字段写入，长度非0时 LSN 已经写完，
+     * 正在写入的活跃段末尾校验和还没写入的记录也能读到
+     *
+     * @return 没有下一条记录（读到长度0或文件末尾）时返回 -1
+     * @throws IOException
+     */
+    public long peekLsn() throws IOException {
+        while (buffer.remaining() < LSN_END) {
+            if (WalRecordCodec.isEndOfData(buffer) || eof || !fill()) {
+                return -1;
+            }
+        }
+        if (WalRecordCodec.isEndOfData(buffer)) {
+            return -1;
+        }
+        return WalRecordCodec.lsn(buffer);
+    }
+
+    /**
+     * 当前位置之后紧跟的数据，用于读取快照尾部的结束标记与记录数
+     *
+     * @param length
+     * @return 不足 length 字节时返回 null
+     * @throws IOException
+     */
+    public ByteBuffer remaining(int length) throws IOException {
+        while (buffer.remaining() < length) {
+            if (eof || !fill()) {
+                return null;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 最后一条成功解码记录之后的文件位置，用于截断残缺尾部
+     *
+     * @return
+     */
+    public long validPosition() {
+        return readPosition - buffer.remaining();
+    }
+
+    private boolean fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        readPosition += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
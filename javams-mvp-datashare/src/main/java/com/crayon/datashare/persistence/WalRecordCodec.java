@@ -0,0 +1,284 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.OperaTypeEnum;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * WAL 二进制记录编解码
+ *
+ * <p>
+ * 记录格式（长度前缀 + 校验和）：
+ * <pre>
+ * int   bodyLength
+ * body:
+ *   byte  操作类型 code
+ *   byte  flags，bit0 表示是否带有共享数据，bit1 表示是否带有过期时间，
+ *         bit2 表示属于原子批次，bit3 表示是原子批次的第一条，bit4 表示是原子批次的最后一条
+ *   long  lsn
+ *   short keyLength + key(UTF-8)
+ *   [带共享数据时]
+ *   int   version
+ *   short idLength + id(UTF-8)，null 记为-1
+ *   byte  valueTag + int valueLength + value
+ *   [带过期时间时]
+ *   long  expireAt，毫秒时间戳
+ * int   crc32(body)
+ * </pre>
+ * bodyLength 恒大于0，读到0表示已到有效数据末尾（为预分配文件预留）。
+ * 编解码直接操作调用方复用的缓冲区，不拼接字符串。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/21
+ */
+public final class WalRecordCodec {
+
+    /**
+     * 长度字段 + 校验和字段
+     */
+    public static final int FRAME_OVERHEAD = 8;
+
+    /**
+     * 单条记录体的上限，用于识别损坏的长度字段
+     */
+    public static final int MAX_BODY_LENGTH = 64 * 1024 * 1024;
+
+    private static final byte FLAG_HAS_DATA = 1;
+
+    private static final byte FLAG_HAS_EXPIRE = 2;
+
+    private static final byte FLAG_BATCH = 4;
+
+    private static final byte FLAG_BATCH_BEGIN = 8;
+
+    private static final byte FLAG_BATCH_END = 16;
+
+    /**
+     * 记录帧中 flags 的偏移：长度(4) + 操作类型(1)
+     */
+    private static final int FLAGS_OFFSET = 5;
+
+    private WalRecordCodec() {
+    }
+
+    /**
+     * 把记录编码到缓冲区当前位置
+     * <p>
+     * 空间不足时抛出 BufferOverflowException，缓冲区位置恢复到编码前，由调用方扩容后重试。
+     * 任何编码失败（空间不足、值不可序列化等）都会先把已写入的字节清零，
+     * 映射的日志段中写入位置之后必须全为0，否则残留字节会在之后被当作损坏的记录读出
+     *
+     * @param record
+     * @param buffer
+     */
+    public static void encode(PersistenceData record, ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            buffer.putInt(0);
+            int bodyStart = buffer.position();
+            ShareData shareData = record.getShareData();
+            buffer.put(OperaTypeEnum.fromType(record.getOperaType()).getCode());
+            byte flags = 0;
+            if (shareData != null) {
+                flags |= FLAG_HAS_DATA;
+                if (shareData.getExpireAt() > 0) {
+                    flags |= FLAG_HAS_EXPIRE;
+                }
+            }
+            if (record.isBatch()) {
+                flags |= FLAG_BATCH;
+                if (record.isBatchBegin()) {
+                    flags |= FLAG_BATCH_BEGIN;
+                }
+                if (record.isBatchEnd()) {
+                    flags |= FLAG_BATCH_END;
+                }
+            }
+            buffer.put(flags);
+            buffer.putLong(record.getLsn());
+            ValueCodec.putShortString(buffer, record.getKey());
+            if (shareData != null) {
+                buffer.putInt(shareData.getVersion());
+                ValueCodec.putShortString(buffer, shareData.getId());
+                ValueCodec.putValue(buffer, shareData.getData());
+                if ((flags & FLAG_HAS_EXPIRE) != 0) {
+                    buffer.putLong(shareData.getExpireAt());
+                }
+            }
+            int bodyEnd = buffer.position();
+            buffer.putInt(start, bodyEnd - bodyStart);
+            buffer.putInt(crc32(buffer, bodyStart, bodyEnd));
+        } catch (RuntimeException e) {
+            // 相对写入失败时不移动位置，当前位置即写到的最远处；开头的长度字段只在主体写完后才写入
+            for (int i = start, end = buffer.position(); i < end; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.position(start);
+            throw e;
+        }
+    }
+
+    /**
+     * 从缓冲区当前位置解码一条记录
+     *
+     * @param buffer
+     * @return 记录；剩余字节不足一条完整记录或读到长度0时返回 null，缓冲区位置不变
+     * @throws WalCorruptedException 长度非法或校验和不匹配
+     */
+    public static PersistenceData decode(ByteBuffer buffer) {
+        if (frameLength(buffer) == 0) {
+            return null;
+        }
+        return decodeUnchecked(buffer);
+    }
+
+    /**
+     * 校验缓冲区当前位置的记录帧，不移动位置
+     *
+     * @param buffer
+     * @return 完整记录帧的总长度（含长度与校验和字段）；不足一条完整记录或读到长度0时返回0
+     * @throws WalCorruptedException 长度非法或校验和不匹配
+     */
+    public static int frameLength(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < FRAME_OVERHEAD) {
+            return 0;
+        }
+        int bodyLength = buffer.getInt(start);
+        if (bodyLength == 0) {
+            return 0;
+        }
+        if (bodyLength < 0 || bodyLength > MAX_BODY_LENGTH) {
+            throw new WalCorruptedException("Illegal WAL record length " + bodyLength + " at " + start);
+        }
+        if (buffer.remaining() < bodyLength + FRAME_OVERHEAD) {
+            return 0;
+        }
+        int bodyStart = start + 4;
+        int bodyEnd = bodyStart + bodyLength;
+        if (buffer.getInt(bodyEnd) != crc32(buffer, bodyStart, bodyEnd)) {
+            throw new WalCorruptedException("WAL record checksum mismatch at " + start);
+        }
+        return bodyLength + FRAME_OVERHEAD;
+    }
+
+    /**
+     * 当前位置是否为数据末尾标记（长度0）
+     *
+     * @param buffer
+     * @return
+     */
+    public static boolean isEndOfData(ByteBuffer buffer) {
+        return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == 0;
+    }
+
+    /**
+     * 解码已通过 {@link #frameLength(ByteBuffer)} 校验的记录帧，不再计算校验和
+     *
+     * @param buffer
+     * @return
+     */
+    public static PersistenceData decodeUnchecked(ByteBuffer buffer) {
+        int start = buffer.position();
+        int bodyEnd = start + 4 + buffer.getInt(start);
+        try {
+            buffer.position(start + 4);
+            OperaTypeEnum operaType = OperaTypeEnum.fromCode(buffer.get());
+            byte flags = buffer.get();
+            long lsn = buffer.getLong();
+            String key = ValueCodec.getShortString(buffer);
+            ShareData shareData = null;
+            if ((flags & FLAG_HAS_DATA) != 0) {
+                int version = buffer.getInt();
+                String id = ValueCodec.getShortString(buffer);
+                Object data = ValueCodec.getValue(buffer);
+                long expireAt = (flags & FLAG_HAS_EXPIRE) != 0 ? buffer.getLong() : 0L;
+                shareData = new ShareData(id, data, version, lsn, expireAt);
+            }
+            buffer.position(bodyEnd + 4);
+            return new PersistenceData.Builder()
+                    .operaType(operaType.getType())
+                    .key(key)
+                    .shareData(shareData)
+                    .lsn(lsn)
+                    .batch((flags & FLAG_BATCH) != 0, (flags & FLAG_BATCH_BEGIN) != 0,
+                            (flags & FLAG_BATCH_END) != 0)
+                    .build();
+        } catch (RuntimeException e) {
+            buffer.position(start);
+            throw new WalCorruptedException("Malformed WAL record at " + start, e);
+        }
+    }
+
+    /**
+     * 直接读取记录帧中的 lsn，不解码
+     *
+     * @param frame 位置在记录帧起始处
+     * @return
+     */
+    public static long lsn(ByteBuffer frame) {
+        // 长度(4) + 操作类型(1) + flags(1)
+        return frame.getLong(frame.position() + 6);
+    }
+
+    /**
+     * 记录帧是否属于原子批次，不解码
+     *
+     * @param frame 位置在记录帧起始处
+     * @return
+     */
+    public static boolean isBatch(ByteBuffer frame) {
+        return (frame.get(frame.position() + FLAGS_OFFSET) & FLAG_BATCH) != 0;
+    }
+
+    /**
+     * 记录帧是否为原子批次的第一条，不解码
+     *
+     * @param frame 位置在记录帧起始处
+     * @return
+     */
+    public static boolean isBatchBegin(ByteBuffer frame) {
+        return (frame.get(frame.position() + FLAGS_OFFSET) & FLAG_BATCH_BEGIN) != 0;
+    }
+
+    /**
+     * 记录帧是否为原子批次的最后一条，不解码
+     *
+     * @param frame 位置在记录帧起始处
+     * @return
+     */
+    public static boolean isBatchEnd(ByteBuffer frame) {
+        return (frame.get(frame.position() + FLAGS_OFFSET) & FLAG_BATCH_END) != 0;
+    }
+
+    /**
+     * 直接对记录帧中 key 的原始字节求哈希，不解码字符串，用于恢复时按 key 分区
+     *
+     * @param frame 位置在记录帧起始处
+     * @return
+     */
+    public static int keyHash(ByteBuffer frame) {
+        // 长度(4) + 操作类型(1) + flags(1) + lsn(8)
+        int keyStart = frame.position() + 14;
+        int keyLength = frame.getShort(keyStart);
+        int hash = 1;
+        for (int i = keyStart + 2, end = keyStart + 2 + keyLength; i < end; i++) {
+            hash = 31 * hash + frame.get(i);
+        }
+        return hash;
+    }
+
+    private static int crc32(ByteBuffer buffer, int from, int to) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(to);
+        body.position(from);
+        CRC32 crc32 = new CRC32();
+        crc32.update(body);
+        return (int) crc32.getValue();
+    }
+}
@@ -0,0 +1,408 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.OperaTypeEnum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 启动恢复：加载最新快照并重放其后的日志
+ *
+ * <p>
+ * 并行重放：读取线程顺序读取文件、校验记录帧（需要顺序读取才能确定记录边界与残缺尾部），
+ * 按 key 原始字节的哈希把记录帧复制到各分区的数据块，分区线程解码并写入内存。
+ * 同一个 key 总是落在同一个分区，分区内按日志顺序应用，因此不同分区之间无需同步。
+ * </p>
+ * <p>
+ * 应用规则：只有 lsn 大于内存中已有数据的记录才生效，快照（模糊快照）与日志重放因此是幂等的。
+ * </p>
+ * <p>
+ * 残缺尾部：最后一个日志段末尾不完整或校验失败的记录视为崩溃时未写完，清零后继续；
+ * 其他位置的损坏无法安全跳过，直接失败。
+ * </p>
+ * <p>
+ * 原子批次：批次内的记录先暂存，读到批次最后一条才一起分发；
+ * 批次没有读到最后一条就遇到其他记录或日志结束，说明崩溃时只写了一部分，整批丢弃。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/23
+ */
+public final class WalRecovery {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final int QUEUE_CAPACITY = 4;
+
+    /**
+     * 分区队列的结束标记
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private WalRecovery() {
+    }
+
+    /**
+     * 恢复数据到 target
+     *
+     * @param walDir
+     * @param partitions 并行重放的分区数
+     * @param target
+     * @return
+     * @throws IOException
+     */
+    public static Result recover(Path walDir, int partitions, ConcurrentMap<String, ShareData> target) throws IOException {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        ExecutorService executor = Executors.newFixedThreadPool(partitions, r -> {
+            Thread thread = new Thread(r, "datashare-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Partition> partitionList = new ArrayList<>(partitions);
+        List<Future<?>> futures = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            Partition partition = new Partition(target);
+            partitionList.add(partition);
+            futures.add(executor.submit(partition));
+        }
+        try {
+            Map.Entry<Long, Path> snapshot = WalFiles.listSnapshots(walDir).lastEntry();
+            if (snapshot != null) {
+                result.snapshotLsn = snapshot.getKey();
+                result.lastLsn = result.snapshotLsn;
+                loadSnapshot(snapshot.getValue(), result, partitionList);
+            }
+            TreeMap<Long, Path> logs = WalFiles.listLogs(walDir);
+            // 批次可能跨越日志段
+            List<ByteBuffer> pendingBatch = new ArrayList<>();
+            for (Map.Entry<Long, Path> log : logs.entrySet()) {
+                boolean last = log.getKey().equals(logs.lastKey());
+                replayLog(log.getValue(), last, result, partitionList, pendingBatch);
+                result.lastLsn = Math.max(result.lastLsn, log.getKey() - 1);
+            }
+            discardTornBatch(pendingBatch, result);
+        } finally {
+            for (Partition partition : partitionList) {
+                partition.finish();
+            }
+            executor.shutdown();
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Recovery interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error replaying WAL", e.getCause());
+            }
+        }
+        result.elapsedMs = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * 加载快照
+     * <p>
+     * 模糊快照中数据自身的 lsn 可能大于边界，而非同步刷盘模式下崩溃可能丢失包含这些 lsn 的日志尾部，
+     * 因此 lastLsn 还要覆盖快照记录的 lsn，否则新写入会分配到更小的 lsn，下次恢复时被快照中的旧值覆盖
+     *
+     * @param file
+     * @param result
+     * @param partitions
+     * @throws IOException
+     */
+    private static void loadSnapshot(Path file, Result result, List<Partition> partitions) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满文件头
+            }
+            header.flip();
+            if (header.remaining() < 16 || header.getLong() != SnapshotFile.MAGIC) {
+                throw new WalCorruptedException("Illegal snapshot header: " + file);
+            }
+        }
+        long count = 0;
+        try (WalReader reader = new WalReader(file, 16)) {
+            ByteBuffer frame;
+            while ((frame = reader.nextFrame()) != null) {
+                result.lastLsn = Math.max(result.lastLsn, WalRecordCodec.lsn(frame));
+                dispatch(frame, partitions);
+                count++;
+            }
+            ByteBuffer trailer = reader.remaining(12);
+            if (trailer == null || trailer.getInt() != 0 || trailer.getLong() != count) {
+                throw new WalCorruptedException("Incomplete snapshot: " + file);
+            }
+        }
+        result.snapshotRecords = count;
+    }
+
+    private static void replayLog(Path file, boolean last, Result result, List<Partition> partitions,
+                                  List<ByteBuffer> pendingBatch) throws IOException {
+        long validPosition;
+        try (WalReader reader = new WalReader(file)) {
+            try {
+                ByteBuffer frame;
+                while ((frame = reader.nextFrame()) != null) {
+                    long lsn = WalRecordCodec.lsn(frame);
+                    result.lastLsn = Math.max(result.lastLsn, lsn);
+                    if (lsn <= result.snapshotLsn) {
+                        continue;
+                    }
+                    if (!WalRecordCodec.isBatch(frame)) {
+                        discardTornBatch(pendingBatch, result);
+                        dispatch(frame, partitions);
+                        result.logRecords++;
+                        continue;
+                    }
+                    if (WalRecordCodec.isBatchBegin(frame)) {
+                        discardTornBatch(pendingBatch, result);
+                    } else if (pendingBatch.isEmpty()) {
+                        // 批次开头已被丢弃
+                        result.discardedRecords++;
+                        continue;
+                    }
+                    // 帧视图在下次读取后失效，需要复制
+                    ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+                    copy.put(frame).flip();
+                    pendingBatch.add(copy);
+                    if (WalRecordCodec.isBatchEnd(copy)) {
+                        for (ByteBuffer batchFrame : pendingBatch) {
+                            dispatch(batchFrame, partitions);
+                        }
+                        result.logRecords += pendingBatch.size();
+                        pendingBatch.clear();
+                    }
+                }
+            } catch (WalCorruptedException e) {
+                if (!last) {
+                    throw e;
+                }
+                System.err.println("Torn WAL tail in " + file.getFileName() + ": " + e.getMessage());
+            }
+            validPosition = reader.validPosition();
+        }
+        if (last) {
+            result.clearedBytes += clearTail(file, validPosition);
+        }
+    }
+
+    /**
+     * 把最后一个日志段有效数据之后的残留字节清零
+     * <p>
+     * 预分配的段不能截断，写入位置之后必须全为0：映射内存的页落盘顺序不确定，
+     * 残缺记录之后可能还有已落盘的旧记录，不清零的话新记录写完后它们会被当作有效记录读出
+     *
+     * @param file
+     * @param from
+     * @return 清零的字节数
+     * @throws IOException
+     */
+    private static long clearTail(Path file, long from) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long lastNonZero = -1;
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            long position = from;
+            while (channel.read(chunk, position) > 0) {
+                chunk.flip();
+                for (int i = 0, n = chunk.limit(); i < n; i++) {
+                    if (chunk.get(i) != 0) {
+                        lastNonZero = position + i;
+                    }
+                }
+                position += chunk.limit();
+                chunk.clear();
+            }
+            if (lastNonZero < 0) {
+                return 0;
+            }
+            ByteBuffer zeros = ByteBuffer.allocate(CHUNK_SIZE);
+            for (position = from; position <= lastNonZero; ) {
+                zeros.clear();
+                zeros.limit((int) Math.min(CHUNK_SIZE, lastNonZero + 1 - position));
+                position += channel.write(zeros, position);
+            }
+            channel.force(true);
+            return lastNonZero + 1 - from;
+        }
+    }
+
+    private static void discardTornBatch(List<ByteBuffer> pendingBatch, Result result) {
+        if (!pendingBatch.isEmpty()) {
+            System.err.println("Discarding incomplete WAL batch of " + pendingBatch.size() + " records");
+            result.discardedRecords += pendingBatch.size();
+            pendingBatch.clear();
+        }
+    }
+
+    private static void dispatch(ByteBuffer frame, List<Partition> partitions) {
+        int hash = WalRecordCodec.keyHash(frame);
+        partitions.get((hash & Integer.MAX_VALUE) % partitions.size()).add(frame);
+    }
+
+    /**
+     * 应用一条日志记录
+     *
+     * @param target
+     * @param record
+     */
+    static void apply(ConcurrentMap<String, ShareData> target, PersistenceData record) {
+        ShareData existing = target.get(record.getKey());
+        if (existing != null && existing.getLsn() >= record.getLsn()) {
+            return;
+        }
+        if (OperaTypeEnum.SET.getType().equals(record.getOperaType())) {
+            target.put(record.getKey(), record.getShareData());
+        } else if (OperaTypeEnum.DELETE.getType().equals(record.getOperaType())
+                || OperaTypeEnum.EVICT.getType().equals(record.getOperaType())
+                || OperaTypeEnum.EXPIRE.getType().equals(record.getOperaType())
+                || OperaTypeEnum.MIGRATE.getType().equals(record.getOperaType())) {
+            target.remove(record.getKey());
+        }
+    }
+
+    /**
+     * 重放分区：读取线程把记录帧攒成数据块，分区线程逐块解码应用
+     */
+    private static class Partition implements Runnable {
+
+        private final ConcurrentMap<String, ShareData> target;
+
+        private final BlockingQueue<ByteBuffer> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        /**
+         * 读取线程正在填充的数据块
+         */
+        private ByteBuffer filling = ByteBuffer.allocate(CHUNK_SIZE);
+
+        Partition(ConcurrentMap<String, ShareData> target) {
+            this.target = target;
+        }
+
+        void add(ByteBuffer frame) {
+            if (filling.remaining() < frame.remaining()) {
+                publish();
+                filling = ByteBuffer.allocate(Math.max(CHUNK_SIZE, frame.remaining()));
+            }
+            filling.put(frame);
+        }
+
+        void finish() {
+            publish();
+            put(END);
+        }
+
+        private void publish() {
+            if (filling.position() == 0) {
+                return;
+            }
+            filling.flip();
+            put(filling);
+            filling = ByteBuffer.allocate(CHUNK_SIZE);
+        }
+
+        private void put(ByteBuffer chunk) {
+            try {
+                chunks.put(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Recovery interrupted", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            RuntimeException failure = null;
+            try {
+                ByteBuffer chunk;
+                while ((chunk = chunks.take()) != END) {
+                    // 出错后继续取出数据块直到结束标记，避免读取线程阻塞在队列上
+                    while (failure == null && chunk.hasRemaining()) {
+                        try {
+                            apply(target, WalRecordCodec.decodeUnchecked(chunk));
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * 恢复结果
+     */
+    public static class Result {
+
+        private long snapshotLsn;
+
+        private long snapshotRecords;
+
+        private long logRecords;
+
+        private long lastLsn;
+
+        private long clearedBytes;
+
+        /**
+         * 崩溃时没有写完的原子批次中被丢弃的记录数
+         */
+        private long discardedRecords;
+
+        private long elapsedMs;
+
+        public long getSnapshotLsn() {
+            return snapshotLsn;
+        }
+
+        public long getLastLsn() {
+            return lastLsn;
+        }
+
+        public long getRecords() {
+            return snapshotRecords + logRecords;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public long getRecordsPerSecond() {
+            return getRecords() * 1000 / Math.max(1, elapsedMs);
+        }
+
+        @Override
+        public String toString() {
+            return "Recovered " + getRecords() + " records (snapshot " + snapshotRecords
+                    + ", log " + logRecords + ") up to lsn " + lastLsn
+                    + " in " + elapsedMs + " ms, " + getRecordsPerSecond() + " records/s"
+                    + (clearedBytes > 0 ? ", cleared " + clearedBytes + " torn bytes" : "")
+                    + (discardedRecords > 0 ? ", discarded " + discardedRecords + " records of incomplete batches" : "");
+        }
+    }
+}
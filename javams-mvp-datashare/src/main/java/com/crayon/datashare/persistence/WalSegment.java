@@ -0,0 +1,118 @@
+package com.crayon.datashare.persistence;
+
+import com.crayon.datashare.model.PersistenceData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 内存映射的日志段
+ *
+ * <p>
+ * 段文件预先分配为固定大小并整体映射，记录直接编码进映射内存，
+ * 不经过用户态缓冲区与 write 系统调用；fsync 通过 {@link MappedByteBuffer#force()} 完成。
+ * 有效数据之后全部为0，读到长度0即为数据末尾。
+ * </p>
+ * <p>
+ * Java 8 没有公开的解除映射 API，段关闭或删除后映射由 GC 回收。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/25
+ */
+public class WalSegment implements Closeable {
+
+    private final long startLsn;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * @param path
+     * @param startLsn
+     * @param writePosition 已有有效数据的末尾
+     * @throws IOException
+     */
+    public WalSegment(Path path, long startLsn, int writePosition) throws IOException {
+        this.path = path;
+        this.startLsn = startLsn;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        this.buffer.position(writePosition);
+    }
+
+    /**
+     * 把记录直接编码进映射内存
+     *
+     * @param record
+     * @return 剩余空间不足时返回 false，位置不变
+     * @throws RuntimeException 记录无法编码（如值不可序列化），位置不变，编码到一半的字节已由编码器清零
+     */
+    public boolean append(PersistenceData record) {
+        // 至少保留4字节的0作为数据末尾标记
+        if (buffer.remaining() <= 4) {
+            return false;
+        }
+        int start = buffer.position();
+        ByteBuffer view = buffer.duplicate();
+        view.limit(buffer.limit() - 4);
+        try {
+            WalRecordCodec.encode(record, view);
+        } catch (BufferOverflowException e) {
+            // 编码到一半的字节已由 WalRecordCodec.encode 清零
+            return false;
+        }
+        buffer.position(view.position());
+        return buffer.position() > start;
+    }
+
+    /**
+     * 丢弃 position 之后写入的数据：清零并回退写入位置，之后需要 {@link #force()}
+     * <p>
+     * 映射一旦建立就与文件通道无关，段关闭（封存）后仍然可以调用
+     *
+     * @param position 不大于当前写入位置
+     */
+    public void truncate(int position) {
+        for (int i = position; i < buffer.position(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.position(position);
+    }
+
+    public void force() {
+        buffer.force();
+    }
+
+    public long getStartLsn() {
+        return startLsn;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    public boolean isEmpty() {
+        return buffer.position() == 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,129 @@
+package com.crayon.datashare.raft;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的消息传输，用于测试
+ *
+ * <p>
+ * 每个节点一个投递线程，消息按发送顺序依次投递，可以模拟单向网络延迟；
+ * 隔离一个节点后发给它和它发出的消息都被丢弃，模拟网络分区或宕机。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public class InMemoryRaftTransport implements RaftTransport, Closeable {
+
+    private final long delayMicros;
+
+    private final ConcurrentHashMap<String, Inbox> inboxes = new ConcurrentHashMap<>();
+
+    private final Set<String> isolated = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder sentCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private static final class Inbox {
+
+        private final Consumer<RaftMessage> consumer;
+
+        private final ScheduledExecutorService executor;
+
+        Inbox(String nodeId, Consumer<RaftMessage> consumer) {
+            this.consumer = consumer;
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "datashare-raft-inbox-" + nodeId);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public InMemoryRaftTransport() {
+        this(0L);
+    }
+
+    /**
+     * @param delayMicros 单向延迟，同样的延迟下消息仍按发送顺序到达
+     */
+    public InMemoryRaftTransport(long delayMicros) {
+        this.delayMicros = delayMicros;
+    }
+
+    @Override
+    public void register(String nodeId, Consumer<RaftMessage> inbox) {
+        inboxes.put(nodeId, new Inbox(nodeId, inbox));
+    }
+
+    @Override
+    public void unregister(String nodeId) {
+        Inbox inbox = inboxes.remove(nodeId);
+        if (inbox != null) {
+            inbox.executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void send(String to, RaftMessage message) {
+        Inbox inbox = inboxes.get(to);
+        if (inbox == null || isolated.contains(to) || isolated.contains(message.getFrom())) {
+            droppedCount.increment();
+            return;
+        }
+        sentCount.increment();
+        Runnable delivery = () -> {
+            // 投递时再检查一次，延迟期间被隔离的节点收不到
+            if (!isolated.contains(to) && !isolated.contains(message.getFrom())) {
+                inbox.consumer.accept(message);
+            }
+        };
+        try {
+            if (delayMicros > 0) {
+                inbox.executor.schedule(delivery, delayMicros, TimeUnit.MICROSECONDS);
+            } else {
+                inbox.executor.execute(delivery);
+            }
+        } catch (RuntimeException e) {
+            // 节点已注销
+            droppedCount.increment();
+        }
+    }
+
+    /**
+     * 隔离节点，之后发给它和它发出的消息都被丢弃
+     *
+     * @param nodeId
+     */
+    public void isolate(String nodeId) {
+        isolated.add(nodeId);
+    }
+
+    public void heal(String nodeId) {
+        isolated.remove(nodeId);
+    }
+
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    @Override
+    public void close() {
+        for (String nodeId : inboxes.keySet()) {
+            unregister(nodeId);
+        }
+    }
+}
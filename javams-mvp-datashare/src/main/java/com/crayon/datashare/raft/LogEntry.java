@@ -0,0 +1,29 @@
+package com.crayon.datashare.raft;
+
+import lombok.Value;
+
+/**
+ * Raft 日志条目
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+@Value
+public class LogEntry {
+
+    /**
+     * 日志下标，从1开始连续分配
+     */
+    long index;
+
+    /**
+     * 追加该条目的 Leader 的任期
+     */
+    long term;
+
+    /**
+     * 新 Leader 当选后追加的空条目为 null，用于提交之前任期的条目
+     */
+    RaftCommand command;
+}
@@ -0,0 +1,32 @@
+package com.crayon.datashare.raft;
+
+/**
+ * 写入发到了非 Leader 节点，或等待提交期间失去了 Leader 身份，携带已知的 Leader，客户端换到该节点后重试
+ *
+ * <p>
+ * 等待提交期间失去 Leader 身份时写入的结果未知：条目可能已经复制到多数派、之后由新 Leader 提交。
+ * 重试幂等的写入（set、delete）没有问题；重试 CAS 时可能因为上一次已经成功而版本不匹配。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public class NotLeaderException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 已知的 Leader，选举期间为 null
+     */
+    private final String leaderId;
+
+    public NotLeaderException(String nodeId, String leaderId) {
+        super("Node " + nodeId + " is not the leader, current leader " + leaderId);
+        this.leaderId = leaderId;
+    }
+
+    public String getLeaderId() {
+        return leaderId;
+    }
+}
@@ -0,0 +1,130 @@
+package com.crayon.datashare.raft;
+
+import com.crayon.datashare.model.ShareData;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Raft 集群客户端
+ *
+ * <p>
+ * 缓存 Leader，请求直接发给它。收到 {@link NotLeaderException} 时换到异常携带的 Leader 重试；
+ * 选举期间没有 Leader，依次尝试各节点直到选出新 Leader 或超过重试时间。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public class RaftClient {
+
+    /**
+     * 选举期间两次尝试之间的等待时间
+     */
+    private static final long RETRY_BACKOFF_MS = 10;
+
+    private final Map<String, RaftNode> nodes;
+
+    private final List<String> nodeIds;
+
+    private final long retryTimeoutMs;
+
+    private volatile String leader;
+
+    private final LongAdder redirectCount = new LongAdder();
+
+    /**
+     * @param nodes          集群所有节点
+     * @param retryTimeoutMs 找不到 Leader 时最多重试的时间
+     */
+    public RaftClient(Map<String, RaftNode> nodes, long retryTimeoutMs) {
+        this.nodes = new LinkedHashMap<>(nodes);
+        this.nodeIds = new ArrayList<>(nodes.keySet());
+        this.retryTimeoutMs = retryTimeoutMs;
+        this.leader = nodeIds.get(0);
+    }
+
+    /**
+     * 读 Leader
+     *
+     * @param key
+     * @return
+     */
+    public ShareData get(String key) {
+        return execute(node -> {
+            if (!node.isLeader()) {
+                throw new NotLeaderException(node.getNodeId(), node.getLeaderId());
+            }
+            return node.get(key);
+        });
+    }
+
+    public boolean set(String key, ShareData value) {
+        return execute(node -> node.set(key, value));
+    }
+
+    public boolean set(String key, ShareData value, long ttlMs) {
+        return execute(node -> node.set(key, value, ttlMs));
+    }
+
+    public boolean compareAndSet(String key, int expectedVersion, ShareData value) {
+        return execute(node -> node.compareAndSet(key, expectedVersion, value));
+    }
+
+    public boolean setIfAbsent(String key, ShareData value) {
+        return execute(node -> node.setIfAbsent(key, value));
+    }
+
+    public boolean delete(String key, int expectedVersion) {
+        return execute(node -> node.delete(key, expectedVersion));
+    }
+
+    private <T> T execute(Function<RaftNode, T> request) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryTimeoutMs);
+        String target = leader;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                T result = request.apply(nodes.get(target));
+                leader = target;
+                return result;
+            } catch (NotLeaderException e) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw e;
+                }
+                redirectCount.increment();
+                String hint = e.getLeaderId();
+                if (hint != null && !hint.equals(target) && nodes.containsKey(hint)) {
+                    target = hint;
+                } else {
+                    // 选举中，轮流尝试其他节点
+                    target = nodeIds.get((nodeIds.indexOf(target) + 1) % nodeIds.size());
+                }
+                if (attempt % nodeIds.size() == nodeIds.size() - 1) {
+                    // Follower 在选出新 Leader 之前仍指向已故障的旧 Leader，每轮之间等待一下
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_BACKOFF_MS));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 当前缓存的 Leader
+     */
+    public String getLeader() {
+        return leader;
+    }
+
+    /**
+     * @return 因请求发到非 Leader 节点而重试的次数
+     */
+    public long getRedirectCount() {
+        return redirectCount.sum();
+    }
+}
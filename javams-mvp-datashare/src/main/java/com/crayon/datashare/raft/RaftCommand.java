@@ -0,0 +1,40 @@
+package com.crayon.datashare.raft;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.OperaTypeEnum;
+import lombok.Value;
+
+/**
+ * 日志条目中的写入命令，各节点按日志顺序对自己的状态机重放
+ *
+ * <p>
+ * 版本检查与版本分配在重放时进行，各节点按同样的顺序重放得到同样的版本；
+ * 过期时间在 Leader 追加日志前由 TTL 算成时间戳，重放时间不同也不影响结果。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+@Value
+public class RaftCommand {
+
+    /**
+     * SET 或 DELETE
+     */
+    OperaTypeEnum operaType;
+
+    String key;
+
+    int expectedVersion;
+
+    /**
+     * DELETE 时为 null
+     */
+    ShareData value;
+
+    /**
+     * 过期时间，毫秒时间戳，0表示永不过期
+     */
+    long expireAt;
+}
@@ -0,0 +1,121 @@
+package com.crayon.datashare.raft;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Raft 日志，保存在内存中，由节点的锁保护
+ *
+ * <p>
+ * 所有节点都已复制到的前缀可以丢弃（compact），丢弃后只记住最后一个被丢弃条目的下标与任期，
+ * 用于之后的一致性检查。条目累积到一定数量后才整体丢弃，分摊数组移动的开销。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+class RaftLog {
+
+    /**
+     * 至少累积这么多可丢弃的条目才丢弃一次
+     */
+    private static final int COMPACT_MIN_ENTRIES = 4096;
+
+    private final ArrayList<LogEntry> entries = new ArrayList<>();
+
+    /**
+     * 最后一个被丢弃条目的下标，entries 的第一个条目下标为 baseIndex + 1
+     */
+    private long baseIndex;
+
+    private long baseTerm;
+
+    long lastIndex() {
+        return baseIndex + entries.size();
+    }
+
+    long lastTerm() {
+        return entries.isEmpty() ? baseTerm : entries.get(entries.size() - 1).getTerm();
+    }
+
+    long baseIndex() {
+        return baseIndex;
+    }
+
+    /**
+     * @param index
+     * @return 条目的任期，下标为0时为0，已丢弃或不存在时为 -1
+     */
+    long termAt(long index) {
+        if (index == baseIndex) {
+            return baseTerm;
+        }
+        if (index < baseIndex || index > lastIndex()) {
+            return -1;
+        }
+        return entries.get((int) (index - baseIndex - 1)).getTerm();
+    }
+
+    void append(LogEntry entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * 删除 index 及之后的条目，与 Leader 冲突时调用
+     *
+     * @param index 大于 baseIndex
+     */
+    void truncateFrom(long index) {
+        entries.subList((int) (index - baseIndex - 1), entries.size()).clear();
+    }
+
+    /**
+     * @param from  起始下标，大于 baseIndex
+     * @param count 最多返回的条目数
+     * @return 条目是不可变对象，返回的列表是副本，可以在锁外使用
+     */
+    List<LogEntry> slice(long from, int count) {
+        int start = (int) (from - baseIndex - 1);
+        int end = (int) Math.min(entries.size(), (long) start + count);
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(entries.subList(start, end));
+    }
+
+    /**
+     * @param term
+     * @param index 该任期的某个条目
+     * @return 该任期在 index 之前（含）的第一个条目下标，冲突时让 Leader 一次跳过整个任期
+     */
+    long firstIndexOfTerm(long term, long index) {
+        while (index - 1 > baseIndex && termAt(index - 1) == term) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * 丢弃 index 及之前的条目
+     *
+     * @param index
+     */
+    void compactTo(long index) {
+        if (index - baseIndex < COMPACT_MIN_ENTRIES || index > lastIndex()) {
+            return;
+        }
+        long term = termAt(index);
+        entries.subList(0, (int) (index - baseIndex)).clear();
+        baseIndex = index;
+        baseTerm = term;
+    }
+
+    /**
+     * @return 内存中的条目数
+     */
+    int size() {
+        return entries.size();
+    }
+}
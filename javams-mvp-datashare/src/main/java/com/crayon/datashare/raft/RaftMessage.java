@@ -0,0 +1,94 @@
+package com.crayon.datashare.raft;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 节点之间的 Raft 消息
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public interface RaftMessage {
+
+    /**
+     * @return 发送者的任期
+     */
+    long getTerm();
+
+    /**
+     * @return 发送者
+     */
+    String getFrom();
+
+    /**
+     * 请求投票
+     */
+    @Value
+    class VoteRequest implements RaftMessage {
+
+        long term;
+
+        String from;
+
+        long lastLogIndex;
+
+        long lastLogTerm;
+    }
+
+    @Value
+    class VoteResponse implements RaftMessage {
+
+        long term;
+
+        String from;
+
+        boolean granted;
+    }
+
+    /**
+     * 追加日志，entries 为空时是心跳
+     */
+    @Value
+    class AppendRequest implements RaftMessage {
+
+        long term;
+
+        String from;
+
+        long prevLogIndex;
+
+        long prevLogTerm;
+
+        List<LogEntry> entries;
+
+        long leaderCommit;
+
+        /**
+         * 所有节点都已复制到的下标，之前的条目不会再被需要，各节点可以丢弃
+         */
+        long compactIndex;
+    }
+
+    @Value
+    class AppendResponse implements RaftMessage {
+
+        long term;
+
+        String from;
+
+        boolean success;
+
+        /**
+         * 成功时为与 Leader 一致的最后下标；失败时为 Leader 下次应该发送的下标
+         */
+        long index;
+
+        /**
+         * 请求携带的条目数，为0时是心跳的响应，不占用流水线
+         */
+        int entryCount;
+    }
+}
@@ -0,0 +1,821 @@
+package com.crayon.datashare.raft;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.OperaTypeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Raft 节点
+ *
+ * <p>
+ * 每个节点持有一个 {@link ShareDataServer} 作为状态机（不配置从节点，Follower 就是副本），
+ * 写入先作为日志条目追加到 Leader 的 Raft 日志，复制到多数派后提交，再由各节点的应用线程按日志顺序重放，
+ * Leader 重放后把结果返回给写入者。已返回成功的写入在多数派上，任意多数派中都至少有一个节点有它，
+ * 只有日志不比多数派旧的节点才能当选（选举限制），Leader 故障后新 Leader 一定有所有已确认的写入。
+ * </p>
+ * <p>
+ * 复制：与 WAL 的组提交一样，写入者只把条目追加到 Leader 日志，不逐条发送。
+ * 对每个 Follower 最多同时有 {@link ShareDataConfig#getRaftMaxInflight()} 个未响应的 AppendEntries（流水线），
+ * 不等上一个响应就发送下一批；流水线满时新条目在日志中累积，收到响应腾出位置后一次发送
+ * （最多 {@link ShareDataConfig#getRaftMaxBatchEntries()} 条）。写入越多批次越大，每条目的消息数与往返等待随之下降。
+ * 乐观地推进 nextIndex，Follower 一致性检查失败时按其返回的下标回退重发；超过两个心跳间隔没有响应时按 matchIndex 重发。
+ * </p>
+ * <p>
+ * 选举：Follower 在随机的选举超时内没有收到 Leader 的消息时成为 Candidate 发起选举。
+ * Leader 与最近一个选举超时内收到过 Leader 消息的节点不理会投票请求，少数节点网络抖动发起的选举不会选出新 Leader；
+ * 没有实现 Pre-Vote，被隔离期间任期增长的节点重新连上后仍会让 Leader 因更大的任期退位一次。
+ * Leader 在一个选举超时内收不到多数派的响应时退位，被隔离的旧 Leader 不会一直接受注定无法提交的写入。
+ * </p>
+ * <p>
+ * Raft 日志与任期、投票只在内存中：容忍少数节点宕机或隔离（fail-stop），节点重启后应以新节点身份加入。
+ * 状态机自己的 WAL 照常写入。TTL 过期与容量淘汰由各节点的状态机按本地时钟执行，不经过日志。
+ * 所有节点都已复制的日志前缀会被丢弃，有节点宕机期间 Leader 的日志会一直增长。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public class RaftNode implements Closeable {
+
+    /**
+     * 定时检查选举超时、发送心跳的间隔
+     */
+    private static final long TICK_MS = 10;
+
+    /**
+     * 应用线程一次最多取出的已提交条目数
+     */
+    private static final int MAX_APPLY_BATCH = 1024;
+
+    private final String nodeId;
+
+    /**
+     * 除自己以外的成员
+     */
+    private final List<String> peers;
+
+    /**
+     * 多数派的节点数
+     */
+    private final int quorum;
+
+    private final RaftTransport transport;
+
+    private final ShareDataServer stateMachine;
+
+    private final long electionTimeoutMs;
+
+    private final long heartbeatMs;
+
+    private final int maxBatchEntries;
+
+    private final int maxInflight;
+
+    private final long commitTimeoutMs;
+
+    /**
+     * 保护以下所有状态，收件箱线程、定时线程、写入者与应用线程都在这把锁内修改状态
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * commitIndex 前进时唤醒应用线程
+     */
+    private final Condition committed = lock.newCondition();
+
+    private volatile RaftRoleEnum role = RaftRoleEnum.FOLLOWER;
+
+    private volatile long currentTerm;
+
+    private String votedFor;
+
+    private volatile String leaderId;
+
+    private final RaftLog log = new RaftLog();
+
+    private volatile long commitIndex;
+
+    private volatile long lastApplied;
+
+    /**
+     * Leader 通知的可丢弃下标
+     */
+    private long compactIndex;
+
+    /**
+     * 到该时间还没有收到 Leader 的消息就发起选举
+     */
+    private long electionDeadline;
+
+    /**
+     * 最近一次收到当前 Leader 消息的时间
+     */
+    private long lastLeaderContact;
+
+    private long lastHeartbeatAt;
+
+    private final Set<String> votes = new HashSet<>();
+
+    /**
+     * Leader 上每个 Follower 的复制进度
+     */
+    private final Map<String, Progress> progress = new HashMap<>();
+
+    /**
+     * Leader 上等待提交的写入：日志下标 -> 写入者
+     */
+    private final Map<Long, Proposal> proposals = new HashMap<>();
+
+    private final ScheduledExecutorService timer;
+
+    private final Thread applier;
+
+    private volatile boolean closed = false;
+
+    private final LongAdder appendRequestCount = new LongAdder();
+
+    private final LongAdder appendedEntryCount = new LongAdder();
+
+    private final LongAdder electionCount = new LongAdder();
+
+    private static final class Progress {
+
+        /**
+         * 下一个要发送的下标，发送后乐观地前进
+         */
+        private long nextIndex;
+
+        /**
+         * 已确认与 Leader 一致的最后下标
+         */
+        private long matchIndex;
+
+        /**
+         * 已发送、未响应的 AppendEntries 数
+         */
+        private int inflight;
+
+        /**
+         * 流水线中最早一个请求的发送时间，超时后重发
+         */
+        private long inflightSince;
+
+        private long lastHeardAt;
+    }
+
+    private static final class Proposal {
+
+        private final long term;
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        Proposal(long term) {
+            this.term = term;
+        }
+    }
+
+    /**
+     * @param nodeId    本节点
+     * @param members   所有成员，包含本节点
+     * @param transport
+     * @param config    状态机与 Raft 参数，replicaCount 必须为0，每个节点的 walDir 不能相同
+     */
+    public RaftNode(String nodeId, Collection<String> members, RaftTransport transport, ShareDataConfig config) {
+        if (config.getReplicaCount() != 0) {
+            throw new IllegalArgumentException("Raft node state machine must not have replicas: "
+                    + config.getReplicaCount());
+        }
+        if (!members.contains(nodeId)) {
+            throw new IllegalArgumentException("Members " + members + " do not contain " + nodeId);
+        }
+        this.nodeId = nodeId;
+        List<String> others = new ArrayList<>(members);
+        others.remove(nodeId);
+        this.peers = Collections.unmodifiableList(others);
+        this.quorum = members.size() / 2 + 1;
+        this.transport = transport;
+        this.electionTimeoutMs = config.getRaftElectionTimeoutMs();
+        this.heartbeatMs = config.getRaftHeartbeatMs();
+        this.maxBatchEntries = config.getRaftMaxBatchEntries();
+        this.maxInflight = config.getRaftMaxInflight();
+        this.commitTimeoutMs = config.getRaftCommitTimeoutMs();
+        this.stateMachine = new ShareDataServer(config);
+        this.electionDeadline = System.currentTimeMillis() + randomElectionTimeout();
+        transport.register(nodeId, this::receive);
+        this.applier = new Thread(this::applyLoop, "datashare-raft-apply-" + nodeId);
+        this.applier.setDaemon(true);
+        this.applier.start();
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "datashare-raft-timer-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 读取本节点状态机中的数据
+     * <p>
+     * Follower 的数据可能落后于 Leader；Leader 上可以读到所有已返回成功的写入，
+     * 但与网络分区另一侧新选出的 Leader 并存的短暂时间内可能读到旧值
+     *
+     * @param key
+     * @return
+     */
+    public ShareData get(String key) {
+        return stateMachine.get(key, null, false);
+    }
+
+    /**
+     * 写入，复制到多数派并在 Leader 上应用后返回
+     *
+     * @param key
+     * @param value
+     * @return 超时时返回 false，结果未知
+     * @throws NotLeaderException 本节点不是 Leader
+     */
+    public boolean set(String key, ShareData value) {
+        return propose(new RaftCommand(OperaTypeEnum.SET, key, ShareDataServer.ANY_VERSION, value, 0L));
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @param ttlMs 存活时间，不大于0表示永不过期
+     * @return
+     */
+    public boolean set(String key, ShareData value, long ttlMs) {
+        return propose(new RaftCommand(OperaTypeEnum.SET, key, ShareDataServer.ANY_VERSION, value, expireAt(ttlMs)));
+    }
+
+    /**
+     * @param key
+     * @param expectedVersion 期望的当前版本
+     * @param value
+     * @return 版本不匹配或超时时返回 false
+     */
+    public boolean compareAndSet(String key, int expectedVersion, ShareData value) {
+        return propose(new RaftCommand(OperaTypeEnum.SET, key, expectedVersion, value, 0L));
+    }
+
+    public boolean setIfAbsent(String key, ShareData value) {
+        return propose(new RaftCommand(OperaTypeEnum.SET, key, ShareDataServer.ABSENT_VERSION, value, 0L));
+    }
+
+    /**
+     * @param key
+     * @param expectedVersion 期望的当前版本，{@link ShareDataServer#ANY_VERSION} 表示不比较
+     * @return
+     */
+    public boolean delete(String key, int expectedVersion) {
+        return propose(new RaftCommand(OperaTypeEnum.DELETE, key, expectedVersion, null, 0L));
+    }
+
+    private static long expireAt(long ttlMs) {
+        return ttlMs > 0 ? System.currentTimeMillis() + ttlMs : 0L;
+    }
+
+    /**
+     * 追加到 Leader 日志并等待本节点应用
+     */
+    private boolean propose(RaftCommand command) {
+        Proposal proposal;
+        lock.lock();
+        try {
+            if (role != RaftRoleEnum.LEADER || closed) {
+                throw new NotLeaderException(nodeId, leaderId);
+            }
+            long index = log.lastIndex() + 1;
+            log.append(new LogEntry(index, currentTerm, command));
+            proposal = new Proposal(currentTerm);
+            proposals.put(index, proposal);
+            if (peers.isEmpty()) {
+                advanceCommit();
+            }
+            for (String peer : peers) {
+                replicate(peer, false);
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            return proposal.future.get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ------------------------------------------------------------------ 消息处理，在收件箱线程中执行
+
+    private void receive(RaftMessage message) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (message instanceof RaftMessage.AppendRequest) {
+                onAppendRequest((RaftMessage.AppendRequest) message);
+            } else if (message instanceof RaftMessage.AppendResponse) {
+                onAppendResponse((RaftMessage.AppendResponse) message);
+            } else if (message instanceof RaftMessage.VoteRequest) {
+                onVoteRequest((RaftMessage.VoteRequest) message);
+            } else if (message instanceof RaftMessage.VoteResponse) {
+                onVoteResponse((RaftMessage.VoteResponse) message);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onAppendRequest(RaftMessage.AppendRequest request) {
+        if (request.getTerm() < currentTerm) {
+            reply(request.getFrom(), false, log.lastIndex() + 1, request.getEntries().size());
+            return;
+        }
+        if (request.getTerm() > currentTerm || role != RaftRoleEnum.FOLLOWER) {
+            becomeFollower(request.getTerm());
+        }
+        long now = System.currentTimeMillis();
+        leaderId = request.getFrom();
+        lastLeaderContact = now;
+        electionDeadline = now + randomElectionTimeout();
+
+        long prevIndex = request.getPrevLogIndex();
+        if (prevIndex > log.lastIndex()) {
+            reply(request.getFrom(), false, log.lastIndex() + 1, request.getEntries().size());
+            return;
+        }
+        // 已丢弃的前缀一定与 Leader 一致，不用检查
+        if (prevIndex > log.baseIndex() && log.termAt(prevIndex) != request.getPrevLogTerm()) {
+            long conflictTerm = log.termAt(prevIndex);
+            reply(request.getFrom(), false, log.firstIndexOfTerm(conflictTerm, prevIndex), request.getEntries().size());
+            return;
+        }
+        for (LogEntry entry : request.getEntries()) {
+            long index = entry.getIndex();
+            if (index <= log.baseIndex()) {
+                continue;
+            }
+            if (index <= log.lastIndex()) {
+                if (log.termAt(index) == entry.getTerm()) {
+                    // 重传的条目
+                    continue;
+                }
+                // 冲突的条目一定没有提交
+                log.truncateFrom(index);
+            }
+            log.append(entry);
+        }
+        long matchIndex = prevIndex + request.getEntries().size();
+        long newCommit = Math.min(request.getLeaderCommit(), matchIndex);
+        if (newCommit > commitIndex) {
+            commitIndex = newCommit;
+            committed.signal();
+        }
+        compactIndex = Math.max(compactIndex, request.getCompactIndex());
+        compact();
+        reply(request.getFrom(), true, matchIndex, request.getEntries().size());
+    }
+
+    private void reply(String to, boolean success, long index, int entryCount) {
+        transport.send(to, new RaftMessage.AppendResponse(currentTerm, nodeId, success, index, entryCount));
+    }
+
+    private void onAppendResponse(RaftMessage.AppendResponse response) {
+        if (response.getTerm() > currentTerm) {
+            becomeFollower(response.getTerm());
+            return;
+        }
+        if (role != RaftRoleEnum.LEADER || response.getTerm() < currentTerm) {
+            return;
+        }
+        Progress peer = progress.get(response.getFrom());
+        long now = System.currentTimeMillis();
+        peer.lastHeardAt = now;
+        if (response.isSuccess()) {
+            if (response.getEntryCount() > 0 && peer.inflight > 0) {
+                peer.inflight--;
+                peer.inflightSince = now;
+            }
+            if (response.getIndex() > peer.matchIndex) {
+                peer.matchIndex = response.getIndex();
+                advanceCommit();
+            }
+            peer.nextIndex = Math.max(peer.nextIndex, peer.matchIndex + 1);
+        } else {
+            // 流水线中之后的请求也会失败，从 Follower 给出的下标重新发送
+            peer.inflight = 0;
+            peer.nextIndex = Math.max(Math.max(peer.matchIndex, log.baseIndex()) + 1,
+                    Math.min(peer.nextIndex, response.getIndex()));
+        }
+        replicate(response.getFrom(), false);
+    }
+
+    private void onVoteRequest(RaftMessage.VoteRequest request) {
+        long now = System.currentTimeMillis();
+        if (role == RaftRoleEnum.LEADER || (leaderId != null && now - lastLeaderContact < electionTimeoutMs)) {
+            // 自己是 Leader（失去多数派时会退位）或刚收到过 Leader 的消息，Leader 仍然正常
+            return;
+        }
+        if (request.getTerm() > currentTerm) {
+            becomeFollower(request.getTerm());
+        }
+        boolean upToDate = request.getLastLogTerm() > log.lastTerm()
+                || (request.getLastLogTerm() == log.lastTerm() && request.getLastLogIndex() >= log.lastIndex());
+        boolean granted = request.getTerm() == currentTerm && upToDate
+                && (votedFor == null || votedFor.equals(request.getFrom()));
+        if (granted) {
+            votedFor = request.getFrom();
+            electionDeadline = now + randomElectionTimeout();
+        }
+        transport.send(request.getFrom(), new RaftMessage.VoteResponse(currentTerm, nodeId, granted));
+    }
+
+    private void onVoteResponse(RaftMessage.VoteResponse response) {
+        if (response.getTerm() > currentTerm) {
+            becomeFollower(response.getTerm());
+            return;
+        }
+        if (role != RaftRoleEnum.CANDIDATE || response.getTerm() < currentTerm || !response.isGranted()) {
+            return;
+        }
+        votes.add(response.getFrom());
+        if (votes.size() + 1 >= quorum) {
+            becomeLeader();
+        }
+    }
+
+    // ------------------------------------------------------------------ 角色切换，调用方持有锁
+
+    private void becomeFollower(long term) {
+        if (term > currentTerm) {
+            currentTerm = term;
+            votedFor = null;
+            leaderId = null;
+        }
+        if (role == RaftRoleEnum.LEADER) {
+            leaderId = null;
+            failProposals();
+        }
+        role = RaftRoleEnum.FOLLOWER;
+    }
+
+    private void startElection() {
+        currentTerm++;
+        role = RaftRoleEnum.CANDIDATE;
+        votedFor = nodeId;
+        leaderId = null;
+        votes.clear();
+        electionCount.increment();
+        electionDeadline = System.currentTimeMillis() + randomElectionTimeout();
+        if (quorum == 1) {
+            becomeLeader();
+            return;
+        }
+        RaftMessage.VoteRequest request = new RaftMessage.VoteRequest(currentTerm, nodeId, log.lastIndex(),
+                log.lastTerm());
+        for (String peer : peers) {
+            transport.send(peer, request);
+        }
+    }
+
+    private void becomeLeader() {
+        role = RaftRoleEnum.LEADER;
+        leaderId = nodeId;
+        long now = System.currentTimeMillis();
+        progress.clear();
+        for (String peer : peers) {
+            Progress p = new Progress();
+            p.nextIndex = log.lastIndex() + 1;
+            p.lastHeardAt = now;
+            progress.put(peer, p);
+        }
+        // 空条目：提交它的同时提交之前任期遗留的条目
+        log.append(new LogEntry(log.lastIndex() + 1, currentTerm, null));
+        if (peers.isEmpty()) {
+            advanceCommit();
+        }
+        for (String peer : peers) {
+            replicate(peer, true);
+        }
+        lastHeartbeatAt = now;
+    }
+
+    /**
+     * 退位时等待中的写入结果未知
+     */
+    private void failProposals() {
+        for (Proposal proposal : proposals.values()) {
+            proposal.future.completeExceptionally(new NotLeaderException(nodeId, leaderId));
+        }
+        proposals.clear();
+    }
+
+    // ------------------------------------------------------------------ 复制，调用方持有锁
+
+    /**
+     * 流水线未满时把 nextIndex 之后的条目分批发送；heartbeat 为 true 且没有条目可发时发送心跳
+     */
+    private void replicate(String peer, boolean heartbeat) {
+        Progress p = progress.get(peer);
+        long lastIndex = log.lastIndex();
+        boolean sent = false;
+        while (p.inflight < maxInflight && p.nextIndex <= lastIndex) {
+            int count = (int) Math.min(maxBatchEntries, lastIndex - p.nextIndex + 1);
+            sendAppend(peer, p, log.slice(p.nextIndex, count));
+            p.nextIndex += count;
+            sent = true;
+        }
+        if (heartbeat && !sent) {
+            sendAppend(peer, p, Collections.emptyList());
+        }
+    }
+
+    private void sendAppend(String peer, Progress p, List<LogEntry> entries) {
+        long prevIndex = p.nextIndex - 1;
+        transport.send(peer, new RaftMessage.AppendRequest(currentTerm, nodeId, prevIndex, log.termAt(prevIndex),
+                entries, commitIndex, allMatchIndex()));
+        if (!entries.isEmpty()) {
+            if (p.inflight++ == 0) {
+                p.inflightSince = System.currentTimeMillis();
+            }
+            appendRequestCount.increment();
+            appendedEntryCount.add(entries.size());
+        }
+    }
+
+    /**
+     * 多数派已复制、且属于当前任期的最大下标即为新的 commitIndex
+     */
+    private void advanceCommit() {
+        long[] matched = new long[peers.size() + 1];
+        int i = 0;
+        for (Progress p : progress.values()) {
+            matched[i++] = p.matchIndex;
+        }
+        matched[i] = log.lastIndex();
+        Arrays.sort(matched);
+        long candidate = matched[matched.length - quorum];
+        // 之前任期的条目不能靠计数提交，随当前任期的条目一起提交
+        if (candidate > commitIndex && log.termAt(candidate) == currentTerm) {
+            commitIndex = candidate;
+            committed.signal();
+        }
+    }
+
+    /**
+     * @return 所有节点都已复制到的下标
+     */
+    private long allMatchIndex() {
+        long min = log.lastIndex();
+        for (Progress p : progress.values()) {
+            min = Math.min(min, p.matchIndex);
+        }
+        return min;
+    }
+
+    /**
+     * 丢弃所有节点都已复制、本节点已应用的前缀
+     */
+    private void compact() {
+        long upTo = Math.min(lastApplied, role == RaftRoleEnum.LEADER ? allMatchIndex() : compactIndex);
+        log.compactTo(upTo);
+    }
+
+    // ------------------------------------------------------------------ 定时任务
+
+    private void tick() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (role != RaftRoleEnum.LEADER) {
+                if (now >= electionDeadline) {
+                    startElection();
+                }
+                return;
+            }
+            int reachable = 1;
+            for (Map.Entry<String, Progress> entry : progress.entrySet()) {
+                Progress p = entry.getValue();
+                if (now - p.lastHeardAt < electionTimeoutMs) {
+                    reachable++;
+                }
+                if (p.inflight > 0 && now - p.inflightSince > 2 * heartbeatMs) {
+                    // 请求或响应丢失，从已确认的位置重发
+                    p.inflight = 0;
+                    p.nextIndex = Math.max(p.matchIndex, log.baseIndex()) + 1;
+                }
+            }
+            if (reachable < quorum) {
+                becomeFollower(currentTerm);
+                electionDeadline = now + randomElectionTimeout();
+                return;
+            }
+            boolean heartbeat = now - lastHeartbeatAt >= heartbeatMs;
+            if (heartbeat) {
+                lastHeartbeatAt = now;
+            }
+            for (String peer : peers) {
+                replicate(peer, heartbeat);
+            }
+            compact();
+        } catch (RuntimeException e) {
+            System.err.println("Raft node " + nodeId + " tick failed: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long randomElectionTimeout() {
+        return electionTimeoutMs + ThreadLocalRandom.current().nextLong(electionTimeoutMs);
+    }
+
+    // ------------------------------------------------------------------ 应用
+
+    /**
+     * 按日志顺序把已提交的条目应用到状态机，在锁外应用，Leader 上应用后完成对应的写入
+     */
+    private void applyLoop() {
+        List<Proposal> done = new ArrayList<>();
+        List<Boolean> results = new ArrayList<>();
+        while (!closed) {
+            List<LogEntry> batch;
+            lock.lock();
+            try {
+                while (lastApplied >= commitIndex && !closed) {
+                    committed.await();
+                }
+                if (closed) {
+                    return;
+                }
+                batch = log.slice(lastApplied + 1, (int) Math.min(MAX_APPLY_BATCH, commitIndex - lastApplied));
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            boolean[] applied = new boolean[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                RaftCommand command = batch.get(i).getCommand();
+                applied[i] = command == null || stateMachine.apply(command.getOperaType(), command.getKey(),
+                        command.getExpectedVersion(), command.getValue(), command.getExpireAt());
+            }
+            lock.lock();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    LogEntry entry = batch.get(i);
+                    Proposal proposal = proposals.remove(entry.getIndex());
+                    if (proposal != null && proposal.term == entry.getTerm()) {
+                        done.add(proposal);
+                        results.add(applied[i]);
+                    }
+                }
+                lastApplied = batch.get(batch.size() - 1).getIndex();
+                if (role != RaftRoleEnum.LEADER) {
+                    compact();
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (int i = 0; i < done.size(); i++) {
+                done.get(i).future.complete(results.get(i));
+            }
+            done.clear();
+            results.clear();
+        }
+    }
+
+    // ------------------------------------------------------------------ 状态
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public RaftRoleEnum getRole() {
+        return role;
+    }
+
+    public boolean isLeader() {
+        return role == RaftRoleEnum.LEADER;
+    }
+
+    /**
+     * @return 已知的 Leader，选举期间为 null
+     */
+    public String getLeaderId() {
+        return leaderId;
+    }
+
+    public long getCurrentTerm() {
+        return currentTerm;
+    }
+
+    public long getCommitIndex() {
+        return commitIndex;
+    }
+
+    public long getLastApplied() {
+        return lastApplied;
+    }
+
+    /**
+     * @return 内存中的日志条目数
+     */
+    public int getLogSize() {
+        lock.lock();
+        try {
+            return log.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 作为 Leader 发送的携带条目的 AppendEntries 数
+     */
+    public long getAppendRequestCount() {
+        return appendRequestCount.sum();
+    }
+
+    /**
+     * @return 这些 AppendEntries 携带的条目总数，与请求数之比为平均批次大小
+     */
+    public long getAppendedEntryCount() {
+        return appendedEntryCount.sum();
+    }
+
+    public long getElectionCount() {
+        return electionCount.sum();
+    }
+
+    /**
+     * 本节点的状态机，可以在上面读取、扫描与注册 Watcher，写入应通过 Raft
+     *
+     * @return
+     */
+    public ShareDataServer getStateMachine() {
+        return stateMachine;
+    }
+
+    /**
+     * 停止参与集群并关闭状态机，等待中的写入以 {@link NotLeaderException} 结束
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (role == RaftRoleEnum.LEADER) {
+                leaderId = null;
+                failProposals();
+            }
+            role = RaftRoleEnum.FOLLOWER;
+            committed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        transport.unregister(nodeId);
+        timer.shutdownNow();
+        applier.interrupt();
+        try {
+            applier.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stateMachine.shutdown();
+    }
+}
@@ -0,0 +1,26 @@
+package com.crayon.datashare.raft;
+
+/**
+ * Raft 节点角色枚举
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public enum RaftRoleEnum {
+
+    /**
+     * 接收 Leader 的日志，选举超时后成为 Candidate
+     */
+    FOLLOWER,
+
+    /**
+     * 发起选举，得到多数派投票后成为 Leader，发现更大的任期或已有 Leader 时退回 Follower
+     */
+    CANDIDATE,
+
+    /**
+     * 接受写入并复制日志，一个任期内最多一个
+     */
+    LEADER
+}
@@ -0,0 +1,37 @@
+package com.crayon.datashare.raft;
+
+import java.util.function.Consumer;
+
+/**
+ * 节点之间的消息传输
+ *
+ * <p>
+ * 只要求单向、尽力而为：消息可以丢失（Raft 靠心跳与重传恢复），
+ * 但同一对节点之间的消息应按发送顺序到达，否则流水线中后发的 AppendEntries 会先到而被拒绝、触发重传。
+ * 每个节点的消息应在同一个线程中依次投递。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public interface RaftTransport {
+
+    /**
+     * 注册节点的收件箱
+     *
+     * @param nodeId
+     * @param inbox
+     */
+    void register(String nodeId, Consumer<RaftMessage> inbox);
+
+    void unregister(String nodeId);
+
+    /**
+     * 发送消息，不阻塞
+     *
+     * @param to
+     * @param message
+     */
+    void send(String to, RaftMessage message);
+}
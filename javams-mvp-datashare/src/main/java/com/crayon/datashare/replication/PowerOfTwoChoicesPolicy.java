@@ -0,0 +1,83 @@
+package com.crayon.datashare.replication;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 两次随机选择（Power of Two Choices）+ 落后量上限
+ *
+ * <p>
+ * 随机取两个从节点，选正在处理的读请求（in-flight）较少的一个，相同时选落后较少的。
+ * 与全局选最小负载相比不需要遍历所有从节点，也不会让所有读请求同时涌向同一个“最空闲”的节点；
+ * 与纯随机相比，慢节点（GC、网络抖动、追赶中）上积压的请求会让新请求绕开它，尾延迟明显降低。
+ * </p>
+ * <p>
+ * 落后主节点超过 maxLagLsn 或未应用到 minLsn 的从节点不参与选择。
+ * 两个候选都不满足时从随机位置顺序查找一个满足的，全部不满足时返回 null 读主节点。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/4
+ */
+public class PowerOfTwoChoicesPolicy implements ReadRoutingPolicy {
+
+    private final long maxLagLsn;
+
+    /**
+     * @param maxLagLsn 可读从节点最多落后主节点的 LSN 数，不大于0表示不限制
+     */
+    public PowerOfTwoChoicesPolicy(long maxLagLsn) {
+        this.maxLagLsn = maxLagLsn;
+    }
+
+    @Override
+    public Replica choose(List<Replica> replicas, long minLsn, long masterLsn) {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        long required = maxLagLsn > 0 ? Math.max(minLsn, masterLsn - maxLagLsn) : minLsn;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (size == 1) {
+            Replica only = replicas.get(0);
+            return only.getAppliedLsn() >= required ? only : null;
+        }
+        int first = random.nextInt(size);
+        // 第二个与第一个不同
+        int second = (first + 1 + random.nextInt(size - 1)) % size;
+        Replica a = replicas.get(first);
+        Replica b = replicas.get(second);
+        boolean aEligible = a.getAppliedLsn() >= required;
+        boolean bEligible = b.getAppliedLsn() >= required;
+        if (aEligible && bEligible) {
+            return lessLoaded(a, b);
+        }
+        if (aEligible) {
+            return a;
+        }
+        if (bEligible) {
+            return b;
+        }
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((first + i) % size);
+            if (replica.getAppliedLsn() >= required) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static Replica lessLoaded(Replica a, Replica b) {
+        long aInFlight = a.getInFlight();
+        long bInFlight = b.getInFlight();
+        if (aInFlight != bInFlight) {
+            return aInFlight < bInFlight ? a : b;
+        }
+        return a.getAppliedLsn() >= b.getAppliedLsn() ? a : b;
+    }
+
+    public long getMaxLagLsn() {
+        return maxLagLsn;
+    }
+}
@@ -0,0 +1,33 @@
+package com.crayon.datashare.replication;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机选择一个已应用到 minLsn 的从节点，不考虑负载与落后量
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/4
+ */
+public class RandomReadRoutingPolicy implements ReadRoutingPolicy {
+
+    /**
+     * 从随机位置开始找第一个满足条件的，不创建临时集合
+     */
+    @Override
+    public Replica choose(List<Replica> replicas, long minLsn, long masterLsn) {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.getAppliedLsn() >= minLsn) {
+                return replica;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,26 @@
+package com.crayon.datashare.replication;
+
+import java.util.List;
+
+/**
+ * 读请求路由策略：为一次读选择从节点，或者返回 null 改读主节点
+ *
+ * <p>
+ * 在每次读请求的线程中调用，实现不能加锁或使用共享的随机数生成器（如 java.util.Random 的 CAS），
+ * 随机数使用 ThreadLocalRandom。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/4
+ */
+public interface ReadRoutingPolicy {
+
+    /**
+     * @param replicas  当前的从节点列表，可能为空
+     * @param minLsn    读请求要求的最小 LSN（读己之写），不大于0表示不限制
+     * @param masterLsn 主节点已提交的最大 LSN，用于计算从节点的落后量
+     * @return 选中的从节点，没有合适的从节点时返回 null 读主节点
+     */
+    Replica choose(List<Replica> replicas, long minLsn, long masterLsn);
+}
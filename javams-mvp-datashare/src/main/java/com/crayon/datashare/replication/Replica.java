@@ -0,0 +1,286 @@
+package com.crayon.datashare.replication;
+
+import com.crayon.datashare.model.PersistenceData;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.WalCorruptedException;
+import com.crayon.datashare.persistence.WalCursor;
+import com.crayon.datashare.server.OperaTypeEnum;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 从节点
+ *
+ * <p>
+ * 主节点的日志批次进入有界队列，由从节点自己的线程异步应用，主节点写入者不等待从节点。
+ * 应用线程一次取出队列中所有批次连续应用（批量 + 流水线），并记录已应用的 LSN（appliedLsn）。
+ * </p>
+ * <p>
+ * 队列满时直接丢弃批次而不阻塞主节点。应用线程发现批次的第一条 LSN 与 appliedLsn 不连续时，
+ * 从主节点日志中补读缺失的记录（追赶）；日志已被快照截断时改为全量同步。
+ * 编码失败被拒绝的记录也会造成 LSN 不连续，追赶时读不到即跳过。
+ * 丢弃的若是写入停止前的最后几个批次，之后没有新批次暴露缺口，由应用线程空闲时追赶到最后分发的 LSN。
+ * 追赶不会越过已分发的 LSN：日志中更新的记录可能还没有应用到主节点。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/29
+ */
+public class Replica implements Closeable {
+
+    /**
+     * 队列空闲多久后检查是否需要追赶
+     */
+    private static final long IDLE_MS = 100;
+
+    private final String name;
+
+    private final ReplicationSource source;
+
+    /**
+     * keyName -> ShareData，供读请求直接读取
+     */
+    private final ConcurrentMap<String, ShareData> data;
+
+    /**
+     * 创建与主节点相同存储引擎的空存储，全量同步时使用
+     */
+    private final Supplier<ConcurrentMap<String, ShareData>> storeFactory;
+
+    private final BlockingQueue<List<PersistenceData>> queue;
+
+    /**
+     * 已应用的最大 LSN，只由应用线程写入
+     */
+    private volatile long appliedLsn;
+
+    /**
+     * 分发给本节点（包括被丢弃）的最大 LSN，之前的记录都已应用到主节点
+     */
+    private volatile long offeredLsn;
+
+    private final LongAdder droppedBatches = new LongAdder();
+
+    /**
+     * 有批次被丢弃、尚未追赶
+     */
+    private volatile boolean behind = false;
+
+    private final LongAdder catchUps = new LongAdder();
+
+    private final LongAdder fullSyncs = new LongAdder();
+
+    /**
+     * 正在处理的读请求数，供读路由按负载选择。LongAdder 分散在多个单元上累加，读线程之间不争用同一个 CAS
+     */
+    private final LongAdder inFlight = new LongAdder();
+
+    private final Thread applier;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param name
+     * @param source
+     * @param queueCapacity 待应用批次的队列容量
+     * @param storeFactory  存储工厂
+     * @param data          初始数据，由从节点持有，调用方之后不再修改
+     * @param initialLsn    初始数据对应的 LSN
+     */
+    public Replica(String name, ReplicationSource source, int queueCapacity,
+                   Supplier<ConcurrentMap<String, ShareData>> storeFactory,
+                   ConcurrentMap<String, ShareData> data, long initialLsn) {
+        this.name = name;
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.storeFactory = storeFactory;
+        this.data = data;
+        this.appliedLsn = initialLsn;
+        this.offeredLsn = initialLsn;
+        this.applier = new Thread(this::applyLoop, "datashare-replica-" + name);
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    /**
+     * 提交一个日志批次，不阻塞
+     *
+     * @param batch
+     */
+    void offer(List<PersistenceData> batch) {
+        offeredLsn = batch.get(batch.size() - 1).getLsn();
+        if (!queue.offer(batch)) {
+            droppedBatches.increment();
+            behind = true;
+        }
+    }
+
+    /**
+     * 标记为可能落后，应用线程空闲时追赶到 committedLsn。运行中新加入的从节点在初始复制与加入复制流之间可能错过批次
+     *
+     * @param committedLsn 主节点已分发的最大 LSN
+     */
+    void markBehind(long committedLsn) {
+        if (committedLsn > offeredLsn) {
+            offeredLsn = committedLsn;
+        }
+        behind = true;
+    }
+
+    private void applyLoop() {
+        List<List<PersistenceData>> batches = new ArrayList<>();
+        while (!closed) {
+            try {
+                List<PersistenceData> first = queue.poll(IDLE_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (behind) {
+                        behind = false;
+                        catchUp(offeredLsn + 1);
+                    }
+                    continue;
+                }
+                batches.add(first);
+                queue.drainTo(batches);
+                for (List<PersistenceData> batch : batches) {
+                    long firstLsn = batch.get(0).getLsn();
+                    if (firstLsn > appliedLsn + 1) {
+                        catchUp(firstLsn);
+                    }
+                    for (PersistenceData record : batch) {
+                        if (record.getLsn() > appliedLsn) {
+                            apply(record);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Replica " + name + " failed to apply batch: " + e.getMessage());
+                // 本次取出的其余批次被丢弃，由空闲时的追赶补上
+                behind = true;
+            } finally {
+                batches.clear();
+            }
+        }
+    }
+
+    /**
+     * 从主节点日志补读 (appliedLsn, untilLsn) 之间的记录
+     *
+     * @param untilLsn 不超过已分发的 LSN + 1
+     */
+    private void catchUp(long untilLsn) {
+        catchUps.increment();
+        try (WalCursor cursor = source.openCursor(appliedLsn + 1, untilLsn)) {
+            if (cursor != null) {
+                PersistenceData record;
+                while ((record = cursor.next()) != null) {
+                    if (record.getLsn() > appliedLsn) {
+                        apply(record);
+                    }
+                }
+                return;
+            }
+        } catch (IOException | WalCorruptedException e) {
+            if (closed) {
+                return;
+            }
+            // 读取过程中日志段被删除、封存的段损坏等，改为全量同步
+            System.err.println("Replica " + name + " catch-up failed, full sync: " + e.getMessage());
+        }
+        fullSync();
+    }
+
+    /**
+     * 全量同步：模糊复制主节点数据，再按 LSN 新旧合并
+     */
+    private void fullSync() {
+        fullSyncs.increment();
+        ConcurrentMap<String, ShareData> copy = storeFactory.get();
+        long boundary = source.copyTo(copy);
+        // 主节点已没有的 key 在全量同步后删除
+        data.keySet().retainAll(copy.keySet());
+        data.putAll(copy);
+        appliedLsn = Math.max(appliedLsn, boundary);
+    }
+
+    /**
+     * 应用一条记录，LSN 不比已有数据新时跳过（全量同步后的重放）
+     *
+     * @param record
+     */
+    private void apply(PersistenceData record) {
+        String key = record.getKey();
+        ShareData existing = data.get(key);
+        if (existing == null || existing.getLsn() < record.getLsn()) {
+            if (OperaTypeEnum.SET.getType().equals(record.getOperaType())) {
+                data.put(key, record.getShareData().withLsn(record.getLsn()));
+            } else {
+                // DELETE / EVICT / EXPIRE
+                data.remove(key);
+            }
+        }
+        appliedLsn = record.getLsn();
+    }
+
+    public ShareData get(String key) {
+        return data.get(key);
+    }
+
+    /**
+     * 开始处理一个读请求，与 {@link #endRead()} 成对调用，期间计入 in-flight
+     */
+    public void beginRead() {
+        inFlight.increment();
+    }
+
+    public void endRead() {
+        inFlight.decrement();
+    }
+
+    /**
+     * @return 正在处理的读请求数
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getAppliedLsn() {
+        return appliedLsn;
+    }
+
+    /**
+     * @return 队列满被丢弃、之后通过追赶补上的批次数
+     */
+    public long getDroppedBatches() {
+        return droppedBatches.sum();
+    }
+
+    public long getCatchUps() {
+        return catchUps.sum();
+    }
+
+    public long getFullSyncs() {
+        return fullSyncs.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        applier.interrupt();
+    }
+}
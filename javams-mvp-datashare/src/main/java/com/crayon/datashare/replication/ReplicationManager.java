@@ -0,0 +1,173 @@
+package com.crayon.datashare.replication;
+
+import com.crayon.datashare.model.PersistenceData;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.GroupCommitWalWriter;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * 主从复制
+ *
+ * <p>
+ * 主节点的 WAL 就是有序的变更流：每个组提交批次写入日志、并由写入者应用到主节点内存后，按 LSN 顺序分发给所有从节点的队列，
+ * 从节点各自异步应用并记录已应用的 LSN。
+ * 从节点因此不会先于主节点看到写入，读请求在从节点与主节点之间切换时不会读到更旧的值。
+ * 分发只是每个批次对每个从节点一次非阻塞入队，写入者的延迟与从节点数量无关。
+ * </p>
+ * <p>
+ * 读请求可以带上最小 LSN（如客户端自己上一次写入的 LSN），
+ * 只在已应用到该 LSN 的从节点中选择，实现读己之写（Read-Your-Writes）。
+ * 具体选择哪个从节点由 {@link ReadRoutingPolicy} 决定，可以按负载与落后量选择，都不合适时读主节点。
+ * </p>
+ * <p>
+ * 从节点列表是 CopyOnWriteArrayList：运行中增删从节点时复制整个列表，读路由与分发批次只读当前数组，不加锁。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/29
+ */
+public class ReplicationManager implements GroupCommitWalWriter.CommitListener, Closeable {
+
+    private final CopyOnWriteArrayList<Replica> replicas = new CopyOnWriteArrayList<>();
+
+    private final ReplicationSource source;
+
+    private final int queueCapacity;
+
+    private final ReadRoutingPolicy routingPolicy;
+
+    /**
+     * 从节点的存储，与主节点使用同一种存储引擎
+     */
+    private final Supplier<ConcurrentMap<String, ShareData>> storeFactory;
+
+    /**
+     * 已分发给从节点的最大 LSN，即主节点已提交并应用的最大 LSN，分发按 LSN 顺序串行执行
+     */
+    private volatile long committedLsn;
+
+    /**
+     * @param replicaCount  从节点数量
+     * @param queueCapacity 每个从节点待应用批次的队列容量
+     * @param routingPolicy 读路由策略
+     * @param storeFactory  创建从节点的存储
+     * @param source        主节点
+     * @param initial       主节点恢复后的数据
+     * @param initialLsn    恢复后的最大 LSN
+     */
+    public ReplicationManager(int replicaCount, int queueCapacity, ReadRoutingPolicy routingPolicy,
+                              Supplier<ConcurrentMap<String, ShareData>> storeFactory,
+                              ReplicationSource source, Map<String, ShareData> initial, long initialLsn) {
+        this.source = source;
+        this.queueCapacity = queueCapacity;
+        this.routingPolicy = routingPolicy;
+        this.storeFactory = storeFactory;
+        this.committedLsn = initialLsn;
+        for (int i = 1; i <= replicaCount; i++) {
+            ConcurrentMap<String, ShareData> data = storeFactory.get();
+            data.putAll(initial);
+            replicas.add(new Replica("slave" + i, source, queueCapacity, storeFactory, data, initialLsn));
+        }
+    }
+
+    @Override
+    public void onCommit(List<PersistenceData> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (Replica replica : replicas) {
+            replica.offer(records);
+        }
+        committedLsn = records.get(records.size() - 1).getLsn();
+    }
+
+    /**
+     * 按读路由策略为一次读请求选择从节点
+     * <p>
+     * 调用方读取期间应调用 {@link Replica#beginRead()} / {@link Replica#endRead()}，按负载选择的策略据此计数
+     *
+     * @param minLsn 不大于0表示不限制
+     * @return 没有合适的从节点时返回 null，读主节点
+     */
+    public Replica route(long minLsn) {
+        return routingPolicy.choose(replicas, minLsn, committedLsn);
+    }
+
+    /**
+     * 运行中加入一个从节点
+     * <p>
+     * 先全量复制主节点数据再加入复制流，加入后追赶复制期间错过的批次，之后才可能被读路由选中（取决于落后量上限）
+     *
+     * @param name
+     * @return 新的从节点
+     */
+    public Replica addReplica(String name) {
+        ConcurrentMap<String, ShareData> copy = storeFactory.get();
+        long boundary = source.copyTo(copy);
+        Replica replica = new Replica(name, source, queueCapacity, storeFactory, copy, boundary);
+        replicas.add(replica);
+        replica.markBehind(committedLsn);
+        return replica;
+    }
+
+    /**
+     * 移除并关闭一个从节点，正在读它的请求不受影响
+     *
+     * @param name
+     * @return 是否存在
+     */
+    public boolean removeReplica(String name) {
+        for (Replica replica : replicas) {
+            if (replica.getName().equals(name) && replicas.remove(replica)) {
+                replica.close();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    /**
+     * @return 主节点已提交并分发给从节点的最大 LSN
+     */
+    public long getCommittedLsn() {
+        return committedLsn;
+    }
+
+    public ReadRoutingPolicy getRoutingPolicy() {
+        return routingPolicy;
+    }
+
+    /**
+     * 各从节点落后主节点的 LSN 数
+     *
+     * @param masterLsn 主节点最后的 LSN
+     * @return 从节点名 -> 落后的 LSN 数
+     */
+    public Map<String, Long> lag(long masterLsn) {
+        Map<String, Long> lag = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            lag.put(replica.getName(), Math.max(masterLsn - replica.getAppliedLsn(), 0));
+        }
+        return lag;
+    }
+
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            replica.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.crayon.datashare.replication;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.WalCursor;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 复制的数据来源（主节点），供从节点追赶与全量同步
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/29
+ */
+public interface ReplicationSource {
+
+    /**
+     * 读取主节点日志中 [fromLsn, untilLsn) 之间的记录
+     *
+     * @param fromLsn
+     * @param untilLsn 不超过已分发给从节点的 LSN + 1，之后的记录可能正在写入或还没有应用到主节点
+     * @return 日志中已没有 fromLsn（被快照截断）时返回 null
+     * @throws IOException
+     */
+    WalCursor openCursor(long fromLsn, long untilLsn) throws IOException;
+
+    /**
+     * 全量复制主节点数据（模糊复制，不阻塞写入者）
+     * <p>
+     * 返回的边界 LSN 之前的记录都已在主节点内存中，之后的记录可能部分已被复制，
+     * 从节点之后从边界+1开始按“新 LSN 覆盖旧 LSN”重放即可得到一致的数据，与快照恢复同理
+     *
+     * @param target
+     * @return 边界 LSN
+     */
+    long copyTo(Map<String, ShareData> target);
+}
@@ -1,11 +1,178 @@
 package com.crayon.datashare.server;
 
+import lombok.Value;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
+ * 变更通知
+ *
+ * <p>
+ * 写入者在 key 的写锁内只把整个订阅者集合放入分发队列（一次入队，与订阅者数量无关），
+ * 分发线程把事件放入每个订阅者自己的待通知队列，投递线程按订阅者批量推送给通知通道。
+ * </p>
+ * <p>
+ * 分发队列以 key 去重：分发之前同一个 key 的多次变更合并为一次分发（订阅者集合取并集），
+ * 热点 key 写得再快也只占一个位置，扇出的 O(订阅者数) 开销每个 key 每轮只有一次。
+ * 待分发的 key 超过上限时清空分发队列，所有订阅者改为收到一条 {@link #RESYNC}。
+ * </p>
+ * <p>
+ * 每个订阅者的待通知队列以 key 去重：推送之前同一个 key 的多次变更合并为一条通知，
+ * 只保留最后的事件类型与版本，并记录被合并掉的变更数（missed）。
+ * 通道拥塞（如网络连接的发送缓冲区积压）时事件留在队列中稍后重试，
+ * 积压的 key 超过上限时清空队列，改为推送一条 {@link #RESYNC}，订阅者需要重新读取所关注的数据。
+ * 两级队列都有上限，写入再快内存也不会无限增长。
+ * </p>
+ *
  * @author crayon
  * @version 1.0
  * @date 2025/5/16
  */
-public class Notifier {
+public class Notifier implements Closeable {
+
+    /**
+     * 订阅者积压过多被丢弃事件时推送的事件类型，key 为 null
+     */
+    public static final String RESYNC = "RESYNC";
+
+    /**
+     * 一次推送的最多事件数
+     */
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * 通道拥塞时的重试间隔
+     */
+    private static final long RETRY_DELAY_MS = 10L;
+
+    /**
+     * 订阅者的通知通道，在投递线程中调用
+     */
+    public interface Channel {
+
+        /**
+         * @param events 同一个订阅者的一批事件
+         * @return false 表示通道拥塞，这批事件留在队列中稍后重试
+         */
+        boolean push(List<Event> events);
+    }
+
+    @Value
+    public static class Event {
+
+        String key;
+
+        String operaType;
+
+        /**
+         * 变更后的版本，删除（含淘汰、过期）后为0
+         */
+        int version;
+
+        /**
+         * 在这条通知之前被合并掉、没有单独送达的变更数
+         */
+        int missed;
+    }
+
+    /**
+     * 订阅者 ip:port -> 通知通道，网络连接建立时绑定，断开时解绑
+     */
+    private final ConcurrentHashMap<String, Channel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅者 ip:port -> 待通知队列，只为绑定了通道的订阅者创建
+     */
+    private final ConcurrentHashMap<String, SubscriberQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * 每个订阅者最多积压的 key 数
+     */
+    private final int queueKeys;
+
+    /**
+     * 分发阶段最多积压的 key 数
+     */
+    private final int dispatchKeys;
+
+    /**
+     * 待分发的 key -> 合并后的通知，保持首次入队的顺序，受 dispatchLock 保护
+     */
+    private LinkedHashMap<String, Dispatch> dispatchQueue = new LinkedHashMap<>();
+
+    /**
+     * 分发队列积压过多被清空，需要通知所有订阅者重新同步，受 dispatchLock 保护
+     */
+    private boolean dispatchResync;
+
+    /**
+     * 分发队列积压的最大 key 数，受 dispatchLock 保护
+     */
+    private int dispatchBacklogPeak;
+
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+
+    private final Condition dispatchReady = dispatchLock.newCondition();
+
+    /**
+     * 单线程分发，同一个 key 的事件按写入顺序进入订阅者队列
+     */
+    private final Thread dispatcher;
+
+    private volatile boolean closed = false;
+
+    private final ScheduledExecutorService deliveryExecutor;
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final LongAdder resyncCount = new LongAdder();
+
+    private final LongAdder dispatchResyncCount = new LongAdder();
+
+    /**
+     * @param deliveryThreads 投递线程数
+     * @param queueKeys       每个订阅者最多积压的 key 数
+     * @param dispatchKeys    分发阶段最多积压的 key 数
+     */
+    public Notifier(int deliveryThreads, int queueKeys, int dispatchKeys) {
+        this.queueKeys = Math.max(1, queueKeys);
+        this.dispatchKeys = Math.max(1, dispatchKeys);
+        this.dispatcher = new Thread(this::dispatchLoop, "datashare-notify-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.deliveryExecutor = Executors.newScheduledThreadPool(Math.max(1, deliveryThreads), r -> {
+            Thread thread = new Thread(r, "datashare-notify-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void bind(String subscriberIpPort, Channel channel) {
+        channels.put(subscriberIpPort, channel);
+    }
+
+    public void unbind(String subscriberIpPort) {
+        channels.remove(subscriberIpPort);
+        queues.remove(subscriberIpPort);
+    }
 
     /**
      * 通知订阅者
@@ -15,6 +182,367 @@ public class Notifier {
      * @param operaType
      */
     public void notify(String subscriberIpPort, String key, String operaType) {
+        notify(Collections.singleton(subscriberIpPort), key, operaType, 0, 0);
+    }
+
+    /**
+     * 通知一组订阅者，只入队不等待，可以在写锁内调用
+     *
+     * @param subscriberIpPorts 在通知线程中遍历，只能是不再修改的集合或弱一致的并发集合
+     * @param key
+     * @param operaType
+     * @param version           变更后的版本
+     * @param missed            之前已经被跳过的变更数
+     */
+    public void notify(Collection<String> subscriberIpPorts, String key, String operaType, int version, int missed) {
+        submit(Collections.singletonList(subscriberIpPorts), new Event(key, operaType, version, missed));
+    }
+
+    /**
+     * 通知多组订阅者（如 key 的 Watcher 与各级前缀的 Watcher），同一个订阅者在多个组中只通知一次
+     *
+     * @param groups    每组的要求同 {@link #notify(Collection, String, String, int, int)}
+     * @param key
+     * @param operaType
+     * @param version
+     * @param missed
+     */
+    public void notifyGroups(List<? extends Collection<String>> groups, String key, String operaType, int version, int missed) {
+        submit(groups, new Event(key, operaType, version, missed));
+    }
+
+    /**
+     * 放入分发队列，同一个 key 还未分发时与之合并
+     *
+     * @param groups
+     * @param event
+     */
+    private void submit(List<? extends Collection<String>> groups, Event event) {
+        dispatchLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Dispatch pending = dispatchQueue.get(event.getKey());
+            if (pending != null) {
+                pending.merge(groups, event);
+                coalescedCount.increment();
+                return;
+            }
+            if (dispatchQueue.size() >= dispatchKeys) {
+                // 分发跟不上写入，丢弃积压，所有订阅者改为收到一条 RESYNC
+                dispatchQueue.clear();
+                dispatchResync = true;
+                dispatchResyncCount.increment();
+            }
+            dispatchQueue.put(event.getKey(), new Dispatch(groups, event));
+            dispatchBacklogPeak = Math.max(dispatchBacklogPeak, dispatchQueue.size());
+            dispatchReady.signal();
+        } finally {
+            dispatchLock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            LinkedHashMap<String, Dispatch> batch;
+            boolean resync;
+            dispatchLock.lock();
+            try {
+                while (dispatchQueue.isEmpty() && !dispatchResync) {
+                    if (closed) {
+                        return;
+                    }
+                    dispatchReady.await();
+                }
+                batch = dispatchQueue;
+                dispatchQueue = new LinkedHashMap<>();
+                resync = dispatchResync;
+                dispatchResync = false;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                dispatchLock.unlock();
+            }
+            try {
+                if (resync) {
+                    for (String subscriberIpPort : channels.keySet()) {
+                        queues.computeIfAbsent(subscriberIpPort, SubscriberQueue::new).resync();
+                    }
+                }
+                for (Dispatch dispatch : batch.values()) {
+                    dispatch.run();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error dispatching notifications: " + e.getMessage());
+            }
+        }
+    }
+
+    private void enqueue(String subscriberIpPort, Event event) {
         // 调用订阅者的接口,让订阅者进行相应的处理
+        // 没有绑定通道的订阅者（已断开或进程内订阅者）直接忽略
+        if (channels.containsKey(subscriberIpPort)) {
+            queues.computeIfAbsent(subscriberIpPort, SubscriberQueue::new).add(event);
+        }
+    }
+
+    /**
+     * @return 被合并掉的通知数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * @return 因积压过多改为推送 RESYNC 的次数
+     */
+    public long getResyncCount() {
+        return resyncCount.sum();
+    }
+
+    /**
+     * @return 分发队列积压过多被清空的次数
+     */
+    public long getDispatchResyncCount() {
+        return dispatchResyncCount.sum();
+    }
+
+    /**
+     * @return 分发队列积压的最大 key 数，不超过分发阶段的上限
+     */
+    public int getDispatchBacklogPeak() {
+        dispatchLock.lock();
+        try {
+            return dispatchBacklogPeak;
+        } finally {
+            dispatchLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        dispatchLock.lock();
+        try {
+            closed = true;
+            dispatchReady.signal();
+        } finally {
+            dispatchLock.unlock();
+        }
+        try {
+            // 已入队的通知先分发完
+            dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        deliveryExecutor.shutdownNow();
+    }
+
+    private static Event coalesce(Event previous, Event next) {
+        return new Event(next.getKey(), next.getOperaType(), next.getVersion(),
+                previous.getMissed() + 1 + next.getMissed());
+    }
+
+    /**
+     * 分发队列中一个 key 合并后的通知，只在 dispatchLock 内修改
+     */
+    private final class Dispatch {
+
+        /**
+         * 各次写入交来的订阅者集合，同一个集合对象（如持久 Watcher 的实时集合）只保留一份
+         */
+        private final List<Collection<String>> groups;
+
+        private Event event;
+
+        Dispatch(List<? extends Collection<String>> groups, Event event) {
+            this.groups = new ArrayList<>(groups);
+            this.event = event;
+        }
+
+        void merge(List<? extends Collection<String>> more, Event next) {
+            event = coalesce(event, next);
+            for (Collection<String> group : more) {
+                if (!contains(group)) {
+                    groups.add(group);
+                }
+            }
+        }
+
+        private boolean contains(Collection<String> group) {
+            for (Collection<String> existing : groups) {
+                if (existing == group) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 放入各订阅者的待通知队列，同一个订阅者在多个集合中只通知一次
+         */
+        void run() {
+            if (groups.size() == 1) {
+                for (String subscriberIpPort : groups.get(0)) {
+                    enqueue(subscriberIpPort, event);
+                }
+                return;
+            }
+            Set<String> notified = new HashSet<>();
+            for (Collection<String> group : groups) {
+                for (String subscriberIpPort : group) {
+                    if (notified.add(subscriberIpPort)) {
+                        enqueue(subscriberIpPort, event);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个订阅者的待通知队列
+     * <p>
+     * 同一时刻最多只有一个投递任务（scheduled），同一个订阅者的推送不会乱序
+     */
+    private final class SubscriberQueue implements Runnable {
+
+        private final String subscriberIpPort;
+
+        /**
+         * key -> 合并后的事件，保持首次入队的顺序
+         */
+        private LinkedHashMap<String, Event> pending = new LinkedHashMap<>();
+
+        private boolean resync;
+
+        private boolean scheduled;
+
+        SubscriberQueue(String subscriberIpPort) {
+            this.subscriberIpPort = subscriberIpPort;
+        }
+
+        void add(Event event) {
+            boolean schedule;
+            synchronized (this) {
+                if (!resync) {
+                    Event previous = pending.put(event.getKey(), event);
+                    if (previous != null) {
+                        pending.put(event.getKey(), coalesce(previous, event));
+                        coalescedCount.increment();
+                    } else if (pending.size() > queueKeys) {
+                        overflow();
+                    }
+                }
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                submit(0L);
+            }
+        }
+
+        private void overflow() {
+            pending.clear();
+            resync = true;
+            resyncCount.increment();
+        }
+
+        /**
+         * 分发队列积压过多时调用，丢弃积压，改为推送一条 RESYNC
+         */
+        void resync() {
+            boolean schedule;
+            synchronized (this) {
+                if (!resync) {
+                    overflow();
+                }
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                submit(0L);
+            }
+        }
+
+        @Override
+        public void run() {
+            Channel channel = channels.get(subscriberIpPort);
+            if (channel == null) {
+                queues.remove(subscriberIpPort, this);
+                return;
+            }
+            List<Event> events = new ArrayList<>();
+            synchronized (this) {
+                if (resync) {
+                    resync = false;
+                    events.add(new Event(null, RESYNC, 0, 0));
+                }
+                Iterator<Event> iterator = pending.values().iterator();
+                while (events.size() < MAX_BATCH && iterator.hasNext()) {
+                    events.add(iterator.next());
+                    iterator.remove();
+                }
+            }
+            boolean delivered = true;
+            if (!events.isEmpty()) {
+                try {
+                    delivered = channel.push(events);
+                } catch (RuntimeException e) {
+                    System.err.println("Error notifying " + subscriberIpPort + ": " + e.getMessage());
+                }
+            }
+            synchronized (this) {
+                if (!delivered) {
+                    requeue(events);
+                    submit(RETRY_DELAY_MS);
+                    return;
+                }
+                if (pending.isEmpty() && !resync) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            submit(0L);
+        }
+
+        /**
+         * 把未送达的事件放回队首，之后入队的同一个 key 的事件类型更新
+         */
+        private void requeue(List<Event> events) {
+            if (resync) {
+                return;
+            }
+            LinkedHashMap<String, Event> merged = new LinkedHashMap<>();
+            for (Event event : events) {
+                if (event.getKey() == null) {
+                    resync = true;
+                    pending.clear();
+                    return;
+                }
+                merged.put(event.getKey(), event);
+            }
+            for (Event event : pending.values()) {
+                Event previous = merged.put(event.getKey(), event);
+                if (previous != null) {
+                    merged.put(event.getKey(), coalesce(previous, event));
+                }
+            }
+            pending = merged;
+            if (pending.size() > queueKeys) {
+                overflow();
+            }
+        }
+
+        private void submit(long delayMs) {
+            try {
+                if (delayMs > 0) {
+                    deliveryExecutor.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+                } else {
+                    deliveryExecutor.execute(this);
+                }
+            } catch (RejectedExecutionException e) {
+                // 已关闭
+            }
+        }
     }
 }
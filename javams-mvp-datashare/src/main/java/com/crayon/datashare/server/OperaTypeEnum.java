@@ -2,23 +2,69 @@ package com.crayon.datashare.server;
 
 /**
  * 操作类型枚举
+ * <p>
+ * code 用于二进制日志中以一个字节表示操作类型
  */
 public enum OperaTypeEnum {
 
-    GET("GET"),
-    SET("SET"),
+    GET("GET", (byte) 0),
+    SET("SET", (byte) 1),
 
-    CHANGE("CHANGE");
+    CHANGE("CHANGE", (byte) 2),
+
+    DELETE("DELETE", (byte) 3),
+
+    /**
+     * 容量淘汰，恢复时与 DELETE 相同
+     */
+    EVICT("EVICT", (byte) 4),
+
+    /**
+     * 过期删除，恢复时与 DELETE 相同
+     */
+    EXPIRE("EXPIRE", (byte) 5),
+
+    /**
+     * 分片迁移到其他节点后从本节点移除，恢复时与 DELETE 相同；订阅者收到后应到新节点重新读取与注册
+     */
+    MIGRATE("MIGRATE", (byte) 6);
 
 
     private String type;
 
-    OperaTypeEnum(String type) {
+    private byte code;
+
+    OperaTypeEnum(String type, byte code) {
         this.type = type;
+        this.code = code;
     }
 
     public String getType() {
         return type;
     }
 
+    public byte getCode() {
+        return code;
+    }
+
+    // 根据 code 获取枚举
+    public static OperaTypeEnum fromCode(byte code) {
+        for (OperaTypeEnum operaType : values()) {
+            if (operaType.getCode() == code) {
+                return operaType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown opera type code: " + code);
+    }
+
+    // 根据 type 获取枚举
+    public static OperaTypeEnum fromType(String type) {
+        for (OperaTypeEnum operaType : values()) {
+            if (operaType.getType().equals(type)) {
+                return operaType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown opera type: " + type);
+    }
+
 }
@@ -0,0 +1,149 @@
+package com.crayon.datashare.server;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 路径命名空间的有序索引
+ *
+ * <p>
+ * key 可以按 ZooKeeper 的方式写成以 / 分隔的路径（如 /app/config/db），父路径不需要存在。
+ * 主节点的 ConcurrentHashMap 不保持顺序，列出 /app/config 下的数据只能遍历所有 key；
+ * 这里用 ConcurrentSkipListSet 按字典序另存一份 key，同一个前缀的 key 在跳表中是连续的，
+ * 定位到前缀的第一个 key 是 O(log n)，之后顺序遍历，代价与结果数量成正比而与 key 总数无关。
+ * </p>
+ * <p>
+ * 列出子节点时每个子节点只访问它的第一个 key，然后直接跳到该子节点的子树之后（再一次 O(log n) 定位），
+ * 子树下有多少 key 都不需要遍历。
+ * </p>
+ * <p>
+ * 只保存 key，值仍从主节点读取。写入者在 key 的写锁内维护索引：新建 key 时加入，删除、淘汰、过期时移除。
+ * 跳表是无锁的，遍历是弱一致的，不阻塞写入者。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/2
+ */
+public class PathIndex {
+
+    public static final char SEPARATOR = '/';
+
+    public static final String ROOT = "/";
+
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+
+    public void add(String key) {
+        keys.add(key);
+    }
+
+    public void remove(String key) {
+        keys.remove(key);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * 直接子节点的名称
+     * <p>
+     * 只有子树下存在 key 的子节点会被列出（父路径不需要单独存在）。
+     * 每个子节点最多访问两个 key：子节点本身，以及它的子树中的第一个 key（两者之间可能隔着兄弟节点，如 b、b-x、b/c）
+     *
+     * @param path 父路径，末尾的 / 可省略
+     * @return 按字典序排列的子节点名称
+     */
+    public NavigableSet<String> children(String path) {
+        String prefix = childPrefix(normalize(path));
+        NavigableSet<String> children = new TreeSet<>();
+        String key = keys.ceiling(prefix);
+        while (key != null && key.startsWith(prefix)) {
+            int end = key.indexOf(SEPARATOR, prefix.length());
+            if (end < 0) {
+                children.add(key.substring(prefix.length()));
+                key = keys.higher(key);
+                continue;
+            }
+            if (end > prefix.length()) {
+                children.add(key.substring(prefix.length(), end));
+            }
+            // 跳过整个子树：子树内的 key 都以 "子节点/" 开头，'/' 的下一个字符是 '0'
+            key = keys.ceiling(key.substring(0, end) + (char) (SEPARATOR + 1));
+        }
+        return children;
+    }
+
+    /**
+     * key 在 [fromKey, toKey) 范围内的实时有序视图，创建视图是 O(log n)，遍历时才访问跳表
+     *
+     * @param fromKey    起始 key（含），null 表示从头开始
+     * @param startAfter 分页游标，只返回大于它的 key，null 表示第一页
+     * @param toKey      结束 key（不含），null 表示到末尾
+     * @return
+     */
+    public NavigableSet<String> range(String fromKey, String startAfter, String toKey) {
+        NavigableSet<String> range;
+        if (startAfter != null && (fromKey == null || startAfter.compareTo(fromKey) >= 0)) {
+            range = keys.tailSet(startAfter, false);
+        } else if (fromKey != null) {
+            range = keys.tailSet(fromKey, true);
+        } else {
+            range = keys;
+        }
+        return toKey == null ? range : range.headSet(toKey, false);
+    }
+
+    /**
+     * 以 prefix 开头的所有 key 都小于返回值，用作前缀扫描的结束 key（不含）
+     *
+     * @param prefix
+     * @return 空前缀时为 null，表示没有上界
+     */
+    public static String prefixEnd(String prefix) {
+        int last = prefix.length() - 1;
+        while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE) {
+            last--;
+        }
+        if (last < 0) {
+            return null;
+        }
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+    /**
+     * 去掉末尾的 /，根路径除外
+     *
+     * @param path
+     * @return
+     */
+    public static String normalize(String path) {
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == SEPARATOR) {
+            end--;
+        }
+        return path.substring(0, end);
+    }
+
+    /**
+     * 父路径，/a/b 的父路径为 /a，/a 的父路径为 /
+     *
+     * @param path
+     * @return 没有父路径时为 null
+     */
+    public static String parent(String path) {
+        int index = path.lastIndexOf(SEPARATOR);
+        if (index < 0 || ROOT.equals(path)) {
+            return null;
+        }
+        return index == 0 ? ROOT : path.substring(0, index);
+    }
+
+    /**
+     * 路径下的 key 的公共前缀，根路径为 /，其他为 path + /
+     */
+    static String childPrefix(String path) {
+        return ROOT.equals(path) ? ROOT : path + SEPARATOR;
+    }
+}
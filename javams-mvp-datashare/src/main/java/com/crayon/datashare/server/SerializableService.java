@@ -2,29 +2,45 @@ package com.crayon.datashare.server;
 
 import com.crayon.datashare.model.PersistenceData;
 import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.GroupCommitWalWriter;
+import com.crayon.datashare.persistence.IoRateLimiter;
+import com.crayon.datashare.persistence.SnapshotFile;
+import com.crayon.datashare.persistence.WalCompactor;
+import com.crayon.datashare.persistence.WalCursor;
+import com.crayon.datashare.persistence.WalFiles;
+import com.crayon.datashare.persistence.WalRecovery;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 /**
  * 序列化服务
  *
  * <p>
  * 序列化：采用快照+日志方式
- * 按数据量策略进行快照
+ * 按数据量策略进行快照，另有按时间间隔的兜底策略
  * <p>
  * 文件内容:类Redis融合方案
- * 快照内容+日志内容。文件前面是RDB格式，后面是AOF格式
+ * 快照内容+日志内容。与 Redis 7 的 multi part AOF 类似，拆成快照文件与其后的增量日志文件：
+ * 快照时先滚动日志得到边界 LSN，再遍历内存数据写快照，最后删除边界之前的日志文件
  * <p>
- * RDB格式：
- * AOF格式
+ * RDB格式：见 {@link SnapshotFile}
+ * AOF格式：见 {@link com.crayon.datashare.persistence.WalRecordCodec}
  * <p>
- * 文件大小处理：采用保留数据最终状态的压缩方案
+ * 文件大小处理：采用保留数据最终状态的压缩方案，见 {@link WalCompactor}
  *
  * <p>
- * 恢复机制：
+ * 恢复机制：加载最新快照，再按 key 分区并行重放快照边界之后的日志，见 {@link WalRecovery}
  *
  * @author crayon
  * @version 1.0
@@ -32,32 +48,277 @@ import java.io.PrintWriter;
  */
 public class SerializableService {
 
+    private final ShareDataConfig config;
+
+    private final Path walDir;
+
+    /**
+     * 长期持有的组提交写入器，恢复完成后打开
+     */
+    private volatile GroupCommitWalWriter walWriter;
+
+    private final AtomicBoolean snapshotting = new AtomicBoolean(false);
+
     /**
-     * 假设的日志文件名
+     * 日志压缩的磁盘带宽限流
      */
-    private static final String MASTER_LOG_FILE = System.getProperty("user.dir") + "/wal/master_wal.log";
+    private final IoRateLimiter compactLimiter;
+
+    private volatile long lastSnapshotTime = System.currentTimeMillis();
+
+    public SerializableService(ShareDataConfig config) {
+        this.config = config;
+        this.walDir = Paths.get(config.getWalDir());
+        this.compactLimiter = new IoRateLimiter(config.getCompactBytesPerSecond());
+    }
+
+    /**
+     * 启动恢复，完成后打开日志写入器
+     * <p>
+     * 必须在追加日志之前调用且只调用一次
+     *
+     * @param shareDataMaster 恢复目标
+     * @return
+     */
+    public WalRecovery.Result recover(ConcurrentMap<String, ShareData> shareDataMaster) {
+        try {
+            WalRecovery.Result result = WalRecovery.recover(walDir, config.getRecoveryThreads(), shareDataMaster);
+            this.walWriter = new GroupCommitWalWriter(walDir, config.getFsyncMode(),
+                    config.getFsyncIntervalMs(), config.getWalSegmentBytes(), result.getLastLsn());
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error recovering WAL: " + walDir, e);
+        }
+    }
 
     /**
      * 日志追加
      * <p>
-     * 简化的日志格式，实际应该至少有操作类型、时间戳、序列号、状态码，
-     * 数据库的话会有数据库的一些信息，如数据库名字、server id等
+     * 二进制日志格式见 {@link com.crayon.datashare.persistence.WalRecordCodec}：
+     * 操作类型、key、版本、LSN、数据与 CRC32 校验和
      * </p>
-     * 生产日志会有压缩、刷盘等操作，这里简化了
+     * 并发追加的记录会合并为一个批次写入，调用方阻塞到所在批次达到刷盘策略规定的持久化点，
+     * 保证“先写日志再写内存”的语义不变。写入成功后调用方应用到内存，再调用 {@link #markApplied(long)}
+     *
+     * @return 分配的 LSN，写入失败返回 -1
      */
-    public boolean appendLog(String operaType, String key, ShareData value) {
+    public long appendLog(String operaType, String key, ShareData value) {
         PersistenceData persistenceData = new PersistenceData.Builder()
                 .operaType(operaType)
                 .key(key)
                 .shareData(value)
                 .build();
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(MASTER_LOG_FILE, true)))) {
-            // out.flush(); // 可以考虑更频繁的flush或根据策略fsync
-            out.println(persistenceData.toString());
+        if (!walWriter.append(persistenceData).await(persistenceData)) {
+            return -1L;
+        }
+        return persistenceData.getLsn();
+    }
+
+    /**
+     * 批量追加日志，所有记录在同一个批次中写入与复制，只等待一次
+     *
+     * @param operaType
+     * @param keys
+     * @param values
+     * @param atomic    是否作为原子批次：全部成功或全部失败，崩溃时不会只恢复一部分
+     * @return 每条记录分配的 LSN，写入失败的为 -1
+     */
+    public long[] appendLogs(String operaType, List<String> keys, List<ShareData> values, boolean atomic) {
+        List<PersistenceData> records = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            records.add(new PersistenceData.Builder()
+                    .operaType(operaType)
+                    .key(keys.get(i))
+                    .shareData(values.get(i))
+                    .build());
+        }
+        GroupCommitWalWriter.Batch batch = walWriter.appendAll(records, atomic);
+        long[] lsns = new long[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            PersistenceData record = records.get(i);
+            lsns[i] = batch.await(record) ? record.getLsn() : -1L;
+        }
+        return lsns;
+    }
+
+    /**
+     * 快照之后的日志是否已达到快照的数据量阈值
+     *
+     * @return
+     */
+    public boolean needSnapshot() {
+        return walWriter.getSealedBytes() + walWriter.getActiveBytes() >= config.getSnapshotLogBytes() && !snapshotting.get();
+    }
+
+    /**
+     * 当前日志段是否已达到压缩的数据量阈值
+     * <p>
+     * 阈值不超过半个日志段，否则段写满滚动后永远达不到阈值
+     *
+     * @return
+     */
+    public boolean needCompaction() {
+        return walWriter.getActiveBytes() >= Math.min(config.getCompactLogBytes(), config.getWalSegmentBytes() / 2);
+    }
+
+    /**
+     * 距上次快照是否已超过间隔且有新日志
+     *
+     * @return
+     */
+    public boolean isSnapshotDue() {
+        return walWriter.getSealedBytes() + walWriter.getActiveBytes() > 0
+                && System.currentTimeMillis() - lastSnapshotTime >= config.getSnapshotIntervalMs();
+    }
+
+    /**
+     * 后台持久化维护：日志总量达到快照阈值时快照，否则当前文件达到压缩阈值时压缩
+     * <p>
+     * 快照与压缩都会删除日志文件，只在同一个后台线程中调用
+     *
+     * @param shareDataMaster
+     * @param checkpointLock
+     */
+    public void maintain(Map<String, ShareData> shareDataMaster, Lock checkpointLock) {
+        if (needSnapshot()) {
+            snapshot(shareDataMaster, checkpointLock);
+        } else if (needCompaction()) {
+            compact();
+        }
+    }
+
+    /**
+     * 压缩日志，只保留每个 key 的最终状态，不停止写入者
+     * <p>
+     * 先滚动日志，新的追加进入新文件；再在后台按带宽上限读写封存文件，见 {@link WalCompactor}
+     *
+     * @return 是否完成压缩
+     */
+    public boolean compact() {
+        if (!snapshotting.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            walWriter.roll();
+            NavigableMap<Long, Path> sealed = walWriter.sealedSegments();
+            if (sealed.isEmpty()) {
+                return false;
+            }
+            long after = WalCompactor.compact(walDir, sealed, compactLimiter);
+            walWriter.deleteSegments(sealed.tailMap(sealed.firstKey(), false).keySet());
+            walWriter.resizeSegment(sealed.firstKey(), after);
             return true;
         } catch (IOException e) {
-            System.err.println("Error writing to WAL: " + e.getMessage());
+            System.err.println("Error compacting WAL: " + e.getMessage());
+            return false;
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    /**
+     * 快照，不停止写入者
+     * <p>
+     * 1、持有检查点锁（写入者在 日志追加+写内存 期间持有其读锁），滚动日志得到边界 LSN。
+     * 此时边界之前的记录都已写入内存，锁只持有一次文件滚动的时间
+     * <p>
+     * 2、释放检查点锁后遍历 ConcurrentHashMap 写快照（模糊快照，见 {@link SnapshotFile}）
+     * <p>
+     * 3、删除更早的快照与边界之前的日志文件
+     *
+     * @param shareDataMaster
+     * @param checkpointLock
+     * @return 是否完成快照，已有快照在进行时返回 false
+     */
+    public boolean snapshot(Map<String, ShareData> shareDataMaster, Lock checkpointLock) {
+        if (!snapshotting.compareAndSet(false, true)) {
             return false;
         }
+        try {
+            long boundary;
+            checkpointLock.lock();
+            try {
+                boundary = walWriter.roll();
+            } finally {
+                checkpointLock.unlock();
+            }
+            SnapshotFile.write(walDir, boundary, shareDataMaster.entrySet().iterator());
+            truncate(boundary);
+            lastSnapshotTime = System.currentTimeMillis();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot: " + e.getMessage());
+            return false;
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    /**
+     * 删除被快照覆盖的旧快照与日志文件
+     * <p>
+     * 滚动之后，当前日志段之前的段只包含不大于边界的记录，整段删除
+     *
+     * @param boundary
+     * @throws IOException
+     */
+    private void truncate(long boundary) throws IOException {
+        for (Path snapshot : WalFiles.listSnapshots(walDir).headMap(boundary, false).values()) {
+            Files.deleteIfExists(snapshot);
+        }
+        walWriter.deleteSegments(walWriter.sealedSegments().keySet());
+    }
+
+    /**
+     * 读取 [fromLsn, untilLsn) 之间的日志
+     *
+     * @param fromLsn
+     * @param untilLsn
+     * @return 日志中已没有 fromLsn（被快照截断）时返回 null
+     */
+    public WalCursor openCursor(long fromLsn, long untilLsn) {
+        NavigableMap<Long, Path> segments = walWriter.segments();
+        if (segments.isEmpty() || segments.firstKey() > fromLsn) {
+            return null;
+        }
+        return new WalCursor(segments, fromLsn, untilLsn);
+    }
+
+    /**
+     * 写入成功的记录已应用到主节点内存，{@link #appendLog} / {@link #appendLogs} 返回的每个有效 LSN 都必须调用一次
+     * <p>
+     * 批次中的记录全部应用后才会交给回调（复制），从节点不会先于主节点看到写入
+     *
+     * @param lsn
+     */
+    public void markApplied(long lsn) {
+        walWriter.markApplied(lsn);
+    }
+
+    /**
+     * 设置日志批次写入并应用到主节点后的回调，按 LSN 顺序得到变更流
+     *
+     * @param commitListener
+     */
+    public void setCommitListener(GroupCommitWalWriter.CommitListener commitListener) {
+        walWriter.setCommitListener(commitListener);
+    }
+
+    /**
+     * @return 最后分配的 LSN
+     */
+    public long getLastLsn() {
+        return walWriter.getLastLsn();
+    }
+
+    /**
+     * 关闭日志写入器，已追加的记录会先写完
+     */
+    public void close() {
+        try {
+            walWriter.close();
+        } catch (IOException e) {
+            System.err.println("Error closing WAL: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
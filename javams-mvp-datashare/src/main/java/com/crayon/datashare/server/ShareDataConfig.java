@@ -0,0 +1,380 @@
+package com.crayon.datashare.server;
+
+import com.crayon.datashare.eviction.EvictionPolicyEnum;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.replication.PowerOfTwoChoicesPolicy;
+import com.crayon.datashare.replication.ReadRoutingPolicy;
+import com.crayon.datashare.store.OffHeapShareDataMap;
+import com.crayon.datashare.store.StorageEngineEnum;
+import lombok.Getter;
+
+/**
+ * 共享数据中心配置
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/23
+ */
+@Getter
+public class ShareDataConfig {
+
+    /**
+     * 日志与快照目录
+     */
+    private final String walDir;
+
+    /**
+     * 刷盘策略，默认每秒 fsync 一次，与 Redis everysec 一致
+     */
+    private final FsyncModeEnum fsyncMode;
+
+    private final long fsyncIntervalMs;
+
+    /**
+     * 日志段大小，段文件预分配为该大小并整体内存映射
+     */
+    private final int walSegmentBytes;
+
+    /**
+     * 快照之后的日志总大小超过该值时触发快照
+     */
+    private final long snapshotLogBytes;
+
+    /**
+     * 有新日志时至少每隔该时间快照一次
+     */
+    private final long snapshotIntervalMs;
+
+    /**
+     * 当前日志文件超过该大小时触发日志压缩（未到快照阈值时）
+     */
+    private final long compactLogBytes;
+
+    /**
+     * 日志压缩的磁盘带宽上限（字节/秒），不大于0表示不限制
+     */
+    private final long compactBytesPerSecond;
+
+    /**
+     * 启动恢复时并行重放的分区数
+     */
+    private final int recoveryThreads;
+
+    /**
+     * 写锁分段数，向上取整为2的幂，锁内存与 key 数量无关
+     */
+    private final int lockStripes;
+
+    /**
+     * key 数量上限，不大于0表示不限制
+     */
+    private final long maxEntries;
+
+    /**
+     * 估算内存上限（字节），不大于0表示不限制
+     */
+    private final long maxMemoryBytes;
+
+    /**
+     * 超过容量上限时的淘汰策略
+     */
+    private final EvictionPolicyEnum evictionPolicy;
+
+    /**
+     * 每次淘汰采样的 key 数，与 Redis maxmemory-samples 一致默认为5
+     */
+    private final int evictionSamples;
+
+    /**
+     * 过期时间轮每格的时间跨度，也是过期的精度
+     */
+    private final long expireTickMs;
+
+    /**
+     * 执行过期删除（写日志、同步从节点、通知）的线程数
+     */
+    private final int expireThreads;
+
+    /**
+     * 从节点数量
+     */
+    private final int replicaCount;
+
+    /**
+     * 每个从节点待应用的日志批次队列容量，满时丢弃批次，由从节点从日志追赶
+     */
+    private final int replicationQueueBatches;
+
+    /**
+     * 读路由策略，默认按 in-flight 两次随机选择、不限制落后量
+     */
+    private final ReadRoutingPolicy readRoutingPolicy;
+
+    /**
+     * 投递变更通知的线程数
+     */
+    private final int notifyThreads;
+
+    /**
+     * 每个订阅者最多积压的待通知 key 数，超过时丢弃积压并通知订阅者重新同步
+     */
+    private final int notifyQueueKeys;
+
+    /**
+     * 分发阶段最多积压的待分发 key 数，同一个 key 的多次变更合并，超过时丢弃积压并通知所有订阅者重新同步
+     */
+    private final int notifyDispatchKeys;
+
+    /**
+     * 主从节点数据的存储引擎，默认堆内
+     */
+    private final StorageEngineEnum storageEngine;
+
+    /**
+     * 堆外存储的 Slab 页大小
+     */
+    private final int slabPageBytes;
+
+    /**
+     * Raft 模式：Follower 超过该时间没有收到 Leader 的消息时发起选举，实际超时在 [1, 2) 倍之间随机
+     */
+    private final long raftElectionTimeoutMs;
+
+    /**
+     * Raft 模式：Leader 空闲时发送心跳的间隔，应远小于选举超时
+     */
+    private final long raftHeartbeatMs;
+
+    /**
+     * Raft 模式：一次 AppendEntries 最多携带的日志条目数
+     */
+    private final int raftMaxBatchEntries;
+
+    /**
+     * Raft 模式：每个 Follower 已发送、未收到响应的 AppendEntries 上限（流水线深度）
+     */
+    private final int raftMaxInflight;
+
+    /**
+     * Raft 模式：写入等待提交的最长时间，超时后结果未知
+     */
+    private final long raftCommitTimeoutMs;
+
+    public ShareDataConfig(Builder builder) {
+        this.walDir = builder.walDir;
+        this.fsyncMode = builder.fsyncMode;
+        this.fsyncIntervalMs = builder.fsyncIntervalMs;
+        this.walSegmentBytes = builder.walSegmentBytes;
+        this.snapshotLogBytes = builder.snapshotLogBytes;
+        this.snapshotIntervalMs = builder.snapshotIntervalMs;
+        this.compactLogBytes = builder.compactLogBytes;
+        this.compactBytesPerSecond = builder.compactBytesPerSecond;
+        this.recoveryThreads = builder.recoveryThreads;
+        this.lockStripes = builder.lockStripes;
+        this.maxEntries = builder.maxEntries;
+        this.maxMemoryBytes = builder.maxMemoryBytes;
+        this.evictionPolicy = builder.evictionPolicy;
+        this.evictionSamples = builder.evictionSamples;
+        this.expireTickMs = builder.expireTickMs;
+        this.expireThreads = builder.expireThreads;
+        this.replicaCount = builder.replicaCount;
+        this.replicationQueueBatches = builder.replicationQueueBatches;
+        this.readRoutingPolicy = builder.readRoutingPolicy;
+        this.notifyThreads = builder.notifyThreads;
+        this.notifyQueueKeys = builder.notifyQueueKeys;
+        this.notifyDispatchKeys = builder.notifyDispatchKeys;
+        this.storageEngine = builder.storageEngine;
+        this.slabPageBytes = builder.slabPageBytes;
+        this.raftElectionTimeoutMs = builder.raftElectionTimeoutMs;
+        this.raftHeartbeatMs = builder.raftHeartbeatMs;
+        this.raftMaxBatchEntries = builder.raftMaxBatchEntries;
+        this.raftMaxInflight = builder.raftMaxInflight;
+        this.raftCommitTimeoutMs = builder.raftCommitTimeoutMs;
+    }
+
+    public static ShareDataConfig defaultConfig() {
+        return new Builder().build();
+    }
+
+    // 建造者模式
+    public static class Builder {
+        private String walDir = System.getProperty("user.dir") + "/wal";
+        private FsyncModeEnum fsyncMode = FsyncModeEnum.FSYNC_EVERY_N_MS;
+        private long fsyncIntervalMs = 1000L;
+        private int walSegmentBytes = 64 * 1024 * 1024;
+        private long snapshotLogBytes = 64L * 1024 * 1024;
+        private long snapshotIntervalMs = 10L * 60 * 1000;
+        private long compactLogBytes = 16L * 1024 * 1024;
+        private long compactBytesPerSecond = 32L * 1024 * 1024;
+        private int recoveryThreads = Runtime.getRuntime().availableProcessors();
+        private int lockStripes = 1024;
+        private long maxEntries = 0L;
+        private long maxMemoryBytes = 0L;
+        private EvictionPolicyEnum evictionPolicy = EvictionPolicyEnum.LRU;
+        private int evictionSamples = 5;
+        private long expireTickMs = 10L;
+        private int expireThreads = 2;
+        private int replicaCount = 2;
+        private int replicationQueueBatches = 1024;
+        private ReadRoutingPolicy readRoutingPolicy = new PowerOfTwoChoicesPolicy(0L);
+        private int notifyThreads = 2;
+        private int notifyQueueKeys = 1024;
+        private int notifyDispatchKeys = 16 * 1024;
+        private StorageEngineEnum storageEngine = StorageEngineEnum.HEAP;
+        private int slabPageBytes = OffHeapShareDataMap.DEFAULT_PAGE_BYTES;
+        private long raftElectionTimeoutMs = 300L;
+        private long raftHeartbeatMs = 50L;
+        private int raftMaxBatchEntries = 1024;
+        private int raftMaxInflight = 8;
+        private long raftCommitTimeoutMs = 5000L;
+
+        public Builder walDir(String walDir) {
+            this.walDir = walDir;
+            return this;
+        }
+
+        public Builder fsyncMode(FsyncModeEnum fsyncMode) {
+            this.fsyncMode = fsyncMode;
+            return this;
+        }
+
+        public Builder fsyncIntervalMs(long fsyncIntervalMs) {
+            this.fsyncIntervalMs = fsyncIntervalMs;
+            return this;
+        }
+
+        public Builder walSegmentBytes(int walSegmentBytes) {
+            this.walSegmentBytes = walSegmentBytes;
+            return this;
+        }
+
+        public Builder snapshotLogBytes(long snapshotLogBytes) {
+            this.snapshotLogBytes = snapshotLogBytes;
+            return this;
+        }
+
+        public Builder snapshotIntervalMs(long snapshotIntervalMs) {
+            this.snapshotIntervalMs = snapshotIntervalMs;
+            return this;
+        }
+
+        public Builder compactLogBytes(long compactLogBytes) {
+            this.compactLogBytes = compactLogBytes;
+            return this;
+        }
+
+        public Builder compactBytesPerSecond(long compactBytesPerSecond) {
+            this.compactBytesPerSecond = compactBytesPerSecond;
+            return this;
+        }
+
+        public Builder recoveryThreads(int recoveryThreads) {
+            this.recoveryThreads = recoveryThreads;
+            return this;
+        }
+
+        public Builder lockStripes(int lockStripes) {
+            this.lockStripes = lockStripes;
+            return this;
+        }
+
+        public Builder maxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder maxMemoryBytes(long maxMemoryBytes) {
+            this.maxMemoryBytes = maxMemoryBytes;
+            return this;
+        }
+
+        public Builder evictionPolicy(EvictionPolicyEnum evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
+        public Builder evictionSamples(int evictionSamples) {
+            this.evictionSamples = evictionSamples;
+            return this;
+        }
+
+        public Builder expireTickMs(long expireTickMs) {
+            this.expireTickMs = expireTickMs;
+            return this;
+        }
+
+        public Builder expireThreads(int expireThreads) {
+            this.expireThreads = expireThreads;
+            return this;
+        }
+
+        public Builder replicaCount(int replicaCount) {
+            this.replicaCount = replicaCount;
+            return this;
+        }
+
+        public Builder replicationQueueBatches(int replicationQueueBatches) {
+            this.replicationQueueBatches = replicationQueueBatches;
+            return this;
+        }
+
+        public Builder readRoutingPolicy(ReadRoutingPolicy readRoutingPolicy) {
+            this.readRoutingPolicy = readRoutingPolicy;
+            return this;
+        }
+
+        public Builder notifyThreads(int notifyThreads) {
+            this.notifyThreads = notifyThreads;
+            return this;
+        }
+
+        public Builder notifyQueueKeys(int notifyQueueKeys) {
+            this.notifyQueueKeys = notifyQueueKeys;
+            return this;
+        }
+
+        public Builder notifyDispatchKeys(int notifyDispatchKeys) {
+            this.notifyDispatchKeys = notifyDispatchKeys;
+            return this;
+        }
+
+        public Builder storageEngine(StorageEngineEnum storageEngine) {
+            this.storageEngine = storageEngine;
+            return this;
+        }
+
+        public Builder slabPageBytes(int slabPageBytes) {
+            this.slabPageBytes = slabPageBytes;
+            return this;
+        }
+
+        public Builder raftElectionTimeoutMs(long raftElectionTimeoutMs) {
+            this.raftElectionTimeoutMs = raftElectionTimeoutMs;
+            return this;
+        }
+
+        public Builder raftHeartbeatMs(long raftHeartbeatMs) {
+            this.raftHeartbeatMs = raftHeartbeatMs;
+            return this;
+        }
+
+        public Builder raftMaxBatchEntries(int raftMaxBatchEntries) {
+            this.raftMaxBatchEntries = raftMaxBatchEntries;
+            return this;
+        }
+
+        public Builder raftMaxInflight(int raftMaxInflight) {
+            this.raftMaxInflight = raftMaxInflight;
+            return this;
+        }
+
+        public Builder raftCommitTimeoutMs(long raftCommitTimeoutMs) {
+            this.raftCommitTimeoutMs = raftCommitTimeoutMs;
+            return this;
+        }
+
+        public ShareDataConfig build() {
+            return new ShareDataConfig(this);
+        }
+    }
+}
@@ -1,11 +1,37 @@
 package com.crayon.datashare.server;
 
+import com.crayon.datashare.eviction.EvictionManager;
+import com.crayon.datashare.expire.HierarchicalTimingWheel;
+import com.crayon.datashare.model.ScanResult;
 import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.WalCursor;
+import com.crayon.datashare.persistence.WalRecovery;
+import com.crayon.datashare.replication.Replica;
+import com.crayon.datashare.replication.ReplicationManager;
+import com.crayon.datashare.replication.ReplicationSource;
+import com.crayon.datashare.store.OffHeapShareDataMap;
+import com.crayon.datashare.store.StorageEngineEnum;
 
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 /**
  * 简单的共享数据存储中心
@@ -15,7 +41,9 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * <p>
  * API-获取数据
  * API-存储数据
+ * API-条件写入（Compare-And-Set）与删除
  * API-注册信息
+ * API-路径命名空间：子节点列表、范围/前缀分页扫描、前缀 Watcher
  * <p>
  * 数据量到了应规模时进行序列化快照，存储数据时日志追加
  *
@@ -25,6 +53,21 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  */
 public class ShareDataServer {
 
+    /**
+     * 不比较版本
+     */
+    public static final int ANY_VERSION = -1;
+
+    /**
+     * 不存在的 key 的版本
+     */
+    public static final int ABSENT_VERSION = 0;
+
+    /**
+     * 一次淘汰中连续取不到候选 key 写锁的最大次数，超过后留给下一次写入继续淘汰
+     */
+    private static final int MAX_EVICTION_MISSES = 16;
+
     /**
      * 使用ConcurrentHashMap存储共享数据
      * <p>
@@ -32,44 +75,70 @@ public class ShareDataServer {
      * </p>
      * <p>
      * 集群做读写分离设计，Leader-Follower 模型 。
-     * master写同步到slave,slave节点读,负载均衡采用随机策略。
+     * master写日志后异步复制到slave（见 {@link ReplicationManager}），slave节点读，
+     * 读哪个从节点由读路由策略（见 {@link com.crayon.datashare.replication.ReadRoutingPolicy}）按负载与落后量选择。
      * </p>
      * <p>
-     * 数据容量暂不设置上限与对应清理机制。
+     * 数据容量上限与淘汰策略见 {@link EvictionManager}，淘汰与删除一样写日志、同步从节点。
      * </p>
      * <p>
-     * 没有选举机制，也没有逻辑时钟
+     * 默认是堆内 ConcurrentHashMap；数据量很大时可以配置为堆外存储（见 {@link OffHeapShareDataMap}），
+     * 主从节点都使用同一种存储，GC 停顿不再随数据量增长，读取时多一次解码。
+     * </p>
+     * <p>
+     * 主从模式没有选举机制，也没有逻辑时钟，主节点故障时未复制的写入会丢失；
+     * 需要故障转移时使用 Raft 模式（见 {@link com.crayon.datashare.raft.RaftNode}），每个节点的 ShareDataServer 作为状态机，
+     * 不再有从节点，Follower 就是副本
      * </p>
      */
-    private static ConcurrentHashMap<String, ShareData> shareDataMaster = new ConcurrentHashMap<>();
-    private static ConcurrentHashMap<String, ShareData> shareDataSlave1 = new ConcurrentHashMap<>();
-    private static ConcurrentHashMap<String, ShareData> shareDataSlave2 = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ShareData> shareDataMaster;
 
     /**
-     * 用于随机获取从节点
+     * 从节点与复制流
      */
-    private static Random random = new Random();
+    private final ReplicationManager replicationManager;
 
     /**
+     * 当前线程最近一次成功写入的 LSN，读取时作为最小 LSN 实现读己之写
+     */
+    private final ThreadLocal<Long> lastWriteLsn = ThreadLocal.withInitial(() -> 0L);
+
+    /**
+     * 线程安全方案二：分段写锁 + 不可变对象
      * <p>
-     * keyName -> ReentrantReadWriteLock
-     * </p>
-     * 线程安全方案一：
-     * <p>
-     * 使用读写锁控制共享数据安全。
-     * ConcurrentHashMap 操作数据是安全的,但是共享数据内容是可变的（Mutable）。
-     * 当需要组合多个ConcurrentHashMap操作时，其是不安全的。
-     * 其他线程可能在ConcurrentHashMap多个操作之间，对可变对象进行更改。
-     * <p>
-     * 因此需要读写锁来保证写入时候数据安全。
-     * 在共享数据中，因为原子操作为：写数据+日志追加，所以更需要使用锁来控制。
+     * 写入者按 key 的哈希取分段锁，保证同一个 key 的 日志追加+写内存+通知 是原子的，
+     * 日志顺序与内存中的最终值一致。
      * <p>
-     * 在分布式系统中，共享数据中心本身常被作为分布式锁使用。
+     * {@link ShareData} 是不可变对象，写入者放入新实例而不修改旧实例，
+     * 读取者直接读 ConcurrentHashMap，拿到的引用就是一致的快照，读路径不加锁、不阻塞。
      * <p>
-     * 如果不是需要WAL，其实可以通过不可变对象（Immutable Objects）来消除数据共享来简化并发问题
+     * 方案一为每个 key（包括只读过的不存在的 key）创建一把读写锁且从不删除，
+     * 锁的内存随 key 的数量无限增长，每次读也要 computeIfAbsent + 加锁。
+     * 分段锁的数量固定，内存是常量
      * </p>
      */
-    private static ConcurrentHashMap<String, ReentrantReadWriteLock> readWriteLocks = new ConcurrentHashMap<>();
+    private final StripedLock writeLocks;
+
+    /**
+     * 容量上限与淘汰
+     */
+    private final EvictionManager evictionManager;
+
+    /**
+     * 启动恢复的结果
+     */
+    private final WalRecovery.Result recoveryResult;
+
+    /**
+     * 过期时间轮，到期时在 expireExecutor 中删除 key
+     * <p>
+     * 读取时还会惰性检查过期时间（Lazy Expiration），时间轮到期前已过期的 key 也读不到
+     */
+    private final HierarchicalTimingWheel timingWheel;
+
+    private final ExecutorService expireExecutor;
+
+    private final LongAdder expiredCount = new LongAdder();
 
 
     /**
@@ -85,20 +154,114 @@ public class ShareDataServer {
      * 使用线程安全的Set,如 ConcurrentHashMap.newKeySet()
      * </p>
      */
-    private static ConcurrentHashMap<String, Set<String>> subscribers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * 持久 Watcher，注册一次持续收到每次变更，不需要每次通知后重新注册
+     */
+    private final WatchRegistry watches = new WatchRegistry();
+
+    /**
+     * 前缀 Watcher，注册在路径上，路径本身及其下任意深度的 key 变更都会通知
+     * <p>
+     * 写入时沿 key 的各级父路径查找，代价与路径深度成正比，与前缀 Watcher 的数量无关
+     */
+    private final WatchRegistry prefixWatches = new WatchRegistry();
+
+    /**
+     * 主节点 key 的有序索引，用于子节点列表与范围/前缀扫描
+     */
+    private final PathIndex pathIndex = new PathIndex();
 
 
     /**
      * Watcher
      */
-    private static Notifier notifier = new Notifier();
+    private final Notifier notifier;
 
 
     /**
      * 序列化服务
-     * 日志操作，数据恢复（暂无）等
+     * 日志操作，快照，数据恢复等
+     */
+    private final SerializableService serializableService;
+
+    /**
+     * 检查点锁
+     * <p>
+     * 写入者在 日志追加+写内存 期间持有读锁，快照滚动日志时短暂持有写锁，
+     * 保证边界 LSN 之前的日志都已写入内存。快照遍历数据时不持有该锁，不阻塞写入者
+     * </p>
+     */
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    /**
+     * 后台持久化线程，执行快照与日志压缩，按数据量或时间间隔触发
+     */
+    private final ScheduledExecutorService persistenceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "datashare-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 是否已提交按数据量触发的快照/压缩任务，避免重复提交
      */
-    private static SerializableService serializableService = new SerializableService();
+    private final AtomicBoolean maintenancePending = new AtomicBoolean(false);
+
+    public ShareDataServer() {
+        this(ShareDataConfig.defaultConfig());
+    }
+
+    /**
+     * 创建时先完成启动恢复：加载快照、并行重放日志，再以恢复后的数据初始化从节点并接入复制流，之后才对外提供服务
+     *
+     * @param config
+     */
+    public ShareDataServer(ShareDataConfig config) {
+        Supplier<ConcurrentMap<String, ShareData>> storeFactory = storeFactory(config);
+        this.shareDataMaster = storeFactory.get();
+        this.serializableService = new SerializableService(config);
+        this.writeLocks = new StripedLock(config.getLockStripes());
+        this.evictionManager = new EvictionManager(config.getMaxEntries(), config.getMaxMemoryBytes(),
+                config.getEvictionPolicy(), config.getEvictionSamples());
+        AtomicInteger expireThreadIndex = new AtomicInteger();
+        this.expireExecutor = Executors.newFixedThreadPool(config.getExpireThreads(), r -> {
+            Thread thread = new Thread(r, "datashare-expire-" + expireThreadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timingWheel = new HierarchicalTimingWheel(config.getExpireTickMs(), this::expire, expireExecutor);
+        this.notifier = new Notifier(config.getNotifyThreads(), config.getNotifyQueueKeys(),
+                config.getNotifyDispatchKeys());
+        this.recoveryResult = serializableService.recover(shareDataMaster);
+        long recoveredLsn = recoveryResult.getLastLsn();
+        this.replicationManager = new ReplicationManager(config.getReplicaCount(),
+                config.getReplicationQueueBatches(), config.getReadRoutingPolicy(), storeFactory, new MasterSource(),
+                shareDataMaster, recoveredLsn);
+        serializableService.setCommitListener(replicationManager);
+        for (Map.Entry<String, ShareData> entry : shareDataMaster.entrySet()) {
+            pathIndex.add(entry.getKey());
+            evictionManager.onWrite(entry.getKey(), null, entry.getValue());
+            if (entry.getValue().getExpireAt() > 0) {
+                // 停机期间已过期的 key 在第一个 tick 到期
+                timingWheel.add(entry.getKey(), entry.getValue().getExpireAt());
+            }
+        }
+        persistenceExecutor.scheduleWithFixedDelay(() -> {
+            if (serializableService.isSnapshotDue()) {
+                serializableService.snapshot(shareDataMaster, checkpointLock.writeLock());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private static Supplier<ConcurrentMap<String, ShareData>> storeFactory(ShareDataConfig config) {
+        if (config.getStorageEngine() == StorageEngineEnum.OFF_HEAP) {
+            int pageBytes = config.getSlabPageBytes();
+            return () -> new OffHeapShareDataMap(pageBytes);
+        }
+        return ConcurrentHashMap::new;
+    }
 
     /**
      * 获取共享数据
@@ -110,18 +273,52 @@ public class ShareDataServer {
      * @return
      */
     public ShareData get(String key, String ipPort, boolean watch) {
-        ReentrantReadWriteLock readWriteLock = readWriteLocks.computeIfAbsent(key, k -> new ReentrantReadWriteLock());
-        readWriteLock.readLock().lock();
-        try {
-            ConcurrentHashMap<String, ShareData> readNode = getReadNode();
-            ShareData shareData = readNode.get(key);
-            if (watch && null != ipPort && !"".equals(ipPort) && null != shareData) {
-                register(key, ipPort);
+        return get(key, ipPort, watch, 0L);
+    }
+
+    /**
+     * 获取共享数据，要求读到的节点至少已应用到 minLsn
+     * <p>
+     * 不加锁。由读路由策略从已应用到 minLsn 的从节点中选择，都没有追上（或超过落后量上限）时读主节点。
+     * <p>
+     * 需要设置 Watcher 时先注册再读主节点：写入者先写主节点再取走订阅者，
+     * 读到旧值时注册一定先于写入者取走订阅者，这次变更会被通知到，不会漏掉。
+     * 从节点是异步复制的，读从节点无法保证这一点
+     *
+     * @param key
+     * @param ipPort (可选) 客户端标识，用于重新注册Watcher
+     * @param watch  (可选) 是否要设置Watcher
+     * @param minLsn 最小 LSN，如 {@link #getLastWriteLsn()}，不大于0表示不限制
+     * @return
+     */
+    public ShareData get(String key, String ipPort, boolean watch, long minLsn) {
+        boolean watching = watch && null != ipPort && !"".equals(ipPort);
+        ShareData shareData;
+        if (watching) {
+            register(key, ipPort);
+            shareData = shareDataMaster.get(key);
+        } else {
+            Replica replica = replicationManager.route(minLsn);
+            if (replica != null) {
+                replica.beginRead();
+                try {
+                    shareData = replica.get(key);
+                } finally {
+                    replica.endRead();
+                }
+            } else {
+                shareData = shareDataMaster.get(key);
             }
-            return shareData;
-        } finally {
-            readWriteLock.readLock().unlock();
         }
+        if (null == shareData || shareData.isExpired(System.currentTimeMillis())) {
+            if (watching) {
+                // 只监听已存在的数据
+                unregister(key, ipPort);
+            }
+            return null;
+        }
+        evictionManager.onRead(key);
+        return shareData;
     }
 
     /**
@@ -135,73 +332,779 @@ public class ShareDataServer {
         subscribers.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(ipPort);
     }
 
+    /**
+     * 注册持久 Watcher，之后 key 的每次变更都会通知，直到 {@link #unwatch(String, String)} 或连接断开
+     * <p>
+     * 先注册再读取当前值：当前版本与 lastSeenVersion 不同时立即补发一条通知，
+     * missed 为中间没有送达的变更数（能从版本推算时），断线重连后带上最后见到的版本即可续上，不会漏掉变更。
+     * 注册与并发写入交错时同一个版本可能通知两次，订阅者按版本处理即可。
+     * 删除后重新创建的 key 版本从1开始，版本恰好相同时无法发现中间的变化
+     *
+     * @param key
+     * @param ipPort          订阅者标识
+     * @param lastSeenVersion 订阅者最后见到的版本，{@link #ABSENT_VERSION} 表示不存在，{@link #ANY_VERSION} 表示不补发
+     * @return 当前值，不存在时为 null
+     */
+    public ShareData watch(String key, String ipPort, int lastSeenVersion) {
+        watches.add(key, ipPort);
+        ShareData current = shareDataMaster.get(key);
+        if (current != null && current.isExpired(System.currentTimeMillis())) {
+            current = null;
+        }
+        int currentVersion = current == null ? ABSENT_VERSION : current.getVersion();
+        if (lastSeenVersion != ANY_VERSION && currentVersion != lastSeenVersion) {
+            int missed = currentVersion > lastSeenVersion && lastSeenVersion != ABSENT_VERSION
+                    ? currentVersion - lastSeenVersion - 1 : 0;
+            String eventType = (current == null ? OperaTypeEnum.DELETE : OperaTypeEnum.CHANGE).getType();
+            notifier.notify(Collections.singleton(ipPort), key, eventType, currentVersion, missed);
+        }
+        return current;
+    }
+
+    public void unwatch(String key, String ipPort) {
+        watches.remove(key, ipPort);
+    }
+
+    /**
+     * 移除订阅者的全部持久 Watcher 与尚未触发的一次性订阅，连接断开时调用
+     * <p>
+     * 一次性订阅没有按订阅者的索引，遍历有订阅者的 key 逐个移除，断开连接不在写入路径上
+     *
+     * @param ipPort
+     */
+    public void unwatchAll(String ipPort) {
+        watches.removeSubscriber(ipPort);
+        prefixWatches.removeSubscriber(ipPort);
+        for (String key : subscribers.keySet()) {
+            // 集合为空时移除，与 register 的 computeIfAbsent 在同一个桶上互斥，不会丢掉并发的注册
+            subscribers.computeIfPresent(key, (k, keySubscribers) -> {
+                keySubscribers.remove(ipPort);
+                return keySubscribers.isEmpty() ? null : keySubscribers;
+            });
+        }
+    }
+
+    /**
+     * 注册前缀 Watcher，path 本身及其下任意深度的 key 的每次变更都会通知，直到取消或连接断开
+     * <p>
+     * 不补发注册之前的变更：先注册再 {@link #scan(String, String, int)}，之后的变更都会通知到，
+     * 与扫描结果交错的变更按版本处理即可
+     *
+     * @param path   如 /app/config，末尾的 / 可省略，/ 表示所有以 / 开头的 key
+     * @param ipPort 订阅者标识
+     */
+    public void watchPrefix(String path, String ipPort) {
+        prefixWatches.add(PathIndex.normalize(path), ipPort);
+    }
+
+    public void unwatchPrefix(String path, String ipPort) {
+        prefixWatches.remove(PathIndex.normalize(path), ipPort);
+    }
+
+    /**
+     * 列出路径的直接子节点，如 /app 下有 /app/config/db 与 /app/name 时返回 [config, name]
+     * <p>
+     * 只读主节点的索引，代价与子节点数成正比，与子树大小和 key 总数无关；
+     * 可能包含刚过期、还未被时间轮删除的 key
+     *
+     * @param path 父路径，末尾的 / 可省略
+     * @return 按字典序排列的子节点名称
+     */
+    public List<String> getChildren(String path) {
+        return new ArrayList<>(pathIndex.children(path));
+    }
+
+    /**
+     * 前缀分页扫描，如 /app/config/ 列出该路径下任意深度的所有 key
+     *
+     * @param prefix     字符串前缀，按路径扫描时以 / 结尾
+     * @param startAfter 上一页的 {@link ScanResult#getNextCursor()}，第一页为 null
+     * @param limit      每页最多返回的 key 数
+     * @return
+     */
+    public ScanResult scan(String prefix, String startAfter, int limit) {
+        return scanRange(prefix, PathIndex.prefixEnd(prefix), startAfter, limit);
+    }
+
+    /**
+     * 范围分页扫描，按 key 的字典序返回 [fromKey, toKey) 内的数据
+     * <p>
+     * 在主节点的有序索引上定位起点后顺序遍历，不加锁，代价为 O(log n + 本页访问的 key 数)。
+     * 不是快照：扫描期间的并发写入可能看到也可能看不到，分页之间的写入同理
+     *
+     * @param fromKey    起始 key（含），null 表示从头开始
+     * @param toKey      结束 key（不含），null 表示到末尾
+     * @param startAfter 上一页的 {@link ScanResult#getNextCursor()}，第一页为 null
+     * @param limit      每页最多返回的 key 数
+     * @return
+     */
+    public ScanResult scanRange(String fromKey, String toKey, String startAfter, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        Map<String, ShareData> entries = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        String lastKey = null;
+        String nextCursor = null;
+        Iterator<String> iterator = pathIndex.range(fromKey, startAfter, toKey).iterator();
+        while (iterator.hasNext()) {
+            if (entries.size() >= limit) {
+                // 游标是最后访问的 key，而不是最后返回的 key，跳过的已过期 key 不会在下一页重复访问
+                nextCursor = lastKey;
+                break;
+            }
+            lastKey = iterator.next();
+            collect(entries, lastKey, shareDataMaster.get(lastKey), now);
+        }
+        return new ScanResult(entries, nextCursor);
+    }
+
+    private void unregister(String key, String ipPort) {
+        Set<String> keySubscribers = subscribers.get(key);
+        if (keySubscribers != null) {
+            keySubscribers.remove(ipPort);
+        }
+    }
+
     /**
      * 添加共享数据
      * 组合 日志追加 + 添加 + 集群同步
      * <p>
      * 原子操作设计：
-     * 一般这种带集群同步的标准方案是共识算法（Consensus Algorithm）。太复杂了，搞不来。
-     *
+     * 一般这种带集群同步的标准方案是共识算法（Consensus Algorithm）。
+     * 这里是单节点写入 + 异步复制，写入返回时不保证已到达从节点；
+     * 多数派确认后才返回的写入见 Raft 模式 {@link com.crayon.datashare.raft.RaftNode}
      * </p>
      *
      * @param key
-     * @param value
+     * @param value 版本由服务端分配，写入的是带有新版本与 LSN 的副本，value 本身不会被修改
      */
     public boolean set(String key, ShareData value) {
-        ReentrantReadWriteLock readWriteLock = readWriteLocks.computeIfAbsent(key, k -> new ReentrantReadWriteLock());
-        readWriteLock.writeLock().lock();
+        return write(key, OperaTypeEnum.SET, ANY_VERSION, value, 0L);
+    }
+
+    /**
+     * 添加带过期时间的共享数据
+     * <p>
+     * 到期后 key 被删除并写入 EXPIRE 日志，订阅者收到 EXPIRE 通知
+     *
+     * @param key
+     * @param value
+     * @param ttlMs 存活时间，不大于0表示永不过期
+     * @return
+     */
+    public boolean set(String key, ShareData value, long ttlMs) {
+        return write(key, OperaTypeEnum.SET, ANY_VERSION, value, expireAt(ttlMs));
+    }
+
+    /**
+     * 版本比较后写入（Compare-And-Set），乐观并发控制
+     * <p>
+     * 当前版本等于 expectedVersion 时才写入，版本加一；不存在的 key 版本视为0。
+     * 客户端读-改-写时不需要外部锁，冲突时重新读取后重试即可
+     *
+     * @param key
+     * @param expectedVersion 期望的当前版本
+     * @param value
+     * @return 版本不匹配或写入失败时返回 false
+     */
+    public boolean compareAndSet(String key, int expectedVersion, ShareData value) {
+        return write(key, OperaTypeEnum.SET, expectedVersion, value, 0L);
+    }
+
+    /**
+     * 带过期时间的版本比较后写入，可用于续期
+     *
+     * @param key
+     * @param expectedVersion
+     * @param value
+     * @param ttlMs           存活时间，不大于0表示永不过期
+     * @return
+     */
+    public boolean compareAndSet(String key, int expectedVersion, ShareData value, long ttlMs) {
+        return write(key, OperaTypeEnum.SET, expectedVersion, value, expireAt(ttlMs));
+    }
+
+    /**
+     * key 不存在时才写入，版本为1
+     *
+     * @param key
+     * @param value
+     * @return key 已存在或写入失败时返回 false
+     */
+    public boolean setIfAbsent(String key, ShareData value) {
+        return write(key, OperaTypeEnum.SET, ABSENT_VERSION, value, 0L);
+    }
+
+    /**
+     * key 不存在时才写入，并设置过期时间，适合临时的锁、Leader 信息等
+     *
+     * @param key
+     * @param value
+     * @param ttlMs 存活时间，不大于0表示永不过期
+     * @return
+     */
+    public boolean setIfAbsent(String key, ShareData value, long ttlMs) {
+        return write(key, OperaTypeEnum.SET, ABSENT_VERSION, value, expireAt(ttlMs));
+    }
+
+    /**
+     * 版本比较后删除
+     *
+     * @param key
+     * @param expectedVersion 期望的当前版本，{@link #ANY_VERSION} 表示不比较
+     * @return key 不存在、版本不匹配或写入失败时返回 false
+     */
+    public boolean delete(String key, int expectedVersion) {
+        return write(key, OperaTypeEnum.DELETE, expectedVersion, null, 0L);
+    }
+
+    /**
+     * 分片迁移：写入从其他节点迁移过来的数据，保留原来的版本与过期时间（LSN 由本节点重新分配），
+     * 客户端迁移前后的 CAS 版本保持连续
+     *
+     * @param key
+     * @param value 源节点上的当前值，已过期时不写入
+     * @return
+     */
+    public boolean migrateIn(String key, ShareData value) {
+        if (value.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        return write(key, OperaTypeEnum.SET, ANY_VERSION, value, value.getExpireAt(), true);
+    }
+
+    /**
+     * 分片迁移：key 已迁移到其他节点，从本节点移除，写 MIGRATE 日志并通知订阅者
+     *
+     * @param key
+     * @return key 不存在时返回 false
+     */
+    public boolean migrateOut(String key) {
+        return write(key, OperaTypeEnum.MIGRATE, ANY_VERSION, null, 0L);
+    }
+
+    /**
+     * 按确定的参数写入，供 Raft 状态机在各节点按日志顺序重放同一条命令
+     * <p>
+     * 过期时间由 Leader 在追加日志前算好，各节点重放的结果一致（版本检查时的过期判断仍使用本节点时钟）
+     *
+     * @param operaType       SET 或 DELETE
+     * @param key
+     * @param expectedVersion 期望的当前版本，{@link #ANY_VERSION} 表示不比较
+     * @param value           DELETE 时为 null
+     * @param expireAt        过期时间，毫秒时间戳，0表示永不过期
+     * @return
+     */
+    public boolean apply(OperaTypeEnum operaType, String key, int expectedVersion, ShareData value, long expireAt) {
+        if (operaType != OperaTypeEnum.SET && operaType != OperaTypeEnum.DELETE) {
+            throw new IllegalArgumentException("Unsupported opera type: " + operaType);
+        }
+        return write(key, operaType, expectedVersion, operaType == OperaTypeEnum.SET ? value : null, expireAt);
+    }
+
+    /**
+     * 批量读取，不加锁，所有 key 从同一个节点读取
+     *
+     * @param keys
+     * @return key -> 共享数据，不存在或已过期的 key 不在结果中
+     */
+    public Map<String, ShareData> multiGet(Collection<String> keys) {
+        return multiGet(keys, 0L, false);
+    }
+
+    /**
+     * 批量读取
+     *
+     * @param keys
+     * @param minLsn 最小 LSN，见 {@link #get(String, String, boolean, long)}
+     * @param atomic 按分段顺序加锁后读主节点，不会读到原子批量写入的一部分；为 false 时不加锁
+     * @return key -> 共享数据，不存在或已过期的 key 不在结果中
+     */
+    public Map<String, ShareData> multiGet(Collection<String> keys, long minLsn, boolean atomic) {
+        Map<String, ShareData> result = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        if (atomic) {
+            int[] stripes = writeLocks.lockAll(keys);
+            try {
+                for (String key : keys) {
+                    collect(result, key, shareDataMaster.get(key), now);
+                }
+            } finally {
+                writeLocks.unlockAll(stripes);
+            }
+        } else {
+            Replica replica = replicationManager.route(minLsn);
+            if (replica == null) {
+                for (String key : keys) {
+                    collect(result, key, shareDataMaster.get(key), now);
+                }
+                return result;
+            }
+            replica.beginRead();
+            try {
+                for (String key : keys) {
+                    collect(result, key, replica.get(key), now);
+                }
+            } finally {
+                replica.endRead();
+            }
+        }
+        return result;
+    }
+
+    private void collect(Map<String, ShareData> result, String key, ShareData shareData, long now) {
+        if (shareData != null && !shareData.isExpired(now)) {
+            result.put(key, shareData);
+            evictionManager.onRead(key);
+        }
+    }
+
+    /**
+     * 批量写入
+     * <p>
+     * 按分段下标升序一次获取所有 key 的锁（与其他批量操作顺序一致，不会死锁），
+     * 所有记录作为一个批次追加日志、只等待一次刷盘，复制时也在同一个批次中发送给从节点，
+     * 省去逐个写入时每个 key 一次的加锁、等待组提交与复制。
+     * <p>
+     * atomic 时全部写入或全部不写：任意一个 key 超过容量上限（REJECT 策略）或日志写入失败则都不写入，
+     * 崩溃恢复时也不会只恢复一部分；容量检查逐个 key 进行，一个批次可能使用量略超上限。
+     * 非 atomic 时被拒绝的 key 跳过，其余照常写入
+     *
+     * @param values key -> 共享数据，版本由服务端分配
+     * @param ttlMs  存活时间，不大于0表示永不过期
+     * @param atomic
+     * @return 写入的 key 数
+     */
+    public int multiSet(Map<String, ShareData> values, long ttlMs, boolean atomic) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        long expireAt = expireAt(ttlMs);
+        List<String> keys = new ArrayList<>(values.size());
+        List<ShareData> previous = new ArrayList<>(values.size());
+        List<ShareData> updated = new ArrayList<>(values.size());
+        int written = 0;
+        int[] stripes = writeLocks.lockAll(values.keySet());
         try {
-            // 1、写入日志 WAL
-            boolean logSuccess = serializableService.appendLog(OperaTypeEnum.SET.getType(), key, value);
-            if (!logSuccess) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, ShareData> entry : values.entrySet()) {
+                String key = entry.getKey();
+                ShareData stored = shareDataMaster.get(key);
+                ShareData current = stored != null && stored.isExpired(now) ? null : stored;
+                if (evictionManager.shouldReject(key, current, entry.getValue())) {
+                    if (atomic) {
+                        return 0;
+                    }
+                    continue;
+                }
+                int currentVersion = current == null ? ABSENT_VERSION : current.getVersion();
+                keys.add(key);
+                previous.add(stored);
+                updated.add(entry.getValue().withVersion(currentVersion + 1).withExpireAt(expireAt));
+            }
+            if (keys.isEmpty()) {
+                return 0;
+            }
+            long[] lsns;
+            checkpointLock.readLock().lock();
+            try {
+                lsns = serializableService.appendLogs(OperaTypeEnum.SET.getType(), keys, updated, atomic);
+                for (int i = 0; i < keys.size(); i++) {
+                    if (lsns[i] < 0) {
+                        continue;
+                    }
+                    try {
+                        ShareData value = updated.get(i).withLsn(lsns[i]);
+                        updated.set(i, value);
+                        shareDataMaster.put(keys.get(i), value);
+                        if (previous.get(i) == null) {
+                            pathIndex.add(keys.get(i));
+                        }
+                        evictionManager.onWrite(keys.get(i), previous.get(i), value);
+                    } finally {
+                        serializableService.markApplied(lsns[i]);
+                    }
+                    lastWriteLsn.set(lsns[i]);
+                    written++;
+                }
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                if (lsns[i] < 0) {
+                    continue;
+                }
+                publish(keys.get(i), OperaTypeEnum.CHANGE, updated.get(i).getVersion());
+                if (expireAt > 0) {
+                    timingWheel.add(keys.get(i), expireAt);
+                }
+            }
+        } finally {
+            writeLocks.unlockAll(stripes);
+        }
+        if (written > 0) {
+            evictIfNeeded();
+            scheduleMaintenance();
+        }
+        return written;
+    }
+
+    private static long expireAt(long ttlMs) {
+        return ttlMs > 0 ? System.currentTimeMillis() + ttlMs : 0L;
+    }
+
+    /**
+     * 写操作的公共流程
+     * <p>
+     * 分段锁内完成 版本检查 + 分配版本 + 日志追加 + 写内存 + 通知订阅者，
+     * 同一个 key 的版本检查与写入之间不会插入其他写入者。
+     * 已过期但时间轮还未删除的 key 视为不存在
+     *
+     * @param key
+     * @param operaType       SET、DELETE 或 MIGRATE
+     * @param expectedVersion 期望的当前版本，{@link #ANY_VERSION} 表示不比较
+     * @param value           DELETE、MIGRATE 时为 null
+     * @param expireAt        过期时间，毫秒时间戳，0表示永不过期
+     * @return
+     */
+    private boolean write(String key, OperaTypeEnum operaType, int expectedVersion, ShareData value, long expireAt) {
+        return write(key, operaType, expectedVersion, value, expireAt, false);
+    }
+
+    /**
+     * @param keepVersion 保留 value 自带的版本而不是在当前版本上加一，用于分片迁移
+     */
+    private boolean write(String key, OperaTypeEnum operaType, int expectedVersion, ShareData value, long expireAt,
+                          boolean keepVersion) {
+        ReentrantLock writeLock = writeLocks.lockFor(key);
+        writeLock.lock();
+        try {
+            ShareData stored = shareDataMaster.get(key);
+            ShareData current = stored != null && stored.isExpired(System.currentTimeMillis()) ? null : stored;
+            int currentVersion = current == null ? ABSENT_VERSION : current.getVersion();
+            if (expectedVersion != ANY_VERSION && expectedVersion != currentVersion) {
+                return false;
+            }
+            if (value == null && current == null) {
                 return false;
             }
-            // 2、写入内存Master
-            shareDataMaster.put(key, value);
-            /**
-             * 3、集群同步
-             * 简单模拟，没有处理网络失败、异步、其他复杂ack机制等
-             */
-            syncToSlave(key, value);
-            // 4、通知订阅者，从注册表移除
-            // 获取并移除，实现一次性触发
-            Set<String> currentSubscribers = subscribers.remove(key);
-            if (currentSubscribers != null && !currentSubscribers.isEmpty()) {
-                for (String subscriberIpPort : currentSubscribers) {
-                    // 实际应用中，这里会通过网络连接向客户端发送通知
-                    notifier.notify(subscriberIpPort, key, OperaTypeEnum.CHANGE.getType());
+            if (value != null) {
+                if (evictionManager.shouldReject(key, current, value)) {
+                    return false;
+                }
+                value = value.withVersion(keepVersion ? value.getVersion() : currentVersion + 1).withExpireAt(expireAt);
+            }
+            checkpointLock.readLock().lock();
+            try {
+                // 1、写入日志 WAL
+                long lsn = serializableService.appendLog(operaType.getType(), key, value);
+                if (lsn < 0) {
+                    return false;
                 }
+                lastWriteLsn.set(lsn);
+                // 2、写入内存Master，应用后才复制给从节点，从节点由复制流异步应用
+                try {
+                    if (value != null) {
+                        value = value.withLsn(lsn);
+                        shareDataMaster.put(key, value);
+                        if (stored == null) {
+                            pathIndex.add(key);
+                        }
+                        evictionManager.onWrite(key, stored, value);
+                    } else {
+                        shareDataMaster.remove(key);
+                        pathIndex.remove(key);
+                        evictionManager.onRemove(key, stored);
+                    }
+                } finally {
+                    serializableService.markApplied(lsn);
+                }
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            // 3、通知订阅者
+            if (value != null) {
+                publish(key, OperaTypeEnum.CHANGE, value.getVersion());
+            } else {
+                publish(key, operaType, ABSENT_VERSION);
+            }
+            if (expireAt > 0) {
+                timingWheel.add(key, expireAt);
             }
         } catch (Exception e) {
             // 实际生产需要回滚等事务操作、日志记录等
             return false;
         } finally {
-            readWriteLock.writeLock().unlock();
+            writeLock.unlock();
         }
+        if (value != null) {
+            evictIfNeeded();
+        }
+        scheduleMaintenance();
         return true;
     }
 
     /**
-     * 集群同步
+     * 通知订阅者，在 key 的写锁内调用
+     *
+     * @param key
+     * @param eventType 通知的事件类型
+     * @param version   变更后的版本，删除时为 {@link #ABSENT_VERSION}
+     */
+    private void publish(String key, OperaTypeEnum eventType, int version) {
+        // 通知订阅者，从注册表移除
+        // 获取并移除，实现一次性触发
+        Set<String> currentSubscribers = subscribers.remove(key);
+        if (currentSubscribers != null && !currentSubscribers.isEmpty()) {
+            // 整个集合交给通知线程，写锁内的开销与订阅者数量无关
+            notifier.notify(currentSubscribers, key, eventType.getType(), version, 0);
+        }
+        // 持久 Watcher 不移除，把实时集合交给通知线程遍历
+        Set<String> persistent = watches.subscribers(key);
+        if (prefixWatches.isEmpty()) {
+            if (!persistent.isEmpty()) {
+                notifier.notify(persistent, key, eventType.getType(), version, 0);
+            }
+            return;
+        }
+        // 前缀 Watcher：沿各级父路径查找，同一个订阅者在多个路径上注册时只通知一次
+        List<Set<String>> groups = new ArrayList<>(2);
+        if (!persistent.isEmpty()) {
+            groups.add(persistent);
+        }
+        for (String path = key; path != null; path = PathIndex.parent(path)) {
+            Set<String> pathSubscribers = prefixWatches.subscribers(path);
+            if (!pathSubscribers.isEmpty()) {
+                groups.add(pathSubscribers);
+            }
+        }
+        if (groups.size() == 1) {
+            notifier.notify(groups.get(0), key, eventType.getType(), version, 0);
+        } else if (groups.size() > 1) {
+            notifier.notifyGroups(groups, key, eventType.getType(), version, 0);
+        }
+    }
+
+    /**
+     * 超过容量上限时按淘汰策略淘汰 key，直到回到上限以内
      * <p>
-     * 只在set操作中调用
+     * 在写入者释放自己的写锁之后调用，淘汰时只尝试获取候选 key 的写锁，
+     * 获取不到就换一个候选，不会与其他写入者互相等待
+     */
+    private void evictIfNeeded() {
+        int misses = 0;
+        while (evictionManager.isOverBudget() && misses < MAX_EVICTION_MISSES) {
+            String victim = evictionManager.pickVictim();
+            if (victim == null) {
+                return;
+            }
+            if (!evict(victim)) {
+                misses++;
+            }
+        }
+    }
+
+    /**
+     * 淘汰一个 key：写 EVICT 日志，删除主从数据，通知订阅者
      *
      * @param key
-     * @param value
+     * @return 是否淘汰成功
      */
-    private void syncToSlave(String key, ShareData value) {
-        shareDataSlave1.put(key, value); // 模拟同步到slave1
-        shareDataSlave2.put(key, value); // 模拟同步到slave2
+    private boolean evict(String key) {
+        ReentrantLock writeLock = writeLocks.lockFor(key);
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+        try {
+            ShareData current = shareDataMaster.get(key);
+            if (current == null) {
+                evictionManager.onRemove(key, null);
+                return false;
+            }
+            checkpointLock.readLock().lock();
+            try {
+                long lsn = serializableService.appendLog(OperaTypeEnum.EVICT.getType(), key, null);
+                if (lsn < 0) {
+                    return false;
+                }
+                try {
+                    shareDataMaster.remove(key);
+                    pathIndex.remove(key);
+                    evictionManager.onRemove(key, current);
+                } finally {
+                    serializableService.markApplied(lsn);
+                }
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            publish(key, OperaTypeEnum.EVICT, ABSENT_VERSION);
+            evictionManager.recordEviction();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 时间轮到期回调：写 EXPIRE 日志，删除主从数据，通知订阅者
+     * <p>
+     * key 在添加到时间轮之后被覆盖、删除或换了过期时间时，当前的过期时间与 expireAt 不同，忽略
+     *
+     * @param key
+     * @param expireAt 添加到时间轮时的过期时间
+     */
+    private void expire(String key, long expireAt) {
+        ReentrantLock writeLock = writeLocks.lockFor(key);
+        writeLock.lock();
+        try {
+            ShareData current = shareDataMaster.get(key);
+            if (current == null || current.getExpireAt() != expireAt
+                    || !current.isExpired(System.currentTimeMillis())) {
+                return;
+            }
+            checkpointLock.readLock().lock();
+            try {
+                long lsn = serializableService.appendLog(OperaTypeEnum.EXPIRE.getType(), key, null);
+                if (lsn < 0) {
+                    // 日志写入失败时留在内存中，读取时仍按过期处理，下次重启后重新到期
+                    return;
+                }
+                try {
+                    shareDataMaster.remove(key);
+                    pathIndex.remove(key);
+                    evictionManager.onRemove(key, current);
+                } finally {
+                    serializableService.markApplied(lsn);
+                }
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            publish(key, OperaTypeEnum.EXPIRE, ABSENT_VERSION);
+            expiredCount.increment();
+        } finally {
+            writeLock.unlock();
+        }
+        scheduleMaintenance();
     }
 
+    /**
+     * @return 累计过期删除的 key 数
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
 
     /**
-     * 50%概率随机取节点
+     * 日志量达到阈值时提交一次后台快照/压缩
+     */
+    private void scheduleMaintenance() {
+        if ((serializableService.needSnapshot() || serializableService.needCompaction())
+                && maintenancePending.compareAndSet(false, true)) {
+            persistenceExecutor.execute(() -> {
+                try {
+                    serializableService.maintain(shareDataMaster, checkpointLock.writeLock());
+                } finally {
+                    maintenancePending.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 当前线程最近一次成功写入的 LSN
+     * <p>
+     * 作为 {@link #get(String, String, boolean, long)} 的 minLsn 即可读到自己的写入
+     *
+     * @return
+     */
+    public long getLastWriteLsn() {
+        return lastWriteLsn.get();
+    }
+
+    /**
+     * 各从节点落后主节点的 LSN 数
+     *
+     * @return 从节点名 -> 落后的 LSN 数
+     */
+    public Map<String, Long> getReplicationLag() {
+        return replicationManager.lag(serializableService.getLastLsn());
+    }
+
+    public Notifier getNotifier() {
+        return notifier;
+    }
+
+    public ReplicationManager getReplicationManager() {
+        return replicationManager;
+    }
+
+    /**
+     * 启动恢复的记录数、最大 LSN 与耗时
+     *
+     * @return
+     */
+    public WalRecovery.Result getRecoveryResult() {
+        return recoveryResult;
+    }
+
+    /**
+     * 容量与淘汰计数
      *
      * @return
      */
-    private ConcurrentHashMap<String, ShareData> getReadNode() {
-        return random.nextBoolean() ? shareDataSlave1 : shareDataSlave2;
+    public EvictionManager getEvictionManager() {
+        return evictionManager;
+    }
+
+    /**
+     * 停止后台任务并关闭日志
+     */
+    public void shutdown() {
+        timingWheel.close();
+        expireExecutor.shutdown();
+        try {
+            expireExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        persistenceExecutor.shutdown();
+        try {
+            persistenceExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serializableService.close();
+        replicationManager.close();
+        notifier.close();
+    }
+
+    /**
+     * 从节点追赶与全量同步时读取的主节点数据
+     */
+    private class MasterSource implements ReplicationSource {
+
+        @Override
+        public WalCursor openCursor(long fromLsn, long untilLsn) {
+            return serializableService.openCursor(fromLsn, untilLsn);
+        }
+
+        /**
+         * 与快照一样短暂持有检查点写锁取得边界 LSN（此时已分配的 LSN 都已写入主节点内存），
+         * 释放后再遍历复制
+         */
+        @Override
+        public long copyTo(Map<String, ShareData> target) {
+            long boundary;
+            checkpointLock.writeLock().lock();
+            try {
+                boundary = serializableService.getLastLsn();
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+            target.putAll(shareDataMaster);
+            return boundary;
+        }
     }
 
 }
@@ -0,0 +1,99 @@
+package com.crayon.datashare.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分段锁
+ *
+ * <p>
+ * 固定数量的锁，key 按哈希映射到其中一把。
+ * 不同 key 可能共用一把锁（只会多一点串行，不影响正确性），
+ * 但锁的数量与内存占用是常量，不会随 key 的数量无限增长。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/26
+ */
+public class StripedLock {
+
+    private final ReentrantLock[] locks;
+
+    private final int mask;
+
+    /**
+     * @param stripes 分段数，向上取整为2的幂
+     */
+    public StripedLock(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * key 对应的锁
+     *
+     * @param key
+     * @return
+     */
+    public ReentrantLock lockFor(String key) {
+        return locks[indexOf(key)];
+    }
+
+    /**
+     * key 对应的分段下标
+     * <p>
+     * 与 HashMap 一样把高16位混入低位，避免只用到哈希值的低位
+     *
+     * @param key
+     * @return
+     */
+    public int indexOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * 按分段下标升序获取多个 key 的锁，所有多 key 操作都按同一顺序加锁，不会死锁
+     *
+     * @param keys
+     * @return 已获取的分段下标，升序且不重复，用于 {@link #unlockAll(int[])}
+     */
+    public int[] lockAll(Collection<String> keys) {
+        int[] indexes = new int[keys.size()];
+        int n = 0;
+        for (String key : keys) {
+            indexes[n++] = indexOf(key);
+        }
+        Arrays.sort(indexes);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || indexes[unique - 1] != indexes[i]) {
+                indexes[unique++] = indexes[i];
+            }
+        }
+        int[] stripes = Arrays.copyOf(indexes, unique);
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        return stripes;
+    }
+
+    public void unlockAll(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    public int size() {
+        return locks.length;
+    }
+}
@@ -0,0 +1,84 @@
+package com.crayon.datashare.server;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 持久 Watcher 注册表
+ *
+ * <p>
+ * 与一次性触发的订阅者集合不同，持久 Watcher 注册一次后持续收到每次变更，直到取消或连接断开。
+ * 按 key 与按订阅者各建一份索引：写入时遍历 key 的订阅者集合，断开连接时按订阅者索引逐个移除，
+ * 不需要扫描所有 key。集合都是 ConcurrentHashMap 的 KeySet，增删 O(1)，
+ * 遍历是弱一致的，通知线程遍历期间的注册与取消不会互相阻塞。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/31
+ */
+public class WatchRegistry {
+
+    /**
+     * key -> Set<ip:port>
+     */
+    private final ConcurrentHashMap<String, Set<String>> byKey = new ConcurrentHashMap<>();
+
+    /**
+     * ip:port -> Set<key>
+     */
+    private final ConcurrentHashMap<String, Set<String>> bySubscriber = new ConcurrentHashMap<>();
+
+    public void add(String key, String subscriberIpPort) {
+        byKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(subscriberIpPort);
+        bySubscriber.computeIfAbsent(subscriberIpPort, k -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    public void remove(String key, String subscriberIpPort) {
+        removeFromKey(key, subscriberIpPort);
+        Set<String> keys = bySubscriber.get(subscriberIpPort);
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * 移除订阅者的全部 Watcher，连接断开时调用
+     *
+     * @param subscriberIpPort
+     */
+    public void removeSubscriber(String subscriberIpPort) {
+        Set<String> keys = bySubscriber.remove(subscriberIpPort);
+        if (keys != null) {
+            for (String key : keys) {
+                removeFromKey(key, subscriberIpPort);
+            }
+        }
+    }
+
+    private void removeFromKey(String key, String subscriberIpPort) {
+        // 集合为空时移除，与 add 的 computeIfAbsent 在同一个桶上互斥，不会丢掉并发的注册
+        byKey.computeIfPresent(key, (k, subscribers) -> {
+            subscribers.remove(subscriberIpPort);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * @param key
+     * @return key 的持久 Watcher 集合的实时视图，没有时为空集合
+     */
+    public Set<String> subscribers(String key) {
+        Set<String> subscribers = byKey.get(key);
+        return subscribers == null ? Collections.<String>emptySet() : subscribers;
+    }
+
+    public int size() {
+        return byKey.size();
+    }
+
+    public boolean isEmpty() {
+        return byKey.isEmpty();
+    }
+}
@@ -0,0 +1,580 @@
+package com.crayon.datashare.store;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.ValueCodec;
+
+import java.io.Closeable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外存储的共享数据 Map
+ *
+ * <p>
+ * 堆内的 ConcurrentHashMap 每个条目至少有 Node、key、ShareData、值四个对象，几千万条目时老年代全是这些对象，
+ * GC 的标记与整理时间随之增长。这里把整个条目（key、id、版本、LSN、过期时间、值）按
+ * {@link ValueCodec} 编码后存放在 {@link SlabAllocator} 分配的堆外块中，
+ * 堆上的索引只有每个分段的两个基本类型数组（key 的哈希与块地址，开放寻址 + 线性探测），
+ * 无论多少条目，GC 需要扫描的对象数都是常量。
+ * </p>
+ * <p>
+ * 读取时解码出新的 ShareData，解码产生的是很快死亡的年轻代对象；
+ * 与堆内存储不同，两次读取得到的是相等（equals）但不同的实例。
+ * </p>
+ * <p>
+ * 线程安全：按 key 的哈希分为 {@link #SEGMENTS} 个分段，每段一把读写锁，
+ * 读取持有读锁完成查找与解码，写入持有写锁替换地址并释放旧块，读者不会读到已释放的块。
+ * 遍历按分段逐段复制，是弱一致的，遍历期间一直存在且未修改的条目一定会被遍历到，与 ConcurrentHashMap 一致。
+ * </p>
+ * <p>
+ * 条目格式：4字节条目长度 + 4字节 key 长度 + key（UTF-8） + 8字节 LSN + 4字节版本 + 8字节过期时间 + id（短字符串） + 值
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/6
+ */
+public class OffHeapShareDataMap extends AbstractMap<String, ShareData>
+        implements ConcurrentMap<String, ShareData>, Closeable {
+
+    public static final int DEFAULT_PAGE_BYTES = 1024 * 1024;
+
+    private static final int SEGMENTS = 256;
+
+    private static final int SEGMENT_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * 条目长度 + key 长度
+     */
+    private static final int HEADER_BYTES = 8;
+
+    private static final int SCRATCH_BYTES = 1024;
+
+    /**
+     * 编码缓冲区，编码完成后整体复制到堆外块
+     */
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SCRATCH_BYTES));
+
+    private final SlabAllocator allocator;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private Set<Map.Entry<String, ShareData>> entrySet;
+
+    private volatile boolean closed = false;
+
+    /**
+     * 一个分段：开放寻址表，地址为0表示空槽，删除时后移填补（不留墓碑）
+     */
+    private static final class Segment {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private int[] hashes = new int[INITIAL_CAPACITY];
+
+        private long[] addresses = new long[INITIAL_CAPACITY];
+
+        private volatile int count;
+    }
+
+    public OffHeapShareDataMap() {
+        this(DEFAULT_PAGE_BYTES);
+    }
+
+    /**
+     * @param pageBytes Slab 页大小，超过页大小的条目单独申请内存
+     */
+    public OffHeapShareDataMap(int pageBytes) {
+        this.allocator = new SlabAllocator(pageBytes);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    // ---------------- 读 ----------------
+
+    @Override
+    public ShareData get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        byte[] keyBytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            int slot = find(segment, hash, keyBytes);
+            return slot < 0 ? null : decode(segment.addresses[slot]);
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        byte[] keyBytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            return find(segment, hash, keyBytes) >= 0;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    // ---------------- 写 ----------------
+
+    @Override
+    public ShareData put(String key, ShareData value) {
+        return write(key, value, null, false);
+    }
+
+    @Override
+    public ShareData putIfAbsent(String key, ShareData value) {
+        return write(key, value, null, true);
+    }
+
+    @Override
+    public boolean replace(String key, ShareData oldValue, ShareData newValue) {
+        Objects.requireNonNull(oldValue);
+        return write(key, newValue, oldValue, false) != null;
+    }
+
+    @Override
+    public ShareData replace(String key, ShareData value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            if (find(segment, hash, keyBytes) < 0) {
+                return null;
+            }
+            return write(key, value, null, false);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param expected    不为 null 时只在当前值等于它时写入，写入成功返回当前值，否则返回 null
+     * @param onlyIfAbsent 为 true 时只在不存在时写入
+     * @return 写入前的值
+     */
+    private ShareData write(String key, ShareData value, ShareData expected, boolean onlyIfAbsent) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        checkOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer encoded = encode(keyBytes, value);
+        int length = encoded.remaining();
+        // 锁外分配与复制，写锁内只替换地址
+        long address = allocator.allocate(length);
+        ByteBuffer page = allocator.page(address).duplicate();
+        page.position(SlabAllocator.offsetOf(address));
+        page.put(encoded);
+
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long freeAddress = address;
+        ShareData previous = null;
+        segment.lock.writeLock().lock();
+        try {
+            int slot = find(segment, hash, keyBytes);
+            if (slot >= 0) {
+                long existing = segment.addresses[slot];
+                previous = decode(existing);
+                boolean replace = !onlyIfAbsent && (expected == null || expected.equals(previous));
+                if (replace) {
+                    segment.addresses[slot] = address;
+                    freeAddress = existing;
+                }
+                if (expected != null && !replace) {
+                    previous = null;
+                }
+            } else if (expected == null) {
+                insert(segment, hash, address);
+                freeAddress = 0L;
+            }
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+        if (freeAddress != 0L) {
+            // 持有写锁替换地址后已没有读者能访问旧块
+            allocator.free(freeAddress, lengthAt(freeAddress));
+        }
+        return previous;
+    }
+
+    @Override
+    public ShareData remove(Object key) {
+        return removeEntry(key, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return value instanceof ShareData && removeEntry(key, (ShareData) value) != null;
+    }
+
+    /**
+     * @param expected 不为 null 时只在当前值等于它时删除
+     * @return 删除的值
+     */
+    private ShareData removeEntry(Object key, ShareData expected) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        byte[] keyBytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long address;
+        ShareData previous;
+        segment.lock.writeLock().lock();
+        try {
+            int slot = find(segment, hash, keyBytes);
+            if (slot < 0) {
+                return null;
+            }
+            address = segment.addresses[slot];
+            previous = decode(address);
+            if (expected != null && !expected.equals(previous)) {
+                return null;
+            }
+            delete(segment, slot);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+        allocator.free(address, lengthAt(address));
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.lock.writeLock().lock();
+            try {
+                for (long address : segment.addresses) {
+                    if (address != 0L) {
+                        allocator.free(address, lengthAt(address));
+                    }
+                }
+                segment.hashes = new int[INITIAL_CAPACITY];
+                segment.addresses = new long[INITIAL_CAPACITY];
+                segment.count = 0;
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 释放所有堆外内存，之后不能再写入
+     */
+    @Override
+    public void close() {
+        closed = true;
+        clear();
+        allocator.release();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Off-heap store is closed");
+        }
+    }
+
+    // ---------------- 遍历 ----------------
+
+    @Override
+    public Set<Map.Entry<String, ShareData>> entrySet() {
+        Set<Map.Entry<String, ShareData>> set = entrySet;
+        if (set == null) {
+            set = new AbstractSet<Map.Entry<String, ShareData>>() {
+                @Override
+                public Iterator<Map.Entry<String, ShareData>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return OffHeapShareDataMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    OffHeapShareDataMap.this.clear();
+                }
+            };
+            entrySet = set;
+        }
+        return set;
+    }
+
+    /**
+     * 逐个分段在读锁内解码为列表后遍历，同一时刻只有一个分段的条目在堆上
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, ShareData>> {
+
+        private int nextSegment = 0;
+
+        private List<Map.Entry<String, ShareData>> current = new ArrayList<>();
+
+        private int index = 0;
+
+        private Map.Entry<String, ShareData> last;
+
+        @Override
+        public boolean hasNext() {
+            while (index >= current.size()) {
+                if (nextSegment >= SEGMENTS) {
+                    return false;
+                }
+                current = snapshot(segments[nextSegment++]);
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<String, ShareData> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = current.get(index++);
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            OffHeapShareDataMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+
+    private List<Map.Entry<String, ShareData>> snapshot(Segment segment) {
+        segment.lock.readLock().lock();
+        try {
+            List<Map.Entry<String, ShareData>> entries = new ArrayList<>(segment.count);
+            for (long address : segment.addresses) {
+                if (address != 0L) {
+                    entries.add(new SimpleImmutableEntry<>(decodeKey(address), decode(address)));
+                }
+            }
+            return entries;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    // ---------------- 索引 ----------------
+
+    /**
+     * @return 槽位，不存在时返回-1
+     */
+    private int find(Segment segment, int hash, byte[] keyBytes) {
+        int[] hashes = segment.hashes;
+        long[] addresses = segment.addresses;
+        int mask = addresses.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long address = addresses[slot];
+            if (address == 0L) {
+                return -1;
+            }
+            if (hashes[slot] == hash && keyEquals(address, keyBytes)) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(Segment segment, int hash, long address) {
+        if ((segment.count + 1) * 4L > segment.addresses.length * 3L) {
+            resize(segment);
+        }
+        place(segment.hashes, segment.addresses, hash, address);
+        segment.count++;
+    }
+
+    private static void place(int[] hashes, long[] addresses, int hash, long address) {
+        int mask = addresses.length - 1;
+        int slot = hash & mask;
+        while (addresses[slot] != 0L) {
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        addresses[slot] = address;
+    }
+
+    private static void resize(Segment segment) {
+        int[] oldHashes = segment.hashes;
+        long[] oldAddresses = segment.addresses;
+        int[] hashes = new int[oldAddresses.length * 2];
+        long[] addresses = new long[oldAddresses.length * 2];
+        for (int i = 0; i < oldAddresses.length; i++) {
+            if (oldAddresses[i] != 0L) {
+                place(hashes, addresses, oldHashes[i], oldAddresses[i]);
+            }
+        }
+        segment.hashes = hashes;
+        segment.addresses = addresses;
+    }
+
+    /**
+     * 删除槽位，把后面探测链上的条目前移填补空位（线性探测的后移删除）
+     */
+    private static void delete(Segment segment, int slot) {
+        int[] hashes = segment.hashes;
+        long[] addresses = segment.addresses;
+        int mask = addresses.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; addresses[next] != 0L; next = (next + 1) & mask) {
+            int home = hashes[next] & mask;
+            // home 在 (hole, next] 之间（循环意义上）时条目留在原处，否则前移到空位
+            boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!stays) {
+                hashes[hole] = hashes[next];
+                addresses[hole] = addresses[next];
+                hole = next;
+            }
+        }
+        addresses[hole] = 0L;
+        hashes[hole] = 0;
+        segment.count--;
+    }
+
+    private Segment segmentFor(int hash) {
+        // 高位选分段，低位选槽位
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ---------------- 编解码 ----------------
+
+    private static ByteBuffer encode(byte[] keyBytes, ShareData value) {
+        ByteBuffer buffer = SCRATCH.get();
+        while (true) {
+            buffer.clear();
+            try {
+                buffer.putInt(0);
+                buffer.putInt(keyBytes.length);
+                buffer.put(keyBytes);
+                buffer.putLong(value.getLsn());
+                buffer.putInt(value.getVersion());
+                buffer.putLong(value.getExpireAt());
+                ValueCodec.putShortString(buffer, value.getId());
+                ValueCodec.putValue(buffer, value.getData());
+                buffer.putInt(0, buffer.position());
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                if (buffer.capacity() <= SCRATCH_BYTES * 64) {
+                    // 偶尔出现的大值不长期占用线程的缓冲区
+                    SCRATCH.set(buffer);
+                }
+            }
+        }
+    }
+
+    private ShareData decode(long address) {
+        ByteBuffer buffer = allocator.page(address).duplicate();
+        int offset = SlabAllocator.offsetOf(address);
+        buffer.limit(offset + buffer.getInt(offset));
+        buffer.position(offset + HEADER_BYTES + buffer.getInt(offset + 4));
+        long lsn = buffer.getLong();
+        int version = buffer.getInt();
+        long expireAt = buffer.getLong();
+        String id = ValueCodec.getShortString(buffer);
+        Object data = ValueCodec.getValue(buffer);
+        return new ShareData(id, data, version, lsn, expireAt);
+    }
+
+    private String decodeKey(long address) {
+        ByteBuffer buffer = allocator.page(address).duplicate();
+        int offset = SlabAllocator.offsetOf(address);
+        buffer.position(offset + HEADER_BYTES);
+        return ValueCodec.getUtf8(buffer, buffer.getInt(offset + 4));
+    }
+
+    private boolean keyEquals(long address, byte[] keyBytes) {
+        ByteBuffer page = allocator.page(address);
+        int offset = SlabAllocator.offsetOf(address);
+        if (page.getInt(offset + 4) != keyBytes.length) {
+            return false;
+        }
+        int start = offset + HEADER_BYTES;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (page.get(start + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int lengthAt(long address) {
+        return allocator.page(address).getInt(SlabAllocator.offsetOf(address));
+    }
+
+    // ---------------- 统计 ----------------
+
+    /**
+     * @return 申请的堆外内存字节数
+     */
+    public long getOffHeapReservedBytes() {
+        return allocator.getReservedBytes();
+    }
+
+    /**
+     * @return 条目占用的堆外块字节数
+     */
+    public long getOffHeapUsedBytes() {
+        return allocator.getUsedBytes();
+    }
+
+    /**
+     * @return 堆上索引数组的字节数
+     */
+    public long getIndexBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            // 不加锁，统计值允许不精确
+            bytes += segment.addresses.length * 12L;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,251 @@
+package com.crayon.datashare.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外内存的 Slab 分配器
+ *
+ * <p>
+ * 与 memcached 的 slab 相同：内存按页（默认1MB）向操作系统申请，每页切分为同样大小的块，
+ * 块大小从64字节开始按1.25倍递增分为若干级，分配时取能放下的最小一级。
+ * 释放的块进入所在级别的空闲栈，之后同级别的分配优先复用，不会产生外部碎片，
+ * 代价是每块平均约10%的内部碎片。超过页大小的分配单独申请一页，释放时整页归还。
+ * </p>
+ * <p>
+ * 地址是一个 long：高32位页号，低32位页内偏移。页号从1开始，0表示空地址。
+ * 已分配给某一级的页不会再转给其他级别，值大小分布长期变化时会有部分内存闲置在旧级别中。
+ * </p>
+ * <p>
+ * 页是 DirectByteBuffer，堆上只有页对象本身，不随块的数量增长；
+ * 堆外内存受 -XX:MaxDirectMemorySize 限制，页在分配器关闭后由 GC 回收。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/6
+ */
+final class SlabAllocator {
+
+    static final int MIN_CHUNK = 64;
+
+    private static final double GROWTH_FACTOR = 1.25;
+
+    private final int pageBytes;
+
+    /**
+     * 各级的块大小，递增，最后一级等于页大小
+     */
+    private final int[] chunkSizes;
+
+    private final SizeClass[] classes;
+
+    /**
+     * 页号 -> 页，只在 this 上加锁时扩容与修改，读取不加锁
+     */
+    private volatile ByteBuffer[] pages = new ByteBuffer[64];
+
+    /**
+     * 已分配的页号上限，受 this 保护
+     */
+    private int pageCount = 1;
+
+    /**
+     * 大块释放后空出的页号，受 this 保护
+     */
+    private int[] freePageIds = new int[8];
+
+    private int freePageIdCount;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * 一个级别：正在切分的页与空闲块栈，受自身锁保护
+     */
+    private static final class SizeClass {
+
+        private final int chunkSize;
+
+        private int page;
+
+        private int nextOffset;
+
+        private long[] free = new long[16];
+
+        private int freeCount;
+
+        SizeClass(int chunkSize, int pageBytes) {
+            this.chunkSize = chunkSize;
+            // 当前页已切完，第一次分配时申请新页
+            this.nextOffset = pageBytes;
+        }
+    }
+
+    SlabAllocator(int pageBytes) {
+        if (pageBytes < MIN_CHUNK) {
+            throw new IllegalArgumentException("pageBytes too small: " + pageBytes);
+        }
+        this.pageBytes = pageBytes;
+        int count = 0;
+        int[] sizes = new int[64];
+        for (double size = MIN_CHUNK; size < pageBytes; size *= GROWTH_FACTOR) {
+            // 8字节对齐
+            int aligned = ((int) size + 7) & ~7;
+            if (count == 0 || aligned > sizes[count - 1]) {
+                if (count == sizes.length) {
+                    sizes = Arrays.copyOf(sizes, count * 2);
+                }
+                sizes[count++] = aligned;
+            }
+        }
+        if (count == sizes.length) {
+            sizes = Arrays.copyOf(sizes, count + 1);
+        }
+        sizes[count++] = pageBytes;
+        this.chunkSizes = Arrays.copyOf(sizes, count);
+        this.classes = new SizeClass[count];
+        for (int i = 0; i < count; i++) {
+            classes[i] = new SizeClass(chunkSizes[i], pageBytes);
+        }
+    }
+
+    /**
+     * @param size 需要的字节数
+     * @return 块地址，块大小不小于 size
+     */
+    long allocate(int size) {
+        if (size > pageBytes) {
+            int page = newPage(size);
+            usedBytes.addAndGet(size);
+            return address(page, 0);
+        }
+        SizeClass sizeClass = classes[classIndex(size)];
+        long address;
+        synchronized (sizeClass) {
+            if (sizeClass.freeCount > 0) {
+                address = sizeClass.free[--sizeClass.freeCount];
+            } else {
+                if (sizeClass.nextOffset + sizeClass.chunkSize > pageBytes) {
+                    sizeClass.page = newPage(pageBytes);
+                    sizeClass.nextOffset = 0;
+                }
+                address = address(sizeClass.page, sizeClass.nextOffset);
+                sizeClass.nextOffset += sizeClass.chunkSize;
+            }
+        }
+        usedBytes.addAndGet(sizeClass.chunkSize);
+        return address;
+    }
+
+    /**
+     * 释放块，调用方保证之后不再访问该地址
+     *
+     * @param address
+     * @param size    分配时的 size
+     */
+    void free(long address, int size) {
+        if (size > pageBytes) {
+            releasePage(pageOf(address));
+            usedBytes.addAndGet(-size);
+            return;
+        }
+        SizeClass sizeClass = classes[classIndex(size)];
+        synchronized (sizeClass) {
+            if (sizeClass.freeCount == sizeClass.free.length) {
+                sizeClass.free = Arrays.copyOf(sizeClass.free, sizeClass.freeCount * 2);
+            }
+            sizeClass.free[sizeClass.freeCount++] = address;
+        }
+        usedBytes.addAndGet(-sizeClass.chunkSize);
+    }
+
+    /**
+     * @param address
+     * @return 地址所在的页，按 {@link #offsetOf(long)} 绝对位置读写，不要修改页的 position/limit
+     */
+    ByteBuffer page(long address) {
+        return pages[pageOf(address)];
+    }
+
+    static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    private static int pageOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static long address(int page, int offset) {
+        return ((long) page << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private int classIndex(int size) {
+        int low = 0;
+        int high = chunkSizes.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunkSizes[mid] < size) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private synchronized int newPage(int capacity) {
+        ByteBuffer page = ByteBuffer.allocateDirect(capacity);
+        int id;
+        if (freePageIdCount > 0) {
+            id = freePageIds[--freePageIdCount];
+        } else {
+            id = pageCount++;
+        }
+        ByteBuffer[] current = pages;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = page;
+        // volatile 写发布新页，之后才把地址交给调用方
+        pages = current;
+        reservedBytes.addAndGet(capacity);
+        return id;
+    }
+
+    private synchronized void releasePage(int id) {
+        ByteBuffer[] current = pages;
+        reservedBytes.addAndGet(-current[id].capacity());
+        current[id] = null;
+        pages = current;
+        if (freePageIdCount == freePageIds.length) {
+            freePageIds = Arrays.copyOf(freePageIds, freePageIdCount * 2);
+        }
+        freePageIds[freePageIdCount++] = id;
+    }
+
+    /**
+     * 释放所有页，之后不能再使用
+     */
+    synchronized void release() {
+        pages = new ByteBuffer[1];
+        reservedBytes.set(0L);
+        usedBytes.set(0L);
+    }
+
+    /**
+     * @return 向操作系统申请的堆外内存字节数
+     */
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * @return 已分配出去的块的字节数（含块内未用的部分）
+     */
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+}
@@ -0,0 +1,22 @@
+package com.crayon.datashare.store;
+
+/**
+ * 主从节点数据的存储引擎枚举
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/6
+ */
+public enum StorageEngineEnum {
+
+    /**
+     * 堆内 ConcurrentHashMap，读取直接返回存入的对象，数据量大时 GC 需要扫描、复制所有值
+     */
+    HEAP,
+
+    /**
+     * 堆外 Slab 存储（见 {@link OffHeapShareDataMap}），值序列化后存放在堆外内存中，读取时解码。
+     * 堆上只有几个基本类型数组作为索引，GC 停顿与数据量无关
+     */
+    OFF_HEAP
+}
@@ -0,0 +1,220 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.eviction.EvictionManager;
+import com.crayon.datashare.eviction.EvictionPolicyEnum;
+import com.crayon.datashare.model.ScanResult;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.replication.Replica;
+import com.crayon.datashare.replication.ReplicationManager;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 容量上限与淘汰测试
+ *
+ * <p>
+ * 每种策略都写入超过上限的 key，检查计数、从节点与主节点一致（EVICT 日志已复制），
+ * 重启恢复后被淘汰的 key 不会重新出现：
+ * <ol>
+ *     <li>LRU / LFU，key 数上限：先写满，反复读一批热点 key，再把其余 key 各读一次（比热点 key 更近），
+ *     然后写入同样多的新 key。输出留下的热点 key 数，LFU 应保留热点，LRU 按最近访问淘汰</li>
+ *     <li>LRU，内存上限：估算内存不超过上限</li>
+ *     <li>REJECT：超过上限的新增 key 被拒绝，已有 key 的更新仍然允许，不淘汰任何 key</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/10
+ */
+public class EvictionDemo {
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final int HOT_KEYS = 100;
+
+    private static final int HOT_READS = 50;
+
+    private static final long MAX_MEMORY_BYTES = 256 * 1024;
+
+    private static final int VALUE_LENGTH = 512;
+
+    private static final long WAIT_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        for (EvictionPolicyEnum policy : new EvictionPolicyEnum[]{EvictionPolicyEnum.LRU, EvictionPolicyEnum.LFU}) {
+            System.out.println("-- " + policy + ", max entries " + MAX_ENTRIES);
+            Path walDir = Files.createTempDirectory("datashare-evict");
+            ShareDataConfig config = config(walDir)
+                    .maxEntries(MAX_ENTRIES)
+                    .evictionPolicy(policy)
+                    .build();
+            ShareDataServer server = new ShareDataServer(config);
+            for (int i = 0; i < MAX_ENTRIES; i++) {
+                server.set(key(i), new ShareData("id" + i, "v" + i, 1));
+            }
+            for (int round = 0; round < HOT_READS; round++) {
+                for (int i = 0; i < HOT_KEYS; i++) {
+                    server.get(key(i), null, false);
+                }
+            }
+            for (int i = HOT_KEYS; i < MAX_ENTRIES; i++) {
+                server.get(key(i), null, false);
+            }
+            for (int i = MAX_ENTRIES; i < MAX_ENTRIES * 2; i++) {
+                server.set(key(i), new ShareData("id" + i, "v" + i, 1));
+            }
+            EvictionManager manager = server.getEvictionManager();
+            Set<String> keys = keys(server);
+            check(manager.getEntries() == MAX_ENTRIES, "entries " + manager.getEntries());
+            check(keys.size() == MAX_ENTRIES, "keys " + keys.size());
+            check(manager.getEvictedCount() == MAX_ENTRIES, "evicted " + manager.getEvictedCount());
+            check(manager.getRejectedCount() == 0, "rejected " + manager.getRejectedCount());
+            int hot = 0;
+            for (int i = 0; i < HOT_KEYS; i++) {
+                if (keys.contains(key(i))) {
+                    hot++;
+                }
+            }
+            System.out.println("entries " + manager.getEntries() + ", evicted " + manager.getEvictedCount()
+                    + ", hot keys kept " + hot + "/" + HOT_KEYS);
+            checkReplicas(server, keys, MAX_ENTRIES * 2);
+            restart(server, config, keys);
+            deleteRecursively(walDir);
+        }
+
+        System.out.println("-- LRU, max memory " + MAX_MEMORY_BYTES + " bytes");
+        Path walDir = Files.createTempDirectory("datashare-evict");
+        ShareDataConfig config = config(walDir)
+                .maxMemoryBytes(MAX_MEMORY_BYTES)
+                .evictionPolicy(EvictionPolicyEnum.LRU)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < VALUE_LENGTH; i++) {
+            value.append('x');
+        }
+        int written = MAX_ENTRIES * 2;
+        for (int i = 0; i < written; i++) {
+            server.set(key(i), new ShareData("id" + i, value.toString(), 1));
+        }
+        EvictionManager manager = server.getEvictionManager();
+        Set<String> keys = keys(server);
+        check(manager.getUsedBytes() <= MAX_MEMORY_BYTES, "used bytes " + manager.getUsedBytes());
+        check(manager.getEntries() == keys.size(), "entries " + manager.getEntries() + ", keys " + keys.size());
+        check(manager.getEvictedCount() == written - keys.size(), "evicted " + manager.getEvictedCount());
+        System.out.println("used bytes " + manager.getUsedBytes() + ", entries " + manager.getEntries()
+                + ", evicted " + manager.getEvictedCount());
+        checkReplicas(server, keys, written);
+        restart(server, config, keys);
+        deleteRecursively(walDir);
+
+        System.out.println("-- REJECT, max entries " + MAX_ENTRIES);
+        walDir = Files.createTempDirectory("datashare-evict");
+        config = config(walDir)
+                .maxEntries(MAX_ENTRIES)
+                .evictionPolicy(EvictionPolicyEnum.REJECT)
+                .build();
+        server = new ShareDataServer(config);
+        int accepted = 0;
+        for (int i = 0; i < MAX_ENTRIES * 2; i++) {
+            if (server.set(key(i), new ShareData("id" + i, "v" + i, 1))) {
+                accepted++;
+            }
+        }
+        boolean updated = server.set(key(0), new ShareData("id0", "updated", 1));
+        manager = server.getEvictionManager();
+        keys = keys(server);
+        check(accepted == MAX_ENTRIES, "accepted " + accepted);
+        check(updated, "update of an existing key rejected");
+        check(manager.getRejectedCount() == MAX_ENTRIES, "rejected " + manager.getRejectedCount());
+        check(manager.getEvictedCount() == 0, "evicted " + manager.getEvictedCount());
+        check(keys.size() == MAX_ENTRIES, "keys " + keys.size());
+        System.out.println("accepted " + accepted + ", rejected " + manager.getRejectedCount()
+                + ", update of an existing key accepted: " + updated);
+        checkReplicas(server, keys, MAX_ENTRIES * 2);
+        restart(server, config, keys);
+        deleteRecursively(walDir);
+    }
+
+    private static ShareDataConfig.Builder config(Path walDir) {
+        return new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .replicaCount(2);
+    }
+
+    private static String key(int i) {
+        return "/evict/" + i;
+    }
+
+    /**
+     * 主节点上的全部 key
+     */
+    private static Set<String> keys(ShareDataServer server) {
+        Set<String> keys = new TreeSet<>();
+        String cursor = null;
+        do {
+            ScanResult page = server.scan("/evict/", cursor, 1000);
+            keys.addAll(page.getEntries().keySet());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return keys;
+    }
+
+    /**
+     * 等从节点应用到主节点已提交的 LSN，再逐个 key 比较
+     */
+    private static void checkReplicas(ShareDataServer server, Set<String> keys, int written)
+            throws InterruptedException {
+        ReplicationManager replicationManager = server.getReplicationManager();
+        long committedLsn = replicationManager.getCommittedLsn();
+        for (Replica replica : replicationManager.getReplicas()) {
+            long deadline = System.currentTimeMillis() + WAIT_MS;
+            while (replica.getAppliedLsn() < committedLsn && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            int diff = 0;
+            for (int i = 0; i < written; i++) {
+                if ((replica.get(key(i)) != null) != keys.contains(key(i))) {
+                    diff++;
+                }
+            }
+            check(diff == 0, replica.getName() + " differs from the master on " + diff + " keys");
+        }
+        System.out.println("replicas converged at lsn " + committedLsn);
+    }
+
+    /**
+     * 重启后从日志恢复，被淘汰的 key 不应重新出现
+     */
+    private static void restart(ShareDataServer server, ShareDataConfig config, Set<String> keys) {
+        server.shutdown();
+        server = new ShareDataServer(config);
+        Set<String> recovered = keys(server);
+        check(recovered.equals(keys), "recovered " + recovered.size() + " keys, expected " + keys.size());
+        check(server.getEvictionManager().getEntries() == keys.size(),
+                "recovered entries " + server.getEvictionManager().getEntries());
+        System.out.println("recovered " + recovered.size() + " keys, same as before the restart");
+        server.shutdown();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,296 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.lock.Lease;
+import com.crayon.datashare.lock.LockService;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 分布式锁测试
+ *
+ * <p>
+ * <ol>
+ *     <li>竞争：200个线程反复争抢同一把锁（持有50微秒，释放后锁外处理100微秒），持有时检查互斥与令牌单调递增，
+ *     对比 FIFO 交接与“释放时唤醒所有等待者、大家重试 setIfAbsent”的广播方式，
+ *     输出每秒获取次数、每次获取的唤醒次数与失败重试次数、交接延迟（释放到下一个持有者拿到锁）的 p50/p99</li>
+ *     <li>租约与防护令牌：A 持有锁后停顿超过租约，锁到期交给等待中的 B；
+ *     B 带着新令牌写入受保护的资源，A 恢复后带旧令牌写入被拒绝，释放也失败</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/7
+ */
+public class LockDemo {
+
+    private static final int CONTENDERS = 200;
+
+    private static final long DURATION_MS = 3000;
+
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    private static final long HOLD_NANOS = 50_000;
+
+    private static final long THINK_NANOS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-lock");
+        ShareDataServer server = new ShareDataServer(new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .build());
+        LockService lockService = new LockService(server);
+
+        System.out.println("-- " + CONTENDERS + " contenders on one lock");
+        contend("fifo handoff", new FifoContender(lockService));
+        contend("broadcast  ", new BroadcastContender(server));
+
+        System.out.println("-- lease expiry and fencing");
+        fencing(lockService);
+
+        lockService.close();
+        server.shutdown();
+        deleteRecursively(walDir);
+    }
+
+    private interface Contender {
+
+        /**
+         * @return 令牌
+         */
+        long lock(Stats stats) throws InterruptedException;
+
+        void unlock();
+
+        /**
+         * 竞争结束后补充统计
+         */
+        default void finish(Stats stats) {
+        }
+    }
+
+    private static final class Stats {
+
+        private final LongAdder acquisitions = new LongAdder();
+
+        private final LongAdder wakeups = new LongAdder();
+
+        private final LongAdder failedAttempts = new LongAdder();
+
+        private final long[] handoffNanos = new long[MAX_SAMPLES];
+
+        private final AtomicInteger samples = new AtomicInteger();
+
+        /**
+         * 上一次释放开始的时间
+         */
+        private volatile long releasedAt;
+
+        void recordHandoff(long now) {
+            long released = releasedAt;
+            int i = samples.getAndIncrement();
+            if (released > 0 && i < MAX_SAMPLES) {
+                handoffNanos[i] = now - released;
+            }
+        }
+    }
+
+    private static void contend(String label, Contender contender) throws InterruptedException {
+        Stats stats = new Stats();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger holders = new AtomicInteger();
+        AtomicLong lastToken = new AtomicLong();
+        LongAdder violations = new LongAdder();
+        Thread[] threads = new Thread[CONTENDERS];
+        for (int t = 0; t < CONTENDERS; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        long token = contender.lock(stats);
+                        stats.recordHandoff(System.nanoTime());
+                        if (holders.incrementAndGet() != 1 || token <= lastToken.get()) {
+                            violations.increment();
+                        }
+                        lastToken.set(token);
+                        stats.acquisitions.increment();
+                        // 持有锁期间访问受保护的资源
+                        LockSupport.parkNanos(HOLD_NANOS);
+                        holders.decrementAndGet();
+                        stats.releasedAt = System.nanoTime();
+                        contender.unlock();
+                        // 锁外的处理时间，释放者不会立刻再抢回锁
+                        LockSupport.parkNanos(THINK_NANOS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "lock-contender-" + t);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        contender.finish(stats);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long acquisitions = stats.acquisitions.sum();
+        long[] handoffs = Arrays.copyOf(stats.handoffNanos, Math.min(stats.samples.get(), MAX_SAMPLES));
+        Arrays.sort(handoffs);
+        System.out.printf("%s: %,8.0f acquires/s | wakeups/acquire %6.2f | failed attempts/acquire %6.2f"
+                        + " | handoff p50 %7.1f us p99 %8.1f us | violations %d%n",
+                label, acquisitions / seconds, (double) stats.wakeups.sum() / acquisitions,
+                (double) stats.failedAttempts.sum() / acquisitions,
+                percentile(handoffs, 0.50) / 1000.0, percentile(handoffs, 0.99) / 1000.0, violations.sum());
+    }
+
+    /**
+     * FIFO 交接
+     */
+    private static final class FifoContender implements Contender {
+
+        private final LockService lockService;
+
+        private final ThreadLocal<Lease> lease = new ThreadLocal<>();
+
+        private final long handoffsBefore;
+
+        FifoContender(LockService lockService) {
+            this.lockService = lockService;
+            this.handoffsBefore = lockService.getHandoffCount();
+        }
+
+        @Override
+        public long lock(Stats stats) throws InterruptedException {
+            Lease acquired = lockService.acquire("orders", Thread.currentThread().getName(), 10_000, 60_000);
+            if (acquired == null) {
+                throw new IllegalStateException("timeout");
+            }
+            lease.set(acquired);
+            return acquired.getToken();
+        }
+
+        @Override
+        public void unlock() {
+            lockService.release(lease.get());
+        }
+
+        @Override
+        public void finish(Stats stats) {
+            // 每次交接只唤醒一个线程
+            stats.wakeups.add(lockService.getHandoffCount() - handoffsBefore);
+        }
+    }
+
+    /**
+     * 对照：释放时唤醒所有等待者，被唤醒的线程一起重试
+     */
+    private static final class BroadcastContender implements Contender {
+
+        private static final String KEY = "/locks/orders-broadcast";
+
+        private final ShareDataServer server;
+
+        private final Object monitor = new Object();
+
+        BroadcastContender(ShareDataServer server) {
+            this.server = server;
+        }
+
+        @Override
+        public long lock(Stats stats) throws InterruptedException {
+            while (true) {
+                if (server.setIfAbsent(KEY, new ShareData(Thread.currentThread().getName(), "holder", 1), 10_000)) {
+                    return server.getLastWriteLsn();
+                }
+                stats.failedAttempts.increment();
+                synchronized (monitor) {
+                    if (server.get(KEY, null, false, Long.MAX_VALUE) != null) {
+                        monitor.wait(100);
+                        stats.wakeups.increment();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void unlock() {
+            server.delete(KEY, ShareDataServer.ANY_VERSION);
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    private static void fencing(LockService lockService) throws InterruptedException {
+        FencedResource resource = new FencedResource();
+        Lease a = lockService.acquire("job", "A", 200, 1000);
+        System.out.println("A acquired, token " + a.getToken() + ", write accepted: " + resource.write(a.getToken()));
+        CountDownLatch bAcquired = new CountDownLatch(1);
+        long[] bToken = new long[1];
+        Thread b = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                Lease lease = lockService.acquire("job", "B", 10_000, 5000);
+                bToken[0] = lease.getToken();
+                System.out.printf("B acquired after A's lease expired (waited %d ms), token %d, write accepted: %s%n",
+                        (System.nanoTime() - start) / 1_000_000, lease.getToken(), resource.write(lease.getToken()));
+                bAcquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "lock-b");
+        b.start();
+        // A 停顿（如 Full GC）超过租约时间
+        Thread.sleep(500);
+        bAcquired.await();
+        System.out.println("A resumes with stale token " + a.getToken() + ", write accepted: " + resource.write(a.getToken())
+                + ", still held: " + lockService.isHeld(a) + ", release: " + lockService.release(a));
+        System.out.println("handoffs on lease expiry: " + lockService.getExpiredHandoffCount());
+        b.join();
+    }
+
+    /**
+     * 受保护的资源：记住见过的最大令牌，拒绝更小的令牌
+     */
+    private static final class FencedResource {
+
+        private long highestToken;
+
+        synchronized boolean write(long token) {
+            if (token < highestToken) {
+                return false;
+            }
+            highestToken = token;
+            return true;
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
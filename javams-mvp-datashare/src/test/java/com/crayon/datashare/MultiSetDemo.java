@@ -0,0 +1,81 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量写入测试
+ *
+ * <p>
+ * 单线程导入同样数量的 key：逐个 set 与每批若干个 key 的 multiSet（原子），
+ * 分别在每秒刷盘与每批次刷盘两种策略下比较导入速度。
+ * 逐个写入每个 key 都要等一次组提交，批量写入每批只等一次。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/1
+ */
+public class MultiSetDemo {
+
+    private static final int KEYS = 200_000;
+
+    private static final int BATCH = 100;
+
+    public static void main(String[] args) throws Exception {
+        for (FsyncModeEnum fsyncMode : new FsyncModeEnum[]{FsyncModeEnum.FSYNC_EVERY_N_MS, FsyncModeEnum.FSYNC_PER_BATCH}) {
+            int keys = fsyncMode == FsyncModeEnum.FSYNC_PER_BATCH ? KEYS / 10 : KEYS;
+            double single = load(fsyncMode, keys, 1);
+            double batched = load(fsyncMode, keys, BATCH);
+            System.out.printf("%-16s set: %,10.0f keys/s  multiSet(%d): %,10.0f keys/s  x%.1f%n",
+                    fsyncMode, single, BATCH, batched, batched / single);
+        }
+    }
+
+    private static double load(FsyncModeEnum fsyncMode, int keys, int batch) throws IOException {
+        Path walDir = Files.createTempDirectory("datashare-multiset");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(fsyncMode)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        long start = System.nanoTime();
+        if (batch == 1) {
+            for (int i = 0; i < keys; i++) {
+                server.set("key-" + i, new ShareData("id" + i, "value-" + i, 0));
+            }
+        } else {
+            for (int i = 0; i < keys; i += batch) {
+                Map<String, ShareData> values = new LinkedHashMap<>();
+                for (int j = i; j < Math.min(keys, i + batch); j++) {
+                    values.put("key-" + j, new ShareData("id" + j, "value-" + j, 0));
+                }
+                if (server.multiSet(values, 0L, true) != values.size()) {
+                    throw new IllegalStateException("Batch rejected at " + i);
+                }
+            }
+        }
+        double keysPerSecond = keys * 1_000_000_000.0 / (System.nanoTime() - start);
+        if (server.multiGet(Arrays.asList("key-0", "key-" + (keys - 1)), server.getLastWriteLsn(), false).size() != 2) {
+            throw new IllegalStateException("Missing keys");
+        }
+        server.shutdown();
+        deleteRecursively(walDir);
+        return keysPerSecond;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,154 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ScanResult;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.network.ShareDataClient;
+import com.crayon.datashare.network.ShareDataNioServer;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 路径命名空间测试
+ *
+ * <p>
+ * 先在 /app 下写入一棵小树，演示子节点列表、分页扫描与前缀 Watcher（通过网络客户端）；
+ * 再在其他路径下不断加入无关的 key（1万、10万、100万），
+ * 比较列出 /app/config 下100个 key 时有序索引扫描与遍历全部 key 过滤前缀的耗时。
+ * 索引扫描的耗时应基本不随 key 总数变化，遍历的耗时随 key 总数线性增长。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/2
+ */
+public class NamespaceDemo {
+
+    private static final int CONFIG_KEYS = 100;
+
+    private static final int BATCH = 1000;
+
+    private static final int ROUNDS = 50;
+
+    /**
+     * 与写入服务端的数据相同的无序 Map，作为没有有序索引时的对照
+     */
+    private static final ConcurrentHashMap<String, ShareData> flat = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-namespace");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        ShareDataNioServer nioServer = new ShareDataNioServer(server, 0, 1, 4);
+        nioServer.start();
+        ShareDataClient client = new ShareDataClient("127.0.0.1", nioServer.getPort());
+
+        // 先注册前缀 Watcher 再写入，/app/name 不在 /app/config 下，不会通知
+        CountDownLatch changes = new CountDownLatch(CONFIG_KEYS);
+        client.watchPrefixAsync("/app/config", (key, operaType, version, missed) -> changes.countDown()).get();
+        Map<String, ShareData> tree = new LinkedHashMap<>();
+        for (int i = 0; i < CONFIG_KEYS; i++) {
+            tree.put(String.format("/app/config/item-%03d", i), new ShareData("id" + i, "value-" + i, 1));
+        }
+        tree.put("/app/name", new ShareData("name", "demo", 1));
+        tree.put("/app/config-backup/item", new ShareData("backup", "old", 1));
+        tree.put("/app/instances/10.0.0.1/port", new ShareData("port", "8080", 1));
+        tree.put("/app/instances/10.0.0.2/port", new ShareData("port", "8080", 1));
+        server.multiSet(tree, 0L, false);
+        flat.putAll(tree);
+        changes.await();
+        System.out.println("prefix watch events for /app/config: " + CONFIG_KEYS);
+
+        System.out.println("children of /app: " + client.childrenAsync("/app").get());
+        System.out.println("children of /app/instances: " + client.childrenAsync("/app/instances/").get());
+        int pages = 0;
+        int scanned = 0;
+        String cursor = null;
+        do {
+            ScanResult page = client.scanAsync("/app/config/", cursor, 30).get();
+            pages++;
+            scanned += page.getEntries().size();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        System.out.println("scan /app/config/ in pages of 30: " + scanned + " keys, " + pages + " pages");
+        client.unwatchPrefixAsync("/app/config").get();
+
+        int total = tree.size();
+        for (int target = 10_000; target <= 1_000_000; target *= 10) {
+            total = fill(server, total, target);
+            double indexMicros = measure(() -> server.scan("/app/config/", null, CONFIG_KEYS).getEntries().size());
+            double childrenMicros = measure(() -> server.getChildren("/app").size());
+            double fullScanMicros = measure(NamespaceDemo::fullScan);
+            System.out.printf("keys %,9d: index scan %8.1f us, children %8.1f us, full scan %,10.1f us%n",
+                    total, indexMicros, childrenMicros, fullScanMicros);
+        }
+
+        client.close();
+        nioServer.close();
+        server.shutdown();
+        deleteRecursively(walDir);
+    }
+
+    /**
+     * 在 /other 下批量写入无关的 key，直到总数达到 target
+     */
+    private static int fill(ShareDataServer server, int total, int target) {
+        while (total < target) {
+            Map<String, ShareData> batch = new LinkedHashMap<>();
+            for (int i = 0; i < BATCH && total < target; i++, total++) {
+                batch.put("/other/" + (total % 100) + "/key-" + total, new ShareData("id", "v", 1));
+            }
+            server.multiSet(batch, 0L, false);
+            flat.putAll(batch);
+        }
+        return total;
+    }
+
+    /**
+     * 没有有序索引时的做法：逐个检查所有 key 是否在 /app/config/ 下
+     */
+    private static int fullScan() {
+        Map<String, ShareData> found = new TreeMap<>();
+        for (Map.Entry<String, ShareData> entry : flat.entrySet()) {
+            if (entry.getKey().startsWith("/app/config/")) {
+                found.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return found.size();
+    }
+
+    private static double measure(Task task) {
+        // 预热
+        for (int i = 0; i < 5; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1000.0 / ROUNDS;
+    }
+
+    private interface Task {
+
+        int run();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
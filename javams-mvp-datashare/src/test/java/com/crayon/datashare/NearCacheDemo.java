@@ -0,0 +1,162 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.client.NearCache;
+import com.crayon.datashare.client.SubscriberClient;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地缓存测试
+ *
+ * <p>
+ * 读线程按热点分布（80%的读落在10%的 key 上）读取，同时一个写线程以固定速率更新随机 key，
+ * 分别测不开启与开启本地缓存时的读吞吐，输出命中率（即省掉的服务端访问比例）。
+ * 之后停止限速、让写线程全速写少量热点 key 制造通知与加载的竞争，
+ * 停止写入并等通知送达后逐个比较缓存与主节点的版本，不一致数应为0。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/3
+ */
+public class NearCacheDemo {
+
+    private static final int KEYS = 10_000;
+
+    private static final int HOT_KEYS = KEYS / 10;
+
+    private static final int CACHE_ENTRIES = KEYS;
+
+    private static final int READERS = 4;
+
+    private static final int WRITES_PER_SECOND = 1000;
+
+    private static final long DURATION_MS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-nearcache");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        for (int i = 0; i < KEYS; i++) {
+            server.set(key(i), new ShareData("id" + i, "value-" + i, 1));
+        }
+
+        SubscriberClient direct = new SubscriberClient("127.0.0.1:9000", server);
+        double directOps = run(server, direct, WRITES_PER_SECOND, KEYS);
+        System.out.printf("no cache  : %,12.0f reads/s%n", directOps);
+
+        SubscriberClient cached = new SubscriberClient("127.0.0.1:9001", server, CACHE_ENTRIES);
+        NearCache nearCache = cached.getNearCache();
+        double cachedOps = run(server, cached, WRITES_PER_SECOND, KEYS);
+        long hits = nearCache.getHitCount();
+        long misses = nearCache.getMissCount();
+        System.out.printf("near cache: %,12.0f reads/s  x%.1f  hit ratio %.2f%%  (misses %,d, invalidations %,d, evictions %,d)%n",
+                cachedOps, cachedOps / directOps, hits * 100.0 / (hits + misses), misses,
+                nearCache.getInvalidationCount(), nearCache.getEvictionCount());
+
+        // 一致性：全速写入16个热点 key，读线程同时读取、加载
+        run(server, cached, 0, 16);
+        Thread.sleep(500);
+        List<String> keys = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(key(i));
+        }
+        Map<String, ShareData> master = server.multiGet(keys, 0L, true);
+        int stale = 0;
+        for (String key : keys) {
+            ShareData local = cached.get(key);
+            ShareData current = master.get(key);
+            if (local == null || current == null || local.getVersion() != current.getVersion()) {
+                stale++;
+            }
+        }
+        System.out.println("stale entries after write storm: " + stale);
+
+        cached.close();
+        direct.close();
+        server.shutdown();
+        deleteRecursively(walDir);
+    }
+
+    private static String key(int i) {
+        return "config-" + i;
+    }
+
+    /**
+     * @param writesPerSecond 写线程的速率，0表示不限速
+     * @param writeKeys       写线程更新前 writeKeys 个 key
+     * @return 读吞吐
+     */
+    private static double run(ShareDataServer server, SubscriberClient client, int writesPerSecond, int writeKeys)
+            throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder reads = new LongAdder();
+        Thread writer = new Thread(() -> {
+            long intervalNanos = writesPerSecond > 0 ? 1_000_000_000L / writesPerSecond : 0L;
+            long next = System.nanoTime();
+            int i = 0;
+            while (running.get()) {
+                int k = ThreadLocalRandom.current().nextInt(writeKeys);
+                server.set(key(k), new ShareData("id" + k, "value-" + i++, 1));
+                if (intervalNanos > 0) {
+                    next += intervalNanos;
+                    long sleepNanos = next - System.nanoTime();
+                    if (sleepNanos > 0) {
+                        try {
+                            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "nearcache-writer");
+        Thread[] readers = new Thread[READERS];
+        for (int t = 0; t < READERS; t++) {
+            readers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (running.get()) {
+                    int k = random.nextInt(10) < 8 ? random.nextInt(HOT_KEYS) : random.nextInt(KEYS);
+                    if (client.get(key(k)) != null) {
+                        count++;
+                    }
+                }
+                reads.add(count);
+            }, "nearcache-reader-" + t);
+        }
+        writer.start();
+        long start = System.nanoTime();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        writer.join();
+        return reads.sum() * 1_000_000_000.0 / (System.nanoTime() - start);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
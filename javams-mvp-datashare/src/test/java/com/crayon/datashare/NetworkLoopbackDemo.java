@@ -0,0 +1,188 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.network.ShareDataClient;
+import com.crayon.datashare.network.ShareDataNioServer;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 网络回环测试
+ *
+ * <p>
+ * 在本机启动网络服务端，所有调用方共享一个客户端连接，先演示一次性与持久 Watcher，
+ * 再测不同并发调用数下同步 get/set 的吞吐与 p50/p99 延迟，
+ * 最后测单线程异步流水线（同时在途请求数固定）的 get 吞吐，用于估算单节点能承载的请求量。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/30
+ */
+public class NetworkLoopbackDemo {
+
+    private static final int KEYS = 1024;
+
+    private static final long DURATION_MS = 2000;
+
+    private static final int PIPELINE_WINDOW = 256;
+
+    public static void main(String[] args) throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-network");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        int cores = Runtime.getRuntime().availableProcessors();
+        ShareDataNioServer nioServer = new ShareDataNioServer(server, 0, Math.max(1, cores / 2), 32);
+        nioServer.start();
+        ShareDataClient client = new ShareDataClient("127.0.0.1", nioServer.getPort());
+        for (int i = 0; i < KEYS; i++) {
+            client.set("key-" + i, new ShareData("id" + i, "value-" + i, 1));
+        }
+
+        CountDownLatch notified = new CountDownLatch(1);
+        client.watchAsync("key-0", (key, operaType) -> {
+            System.out.println("watch event: " + key + " " + operaType);
+            notified.countDown();
+        }).get();
+        client.set("key-0", new ShareData("id0", "changed", 1));
+        notified.await();
+        System.out.println("read-your-write: " + client.get("key-0").getData());
+
+        // 持久 Watcher 注册一次，之后每次变更都会通知
+        CountDownLatch changes = new CountDownLatch(3);
+        client.subscribeAsync("key-1", 1, (key, operaType, version, missed) -> {
+            System.out.println("change event: " + key + " " + operaType + " v" + version + " missed " + missed);
+            changes.countDown();
+        }).get();
+        for (int i = 0; i < 3; i++) {
+            client.set("key-1", new ShareData("id1", "changed-" + i, 1));
+            Thread.sleep(10);
+        }
+        changes.await();
+        client.unsubscribeAsync("key-1").get();
+
+        System.out.println("cores: " + cores);
+        for (int callers = 1; callers <= 64; callers *= 4) {
+            report("get", callers, run(client, callers, false));
+        }
+        for (int callers = 1; callers <= 64; callers *= 4) {
+            report("set", callers, run(client, callers, true));
+        }
+        pipelined(client);
+
+        client.close();
+        nioServer.close();
+        server.shutdown();
+        deleteRecursively(walDir);
+    }
+
+    /**
+     * @return 所有调用的延迟（纳秒），最后一个元素为总耗时
+     */
+    private static long[][] run(ShareDataClient client, int callers, boolean write) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(callers);
+        long[][] latencies = new long[callers + 1][];
+        Thread[] threads = new Thread[callers];
+        for (int t = 0; t < callers; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                int i = index;
+                started.countDown();
+                try {
+                    while (running.get()) {
+                        String key = "key-" + (i++ & (KEYS - 1));
+                        long start = System.nanoTime();
+                        if (write) {
+                            client.set(key, new ShareData("id", "value-" + i, 1));
+                        } else {
+                            client.get(key);
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Caller failed: " + e.getMessage());
+                }
+                latencies[index] = Arrays.copyOf(samples, count);
+            }, "loopback-caller-" + t);
+            threads[t].start();
+        }
+        started.await();
+        long start = System.nanoTime();
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        latencies[callers] = new long[]{System.nanoTime() - start};
+        return latencies;
+    }
+
+    private static void report(String op, int callers, long[][] latencies) {
+        int total = 0;
+        for (int t = 0; t < callers; t++) {
+            total += latencies[t].length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < callers; t++) {
+            System.arraycopy(latencies[t], 0, all, offset, latencies[t].length);
+            offset += latencies[t].length;
+        }
+        Arrays.sort(all);
+        double seconds = latencies[callers][0] / 1_000_000_000.0;
+        System.out.printf("%s callers %2d: %,10.0f ops/s  p50 %7.1f us  p99 %7.1f us%n", op, callers,
+                total / seconds, percentile(all, 0.50) / 1000.0, percentile(all, 0.99) / 1000.0);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static void pipelined(ShareDataClient client) throws InterruptedException {
+        Semaphore window = new Semaphore(PIPELINE_WINDOW);
+        LongAdder completed = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + DURATION_MS * 1_000_000L;
+        int i = 0;
+        while (System.nanoTime() < deadline) {
+            window.acquire();
+            CompletableFuture<ShareData> future = client.getAsync("key-" + (i++ & (KEYS - 1)));
+            future.whenComplete((shareData, e) -> {
+                completed.increment();
+                window.release();
+            });
+        }
+        window.acquire(PIPELINE_WINDOW);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("pipelined get (window %d): %,10.0f ops/s%n", PIPELINE_WINDOW, completed.sum() / seconds);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,156 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.Notifier;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 通知扇出测试
+ *
+ * <p>
+ * 一个热点 key 分别有 0 ~ 5万个订阅者时，测量写入延迟（中位数）与最终送达的通知数。
+ * 写锁内只把订阅者集合交给通知线程，写入延迟应不随订阅者数量增长
+ * （单核机器上分发线程与写入线程争用同一个核，订阅者很多时扇出会推迟写入者返回）。
+ * 然后 5万个持久 Watcher 关注热点 key，写入者不等投递连续写入：分发队列里热点 key 只占一个位置，
+ * 写入延迟与订阅者数量无关，送达的通知数远少于写入次数 × 订阅者数（被合并）；
+ * 再连续写入大量不同的 key，分发队列积压的 key 数不超过上限，超过时改为 RESYNC。
+ * 最后模拟一个一直拥塞的订阅者，积压超过上限后只会收到一条 RESYNC。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/31
+ */
+public class NotifyFanOutDemo {
+
+    private static final int ROUNDS = 51;
+
+    private static final int BURST_WRITES = 2_000;
+
+    private static final int DISPATCH_KEYS = 1_000;
+
+    private static final int DISTINCT_KEYS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-notify");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .notifyQueueKeys(100)
+                .notifyDispatchKeys(DISPATCH_KEYS)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        Notifier notifier = server.getNotifier();
+        server.set("hot", new ShareData("id", "v", 1));
+
+        LongAdder delivered = new LongAdder();
+        int bound = 0;
+        for (int subscribers : new int[]{0, 100, 1_000, 10_000, 50_000}) {
+            for (; bound < subscribers; bound++) {
+                notifier.bind("10.0." + (bound >> 16) + "." + (bound & 0xffff), events -> {
+                    delivered.add(events.size());
+                    return true;
+                });
+            }
+            delivered.reset();
+            long[] latencies = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < subscribers; i++) {
+                    server.register("hot", "10.0." + (i >> 16) + "." + (i & 0xffff));
+                }
+                long start = System.nanoTime();
+                server.set("hot", new ShareData("id", "v" + round, 1));
+                latencies[round] = System.nanoTime() - start;
+                // 等上一轮投递完再写，只测写入路径本身（否则同一个 key 的通知会被合并）
+                awaitDelivered(delivered, (long) subscribers * (round + 1));
+            }
+            Arrays.sort(latencies);
+            long expected = (long) subscribers * ROUNDS;
+            System.out.printf("subscribers %,7d: set p50 %8.1f us  delivered %,d/%,d%n", subscribers,
+                    latencies[ROUNDS / 2] / 1000.0, delivered.sum(), expected);
+        }
+
+        for (int i = 0; i < bound; i++) {
+            server.watch("hot", "10.0." + (i >> 16) + "." + (i & 0xffff), ShareDataServer.ANY_VERSION);
+        }
+        delivered.reset();
+        long coalescedBefore = notifier.getCoalescedCount();
+        long[] latencies = new long[BURST_WRITES];
+        for (int i = 0; i < BURST_WRITES; i++) {
+            long start = System.nanoTime();
+            server.set("hot", new ShareData("id", "burst" + i, 1));
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        Thread.sleep(500);
+        System.out.printf("burst of %,d writes to %,d watchers: set p50 %.1f us  delivered %,d of %,d  coalesced %,d%n",
+                BURST_WRITES, bound, latencies[BURST_WRITES / 2] / 1000.0, delivered.sum(),
+                (long) BURST_WRITES * bound, notifier.getCoalescedCount() - coalescedBefore);
+        for (int i = 0; i < bound; i++) {
+            server.unwatch("hot", "10.0." + (i >> 16) + "." + (i & 0xffff));
+        }
+
+        LongAdder distinct = new LongAdder();
+        notifier.bind("prefix:1", events -> {
+            distinct.add(events.size());
+            return true;
+        });
+        server.watchPrefix("/burst", "prefix:1");
+        for (int i = 0; i < DISTINCT_KEYS; i++) {
+            server.set("/burst/" + i, new ShareData("id", "v", 1));
+        }
+        Thread.sleep(500);
+        System.out.printf("%,d distinct keys: dispatch backlog peak %,d (bound %,d)  dispatch resyncs %,d  delivered %,d%n",
+                DISTINCT_KEYS, notifier.getDispatchBacklogPeak(), DISPATCH_KEYS,
+                notifier.getDispatchResyncCount(), distinct.sum());
+        server.unwatchPrefix("/burst", "prefix:1");
+
+        AtomicBoolean congested = new AtomicBoolean(true);
+        LongAdder resyncs = new LongAdder();
+        notifier.bind("slow:1", events -> {
+            if (congested.get()) {
+                return false;
+            }
+            for (Notifier.Event event : events) {
+                if (Notifier.RESYNC.equals(event.getOperaType())) {
+                    resyncs.increment();
+                }
+            }
+            return true;
+        });
+        for (int i = 0; i < 500; i++) {
+            server.register("k" + i, "slow:1");
+            server.set("k" + i, new ShareData("id", "v", 1));
+        }
+        Thread.sleep(100);
+        congested.set(false);
+        Thread.sleep(100);
+        System.out.println("slow subscriber resyncs: " + resyncs.sum() + ", notifier resyncs: "
+                + notifier.getResyncCount() + ", coalesced: " + notifier.getCoalescedCount());
+
+        server.shutdown();
+        deleteRecursively(walDir);
+    }
+
+    private static void awaitDelivered(LongAdder delivered, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (delivered.sum() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
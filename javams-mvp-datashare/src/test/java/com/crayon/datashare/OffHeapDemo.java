@@ -0,0 +1,298 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+import com.crayon.datashare.store.OffHeapShareDataMap;
+import com.crayon.datashare.store.StorageEngineEnum;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 堆外存储测试
+ *
+ * <p>
+ * <ol>
+ *     <li>正确性：对堆外 Map 与 HashMap 执行同样的随机操作（含超过页大小的值与各种值类型），比较结果与最终内容</li>
+ *     <li>恢复：堆外存储的服务端写入后重启，从日志恢复到堆外存储，比较数据</li>
+ *     <li>GC：堆内与堆外两种存储分别写入100万个 key（每个值约200字节，1个从节点），
+ *     之后写线程持续覆盖随机 key、读线程随机读取，记录期间每次 GC 停顿，输出停顿次数、最长与总停顿、
+ *     Full GC 后的堆占用与读写吞吐</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/6
+ */
+public class OffHeapDemo {
+
+    private static final int KEYS = 1_000_000;
+
+    private static final int VALUE_BYTES = 200;
+
+    private static final int BATCH = 1000;
+
+    private static final int READERS = 2;
+
+    private static final long CHURN_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("max heap: " + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB");
+        randomOperations();
+        recovery();
+
+        PauseRecorder recorder = new PauseRecorder();
+        for (StorageEngineEnum engine : StorageEngineEnum.values()) {
+            churn(engine, recorder);
+        }
+    }
+
+    private static void randomOperations() {
+        OffHeapShareDataMap offHeap = new OffHeapShareDataMap(4096);
+        Map<String, ShareData> expected = new HashMap<>();
+        Random random = new Random(42);
+        int mismatches = 0;
+        for (int i = 0; i < 200_000; i++) {
+            String key = "k" + random.nextInt(5000);
+            ShareData value = new ShareData("id" + i, randomValue(random), random.nextInt(100), i, 0L);
+            int op = random.nextInt(10);
+            Object a;
+            Object b;
+            if (op < 5) {
+                a = offHeap.put(key, value);
+                b = expected.put(key, value);
+            } else if (op < 7) {
+                a = offHeap.remove(key);
+                b = expected.remove(key);
+            } else if (op < 8) {
+                a = offHeap.putIfAbsent(key, value);
+                b = expected.putIfAbsent(key, value);
+            } else if (op < 9) {
+                a = offHeap.replace(key, value);
+                b = expected.replace(key, value);
+            } else {
+                a = offHeap.get(key);
+                b = expected.get(key);
+            }
+            if (!same(a, b)) {
+                mismatches++;
+            }
+        }
+        if (offHeap.size() != expected.size()) {
+            mismatches++;
+        }
+        for (Map.Entry<String, ShareData> entry : offHeap.entrySet()) {
+            if (!same(entry.getValue(), expected.get(entry.getKey()))) {
+                mismatches++;
+            }
+        }
+        System.out.printf("random operations: %d keys, mismatches %d, off-heap used %,d of %,d bytes%n",
+                offHeap.size(), mismatches, offHeap.getOffHeapUsedBytes(), offHeap.getOffHeapReservedBytes());
+        offHeap.close();
+    }
+
+    private static Object randomValue(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return random.nextInt();
+            case 1:
+                return random.nextLong();
+            case 2:
+                byte[] bytes = new byte[random.nextInt(100)];
+                random.nextBytes(bytes);
+                return bytes;
+            case 3:
+                // 超过4KB的页大小，单独申请内存
+                return repeat('x', 5000 + random.nextInt(5000));
+            default:
+                return "值-" + repeat('v', random.nextInt(300));
+        }
+    }
+
+    private static boolean same(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        ShareData x = (ShareData) a;
+        ShareData y = (ShareData) b;
+        boolean data = x.getData() instanceof byte[]
+                ? java.util.Arrays.equals((byte[]) x.getData(), (byte[]) y.getData())
+                : x.getData().equals(y.getData());
+        return data && x.getId().equals(y.getId()) && x.getVersion() == y.getVersion()
+                && x.getLsn() == y.getLsn() && x.getExpireAt() == y.getExpireAt();
+    }
+
+    private static void recovery() throws IOException {
+        Path walDir = Files.createTempDirectory("datashare-offheap");
+        ShareDataConfig config = config(walDir, StorageEngineEnum.OFF_HEAP);
+        ShareDataServer server = new ShareDataServer(config);
+        for (int i = 0; i < 10_000; i++) {
+            server.set("key-" + i, new ShareData("id" + i, "value-" + i, 1));
+        }
+        for (int i = 0; i < 10_000; i += 3) {
+            server.delete("key-" + i, ShareDataServer.ANY_VERSION);
+        }
+        server.shutdown();
+        ShareDataServer restarted = new ShareDataServer(config);
+        int mismatches = 0;
+        for (int i = 0; i < 10_000; i++) {
+            ShareData value = restarted.get("key-" + i, null, false);
+            boolean deleted = i % 3 == 0;
+            if (deleted ? value != null : value == null || !("value-" + i).equals(value.getData())) {
+                mismatches++;
+            }
+        }
+        restarted.shutdown();
+        deleteRecursively(walDir);
+        System.out.println("recovery into off-heap store: mismatches " + mismatches);
+    }
+
+    private static void churn(StorageEngineEnum engine, PauseRecorder recorder) throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-offheap");
+        ShareDataServer server = new ShareDataServer(config(walDir, engine));
+        String payload = repeat('p', VALUE_BYTES);
+        for (int i = 0; i < KEYS; ) {
+            Map<String, ShareData> batch = new LinkedHashMap<>();
+            for (int j = 0; j < BATCH && i < KEYS; j++, i++) {
+                batch.put(key(i), new ShareData("id" + i, payload + i, 1));
+            }
+            server.multiSet(batch, 0L, false);
+        }
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long liveHeap = memory.getHeapMemoryUsage().getUsed();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long count = 0;
+            while (running.get()) {
+                Map<String, ShareData> batch = new LinkedHashMap<>();
+                for (int j = 0; j < 100; j++) {
+                    int k = random.nextInt(KEYS);
+                    batch.put(key(k), new ShareData("id" + k, payload + count++, 1));
+                }
+                server.multiSet(batch, 0L, false);
+                writes.add(batch.size());
+            }
+        }, "offheap-writer");
+        Thread[] readers = new Thread[READERS];
+        for (int t = 0; t < READERS; t++) {
+            readers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (running.get()) {
+                    if (server.get(key(random.nextInt(KEYS)), null, false) != null) {
+                        count++;
+                    }
+                }
+                reads.add(count);
+            }, "offheap-reader-" + t);
+        }
+        recorder.reset();
+        long start = System.nanoTime();
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(CHURN_MS);
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-8s live heap %,5d MB | churn: %,9.0f reads/s %,8.0f writes/s | GC pauses %3d, max %6.1f ms, total %7.1f ms%n",
+                engine, liveHeap / (1024 * 1024), reads.sum() / seconds, writes.sum() / seconds,
+                recorder.count.get(), recorder.maxMicros.get() / 1000.0, recorder.totalMicros.get() / 1000.0);
+        server.shutdown();
+        deleteRecursively(walDir);
+        System.gc();
+    }
+
+    /**
+     * 通过 GC 通知记录每次停顿的时长（并发标记等不停顿的阶段除外）
+     */
+    private static final class PauseRecorder {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        private final AtomicLong totalMicros = new AtomicLong();
+
+        PauseRecorder() {
+            NotificationListener listener = (notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (info.getGcName().contains("Concurrent") || "System.gc()".equals(info.getGcCause())) {
+                    return;
+                }
+                long micros = info.getGcInfo().getDuration() * 1000;
+                count.incrementAndGet();
+                totalMicros.addAndGet(micros);
+                maxMicros.accumulateAndGet(micros, Math::max);
+            };
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            }
+        }
+
+        void reset() {
+            count.set(0);
+            maxMicros.set(0);
+            totalMicros.set(0);
+        }
+    }
+
+    private static ShareDataConfig config(Path walDir, StorageEngineEnum engine) {
+        return new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .replicaCount(1)
+                .storageEngine(engine)
+                .build();
+    }
+
+    private static String key(int i) {
+        return "/data/" + (i % 1000) + "/key-" + i;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,287 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ScanResult;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.raft.InMemoryRaftTransport;
+import com.crayon.datashare.raft.RaftClient;
+import com.crayon.datashare.raft.RaftNode;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Raft 模式测试
+ *
+ * <p>
+ * <ol>
+ *     <li>吞吐：3个节点，进程内传输模拟200微秒单向延迟，64个写线程持续写入，
+ *     对比批量 + 流水线复制（每批最多1024条、流水线深度8）与逐条复制（每批1条、等响应后再发），
+ *     输出每秒写入数、写入延迟 p50/p99 与平均每个 AppendEntries 携带的条目数</li>
+ *     <li>故障转移：16个写线程持续写入新 key 并记录已确认的写入，运行中隔离并关闭 Leader，
+ *     输出重新选出 Leader、恢复写入的时间；结束后检查所有已确认的写入都在新 Leader 上（丢失数为0），
+ *     存活节点之间的数据完全一致</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/8
+ */
+public class RaftDemo {
+
+    private static final List<String> MEMBERS = Arrays.asList("node1", "node2", "node3");
+
+    private static final long DELAY_MICROS = 200;
+
+    private static final int WRITERS = 64;
+
+    private static final long DURATION_MS = 3000;
+
+    private static final int FAILOVER_WRITERS = 16;
+
+    private static final int MAX_SAMPLES = 1 << 21;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("-- 3 nodes, " + DELAY_MICROS + " us one-way delay, " + WRITERS + " writers");
+        throughput("batched + pipelined", 1024, 8);
+        throughput("one entry at a time", 1, 1);
+
+        System.out.println("-- leader failover with " + FAILOVER_WRITERS + " writers");
+        failover();
+    }
+
+    private static final class Cluster {
+
+        private final InMemoryRaftTransport transport = new InMemoryRaftTransport(DELAY_MICROS);
+
+        private final Map<String, RaftNode> nodes = new LinkedHashMap<>();
+
+        private final List<Path> walDirs = new ArrayList<>();
+
+        Cluster(int maxBatchEntries, int maxInflight) throws IOException {
+            for (String member : MEMBERS) {
+                Path walDir = Files.createTempDirectory("datashare-raft-" + member);
+                walDirs.add(walDir);
+                ShareDataConfig config = new ShareDataConfig.Builder()
+                        .walDir(walDir.toString())
+                        .replicaCount(0)
+                        .raftMaxBatchEntries(maxBatchEntries)
+                        .raftMaxInflight(maxInflight)
+                        .build();
+                nodes.put(member, new RaftNode(member, MEMBERS, transport, config));
+            }
+        }
+
+        RaftNode awaitLeader() throws InterruptedException {
+            while (true) {
+                for (RaftNode node : nodes.values()) {
+                    if (node.isLeader()) {
+                        return node;
+                    }
+                }
+                Thread.sleep(10);
+            }
+        }
+
+        void close() throws IOException {
+            for (RaftNode node : nodes.values()) {
+                node.close();
+            }
+            transport.close();
+            for (Path walDir : walDirs) {
+                deleteRecursively(walDir);
+            }
+        }
+    }
+
+    private static void throughput(String label, int maxBatchEntries, int maxInflight) throws Exception {
+        Cluster cluster = new Cluster(maxBatchEntries, maxInflight);
+        RaftNode leader = cluster.awaitLeader();
+        RaftClient client = new RaftClient(cluster.nodes, 5000);
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder writes = new LongAdder();
+        long[] latencies = new long[MAX_SAMPLES];
+        AtomicInteger samples = new AtomicInteger();
+        long requestsBefore = leader.getAppendRequestCount();
+        long entriesBefore = leader.getAppendedEntryCount();
+        Thread[] threads = new Thread[WRITERS];
+        for (int t = 0; t < WRITERS; t++) {
+            int writer = t;
+            threads[t] = new Thread(() -> {
+                long seq = 0;
+                while (running.get()) {
+                    String key = "/bench/" + writer + "/" + (seq % 1000);
+                    long start = System.nanoTime();
+                    if (client.set(key, new ShareData("id" + seq, "value-" + seq, 1))) {
+                        int i = samples.getAndIncrement();
+                        if (i < MAX_SAMPLES) {
+                            latencies[i] = System.nanoTime() - start;
+                        }
+                        writes.increment();
+                    }
+                    seq++;
+                }
+            }, "raft-writer-" + t);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] sorted = Arrays.copyOf(latencies, Math.min(samples.get(), MAX_SAMPLES));
+        Arrays.sort(sorted);
+        long requests = leader.getAppendRequestCount() - requestsBefore;
+        long entries = leader.getAppendedEntryCount() - entriesBefore;
+        System.out.printf("%s: %,8.0f writes/s | latency p50 %7.2f ms p99 %7.2f ms | entries/AppendEntries %6.1f%n",
+                label, writes.sum() / seconds, percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6,
+                requests == 0 ? 0.0 : (double) entries / requests);
+        cluster.close();
+    }
+
+    private static void failover() throws Exception {
+        Cluster cluster = new Cluster(1024, 8);
+        RaftNode oldLeader = cluster.awaitLeader();
+        RaftClient client = new RaftClient(cluster.nodes, 10_000);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong killedAt = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong firstWriteAfterKill = new AtomicLong(Long.MAX_VALUE);
+        List<Map<String, String>> acked = new ArrayList<>();
+        Thread[] threads = new Thread[FAILOVER_WRITERS];
+        for (int t = 0; t < FAILOVER_WRITERS; t++) {
+            Map<String, String> writerAcked = new HashMap<>();
+            acked.add(writerAcked);
+            int writer = t;
+            threads[t] = new Thread(() -> {
+                long seq = 0;
+                while (running.get()) {
+                    String key = "/failover/" + writer + "/" + seq;
+                    String value = "value-" + seq;
+                    // set 是幂等的，结果未知时重试直到确认
+                    if (client.set(key, new ShareData("id" + seq, value, 1))) {
+                        writerAcked.put(key, value);
+                        long now = System.nanoTime();
+                        if (now > killedAt.get()) {
+                            firstWriteAfterKill.accumulateAndGet(now, Math::min);
+                        }
+                        seq++;
+                    }
+                }
+            }, "raft-failover-writer-" + t);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(1000);
+        long termBefore = oldLeader.getCurrentTerm();
+        killedAt.set(System.nanoTime());
+        cluster.transport.isolate(oldLeader.getNodeId());
+        oldLeader.close();
+        System.out.println("killed leader " + oldLeader.getNodeId() + " (term " + termBefore + ")");
+        Thread.sleep(2000);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        cluster.nodes.remove(oldLeader.getNodeId());
+        RaftNode newLeader = cluster.awaitLeader();
+        awaitApplied(cluster);
+        int total = 0;
+        int lost = 0;
+        for (Map<String, String> writerAcked : acked) {
+            for (Map.Entry<String, String> entry : writerAcked.entrySet()) {
+                total++;
+                ShareData value = newLeader.get(entry.getKey());
+                if (value == null || !entry.getValue().equals(value.getData())) {
+                    lost++;
+                }
+            }
+        }
+        Map<String, ShareData> leaderData = dump(newLeader.getStateMachine());
+        int divergent = 0;
+        for (RaftNode node : cluster.nodes.values()) {
+            if (node == newLeader) {
+                continue;
+            }
+            Map<String, ShareData> followerData = dump(node.getStateMachine());
+            if (followerData.size() != leaderData.size()) {
+                divergent++;
+            }
+            for (Map.Entry<String, ShareData> entry : leaderData.entrySet()) {
+                ShareData other = followerData.get(entry.getKey());
+                if (other == null || other.getVersion() != entry.getValue().getVersion()
+                        || !other.getData().equals(entry.getValue().getData())) {
+                    divergent++;
+                }
+            }
+        }
+        System.out.printf("new leader %s (term %d) accepting writes %d ms after the kill%n",
+                newLeader.getNodeId(), newLeader.getCurrentTerm(),
+                (firstWriteAfterKill.get() - killedAt.get()) / 1_000_000);
+        System.out.printf("acknowledged writes %,d, lost %d | surviving nodes %d keys, divergent %d | redirects %d%n",
+                total, lost, leaderData.size(), divergent, client.getRedirectCount());
+        // 旧 Leader 已关闭
+        cluster.nodes.put(oldLeader.getNodeId(), oldLeader);
+        cluster.close();
+    }
+
+    private static void awaitApplied(Cluster cluster) throws InterruptedException {
+        while (true) {
+            long commit = -1;
+            boolean done = true;
+            for (RaftNode node : cluster.nodes.values()) {
+                if (commit < 0) {
+                    commit = node.getCommitIndex();
+                }
+                if (node.getCommitIndex() != commit || node.getLastApplied() != commit) {
+                    done = false;
+                }
+            }
+            if (done) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static Map<String, ShareData> dump(ShareDataServer server) {
+        Map<String, ShareData> data = new HashMap<>();
+        String cursor = null;
+        do {
+            ScanResult page = server.scanRange(null, null, cursor, 1000);
+            data.putAll(page.getEntries());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return data;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
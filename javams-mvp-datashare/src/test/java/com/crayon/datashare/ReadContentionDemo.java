@@ -0,0 +1,106 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 读竞争测试
+ *
+ * <p>
+ * 1、2、4 ... 2倍核数个读线程读取热点 key（同时有一个写线程持续写入同一批 key），
+ * 输出每种线程数下的读吞吐与相对单线程的倍数。
+ * 读路径不加锁，吞吐应随核数近似线性增长，超过核数后持平。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/5/26
+ */
+public class ReadContentionDemo {
+
+    private static final int KEYS = 64;
+
+    private static final long DURATION_MS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-contention");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        for (int i = 0; i < KEYS; i++) {
+            server.set("hot-" + i, new ShareData("id" + i, "value-" + i, 1));
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int i = 0;
+            while (writing.get()) {
+                server.set("hot-" + (i % KEYS), new ShareData("id", "value-" + i, i));
+                i++;
+            }
+        }, "contention-writer");
+        writer.start();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("cores: " + cores);
+        double single = 0;
+        for (int threads = 1; threads <= cores * 2; threads *= 2) {
+            double opsPerSecond = readThroughput(server, threads);
+            if (threads == 1) {
+                single = opsPerSecond;
+            }
+            System.out.printf("readers %3d: %,15.0f reads/s  x%.2f%n", threads, opsPerSecond, opsPerSecond / single);
+        }
+
+        writing.set(false);
+        writer.join();
+        server.shutdown();
+        deleteRecursively(walDir);
+    }
+
+    private static double readThroughput(ShareDataServer server, int threads) throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(threads);
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            readers[t] = new Thread(() -> {
+                started.countDown();
+                long count = 0;
+                int i = 0;
+                while (running.get()) {
+                    if (server.get("hot-" + (i++ & (KEYS - 1)), null, false) != null) {
+                        count++;
+                    }
+                }
+                reads.add(count);
+            }, "contention-reader-" + t);
+            readers[t].start();
+        }
+        started.await();
+        long start = System.nanoTime();
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        return reads.sum() * 1_000_000_000.0 / (System.nanoTime() - start);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
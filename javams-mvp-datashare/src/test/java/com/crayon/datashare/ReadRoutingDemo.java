@@ -0,0 +1,253 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.replication.PowerOfTwoChoicesPolicy;
+import com.crayon.datashare.replication.RandomReadRoutingPolicy;
+import com.crayon.datashare.replication.ReadRoutingPolicy;
+import com.crayon.datashare.replication.Replica;
+import com.crayon.datashare.replication.ReplicationManager;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 读路由测试
+ *
+ * <p>
+ * 对比随机选择（原来的策略）与两次随机选择 + 落后量上限：
+ * <ol>
+ *     <li>路由开销：多个读线程通过 get 读取，两种策略的吞吐</li>
+ *     <li>慢从节点：3个从节点中 slave3 的每次读取耗时是其他节点的10倍（用 parkNanos 模拟远程从节点的服务时间，
+ *     GC 或网络抖动），读线程闭环读取，输出吞吐、p50/p90/p99/p999 与慢节点承担的读比例</li>
+ *     <li>落后量：写线程全速写入、复制队列很小让从节点频繁丢批次追赶，输出读到的从节点的最大落后量与读主节点的比例</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/4
+ */
+public class ReadRoutingDemo {
+
+    private static final int KEYS = 1024;
+
+    private static final long DURATION_MS = 2000;
+
+    private static final int SLOW_READERS = 32;
+
+    private static final long FAST_SERVICE_NANOS = 50_000;
+
+    private static final long SLOW_SERVICE_NANOS = 500_000;
+
+    private static final long MAX_LAG_LSN = 100;
+
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("cores: " + cores);
+
+        System.out.println("-- routing overhead, get() from " + (cores * 2) + " threads");
+        for (ReadRoutingPolicy policy : policies()) {
+            withServer(policy, 2, 1024, server -> {
+                double opsPerSecond = getThroughput(server, cores * 2);
+                System.out.printf("%-8s %,15.0f reads/s%n", name(policy), opsPerSecond);
+            });
+        }
+
+        System.out.println("-- one slow replica (service time " + FAST_SERVICE_NANOS / 1000 + " us / "
+                + SLOW_SERVICE_NANOS / 1000 + " us), " + SLOW_READERS + " readers");
+        for (ReadRoutingPolicy policy : policies()) {
+            withServer(policy, 3, 1024, server -> slowReplica(server.getReplicationManager(), policy));
+        }
+
+        System.out.println("-- replicas lagging under a full-speed writer, max lag " + MAX_LAG_LSN);
+        for (ReadRoutingPolicy policy : policies()) {
+            withServer(policy, 2, 2, server -> lagging(server, policy));
+        }
+    }
+
+    private static ReadRoutingPolicy[] policies() {
+        return new ReadRoutingPolicy[]{new RandomReadRoutingPolicy(), new PowerOfTwoChoicesPolicy(MAX_LAG_LSN)};
+    }
+
+    private static String name(ReadRoutingPolicy policy) {
+        return policy instanceof RandomReadRoutingPolicy ? "random" : "p2c";
+    }
+
+    private static double getThroughput(ShareDataServer server, int threads) throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(threads);
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            readers[t] = new Thread(() -> {
+                started.countDown();
+                long count = 0;
+                int i = 0;
+                while (running.get()) {
+                    if (server.get("key-" + (i++ & (KEYS - 1)), null, false) != null) {
+                        count++;
+                    }
+                }
+                reads.add(count);
+            }, "routing-reader-" + t);
+            readers[t].start();
+        }
+        started.await();
+        long start = System.nanoTime();
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        return reads.sum() * 1_000_000_000.0 / (System.nanoTime() - start);
+    }
+
+    /**
+     * 按路由结果读取，读取期间计入 in-flight 并模拟该从节点的服务时间
+     */
+    private static void slowReplica(ReplicationManager manager, ReadRoutingPolicy policy) throws InterruptedException {
+        long[][] samples = new long[SLOW_READERS][];
+        int[] counts = new int[SLOW_READERS];
+        LongAdder slowReads = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] readers = new Thread[SLOW_READERS];
+        for (int t = 0; t < SLOW_READERS; t++) {
+            int index = t;
+            samples[t] = new long[MAX_SAMPLES / SLOW_READERS];
+            readers[t] = new Thread(() -> {
+                int i = 0;
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    Replica replica = manager.route(0L);
+                    replica.beginRead();
+                    try {
+                        replica.get("key-" + (i++ & (KEYS - 1)));
+                        boolean slow = "slave3".equals(replica.getName());
+                        if (slow) {
+                            slowReads.increment();
+                        }
+                        LockSupport.parkNanos(slow ? SLOW_SERVICE_NANOS : FAST_SERVICE_NANOS);
+                    } finally {
+                        replica.endRead();
+                    }
+                    if (counts[index] < samples[index].length) {
+                        samples[index][counts[index]++] = System.nanoTime() - start;
+                    }
+                }
+            }, "routing-slow-reader-" + t);
+        }
+        long start = System.nanoTime();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < SLOW_READERS; t++) {
+            System.arraycopy(samples[t], 0, all, offset, counts[t]);
+            offset += counts[t];
+        }
+        Arrays.sort(all);
+        System.out.printf("%-8s %,10.0f reads/s  p50 %5.0f us  p90 %5.0f us  p99 %5.0f us  p999 %5.0f us  slow replica %4.1f%%%n",
+                name(policy), total / seconds, percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99),
+                percentile(all, 0.999),
+                slowReads.sum() * 100.0 / total);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1000.0;
+    }
+
+    /**
+     * 写线程全速写入，读线程路由时记录选中节点的落后量
+     */
+    private static void lagging(ShareDataServer server, ReadRoutingPolicy policy) throws InterruptedException {
+        ReplicationManager manager = server.getReplicationManager();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                server.set("key-" + (i & (KEYS - 1)), new ShareData("id", "value-" + i, 1));
+                i++;
+            }
+        }, "routing-writer");
+        writer.start();
+        LongAdder reads = new LongAdder();
+        LongAdder masterReads = new LongAdder();
+        AtomicLong maxLag = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                long committed = manager.getCommittedLsn();
+                Replica replica = manager.route(0L);
+                reads.increment();
+                if (replica == null) {
+                    masterReads.increment();
+                } else {
+                    long lag = committed - replica.getAppliedLsn();
+                    maxLag.accumulateAndGet(lag, Math::max);
+                }
+            }
+        }, "routing-lag-reader");
+        reader.start();
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        writer.join();
+        reader.join();
+        System.out.printf("%-8s max lag read %,8d lsn  master reads %5.1f%%%n",
+                name(policy), maxLag.get(), masterReads.sum() * 100.0 / reads.sum());
+    }
+
+    private interface ServerTask {
+
+        void run(ShareDataServer server) throws Exception;
+    }
+
+    private static void withServer(ReadRoutingPolicy policy, int replicas, int queueBatches, ServerTask task)
+            throws Exception {
+        Path walDir = Files.createTempDirectory("datashare-routing");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.NO_FSYNC)
+                .replicaCount(replicas)
+                .replicationQueueBatches(queueBatches)
+                .readRoutingPolicy(policy)
+                .build();
+        ShareDataServer server = new ShareDataServer(config);
+        for (int i = 0; i < KEYS; i++) {
+            server.set("key-" + i, new ShareData("id" + i, "value-" + i, 1));
+        }
+        try {
+            task.run(server);
+        } finally {
+            server.shutdown();
+            deleteRecursively(walDir);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,209 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.PersistenceData;
+import com.crayon.datashare.model.ScanResult;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.persistence.GroupCommitWalWriter;
+import com.crayon.datashare.persistence.SnapshotFile;
+import com.crayon.datashare.persistence.WalCorruptedException;
+import com.crayon.datashare.persistence.WalFiles;
+import com.crayon.datashare.persistence.WalReader;
+import com.crayon.datashare.persistence.WalSegment;
+import com.crayon.datashare.server.OperaTypeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 启动恢复测试
+ *
+ * <p>
+ * 模糊快照加丢失的日志尾部：
+ * <ol>
+ *     <li>写入100个 key（lsn 1~100）后停机，用这些数据写一份边界为50的快照（遍历期间数据已经比边界新），
+ *     再删除日志文件，模拟非同步刷盘模式下崩溃丢失了边界之后的日志尾部</li>
+ *     <li>第一次重启：恢复出的最大 LSN 应覆盖快照中数据的 lsn（100），然后覆盖写入 lsn 大于边界的50个 key，
+ *     新写入的 lsn 必须大于快照中的 lsn</li>
+ *     <li>第二次重启：覆盖写入的 key 都应是新值，其他 key 保持原值，输出丢失的写入数（应为0）</li>
+ * </ol>
+ * 编码失败的残留字节：
+ * <ol>
+ *     <li>向日志段写入一个长 key、值不可序列化的记录（被拒绝），紧接着写入一条更短的记录后封存</li>
+ *     <li>读取封存的段：不能残留被拒绝记录的字节，否则不是最后一段的损坏会导致无法启动，
+ *     输出读到的记录数（应为1）</li>
+ * </ol>
+ * 写入失败的批次：
+ * <ol>
+ *     <li>占用之后所有段文件的名字，一个跨段的批次写到一半时滚动失败，批次中的写入者都收到失败</li>
+ *     <li>写入器之后拒绝追加；日志段中不能残留该批次已写入的部分，否则重启后会重放被告知失败的写入，
+ *     输出读到的记录数（应为0）</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/10
+ */
+public class RecoveryDemo {
+
+    private static final int KEYS = 100;
+
+    private static final long BOUNDARY = KEYS / 2;
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("-- fuzzy snapshot with a lost log tail");
+        fuzzySnapshot();
+        System.out.println("-- rejected record in a mapped segment");
+        rejectedRecord();
+        System.out.println("-- batch failing halfway through a roll");
+        failedBatch();
+    }
+
+    private static void fuzzySnapshot() throws IOException {
+        Path walDir = Files.createTempDirectory("datashare-recovery");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.FSYNC_EVERY_N_MS)
+                .replicaCount(0)
+                .build();
+
+        ShareDataServer server = new ShareDataServer(config);
+        for (int i = 0; i < KEYS; i++) {
+            server.set(key(i), new ShareData("id" + i, "old-" + i, 1));
+        }
+        Map<String, ShareData> written = dump(server);
+        server.shutdown();
+        SnapshotFile.write(walDir, BOUNDARY, written.entrySet().iterator());
+        for (Path log : WalFiles.listLogs(walDir).values()) {
+            Files.delete(log);
+        }
+        System.out.println("fuzzy snapshot at lsn " + BOUNDARY + " holding data up to lsn "
+                + written.values().stream().mapToLong(ShareData::getLsn).max().getAsLong() + ", log tail dropped");
+
+        server = new ShareDataServer(config);
+        System.out.println(server.getRecoveryResult());
+        for (int i = (int) BOUNDARY; i < KEYS; i++) {
+            server.set(key(i), new ShareData("id" + i, "new-" + i, 1));
+        }
+        System.out.println("first restart, overwrote " + (KEYS - BOUNDARY) + " keys from lsn "
+                + server.get(key((int) BOUNDARY), null, false).getLsn());
+        server.shutdown();
+
+        server = new ShareDataServer(config);
+        System.out.println(server.getRecoveryResult());
+        int lost = 0;
+        for (int i = 0; i < KEYS; i++) {
+            ShareData value = server.get(key(i), null, false);
+            String expected = (i < BOUNDARY ? "old-" : "new-") + i;
+            if (value == null || !expected.equals(value.getData())) {
+                lost++;
+            }
+        }
+        System.out.println("second restart, lost writes: " + lost);
+        server.shutdown();
+        deleteRecursively(walDir);
+    }
+
+    private static void rejectedRecord() throws IOException {
+        Path walDir = Files.createTempDirectory("datashare-recovery");
+        Path file = WalFiles.logFile(walDir, 1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(1), SEGMENT_BYTES - 1);
+        }
+        char[] longName = new char[200];
+        Arrays.fill(longName, 'k');
+        try (WalSegment segment = new WalSegment(file, 1, 0)) {
+            try {
+                segment.append(record("/torn/" + new String(longName), new Object(), 1));
+            } catch (RuntimeException e) {
+                System.out.println("rejected: " + e.getMessage());
+            }
+            segment.append(record("/torn/short", "v", 2));
+        }
+        int records = 0;
+        try (WalReader reader = new WalReader(file)) {
+            while (reader.nextFrame() != null) {
+                records++;
+            }
+            System.out.println("sealed segment reads " + records + " record(s), no leftover bytes");
+        } catch (WalCorruptedException e) {
+            System.out.println("sealed segment corrupted after " + records + " record(s): " + e.getMessage());
+        }
+        deleteRecursively(walDir);
+    }
+
+    private static void failedBatch() throws IOException {
+        Path walDir = Files.createTempDirectory("datashare-recovery");
+        GroupCommitWalWriter writer = new GroupCommitWalWriter(walDir, FsyncModeEnum.FSYNC_PER_BATCH, 1000,
+                SEGMENT_BYTES, 0);
+        // 新段的文件名被目录占用，滚动时无法创建新段
+        List<Path> blocked = new ArrayList<>();
+        for (int lsn = 2; lsn <= KEYS * 20 + 1; lsn++) {
+            blocked.add(Files.createDirectory(WalFiles.logFile(walDir, lsn)));
+        }
+        List<PersistenceData> records = new ArrayList<>();
+        for (int i = 0; i < KEYS * 20; i++) {
+            records.add(record(key(i), "value-" + i, 0));
+        }
+        boolean written = writer.appendAll(records, false).await(records.get(0));
+        PersistenceData later = record("/recovery/later", "v", 0);
+        boolean accepted = writer.append(later).await(later);
+        writer.close();
+        for (Path dir : blocked) {
+            Files.delete(dir);
+        }
+        int left = 0;
+        try (WalReader reader = new WalReader(WalFiles.logFile(walDir, 1))) {
+            while (reader.nextFrame() != null) {
+                left++;
+            }
+        }
+        System.out.println("batch of " + records.size() + " written: " + written + ", later append accepted: "
+                + accepted + ", records left in the log: " + left);
+        deleteRecursively(walDir);
+    }
+
+    private static PersistenceData record(String key, Object data, long lsn) {
+        return new PersistenceData.Builder()
+                .operaType(OperaTypeEnum.SET.getType())
+                .key(key)
+                .shareData(new ShareData("id", data, 1, lsn))
+                .lsn(lsn)
+                .build();
+    }
+
+    private static String key(int i) {
+        return "/recovery/" + i;
+    }
+
+    private static Map<String, ShareData> dump(ShareDataServer server) {
+        Map<String, ShareData> data = new TreeMap<>();
+        String cursor = null;
+        do {
+            ScanResult page = server.scanRange(null, null, cursor, 1000);
+            data.putAll(page.getEntries());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return data;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,207 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.cluster.ShardMap;
+import com.crayon.datashare.cluster.ShardedClient;
+import com.crayon.datashare.cluster.ShardedShareDataServer;
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分片测试
+ *
+ * <p>
+ * <ol>
+ *     <li>写扩展性：1、2、4个节点（每个节点独立的日志，每批 fsync），每个节点对应32个写线程随机写入，
+ *     输出写吞吐与相对单节点的倍数。节点之间不共享锁与日志，CPU 核数不少于节点数时接近线性增长</li>
+ *     <li>分片分布：4个节点时每个节点的分片数，以及从3个节点加到4个节点时归属变化的分片比例（应接近1/4）</li>
+ *     <li>在线迁移：2个节点预先写入数据，写线程通过缓存分片表的客户端持续写入时加入第3个节点，
+ *     每个写线程只写自己的 key 并记住最后写入的值，结束后逐个比较，不一致数应为0</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/5
+ */
+public class ShardingDemo {
+
+    private static final int SHARDS = ShardedShareDataServer.DEFAULT_SHARD_COUNT;
+
+    private static final int WRITERS_PER_NODE = 32;
+
+    private static final long DURATION_MS = 2000;
+
+    private static final int MIGRATE_KEYS = 100_000;
+
+    private static final int MIGRATE_WRITERS = 8;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        Path baseDir = Files.createTempDirectory("datashare-sharding");
+
+        System.out.println("-- write scaling, " + WRITERS_PER_NODE + " writers per node, fsync per batch");
+        double single = 0;
+        for (int nodeCount = 1; nodeCount <= 4; nodeCount *= 2) {
+            Path dir = baseDir.resolve("scale-" + nodeCount);
+            try (ShardedShareDataServer cluster = new ShardedShareDataServer(SHARDS, nodeNames(nodeCount),
+                    name -> config(dir, name, FsyncModeEnum.FSYNC_PER_BATCH))) {
+                double ops = writeThroughput(new ShardedClient(cluster), WRITERS_PER_NODE * nodeCount);
+                if (nodeCount == 1) {
+                    single = ops;
+                }
+                System.out.printf("nodes %d: %,10.0f writes/s  x%.2f%n", nodeCount, ops, ops / single);
+            }
+        }
+
+        System.out.println("-- shard distribution");
+        ShardMap three = ShardMap.build(1L, SHARDS, nodeNames(3), ShardedShareDataServer.VIRTUAL_NODES);
+        ShardMap four = ShardMap.build(2L, SHARDS, nodeNames(4), ShardedShareDataServer.VIRTUAL_NODES);
+        int changed = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            if (!three.ownerOfShard(shard).equals(four.ownerOfShard(shard))) {
+                changed++;
+            }
+        }
+        System.out.println("4 nodes: " + four.shardCounts());
+        System.out.printf("3 -> 4 nodes: %d of %d shards change owner (%.1f%%)%n",
+                changed, SHARDS, changed * 100.0 / SHARDS);
+
+        System.out.println("-- online migration, 2 -> 3 nodes while " + MIGRATE_WRITERS + " writers run");
+        Path dir = baseDir.resolve("migrate");
+        try (ShardedShareDataServer cluster = new ShardedShareDataServer(SHARDS, nodeNames(2),
+                name -> config(dir, name, FsyncModeEnum.NO_FSYNC))) {
+            migrate(cluster);
+        }
+        deleteRecursively(baseDir);
+    }
+
+    private static void migrate(ShardedShareDataServer cluster) throws InterruptedException {
+        for (int i = 0; i < MIGRATE_KEYS; i++) {
+            cluster.set(key(i), new ShareData("id" + i, "v0", 1));
+        }
+        ShardedClient client = new ShardedClient(cluster);
+        // 每个写线程最后写入的值，下标为 key 编号
+        String[] expected = new String[MIGRATE_KEYS];
+        Arrays.fill(expected, "v0");
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder writes = new LongAdder();
+        Thread[] writers = new Thread[MIGRATE_WRITERS];
+        for (int t = 0; t < MIGRATE_WRITERS; t++) {
+            int writer = t;
+            writers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long seq = 0;
+                while (running.get()) {
+                    int k = random.nextInt(MIGRATE_KEYS / MIGRATE_WRITERS) * MIGRATE_WRITERS + writer;
+                    String value = "w" + writer + "-" + (++seq);
+                    if (seq % 10 == 0) {
+                        client.delete(key(k), -1);
+                        expected[k] = null;
+                    } else {
+                        client.set(key(k), new ShareData("id" + k, value, 1));
+                        expected[k] = value;
+                    }
+                    writes.increment();
+                }
+            }, "sharding-writer-" + t);
+            writers[t].start();
+        }
+        Thread.sleep(500);
+        long start = System.nanoTime();
+        ShardedShareDataServer.MigrationStats stats = cluster.addNode("node-3");
+        long migrateMs = (System.nanoTime() - start) / 1_000_000;
+        Thread.sleep(500);
+        running.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        int mismatches = 0;
+        for (int i = 0; i < MIGRATE_KEYS; i++) {
+            ShareData actual = client.get(key(i));
+            Object value = actual == null ? null : actual.getData();
+            if (expected[i] == null ? value != null : !expected[i].equals(value)) {
+                mismatches++;
+            }
+        }
+        // 源节点上不应再有已迁移的 key
+        int leftovers = 0;
+        ShardMap shardMap = cluster.getShardMap();
+        for (String name : Arrays.asList("node-1", "node-2")) {
+            for (int i = 0; i < MIGRATE_KEYS; i++) {
+                if (!shardMap.ownerOf(key(i)).equals(name)
+                        && cluster.getNode(name).get(key(i), null, false) != null) {
+                    leftovers++;
+                }
+            }
+        }
+        System.out.printf("migration took %d ms: %s%n", migrateMs, stats);
+        System.out.println("shard map after: " + shardMap);
+        System.out.printf("writes during run %,d, client redirects %d, mismatches %d, leftovers on source %d%n",
+                writes.sum(), client.getRedirectCount(), mismatches, leftovers);
+    }
+
+    private static double writeThroughput(ShardedClient client, int writerCount) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder writes = new LongAdder();
+        Thread[] writers = new Thread[writerCount];
+        for (int t = 0; t < writerCount; t++) {
+            writers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (running.get()) {
+                    int k = random.nextInt(MIGRATE_KEYS);
+                    client.set(key(k), new ShareData("id" + k, "value", 1));
+                    count++;
+                }
+                writes.add(count);
+            }, "sharding-writer-" + t);
+        }
+        long start = System.nanoTime();
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        return writes.sum() * 1_000_000_000.0 / (System.nanoTime() - start);
+    }
+
+    private static List<String> nodeNames(int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            names.add("node-" + i);
+        }
+        return names;
+    }
+
+    private static ShareDataConfig config(Path baseDir, String node, FsyncModeEnum fsyncMode) {
+        return new ShareDataConfig.Builder()
+                .walDir(baseDir.resolve(node).toString())
+                .fsyncMode(fsyncMode)
+                .build();
+    }
+
+    private static String key(int i) {
+        return "key-" + i;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+}
@@ -0,0 +1,116 @@
+package com.crayon.datashare;
+
+import com.crayon.datashare.model.ShareData;
+import com.crayon.datashare.persistence.FsyncModeEnum;
+import com.crayon.datashare.server.ShareDataConfig;
+import com.crayon.datashare.server.ShareDataServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 过期测试
+ *
+ * <p>
+ * <ol>
+ *     <li>到期：写入一批带 TTL 的 key，到期前都能读到，到期后由时间轮删除，输出全部删除所用的时间</li>
+ *     <li>覆盖后重新到期：一个 key 覆盖为更长的 TTL，另一个覆盖为永不过期，
+ *     旧的到期任务转到时都应被忽略，前者按新的 TTL 到期，后者一直保留</li>
+ *     <li>恢复：停机前写入两个带 TTL 的 key，一个在停机期间到期，一个在重启之后到期；
+ *     重启后前者在第一个 tick 被删除，后者按原来的到期时间删除，再次重启后两者都不存在</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/10
+ */
+public class TtlDemo {
+
+    private static final int KEYS = 1000;
+
+    private static final long TTL_MS = 300;
+
+    private static final long WAIT_MS = 5000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path walDir = Files.createTempDirectory("datashare-ttl");
+        ShareDataConfig config = new ShareDataConfig.Builder()
+                .walDir(walDir.toString())
+                .fsyncMode(FsyncModeEnum.FSYNC_EVERY_N_MS)
+                .replicaCount(0)
+                .build();
+
+        System.out.println("-- expiry of " + KEYS + " keys, ttl " + TTL_MS + " ms");
+        ShareDataServer server = new ShareDataServer(config);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < KEYS; i++) {
+            server.set("/ttl/" + i, new ShareData("id" + i, "v" + i, 1), TTL_MS);
+        }
+        System.out.println("readable before expiry: " + readable(server, "/ttl/", KEYS));
+        awaitExpired(server, KEYS);
+        System.out.println("expired " + server.getExpiredCount() + " keys after "
+                + (System.currentTimeMillis() - start) + " ms, readable: " + readable(server, "/ttl/", KEYS));
+        server.shutdown();
+
+        System.out.println("-- overwrite before expiry");
+        server = new ShareDataServer(config);
+        server.set("/overwrite/longer", new ShareData("a", "old", 1), TTL_MS);
+        server.set("/overwrite/forever", new ShareData("b", "old", 1), TTL_MS);
+        server.set("/overwrite/longer", new ShareData("a", "new", 1), TTL_MS * 4);
+        server.set("/overwrite/forever", new ShareData("b", "new", 1));
+        Thread.sleep(TTL_MS * 2);
+        System.out.println("after the old ttl: longer " + value(server, "/overwrite/longer")
+                + ", forever " + value(server, "/overwrite/forever") + ", expired " + server.getExpiredCount());
+        awaitExpired(server, 1);
+        System.out.println("after the new ttl: longer " + value(server, "/overwrite/longer")
+                + ", forever " + value(server, "/overwrite/forever") + ", expired " + server.getExpiredCount());
+        server.shutdown();
+
+        System.out.println("-- recovery of expiring keys");
+        server = new ShareDataServer(config);
+        server.set("/recover/down", new ShareData("c", "v", 1), TTL_MS);
+        server.set("/recover/up", new ShareData("d", "v", 1), TTL_MS * 4);
+        server.shutdown();
+        Thread.sleep(TTL_MS * 2);
+        server = new ShareDataServer(config);
+        awaitExpired(server, 1);
+        System.out.println("restarted after the first deadline: down " + value(server, "/recover/down")
+                + ", up " + value(server, "/recover/up") + ", expired " + server.getExpiredCount());
+        awaitExpired(server, 2);
+        System.out.println("after the second deadline: down " + value(server, "/recover/down")
+                + ", up " + value(server, "/recover/up") + ", expired " + server.getExpiredCount());
+        server.shutdown();
+        server = new ShareDataServer(config);
+        System.out.println("restarted again: down " + value(server, "/recover/down")
+                + ", up " + value(server, "/recover/up") + ", expired " + server.getExpiredCount());
+        server.shutdown();
+
+        Files.walk(walDir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(path -> path.toFile().delete());
+    }
+
+    private static int readable(ShareDataServer server, String prefix, int keys) {
+        int found = 0;
+        for (int i = 0; i < keys; i++) {
+            if (server.get(prefix + i, null, false) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static Object value(ShareDataServer server, String key) {
+        ShareData shareData = server.get(key, null, false);
+        return shareData == null ? null : shareData.getData();
+    }
+
+    private static void awaitExpired(ShareDataServer server, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (server.getExpiredCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * 服务实例对象，用于对外提供通信方式或其他关键信息
  *
@@ -20,6 +22,9 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class Instance {
 
+    private static final AtomicReferenceFieldUpdater<Instance, Status> STATUS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Instance.class, Status.class, "status");
+
     /**
      * 实例id
      * <p>
@@ -50,13 +55,17 @@ public class Instance {
     /**
      * 持久化数据使用tinyint 存储
      * 用枚举表达方便维护、扩展
+     * <p>
+     * volatile，心跳线程不加锁更新
      */
-    private Status status;
+    private volatile Status status;
 
     /**
      * 上次心跳时间
+     * <p>
+     * volatile，心跳线程不加锁更新
      */
-    private Long lastHeartbeat;
+    private volatile Long lastHeartbeat;
 
     /**
      * 健康状态
@@ -71,6 +80,20 @@ public class Instance {
         this.healthy = healthy;
     }
 
+    /**
+     * 处理一次心跳：刷新心跳时间，状态置为在线
+     * <p>
+     * 不加锁，状态用 CAS 切换，并发的心跳中只有一个会看到状态变化
+     *
+     * @param now 心跳时间
+     * @return 状态是否从非在线变为在线
+     */
+    public boolean touch(long now) {
+        lastHeartbeat = now;
+        Status current = status;
+        return current != Status.ONLINE && STATUS_UPDATER.compareAndSet(this, current, Status.ONLINE);
+    }
+
     public enum Status {
         ONLINE(1),
         OFFLINE(0);
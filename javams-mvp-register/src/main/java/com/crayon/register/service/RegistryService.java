@@ -5,14 +5,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 注册服务
@@ -42,51 +43,49 @@ public class RegistryService {
      * 3. Safety 安全性
      * 简单实现这里没有体现
      * </p>
+     * <p>
+     * 每个服务是一张按实例标识索引的 {@link ServiceInstances}，
+     * 心跳、重复注册按标识直接定位，并发控制收敛在每个服务自己的实例表里
+     * </p>
      */
-    private Map<String, List<Instance>> serviceRegistryMaster = new ConcurrentHashMap<>();
-    private Map<String, List<Instance>> serviceRegistrySlave1 = new ConcurrentHashMap<>();
-    private Map<String, List<Instance>> serviceRegistrySlave2 = new ConcurrentHashMap<>();
-
+    private final Map<String, ServiceInstances> serviceRegistryMaster = new ConcurrentHashMap<>();
+    private final Map<String, ServiceInstances> serviceRegistrySlave1 = new ConcurrentHashMap<>();
+    private final Map<String, ServiceInstances> serviceRegistrySlave2 = new ConcurrentHashMap<>();
 
     /**
-     * 使用读写锁，简单实现强一致性
-     * <p>
-     * 按服务名分配锁，尽可能的小粒度以应对频繁更改的服务示例
-     * </p>
+     * 异步同步线程池
      * <p>
-     * 在实际生产中，企业运用的分布式架构需要使用分布式锁来实现
+     * 单线程，保证同一实例的注册、更新、剔除按顺序到达从节点
      * </p>
      */
-    private final Map<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
 
     /**
-     * 异步同步线程池
+     * 提交到从节点的同步任务数
      */
-    private final ExecutorService syncExecutor = Executors.newFixedThreadPool(2);
+    private final LongAdder syncTaskCount = new LongAdder();
 
     /**
      * 注册服务
      * <p>
+     * 按实例标识覆盖，同一实例重复注册不会产生重复实例。
      * 注册表同步可以改成异步
      *
      * @param serviceName
      * @param instance
      */
     public void register(String serviceName, Instance instance) {
-        ReentrantReadWriteLock lock = locks.computeIfAbsent(serviceName, k -> new ReentrantReadWriteLock());
-        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            instance.setStatus(Instance.Status.ONLINE); // 默认在线
-            instance.setLastHeartbeat(System.currentTimeMillis()); // 注册时更新心跳
-            serviceRegistryMaster.computeIfAbsent(serviceName, k -> new ArrayList<>())
-                    .add(instance);
+        instance.setStatus(Instance.Status.ONLINE); // 默认在线
+        instance.setLastHeartbeat(System.currentTimeMillis()); // 注册时更新心跳
+        Instance previous = serviceRegistryMaster.computeIfAbsent(serviceName, k -> new ServiceInstances())
+                .put(instance);
+        if (previous == null) {
             log.info("Registered to Master: {} - {}", serviceName, instance);
-            // 异步到 Slave
-            syncToSlavesAsync(serviceName, instance);
-        } finally {
-            writeLock.unlock();
+        } else {
+            log.info("Re-registered to Master: {} - {}", serviceName, instance);
         }
+        // 异步到 Slave
+        syncToSlavesAsync(serviceName, instance);
     }
 
     /**
@@ -97,54 +96,79 @@ public class RegistryService {
      */
     private void syncToSlaves(String serviceName, Instance instance) {
         // 同步到 Slave1
-        serviceRegistrySlave1.computeIfAbsent(serviceName, k -> new ArrayList<>())
-                .add(instance);
-        log.info("Synced to Slave1: {} - {}", serviceName, instance);
+        serviceRegistrySlave1.computeIfAbsent(serviceName, k -> new ServiceInstances())
+                .put(copyOf(instance));
+        log.debug("Synced to Slave1: {} - {}", serviceName, instance);
 
         // 同步到 Slave2
-        serviceRegistrySlave2.computeIfAbsent(serviceName, k -> new ArrayList<>())
-                .add(instance);
-        log.info("Synced to Slave2: {} - {}", serviceName, instance);
+        serviceRegistrySlave2.computeIfAbsent(serviceName, k -> new ServiceInstances())
+                .put(copyOf(instance));
+        log.debug("Synced to Slave2: {} - {}", serviceName, instance);
     }
 
     /**
      * 异步同步到 Slave
+     * <p>
+     * 提交时复制实例当前的状态，从节点持有自己的副本，不和 Master 共享可变对象
+     * </p>
      */
     private void syncToSlavesAsync(String serviceName, Instance instance) {
+        Instance slave1Copy = copyOf(instance);
+        Instance slave2Copy = copyOf(instance);
+        syncTaskCount.increment();
         syncExecutor.submit(() -> {
             // 同步到 Slave1
-            serviceRegistrySlave1.computeIfAbsent(serviceName, k -> new ArrayList<>())
-                    .add(instance);
-            log.info("Synced to Slave1: {} - {}", serviceName, instance);
+            serviceRegistrySlave1.computeIfAbsent(serviceName, k -> new ServiceInstances())
+                    .put(slave1Copy);
+            log.debug("Synced to Slave1: {} - {}", serviceName, slave1Copy);
 
             // 同步到 Slave2
-            serviceRegistrySlave2.computeIfAbsent(serviceName, k -> new ArrayList<>())
-                    .add(instance);
-            log.info("Synced to Slave2: {} - {}", serviceName, instance);
+            serviceRegistrySlave2.computeIfAbsent(serviceName, k -> new ServiceInstances())
+                    .put(slave2Copy);
+            log.debug("Synced to Slave2: {} - {}", serviceName, slave2Copy);
         });
     }
 
+    /**
+     * 异步从 Slave 移除实例
+     */
+    private void removeFromSlavesAsync(String serviceName, Instance instance) {
+        String identity = ServiceInstances.identityOf(instance);
+        syncTaskCount.increment();
+        syncExecutor.submit(() -> {
+            for (Map<String, ServiceInstances> slave : Arrays.asList(serviceRegistrySlave1, serviceRegistrySlave2)) {
+                ServiceInstances instances = slave.get(serviceName);
+                if (instances != null) {
+                    instances.remove(identity);
+                }
+            }
+            log.debug("Removed from Slaves: {} - {}", serviceName, instance);
+        });
+    }
+
+    private static Instance copyOf(Instance instance) {
+        return new Instance(instance.getId(), instance.getIp(), instance.getPort(), instance.getServerName(),
+                instance.getStatus(), instance.getLastHeartbeat(), instance.isHealthy());
+    }
+
     /**
      * 查询服务实例
      * <p>
      * 多节点读取需要负载均衡
+     * </p>
+     * <p>
+     * 返回从节点发布的不可变列表，不加锁也不复制
+     * </p>
      *
      * @param serviceName
      * @return
      */
     public List<Instance> getServiceInstancesByName(String serviceName) {
-        ReentrantReadWriteLock lock = locks.computeIfAbsent(serviceName, k -> new ReentrantReadWriteLock());
-        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            // 从任一个Slave中获取服务实例
-            List<Instance> instances = serviceRegistrySlave1.getOrDefault(serviceName, Collections.emptyList());
-            log.info("Discovered from Slave1: {} - {}", serviceName, instances);
-            // 返回副本，避免外部修改
-            return new ArrayList<>(instances);
-        } finally {
-            readLock.unlock();
-        }
+        // 从任一个Slave中获取服务实例
+        ServiceInstances instances = serviceRegistrySlave1.get(serviceName);
+        List<Instance> result = instances == null ? Collections.emptyList() : instances.list();
+        log.debug("Discovered from Slave1: {} - {} instances", serviceName, result.size());
+        return result;
     }
 
 
@@ -152,37 +176,31 @@ public class RegistryService {
      * 建议的心跳处理方式为被动检测。
      * <p>
      * 从节点的更新使用异步效率更高
+     * </p>
+     * <p>
+     * 心跳是注册中心最频繁的请求，走单独的快速路径：按实例标识直接定位 Master 上的实例，
+     * 只更新实例自己的心跳时间和状态，不加服务级的锁、不复制实例列表；
+     * 只有状态真的变化时才同步到从节点。心跳时间只在 Master 上维护，供 {@link #checkHeartbeats()} 判断超时，
+     * 从节点上的心跳时间是注册或状态变化时的值。
+     * 未知实例（从未注册或已被剔除）直接重新注册
+     * </p>
      *
      * @param instance
      */
     public void heartbeat(Instance instance) {
         String serverName = instance.getServerName();
-        List<Instance> instances = getServiceInstancesByName(serverName);
-        if (instances == null) {
+        ServiceInstances masterInstances = serviceRegistryMaster.get(serverName);
+        Instance existing = masterInstances == null ? null
+                : masterInstances.get(ServiceInstances.identityOf(instance));
+        if (existing == null) {
             register(serverName, instance);
             return;
         }
-        // 遍历获取对应实例，并更新状态
-        ReentrantReadWriteLock lock = locks.computeIfAbsent(serverName, k -> new ReentrantReadWriteLock());
-        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            // 还是遵从 Master-Slave ，更新 Master
-            List<Instance> masterInstances = serviceRegistryMaster.get(serverName);
-            if (masterInstances != null) {
-                for (Instance existing : masterInstances) {
-                    if (existing.getId().equals(instance.getId())) {
-                        existing.setLastHeartbeat(System.currentTimeMillis());
-                        existing.setStatus(Instance.Status.ONLINE);
-                        log.info("Heartbeat updated: {}", existing);
-                        // 异步同步到 Slave
-                        syncToSlavesAsync(serverName, existing);
-                        break;
-                    }
-                }
-            }
-        } finally {
-            writeLock.unlock();
+        // 还是遵从 Master-Slave ，更新 Master
+        if (existing.touch(System.currentTimeMillis())) {
+            log.info("Instance back online: {} - {}", serverName, existing);
+            // 异步同步到 Slave
+            syncToSlavesAsync(serverName, existing);
         }
     }
 
@@ -191,24 +209,30 @@ public class RegistryService {
      */
     @Scheduled(fixedRate = 60000) // 每 60 秒检查
     public void checkHeartbeats() {
+        long now = System.currentTimeMillis();
         serviceRegistryMaster.forEach((serviceName, instances) -> {
-            ReentrantReadWriteLock lock = locks.computeIfAbsent(serviceName, k -> new ReentrantReadWriteLock());
-            ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
-            writeLock.lock();
-            try {
-                long now = System.currentTimeMillis();
-                instances.removeIf(instance -> {
-                    if (now - instance.getLastHeartbeat() > 60000) { // 60 秒超时
-                        instance.setStatus(Instance.Status.OFFLINE);
-                        log.info("Service offline: {} - {}", serviceName, instance);
-                        syncToSlavesAsync(serviceName, instance); // 同步下线状态
-                        return true;
-                    }
-                    return false;
-                });
-            } finally {
-                writeLock.unlock();
+            List<Instance> expired = instances.removeIf(
+                    instance -> now - instance.getLastHeartbeat() > 60000); // 60 秒超时
+            for (Instance instance : expired) {
+                instance.setStatus(Instance.Status.OFFLINE);
+                log.info("Service offline: {} - {}", serviceName, instance);
+                removeFromSlavesAsync(serviceName, instance); // 同步下线状态
             }
         });
     }
+
+    /**
+     * @return 提交到从节点的同步任务数
+     */
+    public long getSyncTaskCount() {
+        return syncTaskCount.sum();
+    }
+
+    /**
+     * 关闭同步线程池，已提交的同步任务会执行完
+     */
+    @PreDestroy
+    public void shutdown() {
+        syncExecutor.shutdown();
+    }
 }
@@ -0,0 +1,125 @@
+package com.crayon.register.service;
+
+import com.crayon.register.model.Instance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 单个服务的实例表
+ *
+ * <p>
+ * 按实例标识（有 id 用 id，否则用 ip:port）索引，心跳、重复注册都是 O(1) 查找，
+ * 同一实例重复注册只会覆盖，不会追加出重复的实例。
+ * </p>
+ * <p>
+ * 读者拿到的是发布出去的不可变列表：实例增删时只把快照置空，下一次读取时重建一次，
+ * 之后的读取直接返回同一份快照，不加锁也不复制。
+ * 实例的增删在本对象上同步，只影响同一个服务。
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/10
+ */
+public class ServiceInstances {
+
+    private final Map<String, Instance> instances = new ConcurrentHashMap<>();
+
+    /**
+     * 发布给读者的不可变列表，为 null 表示实例有增删，需要重建
+     */
+    private volatile List<Instance> published = Collections.emptyList();
+
+    /**
+     * 实例标识：有 id 用 id，否则用 ip:port
+     *
+     * @param instance
+     * @return
+     */
+    public static String identityOf(Instance instance) {
+        if (instance.getId() != null) {
+            return String.valueOf(instance.getId());
+        }
+        return instance.getIp() + ":" + instance.getPort();
+    }
+
+    /**
+     * @param identity 实例标识
+     * @return 实例，不存在时返回 null
+     */
+    public Instance get(String identity) {
+        return instances.get(identity);
+    }
+
+    /**
+     * 新增或覆盖实例
+     *
+     * @param instance
+     * @return 被覆盖的旧实例，没有时返回 null
+     */
+    public synchronized Instance put(Instance instance) {
+        Instance previous = instances.put(identityOf(instance), instance);
+        if (previous != instance) {
+            published = null;
+        }
+        return previous;
+    }
+
+    /**
+     * @param identity 实例标识
+     * @return 被移除的实例，不存在时返回 null
+     */
+    public synchronized Instance remove(String identity) {
+        Instance removed = instances.remove(identity);
+        if (removed != null) {
+            published = null;
+        }
+        return removed;
+    }
+
+    /**
+     * 移除满足条件的实例
+     *
+     * @param filter
+     * @return 被移除的实例
+     */
+    public synchronized List<Instance> removeIf(Predicate<Instance> filter) {
+        List<Instance> removed = new ArrayList<>();
+        instances.values().removeIf(instance -> {
+            if (filter.test(instance)) {
+                removed.add(instance);
+                return true;
+            }
+            return false;
+        });
+        if (!removed.isEmpty()) {
+            published = null;
+        }
+        return removed;
+    }
+
+    /**
+     * @return 所有实例的不可变列表
+     */
+    public List<Instance> list() {
+        List<Instance> snapshot = published;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (published == null) {
+                published = Collections.unmodifiableList(new ArrayList<>(instances.values()));
+            }
+            return published;
+        }
+    }
+
+    public int size() {
+        return instances.size();
+    }
+}
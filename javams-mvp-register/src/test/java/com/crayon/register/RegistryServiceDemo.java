@@ -0,0 +1,132 @@
+package com.crayon.register;
+
+import com.crayon.register.model.Instance;
+import com.crayon.register.service.RegistryService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 注册表测试
+ *
+ * <p>
+ * <ol>
+ *     <li>重复注册：一个服务注册5000个实例后全部重新注册一遍，Master 与从节点上仍是5000个实例</li>
+ *     <li>剔除：100个实例心跳超时，检查后 Master 与从节点上都被移除</li>
+ *     <li>心跳：按实例标识定位实例，对比按 id 遍历列表（旧的存储方式）查找同一批实例，输出每次查找/心跳的耗时，
+ *     以及心跳期间提交到从节点的同步任务数（状态不变时为0）</li>
+ *     <li>状态变化：一个实例在 Master 上被标记为下线后再收到心跳，恢复在线，只提交一次同步</li>
+ * </ol>
+ * </p>
+ *
+ * @author crayon
+ * @version 1.0
+ * @date 2025/6/10
+ */
+public class RegistryServiceDemo {
+
+    private static final String SERVICE = "order-service";
+
+    private static final int INSTANCES = 5000;
+
+    private static final int EXPIRED = 100;
+
+    private static final int HEARTBEATS = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        RegistryService registryService = new RegistryService();
+
+        System.out.println("-- re-registration, " + INSTANCES + " instances");
+        List<Instance> registered = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            registryService.register(SERVICE, instance(i));
+        }
+        for (int i = 0; i < INSTANCES; i++) {
+            Instance instance = instance(i);
+            registryService.register(SERVICE, instance);
+            registered.add(instance);
+        }
+        awaitSlave(registryService, INSTANCES);
+        System.out.println("registered twice, instances on slave: "
+                + registryService.getServiceInstancesByName(SERVICE).size());
+
+        System.out.println("-- expiry of " + EXPIRED + " instances");
+        for (int i = 0; i < EXPIRED; i++) {
+            registered.get(i).setLastHeartbeat(System.currentTimeMillis() - 120_000);
+        }
+        registryService.checkHeartbeats();
+        awaitSlave(registryService, INSTANCES - EXPIRED);
+        System.out.println("after check, instances on slave: "
+                + registryService.getServiceInstancesByName(SERVICE).size());
+
+        System.out.println("-- heartbeats over " + (INSTANCES - EXPIRED) + " instances");
+        List<Instance> scanList = new ArrayList<>(registered.subList(EXPIRED, INSTANCES));
+        Instance[] beats = new Instance[INSTANCES - EXPIRED];
+        for (int i = 0; i < beats.length; i++) {
+            beats[i] = instance(EXPIRED + i);
+        }
+        // 预热
+        scan(scanList, beats, HEARTBEATS / 10);
+        heartbeat(registryService, beats, HEARTBEATS / 10);
+
+        long start = System.nanoTime();
+        int found = scan(scanList, beats, HEARTBEATS);
+        System.out.printf("list scan by id: %8.0f ns/lookup (found %d)%n",
+                (double) (System.nanoTime() - start) / HEARTBEATS, found);
+
+        long syncTasksBefore = registryService.getSyncTaskCount();
+        start = System.nanoTime();
+        heartbeat(registryService, beats, HEARTBEATS);
+        System.out.printf("indexed heartbeat: %8.0f ns/heartbeat (sync tasks submitted %d)%n",
+                (double) (System.nanoTime() - start) / HEARTBEATS,
+                registryService.getSyncTaskCount() - syncTasksBefore);
+
+        System.out.println("-- status change");
+        Instance flapping = registered.get(EXPIRED);
+        flapping.setStatus(Instance.Status.OFFLINE);
+        syncTasksBefore = registryService.getSyncTaskCount();
+        for (int i = 0; i < 3; i++) {
+            registryService.heartbeat(instance(EXPIRED));
+        }
+        System.out.println("3 heartbeats after going offline, sync tasks submitted: "
+                + (registryService.getSyncTaskCount() - syncTasksBefore));
+
+        registryService.shutdown();
+    }
+
+    private static Instance instance(int i) {
+        Instance instance = new Instance("10.0." + (i / 250) + "." + (i % 250), 8080, true);
+        instance.setId(i);
+        instance.setServerName(SERVICE);
+        return instance;
+    }
+
+    /**
+     * 旧的存储方式：遍历列表按 id 查找
+     */
+    private static int scan(List<Instance> instances, Instance[] beats, int count) {
+        int found = 0;
+        for (int n = 0; n < count; n++) {
+            Integer id = beats[n % beats.length].getId();
+            for (Instance existing : instances) {
+                if (existing.getId().equals(id)) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void heartbeat(RegistryService registryService, Instance[] beats, int count) {
+        for (int n = 0; n < count; n++) {
+            registryService.heartbeat(beats[n % beats.length]);
+        }
+    }
+
+    private static void awaitSlave(RegistryService registryService, int expected) throws InterruptedException {
+        while (registryService.getServiceInstancesByName(SERVICE).size() != expected) {
+            Thread.sleep(10);
+        }
+    }
+}